@@ -0,0 +1,735 @@
+package org.radargun;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.radargun.stages.DefaultDistStageAck;
+import org.radargun.stressors.LogLinearHistogram;
+import org.radargun.stressors.SimpleStatistics;
+
+/**
+ * Compact versioned binary format for the messages exchanged between master and slaves. Primitive wrappers,
+ * strings, enums, common collections and arrays are written with one-byte tags and variable-length numbers,
+ * framework types (acks, progress reports, statistics, histograms) are written by their registered
+ * {@link TypeCodec}s and any other serializable object falls back to Java serialization - either separately for each
+ * object, or into a Java object stream shared by the whole buffer, which writes each class descriptor only once.
+ *
+ * Stages are written as the list of fields that differ from a freshly constructed instance; the fields that
+ * have the same value for all slaves are encoded only once and shared by the messages of all slaves.
+ */
+public class BinaryCodec {
+   /* Java serialization streams start with 0xACED */
+   private static final byte MAGIC = (byte) 0xB1;
+   private static final byte VERSION = 1;
+
+   private static final int NULL = 0;
+   private static final int TRUE = 1;
+   private static final int FALSE = 2;
+   private static final int BYTE = 3;
+   private static final int SHORT = 4;
+   private static final int CHAR = 5;
+   private static final int INT = 6;
+   private static final int LONG = 7;
+   private static final int FLOAT = 8;
+   private static final int DOUBLE = 9;
+   private static final int STRING = 10;
+   private static final int ENUM = 11;
+   private static final int ARRAY_LIST = 12;
+   private static final int LINKED_LIST = 13;
+   private static final int HASH_SET = 14;
+   private static final int LINKED_HASH_SET = 15;
+   private static final int TREE_SET = 16;
+   private static final int HASH_MAP = 17;
+   private static final int LINKED_HASH_MAP = 18;
+   private static final int TREE_MAP = 19;
+   private static final int BYTE_ARRAY = 20;
+   private static final int INT_ARRAY = 21;
+   private static final int LONG_ARRAY = 22;
+   private static final int DOUBLE_ARRAY = 23;
+   private static final int STRING_ARRAY = 24;
+   private static final int REGISTERED = 25;
+   private static final int STAGE = 26;
+   private static final int JAVA = 27;
+   private static final int JAVA_STREAM = 28;
+
+   /**
+    * Writes and reads instances of one class (subclasses are not handled).
+    */
+   public interface TypeCodec<T> {
+      void write(T object, Output out) throws IOException;
+
+      T read(Input in) throws IOException;
+   }
+
+   private static final Map<Class<?>, Integer> typeIds = new HashMap<Class<?>, Integer>();
+   private static final List<TypeCodec<?>> codecs = new ArrayList<TypeCodec<?>>();
+   private static final Map<Class<?>, StageLayout> layouts = new ConcurrentHashMap<Class<?>, StageLayout>();
+
+   static {
+      // the order defines the type ids, append new types to the end
+      register(DefaultDistStageAck.class, DefaultDistStageAck.CODEC);
+      register(StageProgress.class, StageProgress.CODEC);
+      register(StageAbort.class, StageAbort.CODEC);
+      register(SimpleStatistics.class, SimpleStatistics.CODEC);
+      register(LogLinearHistogram.class, LogLinearHistogram.CODEC);
+   }
+
+   private static <T> void register(Class<T> clazz, TypeCodec<T> codec) {
+      typeIds.put(clazz, codecs.size());
+      codecs.add(codec);
+   }
+
+   /**
+    * @return True if the data were written by this codec (and not by Java serialization)
+    */
+   public static boolean isEncoded(ByteBuffer data) {
+      return data.remaining() >= 2 && data.get(data.position()) == MAGIC;
+   }
+
+   public static byte[] encode(Object message) throws IOException {
+      Output out = new Output();
+      out.writeHeader();
+      out.writeObject(message);
+      return out.toByteArray();
+   }
+
+   public static Object decode(ByteBuffer data) throws IOException {
+      Input in = new Input(data);
+      in.readHeader();
+      if (in.peekTag() == STAGE) {
+         return in.readStage();
+      }
+      return in.readObject();
+   }
+
+   /**
+    * Encodes clones of the same stage, each initialized for different slave.
+    *
+    * @return Encoded stage for each slave, in the same order
+    */
+   public static byte[][] encodeStages(List<? extends DistStage> stages) throws IOException {
+      byte[][] encoded = new byte[stages.size()][];
+      if (stages.isEmpty()) return encoded;
+      StageLayout layout = getLayout(stages.get(0).getClass());
+      if (layout.defaults == null) {
+         // cannot be instantiated on slave
+         for (int i = 0; i < stages.size(); ++i) {
+            encoded[i] = javaSerialize(stages.get(i));
+         }
+         return encoded;
+      }
+      try {
+         Output common = new Output();
+         common.writeHeader();
+         common.writeTag(STAGE);
+         common.writeString(layout.clazz.getName());
+         common.writeInt(layout.hash);
+         List<Integer> differentFields = new ArrayList<Integer>();
+         List<Integer> commonFields = new ArrayList<Integer>();
+         for (int i = 0; i < layout.fields.length; ++i) {
+            Field field = layout.fields[i];
+            Object first = field.get(stages.get(0));
+            boolean same = true;
+            for (int j = 1; j < stages.size() && same; ++j) {
+               same = valuesEqual(first, field.get(stages.get(j)));
+            }
+            if (!same) {
+               differentFields.add(i);
+            } else if (!valuesEqual(first, field.get(layout.defaults))) {
+               commonFields.add(i);
+            }
+         }
+         common.writeUnsignedInt(commonFields.size());
+         for (int index : commonFields) {
+            common.writeUnsignedInt(index);
+            common.writeObject(layout.fields[index].get(stages.get(0)));
+         }
+         byte[] commonBytes = common.toByteArray();
+         for (int i = 0; i < stages.size(); ++i) {
+            Output delta = new Output(commonBytes);
+            delta.writeUnsignedInt(differentFields.size());
+            for (int index : differentFields) {
+               delta.writeUnsignedInt(index);
+               delta.writeObject(layout.fields[index].get(stages.get(i)));
+            }
+            encoded[i] = delta.toByteArray();
+         }
+         return encoded;
+      } catch (IllegalAccessException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   private static boolean valuesEqual(Object a, Object b) {
+      if (a == b) return true;
+      if (a == null || b == null) return false;
+      try {
+         if (a.getClass().isArray()) {
+            return Arrays.deepEquals(new Object[] { a }, new Object[] { b });
+         }
+         return a.equals(b);
+      } catch (RuntimeException e) {
+         return false;
+      }
+   }
+
+   private static byte[] javaSerialize(Object object) throws IOException {
+      if (!(object instanceof Serializable)) {
+         throw new NotSerializableException(object.getClass().getName());
+      }
+      return SerializationHelper.serializeObject((Serializable) object);
+   }
+
+   private static StageLayout getLayout(Class<?> clazz) {
+      StageLayout layout = layouts.get(clazz);
+      if (layout == null) {
+         layout = new StageLayout(clazz);
+         layouts.put(clazz, layout);
+      }
+      return layout;
+   }
+
+   private static Class<?> loadClass(String name) throws IOException {
+      try {
+         ClassLoader loader = Thread.currentThread().getContextClassLoader();
+         if (loader == null) loader = BinaryCodec.class.getClassLoader();
+         return Class.forName(name, false, loader);
+      } catch (ClassNotFoundException e) {
+         throw new StreamCorruptedException("Cannot load " + name + ": " + e);
+      }
+   }
+
+   /**
+    * Persistent fields of the stage class in deterministic order and the default values of these.
+    */
+   private static class StageLayout {
+      final Class<?> clazz;
+      final Field[] fields;
+      final int hash;
+      final Constructor<?> constructor;
+      final Object defaults;
+
+      StageLayout(Class<?> clazz) {
+         this.clazz = clazz;
+         List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+         for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+         }
+         List<Field> fieldList = new ArrayList<Field>();
+         StringBuilder signature = new StringBuilder();
+         for (Class<?> c : hierarchy) {
+            Field[] declared = c.getDeclaredFields();
+            Arrays.sort(declared, new Comparator<Field>() {
+               @Override
+               public int compare(Field f1, Field f2) {
+                  return f1.getName().compareTo(f2.getName());
+               }
+            });
+            for (Field field : declared) {
+               int modifiers = field.getModifiers();
+               if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+               field.setAccessible(true);
+               fieldList.add(field);
+               signature.append(c.getName()).append('.').append(field.getName()).append(':')
+                     .append(field.getType().getName()).append(';');
+            }
+         }
+         fields = fieldList.toArray(new Field[fieldList.size()]);
+         hash = signature.toString().hashCode();
+         Constructor<?> ctor = null;
+         Object instance = null;
+         try {
+            ctor = clazz.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            instance = ctor.newInstance();
+         } catch (Exception e) {
+            ctor = null;
+         }
+         constructor = ctor;
+         defaults = instance;
+      }
+   }
+
+   public static class Output {
+      private byte[] buffer;
+      private int position;
+      private ObjectOutputStream javaStream;
+
+      public Output() {
+         buffer = new byte[256];
+      }
+
+      private Output(byte[] prefix) {
+         buffer = Arrays.copyOf(prefix, prefix.length + 64);
+         position = prefix.length;
+      }
+
+      private void ensureCapacity(int bytes) {
+         if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+         }
+      }
+
+      /**
+       * Objects without a codec are written into this stream instead of being serialized separately. The stream
+       * has to be passed to {@link Input#setJavaStream(ObjectInputStream)} when the data are read.
+       * Null (default) means separate serialization.
+       */
+      public void setJavaStream(ObjectOutputStream javaStream) {
+         this.javaStream = javaStream;
+      }
+
+      private void writeHeader() {
+         writeByte(MAGIC);
+         writeByte(VERSION);
+      }
+
+      private void writeTag(int tag) {
+         writeByte(tag);
+      }
+
+      public void writeByte(int value) {
+         ensureCapacity(1);
+         buffer[position++] = (byte) value;
+      }
+
+      public void writeBytes(byte[] bytes) {
+         writeUnsignedInt(bytes.length);
+         ensureCapacity(bytes.length);
+         System.arraycopy(bytes, 0, buffer, position, bytes.length);
+         position += bytes.length;
+      }
+
+      public void writeBoolean(boolean value) {
+         writeByte(value ? 1 : 0);
+      }
+
+      /**
+       * Writes non-negative value in variable-length format.
+       */
+      public void writeUnsignedLong(long value) {
+         ensureCapacity(10);
+         while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+         }
+         buffer[position++] = (byte) value;
+      }
+
+      public void writeUnsignedInt(int value) {
+         writeUnsignedLong(value & 0xFFFFFFFFL);
+      }
+
+      /**
+       * Writes any value in variable-length format, small negative values are written in few bytes, too.
+       */
+      public void writeLong(long value) {
+         writeUnsignedLong((value << 1) ^ (value >> 63));
+      }
+
+      public void writeInt(int value) {
+         writeLong(value);
+      }
+
+      public void writeDouble(double value) {
+         long bits = Double.doubleToLongBits(value);
+         ensureCapacity(8);
+         for (int i = 56; i >= 0; i -= 8) {
+            buffer[position++] = (byte) (bits >>> i);
+         }
+      }
+
+      /**
+       * Writes nullable string.
+       */
+      public void writeString(String value) throws IOException {
+         if (value == null) {
+            writeUnsignedInt(0);
+         } else {
+            byte[] bytes = value.getBytes("UTF-8");
+            writeUnsignedInt(bytes.length + 1);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+         }
+      }
+
+      public void writeObject(Object value) throws IOException {
+         if (value == null) {
+            writeTag(NULL);
+            return;
+         }
+         Class<?> clazz = value.getClass();
+         Integer typeId = typeIds.get(clazz);
+         if (typeId != null) {
+            writeTag(REGISTERED);
+            writeUnsignedInt(typeId);
+            ((TypeCodec<Object>) codecs.get(typeId)).write(value, this);
+         } else if (clazz == Boolean.class) {
+            writeTag((Boolean) value ? TRUE : FALSE);
+         } else if (clazz == Byte.class) {
+            writeTag(BYTE);
+            writeByte((Byte) value);
+         } else if (clazz == Short.class) {
+            writeTag(SHORT);
+            writeLong((Short) value);
+         } else if (clazz == Character.class) {
+            writeTag(CHAR);
+            writeUnsignedInt((Character) value);
+         } else if (clazz == Integer.class) {
+            writeTag(INT);
+            writeLong((Integer) value);
+         } else if (clazz == Long.class) {
+            writeTag(LONG);
+            writeLong((Long) value);
+         } else if (clazz == Float.class) {
+            writeTag(FLOAT);
+            writeDouble((Float) value);
+         } else if (clazz == Double.class) {
+            writeTag(DOUBLE);
+            writeDouble((Double) value);
+         } else if (clazz == String.class) {
+            writeTag(STRING);
+            writeString((String) value);
+         } else if (value instanceof Enum) {
+            writeTag(ENUM);
+            writeString(((Enum) value).getDeclaringClass().getName());
+            writeString(((Enum) value).name());
+         } else if (clazz == ArrayList.class) {
+            writeCollection(ARRAY_LIST, (Collection) value);
+         } else if (clazz == LinkedList.class) {
+            writeCollection(LINKED_LIST, (Collection) value);
+         } else if (clazz == HashSet.class) {
+            writeCollection(HASH_SET, (Collection) value);
+         } else if (clazz == LinkedHashSet.class) {
+            writeCollection(LINKED_HASH_SET, (Collection) value);
+         } else if (clazz == TreeSet.class && ((TreeSet) value).comparator() == null) {
+            writeCollection(TREE_SET, (Collection) value);
+         } else if (clazz == HashMap.class) {
+            writeMap(HASH_MAP, (Map) value);
+         } else if (clazz == LinkedHashMap.class) {
+            writeMap(LINKED_HASH_MAP, (Map) value);
+         } else if (clazz == TreeMap.class && ((TreeMap) value).comparator() == null) {
+            writeMap(TREE_MAP, (Map) value);
+         } else if (clazz == byte[].class) {
+            writeTag(BYTE_ARRAY);
+            writeBytes((byte[]) value);
+         } else if (clazz == int[].class) {
+            writeTag(INT_ARRAY);
+            int[] array = (int[]) value;
+            writeUnsignedInt(array.length);
+            for (int i : array) writeInt(i);
+         } else if (clazz == long[].class) {
+            writeTag(LONG_ARRAY);
+            long[] array = (long[]) value;
+            writeUnsignedInt(array.length);
+            for (long l : array) writeLong(l);
+         } else if (clazz == double[].class) {
+            writeTag(DOUBLE_ARRAY);
+            double[] array = (double[]) value;
+            writeUnsignedInt(array.length);
+            for (double d : array) writeDouble(d);
+         } else if (clazz == String[].class) {
+            writeTag(STRING_ARRAY);
+            String[] array = (String[]) value;
+            writeUnsignedInt(array.length);
+            for (String s : array) writeString(s);
+         } else if (javaStream != null) {
+            if (!(value instanceof Serializable)) {
+               throw new NotSerializableException(clazz.getName());
+            }
+            writeTag(JAVA_STREAM);
+            javaStream.writeObject(value);
+         } else {
+            // plugin-defined types
+            writeTag(JAVA);
+            writeBytes(javaSerialize(value));
+         }
+      }
+
+      private void writeCollection(int tag, Collection<?> collection) throws IOException {
+         writeTag(tag);
+         writeUnsignedInt(collection.size());
+         for (Object element : collection) {
+            writeObject(element);
+         }
+      }
+
+      private void writeMap(int tag, Map<?, ?> map) throws IOException {
+         writeTag(tag);
+         writeUnsignedInt(map.size());
+         for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeObject(entry.getKey());
+            writeObject(entry.getValue());
+         }
+      }
+
+      public byte[] toByteArray() {
+         return Arrays.copyOf(buffer, position);
+      }
+
+      /**
+       * @return View of the written data, valid until the next write or reset
+       */
+      public ByteBuffer toByteBuffer() {
+         return ByteBuffer.wrap(buffer, 0, position);
+      }
+
+      public int size() {
+         return position;
+      }
+
+      /**
+       * Discards the written data, the buffer is kept for reuse.
+       */
+      public void reset() {
+         position = 0;
+      }
+   }
+
+   public static class Input {
+      private final ByteBuffer data;
+      private ObjectInputStream javaStream;
+
+      /**
+       * Reads from current position to the limit of the buffer (which may be memory-mapped).
+       */
+      public Input(ByteBuffer data) {
+         this.data = data;
+      }
+
+      /**
+       * @see Output#setJavaStream(ObjectOutputStream)
+       */
+      public void setJavaStream(ObjectInputStream javaStream) {
+         this.javaStream = javaStream;
+      }
+
+      private void readHeader() throws IOException {
+         if (readByte() != MAGIC) {
+            throw new StreamCorruptedException("Invalid header");
+         }
+         int version = readByte();
+         if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported version " + version + ", expected " + VERSION);
+         }
+      }
+
+      private int peekTag() throws IOException {
+         if (!data.hasRemaining()) throw new StreamCorruptedException("Unexpected end of data");
+         return data.get(data.position());
+      }
+
+      public byte readByte() throws IOException {
+         if (!data.hasRemaining()) throw new StreamCorruptedException("Unexpected end of data");
+         return data.get();
+      }
+
+      private byte[] readRaw(int length) throws IOException {
+         if (length < 0 || length > data.remaining()) throw new StreamCorruptedException("Unexpected end of data");
+         byte[] bytes = new byte[length];
+         data.get(bytes);
+         return bytes;
+      }
+
+      public byte[] readBytes() throws IOException {
+         return readRaw(readUnsignedInt());
+      }
+
+      public boolean readBoolean() throws IOException {
+         return readByte() != 0;
+      }
+
+      public long readUnsignedLong() throws IOException {
+         long value = 0;
+         for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+         }
+         throw new StreamCorruptedException("Malformed variable-length number");
+      }
+
+      public int readUnsignedInt() throws IOException {
+         return (int) readUnsignedLong();
+      }
+
+      public long readLong() throws IOException {
+         long value = readUnsignedLong();
+         return (value >>> 1) ^ -(value & 1);
+      }
+
+      public int readInt() throws IOException {
+         return (int) readLong();
+      }
+
+      public double readDouble() throws IOException {
+         long bits = 0;
+         for (int i = 0; i < 8; ++i) {
+            bits = (bits << 8) | (readByte() & 0xFF);
+         }
+         return Double.longBitsToDouble(bits);
+      }
+
+      public String readString() throws IOException {
+         int length = readUnsignedInt();
+         if (length == 0) return null;
+         return new String(readRaw(length - 1), "UTF-8");
+      }
+
+      public Object readObject() throws IOException {
+         int tag = readByte();
+         switch (tag) {
+            case NULL:
+               return null;
+            case TRUE:
+               return Boolean.TRUE;
+            case FALSE:
+               return Boolean.FALSE;
+            case BYTE:
+               return readByte();
+            case SHORT:
+               return (short) readLong();
+            case CHAR:
+               return (char) readUnsignedInt();
+            case INT:
+               return readInt();
+            case LONG:
+               return readLong();
+            case FLOAT:
+               return (float) readDouble();
+            case DOUBLE:
+               return readDouble();
+            case STRING:
+               return readString();
+            case ENUM: {
+               Class enumClass = loadClass(readString());
+               return Enum.valueOf(enumClass, readString());
+            }
+            case ARRAY_LIST:
+               return readCollection(new ArrayList<Object>());
+            case LINKED_LIST:
+               return readCollection(new LinkedList<Object>());
+            case HASH_SET:
+               return readCollection(new HashSet<Object>());
+            case LINKED_HASH_SET:
+               return readCollection(new LinkedHashSet<Object>());
+            case TREE_SET:
+               return readCollection(new TreeSet<Object>());
+            case HASH_MAP:
+               return readMap(new HashMap<Object, Object>());
+            case LINKED_HASH_MAP:
+               return readMap(new LinkedHashMap<Object, Object>());
+            case TREE_MAP:
+               return readMap(new TreeMap<Object, Object>());
+            case BYTE_ARRAY:
+               return readBytes();
+            case INT_ARRAY: {
+               int[] array = new int[readUnsignedInt()];
+               for (int i = 0; i < array.length; ++i) array[i] = readInt();
+               return array;
+            }
+            case LONG_ARRAY: {
+               long[] array = new long[readUnsignedInt()];
+               for (int i = 0; i < array.length; ++i) array[i] = readLong();
+               return array;
+            }
+            case DOUBLE_ARRAY: {
+               double[] array = new double[readUnsignedInt()];
+               for (int i = 0; i < array.length; ++i) array[i] = readDouble();
+               return array;
+            }
+            case STRING_ARRAY: {
+               String[] array = new String[readUnsignedInt()];
+               for (int i = 0; i < array.length; ++i) array[i] = readString();
+               return array;
+            }
+            case REGISTERED: {
+               int typeId = readUnsignedInt();
+               if (typeId >= codecs.size()) throw new StreamCorruptedException("Unknown type " + typeId);
+               return codecs.get(typeId).read(this);
+            }
+            case JAVA: {
+               return SerializationHelper.deserialize(ByteBuffer.wrap(readBytes()));
+            }
+            case JAVA_STREAM: {
+               if (javaStream == null) throw new StreamCorruptedException("Object written into Java stream which is not set");
+               try {
+                  return javaStream.readObject();
+               } catch (ClassNotFoundException e) {
+                  throw new StreamCorruptedException("Cannot read object: " + e);
+               }
+            }
+            default:
+               throw new StreamCorruptedException("Unknown tag " + tag);
+         }
+      }
+
+      private Collection<Object> readCollection(Collection<Object> collection) throws IOException {
+         int size = readUnsignedInt();
+         for (int i = 0; i < size; ++i) {
+            collection.add(readObject());
+         }
+         return collection;
+      }
+
+      private Map<Object, Object> readMap(Map<Object, Object> map) throws IOException {
+         int size = readUnsignedInt();
+         for (int i = 0; i < size; ++i) {
+            Object key = readObject();
+            map.put(key, readObject());
+         }
+         return map;
+      }
+
+      private Object readStage() throws IOException {
+         readByte();
+         StageLayout layout = getLayout(loadClass(readString()));
+         if (readInt() != layout.hash) {
+            throw new StreamCorruptedException("Fields of " + layout.clazz.getName() + " on master and slave differ");
+         }
+         if (layout.constructor == null) {
+            throw new StreamCorruptedException("Cannot instantiate " + layout.clazz.getName());
+         }
+         try {
+            Object stage = layout.constructor.newInstance();
+            // common fields and then the fields specific for this slave
+            for (int section = 0; section < 2; ++section) {
+               int count = readUnsignedInt();
+               for (int i = 0; i < count; ++i) {
+                  int index = readUnsignedInt();
+                  if (index >= layout.fields.length) throw new StreamCorruptedException("Invalid field index " + index);
+                  layout.fields[index].set(stage, readObject());
+               }
+            }
+            return stage;
+         } catch (IOException e) {
+            throw e;
+         } catch (Exception e) {
+            throw new StreamCorruptedException("Cannot read " + layout.clazz.getName() + ": " + e);
+         }
+      }
+   }
+}
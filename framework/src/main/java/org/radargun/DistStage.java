@@ -35,6 +35,8 @@ public interface DistStage extends Stage, Serializable {
 
    /**
     * After all slaves replied through {@link #executeOnSlave()}, this method will be called on the master.
+    * The acks are not merged as they arrive: the master holds all of them until this call, because reports
+    * need the per-slave results.
     * @return returning false will cause the benchmark to stop.
     */
    boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState);
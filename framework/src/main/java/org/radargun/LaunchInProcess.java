@@ -0,0 +1,86 @@
+package org.radargun;
+
+import java.nio.channels.Pipe;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.radargun.config.ConfigParser;
+import org.radargun.config.MasterConfig;
+
+/**
+ * Runs the master and all slaves in single JVM. Slaves communicate with the master through pipes
+ * instead of sockets, and each slave loads the product into its own class loader (the stages have to keep
+ * useSmartClassLoading enabled), therefore the product instances do not share any static state.
+ * The number of slaves is taken from the configuration, -slaves argument overrides the slaves property.
+ */
+public class LaunchInProcess {
+
+   private static Log log = LogFactory.getLog(LaunchInProcess.class);
+
+   public static void main(String[] args) {
+      String config = null;
+      int slaveCount = -1;
+      for (int i = 0; i < args.length - 1; i++) {
+         if (args[i].equals("-config")) {
+            config = args[i + 1];
+         } else if (args[i].equals("-slaves")) {
+            try {
+               slaveCount = Integer.parseInt(args[i + 1]);
+            } catch (NumberFormatException e) {
+               log.warn("Unable to parse number of slaves!  Failing!");
+               ShutDownHook.exit(10);
+            }
+         }
+      }
+      if (config == null) {
+         printUsageAndExit();
+      }
+      if (slaveCount > 0) {
+         // same as master.sh -s, the configuration refers to this property as ${4:slaves}
+         System.setProperty("slaves", String.valueOf(slaveCount));
+      }
+
+      try {
+         MasterConfig masterConfig = ConfigParser.getConfigParser().parseConfig(config);
+         Master master = new Master(masterConfig);
+         int slaves = masterConfig.getSlaveCount();
+         Pipe.SourceChannel[] fromSlaves = new Pipe.SourceChannel[slaves];
+         Pipe.SinkChannel[] toSlaves = new Pipe.SinkChannel[slaves];
+         for (int i = 0; i < slaves; ++i) {
+            Pipe toMaster = Pipe.open();
+            Pipe toSlave = Pipe.open();
+            fromSlaves[i] = toMaster.source();
+            toSlaves[i] = toSlave.sink();
+            startSlave(i, toSlave.source(), toMaster.sink());
+         }
+         log.info("Started " + slaves + " slaves in this JVM");
+         master.start(fromSlaves, toSlaves);
+      } catch (Exception e) {
+         log.error("Failed to run the benchmark", e);
+         ShutDownHook.exit(10);
+      }
+   }
+
+   private static void startSlave(final int slaveIndex, final Pipe.SourceChannel fromMaster, final Pipe.SinkChannel toMaster) {
+      Thread thread = new Thread("Slave-" + slaveIndex + "-communication") {
+         @Override
+         public void run() {
+            try {
+               new Slave(slaveIndex).start(fromMaster, toMaster);
+            } catch (Exception e) {
+               // the slave has closed its pipes, the master stops as if a remote slave was lost
+               log.error("Slave " + slaveIndex + " failed", e);
+            }
+         }
+      };
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   private static void printUsageAndExit() {
+      System.out.println("Usage: inprocess.sh -config <config-file.xml> [-slaves <count>]");
+      System.out.println("       -config : xml file containing benchmark's configuration");
+      System.out.println("       -slaves : number of slaves started in this JVM, defaults to the configuration");
+      ShutDownHook.exit(1);
+   }
+}
@@ -8,6 +8,10 @@ import org.radargun.state.MasterState;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
@@ -27,22 +31,27 @@ public class Master {
    MasterConfig masterConfig;
 
    private ServerSocketChannel serverSocketChannel;
-   private SocketChannel[] slaves;
+   private SlaveChannel[] slaves;
 
-   private Map<SocketChannel, ByteBuffer> writeBufferMap = new HashMap<SocketChannel, ByteBuffer>();
-   private Map<SocketChannel, ByteBuffer> readBufferMap = new HashMap<SocketChannel, ByteBuffer>();
    private List<DistStageAck> responses = new ArrayList<DistStageAck>();
    private Selector communicationSelector;
    private Selector discoverySelector;
-   private Map<SocketChannel, Integer> slave2Index = new HashMap<SocketChannel, Integer>();
    private MasterState state;
    int processedSlaves = 0;
-   private static final int DEFAULT_READ_BUFF_CAPACITY = 1024;
+   /* incremented for each executed stage, identifies the stage for which abort was sent */
+   private int stageCounter = 0;
+   private int abortedStage = -1;
+   /* Acks larger than this number of bytes are received into temporary files instead of heap. This bounds only the
+      memory used by the raw messages: each ack is still deserialized as soon as it is received and all acks of the
+      stage are held until the stage processes them at once, so large payloads (e.g. histograms or time series)
+      still need heap on the master proportional to the number of slaves. */
+   public static final String SPILL_THRESHOLD_PROPERTY = "radargun.master.spillThreshold";
+   private static final long SPILL_THRESHOLD = Long.getLong(SPILL_THRESHOLD_PROPERTY, 16 * 1024 * 1024);
 
    public Master(MasterConfig masterConfig) {
       this.masterConfig = masterConfig;
       state = new MasterState(masterConfig);
-      slaves = new SocketChannel[masterConfig.getSlaveCount()];
+      slaves = new SlaveChannel[masterConfig.getSlaveCount()];
       try {
          communicationSelector = Selector.open();
       } catch (IOException e) {
@@ -64,6 +73,27 @@ public class Master {
       }
    }
 
+   /**
+    * Runs the benchmark with slaves that live in the same JVM and communicate through pipes.
+    *
+    * @param fromSlaves Channels from which the master reads messages of slave with given index
+    * @param toSlaves Channels to which the master writes messages for slave with given index
+    */
+   public void start(Pipe.SourceChannel[] fromSlaves, Pipe.SinkChannel[] toSlaves) throws Exception {
+      try {
+         for (int i = 0; i < slaves.length; ++i) {
+            addSlave(i, fromSlaves[i], toSlaves[i]);
+         }
+         log.info("Connected " + slaves.length + " in-process slaves.");
+         prepareNextStage();
+         startCommunicationWithSlaves();
+      } catch (Exception e) {
+         log.error("Exception in start: ", e);
+      } finally {
+         releaseResources();
+      }
+   }
+
    private void prepareNextStage() throws Exception {
       DistStage toExecute = state.getNextDistStageToProcess();
       if (toExecute == null) {
@@ -74,28 +104,71 @@ public class Master {
    }
 
    private void runDistStage(DistStage currentStage, int noSlaves) throws Exception {
-      writeBufferMap.clear();
-      DistStage toSerialize;
+      List<DistStage> toSerialize = new ArrayList<DistStage>(noSlaves);
       for (int i = 0; i < noSlaves; i++) {
-         SocketChannel slave = slaves[i];
-         slave.configureBlocking(false);
-         slave.register(communicationSelector, SelectionKey.OP_WRITE);
-         toSerialize = currentStage.clone();
-         toSerialize.initOnMaster(state, i);
+         DistStage stage = currentStage.clone();
+         stage.initOnMaster(state, i);
          if (i == 0) {//only log this once
             if (log.isDebugEnabled())
-               log.debug("Starting '" + toSerialize.getClass().getSimpleName() + "' on " + toSerialize.getActiveSlaveCount() + " slave nodes. Details: " + toSerialize);
+               log.debug("Starting '" + stage.getClass().getSimpleName() + "' on " + stage.getActiveSlaveCount() + " slave nodes. Details: " + stage);
             else
-               log.info("Starting '" + toSerialize.getClass().getSimpleName() + "' on " + toSerialize.getActiveSlaveCount() + " slave nodes.");
+               log.info("Starting '" + stage.getClass().getSimpleName() + "' on " + stage.getActiveSlaveCount() + " slave nodes.");
          }
-         byte[] bytes = SerializationHelper.prepareForSerialization(toSerialize);
-         writeBufferMap.put(slave, ByteBuffer.wrap(bytes));
+         toSerialize.add(stage);
+      }
+      ByteBuffer[][] serialized = SerializationHelper.prepareStagesForSerialization(toSerialize);
+      stageCounter++;
+      responses.clear();
+      for (int i = 0; i < noSlaves; i++) {
+         slaves[i].stageWrite = serialized[i];
+         enqueueWrite(slaves[i], serialized[i]);
+      }
+   }
+
+   /**
+    * Messages are written one after another, a message is never interleaved with chunks of another one.
+    */
+   private void enqueueWrite(SlaveChannel slave, ByteBuffer[] buffers) throws IOException {
+      if (slave.pendingWrite == null) {
+         slave.pendingWrite = buffers;
+         updateInterest(slave);
+      } else {
+         slave.queuedWrites.add(buffers);
+      }
+   }
+
+   private void addSlave(int slaveIndex, ReadableByteChannel input, GatheringByteChannel output) throws IOException {
+      slaves[slaveIndex] = new SlaveChannel(slaveIndex, input, output);
+      ((SelectableChannel) input).configureBlocking(false);
+      ((SelectableChannel) output).configureBlocking(false);
+      updateInterest(slaves[slaveIndex]);
+   }
+
+   /**
+    * The master always reads from the slave, and writes only when it has a stage to send.
+    */
+   private void updateInterest(SlaveChannel slave) throws IOException {
+      int writeOps = slave.pendingWrite != null ? SelectionKey.OP_WRITE : 0;
+      if (slave.input == slave.output) {
+         register((SelectableChannel) slave.input, SelectionKey.OP_READ | writeOps, slave);
+      } else {
+         register((SelectableChannel) slave.input, SelectionKey.OP_READ, slave);
+         register((SelectableChannel) slave.output, writeOps, slave);
+      }
+   }
+
+   private void register(SelectableChannel channel, int ops, SlaveChannel slave) throws IOException {
+      SelectionKey key = channel.keyFor(communicationSelector);
+      if (key == null) {
+         channel.register(communicationSelector, ops, slave);
+      } else {
+         key.interestOps(ops);
       }
    }
 
    private void releaseResources() {
       try {
-         discoverySelector.close();
+         if (discoverySelector != null) discoverySelector.close();
       } catch (Throwable e) {
          log.warn(e);
       }
@@ -104,9 +177,11 @@ public class Master {
       } catch (Throwable e) {
          log.warn(e);
       }
-      for (SocketChannel sc : slaves) {
+      for (SlaveChannel slave : slaves) {
+         if (slave == null) continue;
          try {
-            sc.socket().close();
+            slave.input.close();
+            slave.output.close();
          } catch (Throwable e) {
             log.warn(e);
          }
@@ -148,10 +223,8 @@ public class Master {
             } else if (slaveIndex >= slaves.length || slaves[slaveIndex] != null) {
                throw new IllegalArgumentException("Slave requests invalid slaveIndex " + slaveIndex);            
             }
-            slaves[slaveIndex] = socketChannel;
+            addSlave(slaveIndex, socketChannel, socketChannel);
             slaveCount++;
-            slave2Index.put(socketChannel, slaveIndex);
-            this.readBufferMap.put(socketChannel, ByteBuffer.allocate(DEFAULT_READ_BUFF_CAPACITY));
             if (log.isTraceEnabled())
                log.trace("Added new slave connection from: " + socketChannel.socket().getInetAddress());
          }
@@ -180,10 +253,11 @@ public class Master {
                if (!key.isValid()) {
                   continue;
                }
+               SlaveChannel slave = (SlaveChannel) key.attachment();
                if (key.isWritable()) {
-                  sendStage(key);
+                  writePending(slave);
                } else if (key.isReadable()) {
-                  readStageAck(key);
+                  readStageAck(slave, key);
                } else {
                   log.warn("Unknown selection on key " + key);
                }
@@ -192,38 +266,25 @@ public class Master {
       }
    }
 
-   private void readStageAck(SelectionKey key) throws Exception {
-      SocketChannel socketChannel = (SocketChannel) key.channel();
-
-      ByteBuffer byteBuffer = readBufferMap.get(socketChannel);
-      int value = socketChannel.read(byteBuffer);
+   private void readStageAck(SlaveChannel slave, SelectionKey key) throws Exception {
+      List<ByteBuffer> messages = slave.reader.read(slave.input);
 
-      if (value == -1) {
-         Integer slaveIndex = slave2Index.get(socketChannel);
-         log.warn("Slave stopped! Index: " + slaveIndex + ". Remote socket is: " + socketChannel);
+      if (messages == null) {
+         log.warn("Slave stopped! Index: " + slave.index + ". Remote channel is: " + slave.input);
          key.cancel();
-         if (slaveIndex == null || slaves[slaveIndex] != socketChannel) {
-            throw new IllegalStateException("Socket " + socketChannel + " should have been there!");
-         }
          releaseResourcesAndExit();
-      } else if (byteBuffer.position() >= 4) {
-         int expectedSize = byteBuffer.getInt(0);
-         if ((expectedSize + 4) > byteBuffer.capacity()) {
-            ByteBuffer replacer = ByteBuffer.allocate(expectedSize + 4);
-            replacer.put(byteBuffer.array(), 0, byteBuffer.position());
-            readBufferMap.put(socketChannel, replacer);
+      } else {
+         for (ByteBuffer buffer : messages) {
             if (log.isTraceEnabled())
-               log.trace("Expected size(" + expectedSize + ")" + " is > ByteBuffer's capacity(" +
-                     byteBuffer.capacity() + ")" + ".Replacing " + byteBuffer + " with " + replacer);
-            byteBuffer = replacer;
-         }
-         if (log.isTraceEnabled())
-            log.trace("Expected size: " + expectedSize + ". byteBuffer.position() == " + byteBuffer.position());
-         if (byteBuffer.position() == expectedSize + 4) {
-            log.trace("Received ACK from " + socketChannel);
-            DistStageAck ack = (DistStageAck) SerializationHelper.deserialize(byteBuffer.array(), 4, expectedSize);
-            byteBuffer.clear();
-            responses.add(ack);
+               log.trace("Received message of " + buffer.remaining() + " bytes from slave " + slave.index);
+            // the raw message (possibly memory-mapped) is released as soon as it is decoded
+            Object message = SerializationHelper.deserialize(buffer);
+            if (message instanceof StageProgress) {
+               processProgress((StageProgress) message);
+            } else {
+               log.trace("Received ACK from slave " + slave.index);
+               responses.add((DistStageAck) message);
+            }
          }
       }
 
@@ -236,27 +297,45 @@ public class Master {
       }
    }
 
+   private void processProgress(StageProgress progress) throws IOException {
+      DistStage stage = state.getCurrentDistStage();
+      if (!(stage instanceof ProgressReportingStage)) {
+         log.warn("Stage " + stage + " does not expect progress reports, ignoring " + progress);
+         return;
+      }
+      if (!((ProgressReportingStage) stage).processProgressOnMaster(progress, state) && abortedStage != stageCounter) {
+         abortedStage = stageCounter;
+         log.warn("Aborting stage " + stage.getClass().getSimpleName() + " on all slaves");
+         for (int i = 0; i < state.getSlavesCountForCurrentStage(); ++i) {
+            // queued behind the stage if it was not completely written yet
+            enqueueWrite(slaves[i], SerializationHelper.prepareForSerialization(
+                  new StageAbort(stage.getClass().getSimpleName() + " requested abort on master")));
+         }
+      }
+   }
+
    private void releaseResourcesAndExit() {
       releaseResources();
       ShutDownHook.exit(0);
    }
 
-   private void sendStage(SelectionKey key) throws IOException {
-      SocketChannel socketChannel = (SocketChannel) key.channel();
-      ByteBuffer buf = writeBufferMap.get(socketChannel);
-      socketChannel.write(buf);
-      if (buf.remaining() == 0) {
+   private void writePending(SlaveChannel slave) throws IOException {
+      ByteBuffer[] buffers = slave.pendingWrite;
+      slave.output.write(buffers);
+      if (buffers[buffers.length - 1].remaining() == 0) {
          log.trace("Finished writing entire buffer");
-         key.interestOps(SelectionKey.OP_READ);
-         processedSlaves++;
-         if (log.isTraceEnabled())
-            log.trace("Current stage successfully transmitted to " + processedSlaves + " slave(s).");
-      }
-      if (processedSlaves == state.getSlavesCountForCurrentStage()) {
-         log.trace("Successfully completed broadcasting stage " + state.getCurrentDistStage());
-         processedSlaves = 0;
-         writeBufferMap.clear();
-         responses.clear();
+         slave.pendingWrite = slave.queuedWrites.poll();
+         updateInterest(slave);
+         if (buffers == slave.stageWrite) {
+            slave.stageWrite = null;
+            processedSlaves++;
+            if (log.isTraceEnabled())
+               log.trace("Current stage successfully transmitted to " + processedSlaves + " slave(s).");
+            if (processedSlaves == state.getSlavesCountForCurrentStage()) {
+               log.trace("Successfully completed broadcasting stage " + state.getCurrentDistStage());
+               processedSlaves = 0;
+            }
+         }
       }
    }
 
@@ -280,4 +359,26 @@ public class Master {
           // ignore
       }
    }
+
+   /**
+    * Master's end of the connection with one slave. Socket connection uses the same channel in both directions.
+    */
+   private static class SlaveChannel {
+      final int index;
+      final ReadableByteChannel input;
+      final GatheringByteChannel output;
+      final MessageFraming.Reader reader = new MessageFraming.Reader(SPILL_THRESHOLD);
+      /* chunks of the message that were not written yet */
+      ByteBuffer[] pendingWrite;
+      /* messages waiting until pendingWrite is written */
+      final Queue<ByteBuffer[]> queuedWrites = new LinkedList<ByteBuffer[]>();
+      /* the stage message, until it is completely written */
+      ByteBuffer[] stageWrite;
+
+      private SlaveChannel(int index, ReadableByteChannel input, GatheringByteChannel output) {
+         this.index = index;
+         this.input = input;
+         this.output = output;
+      }
+   }
 }
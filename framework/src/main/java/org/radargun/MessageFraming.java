@@ -0,0 +1,173 @@
+package org.radargun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Splits serialized messages into chunks for the transfer between master and slave and reassembles them.
+ * Each chunk starts with 4-byte header: the length of the chunk, with the highest bit set if more chunks
+ * of the same message follow. Messages larger than the spill threshold are not kept on heap, the reader
+ * writes the chunks into a temporary file and returns memory-mapped view of it.
+ */
+public class MessageFraming {
+   private static final Log log = LogFactory.getLog(MessageFraming.class);
+
+   public static final int MAX_CHUNK_SIZE = 64 * 1024;
+   private static final int MORE_CHUNKS = 0x80000000;
+   private static final int INITIAL_BUFFER_SIZE = 1024;
+
+   /**
+    * @return Buffers that should be written to the channel in this order
+    */
+   public static ByteBuffer[] toChunks(byte[] message) {
+      int chunks = Math.max(1, (message.length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+      ByteBuffer[] buffers = new ByteBuffer[2 * chunks];
+      for (int i = 0; i < chunks; ++i) {
+         int offset = i * MAX_CHUNK_SIZE;
+         int length = Math.min(MAX_CHUNK_SIZE, message.length - offset);
+         ByteBuffer header = ByteBuffer.allocate(4);
+         header.putInt(i < chunks - 1 ? length | MORE_CHUNKS : length);
+         header.flip();
+         buffers[2 * i] = header;
+         buffers[2 * i + 1] = ByteBuffer.wrap(message, offset, length);
+      }
+      return buffers;
+   }
+
+   /**
+    * Reassembles the messages from one channel. Not thread-safe.
+    */
+   public static class Reader {
+      private final long spillThreshold;
+      private final ByteBuffer header = ByteBuffer.allocate(4);
+      private int chunkRemaining = -1;
+      private boolean lastChunk;
+      /* message kept on heap */
+      private byte[] data = new byte[INITIAL_BUFFER_SIZE];
+      private int size;
+      /* message spilled to file */
+      private File spillFile;
+      private FileChannel spillChannel;
+      private ByteBuffer transferBuffer;
+
+      /**
+       * @param spillThreshold Messages larger than this number of bytes are stored in temporary file.
+       */
+      public Reader(long spillThreshold) {
+         this.spillThreshold = spillThreshold;
+      }
+
+      /**
+       * Reads all data available in the channel.
+       *
+       * @return Complete messages, or null if the channel has reached end-of-stream
+       */
+      public List<ByteBuffer> read(ReadableByteChannel channel) throws IOException {
+         List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+         while (true) {
+            if (chunkRemaining < 0) {
+               int read = channel.read(header);
+               if (read < 0) return endOfStream(messages);
+               if (header.hasRemaining()) return messages;
+               int value = header.getInt(0);
+               header.clear();
+               lastChunk = (value & MORE_CHUNKS) == 0;
+               chunkRemaining = value & ~MORE_CHUNKS;
+               if (chunkRemaining > MAX_CHUNK_SIZE) {
+                  throw new StreamCorruptedException("Invalid chunk length " + chunkRemaining);
+               }
+               if (spillChannel == null && size + chunkRemaining > spillThreshold) {
+                  startSpilling();
+               }
+            }
+            if (chunkRemaining > 0) {
+               int read = spillChannel == null ? readToHeap(channel) : readToFile(channel);
+               if (read < 0) return endOfStream(messages);
+               if (read == 0) return messages;
+               chunkRemaining -= read;
+            }
+            if (chunkRemaining == 0) {
+               chunkRemaining = -1;
+               if (lastChunk) {
+                  messages.add(finishMessage());
+               }
+            }
+         }
+      }
+
+      private List<ByteBuffer> endOfStream(List<ByteBuffer> messages) {
+         // messages completed before the end are returned, the next call reports the end
+         return messages.isEmpty() ? null : messages;
+      }
+
+      private int readToHeap(ReadableByteChannel channel) throws IOException {
+         if (size + chunkRemaining > data.length) {
+            data = Arrays.copyOf(data, Math.max(2 * data.length, size + chunkRemaining));
+         }
+         int read = channel.read(ByteBuffer.wrap(data, size, chunkRemaining));
+         if (read > 0) size += read;
+         return read;
+      }
+
+      private int readToFile(ReadableByteChannel channel) throws IOException {
+         transferBuffer.clear();
+         transferBuffer.limit(chunkRemaining);
+         int read = channel.read(transferBuffer);
+         if (read > 0) {
+            transferBuffer.flip();
+            while (transferBuffer.hasRemaining()) {
+               spillChannel.write(transferBuffer);
+            }
+            size += read;
+         }
+         return read;
+      }
+
+      private void startSpilling() throws IOException {
+         spillFile = File.createTempFile("radargun-message", ".bin");
+         log.debug("Message exceeds " + spillThreshold + " bytes, storing it in " + spillFile);
+         spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+         ByteBuffer received = ByteBuffer.wrap(data, 0, size);
+         while (received.hasRemaining()) {
+            spillChannel.write(received);
+         }
+         data = new byte[INITIAL_BUFFER_SIZE];
+         if (transferBuffer == null) {
+            transferBuffer = ByteBuffer.allocateDirect(MAX_CHUNK_SIZE);
+         }
+      }
+
+      private ByteBuffer finishMessage() throws IOException {
+         ByteBuffer message;
+         if (spillChannel == null) {
+            message = ByteBuffer.wrap(data, 0, size);
+            data = new byte[INITIAL_BUFFER_SIZE];
+         } else {
+            try {
+               message = spillChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } finally {
+               spillChannel.close();
+               spillChannel = null;
+               // the mapping stays valid after the file is deleted
+               if (!spillFile.delete()) {
+                  spillFile.deleteOnExit();
+               }
+               spillFile = null;
+            }
+         }
+         size = 0;
+         return message;
+      }
+   }
+}
@@ -0,0 +1,35 @@
+package org.radargun;
+
+import org.radargun.state.MasterState;
+
+/**
+ * Distributed stage that sends its intermediate results to the master while it is executed. The slave passes
+ * each reported {@link StageProgress} over the same connection that is used for acks, master processes it with
+ * the master's instance of the stage and may abort the execution on all slaves.
+ */
+public interface ProgressReportingStage extends DistStage {
+
+   /**
+    * Sends the progress to the master asynchronously, can be called from any thread.
+    */
+   interface Reporter {
+      void report(StageProgress progress);
+   }
+
+   /**
+    * Called on slave before {@link #executeOnSlave()}.
+    */
+   void setProgressReporter(Reporter reporter);
+
+   /**
+    * Called on master for each progress report received from slaves.
+    * @return false if the stage should be aborted on all slaves
+    */
+   boolean processProgressOnMaster(StageProgress progress, MasterState masterState);
+
+   /**
+    * Called on slave (from other thread than the one executing the stage) when master requested abort.
+    * The stage should finish as soon as possible and send the ack.
+    */
+   void abortOnSlave(String reason);
+}
@@ -3,12 +3,14 @@ package org.radargun;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * Helper class holding serialization logic.
@@ -19,6 +21,10 @@ public class SerializationHelper {
 
    private static Log log = LogFactory.getLog(SerializationHelper.class);
 
+   /* Set this system property to 'java' in order to send all messages using Java serialization */
+   public static final String WIRE_FORMAT_PROPERTY = "radargun.wireFormat";
+   private static final boolean JAVA_SERIALIZATION_ONLY = "java".equalsIgnoreCase(System.getProperty(WIRE_FORMAT_PROPERTY));
+
    public static byte[] serializeObject(Serializable serializable) throws IOException {
       ByteArrayOutputStream out = new ByteArrayOutputStream();
       ObjectOutputStream oos = new ObjectOutputStream(out);
@@ -86,8 +92,14 @@ public class SerializationHelper {
       }
    }
 
-   public static Object deserialize(byte[] serializedData, int startPos, int length) throws IOException {
-      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serializedData, startPos, length));
+   /**
+    * Reads the message from the current position to the limit of the buffer.
+    */
+   public static Object deserialize(ByteBuffer message) throws IOException {
+      if (BinaryCodec.isEncoded(message)) {
+         return BinaryCodec.decode(message);
+      }
+      ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(message));
       try {
          return ois.readObject();
       } catch (ClassNotFoundException e) {
@@ -96,12 +108,75 @@ public class SerializationHelper {
       }
    }
 
-   public static byte[] prepareForSerialization(Serializable towrite) throws IOException {
-      byte[] bytes = serializeObject(towrite);
-      byte[] toSend = new byte[bytes.length + 4];
-      byte[] size = intToByteArray(bytes.length);
-      System.arraycopy(size, 0, toSend, 0, 4);
-      System.arraycopy(bytes, 0, toSend, 4, bytes.length);
-      return toSend;
+   /**
+    * @return Chunks of the serialized message, see {@link MessageFraming}
+    */
+   public static ByteBuffer[] prepareForSerialization(Serializable towrite) throws IOException {
+      byte[] bytes;
+      if (JAVA_SERIALIZATION_ONLY) {
+         bytes = serializeObject(towrite);
+      } else {
+         try {
+            bytes = BinaryCodec.encode(towrite);
+         } catch (RuntimeException e) {
+            log.warn("Failed to encode " + towrite.getClass().getName() + ", using Java serialization", e);
+            bytes = serializeObject(towrite);
+         }
+      }
+      return MessageFraming.toChunks(bytes);
+   }
+
+   /**
+    * Serializes clones of the same stage for each slave; the fields common to all slaves are encoded only once.
+    *
+    * @return Chunks of the serialized message for each slave
+    */
+   public static ByteBuffer[][] prepareStagesForSerialization(List<? extends DistStage> stages) throws IOException {
+      byte[][] serialized = null;
+      if (!JAVA_SERIALIZATION_ONLY) {
+         try {
+            serialized = BinaryCodec.encodeStages(stages);
+         } catch (RuntimeException e) {
+            log.warn("Failed to encode stage, using Java serialization", e);
+         }
+      }
+      if (serialized == null) {
+         serialized = new byte[stages.size()][];
+         for (int i = 0; i < stages.size(); ++i) {
+            serialized[i] = serializeObject(stages.get(i));
+         }
+      }
+      ByteBuffer[][] chunks = new ByteBuffer[serialized.length][];
+      for (int i = 0; i < serialized.length; ++i) {
+         chunks[i] = MessageFraming.toChunks(serialized[i]);
+      }
+      return chunks;
+   }
+
+   private static class ByteBufferInputStream extends InputStream {
+      private final ByteBuffer buffer;
+
+      private ByteBufferInputStream(ByteBuffer buffer) {
+         this.buffer = buffer;
+      }
+
+      @Override
+      public int read() {
+         return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length) {
+         if (length == 0) return 0;
+         if (!buffer.hasRemaining()) return -1;
+         length = Math.min(length, buffer.remaining());
+         buffer.get(bytes, offset, length);
+         return length;
+      }
+
+      @Override
+      public int available() {
+         return buffer.remaining();
+      }
    }
 }
@@ -2,25 +2,31 @@ package org.radargun;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.radargun.stages.DefaultDistStageAck;
 import org.radargun.state.SlaveState;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * Slave being coordinated by a single {@link Master} object in order to run benchmarks.
@@ -34,8 +40,19 @@ public class Slave {
    private String masterHost;
    private boolean exitOnMasterShutdown = true;
    private int masterPort;
-   private SocketChannel socketChannel;
-   private ByteBuffer byteBuffer = null;
+   /* socket connection uses the same channel for both directions */
+   private ReadableByteChannel input;
+   private GatheringByteChannel output;
+   private MessageFraming.Reader reader = new MessageFraming.Reader(Long.MAX_VALUE);
+   /* Chunks of messages waiting to be sent */
+   private Queue<ByteBuffer[]> writeQueue = new ConcurrentLinkedQueue<ByteBuffer[]>();
+   private volatile Selector selector;
+   private volatile DistStage currentStage;
+   /*
+    * Set when the slave running in the master's JVM failed, the loop ends after the queued messages are sent.
+    * The pipes stay open so that the master processes the error ack before it shuts down the benchmark.
+    */
+   private volatile boolean stopped;
    private SlaveState state = new SlaveState();
    private int slaveIndex = -1;
 
@@ -46,20 +63,19 @@ public class Slave {
          return th;
       }
    });
-   private Future<?> future;
+
+   /**
+    * Creates slave that runs inside the master's JVM.
+    */
+   public Slave(int slaveIndex) {
+      this.slaveIndex = slaveIndex;
+   }
 
    public Slave(String masterHost, int masterPort, int slaveIndex) {
       this.masterHost = masterHost;
       this.masterPort = masterPort;
       this.slaveIndex = slaveIndex;
       Runtime.getRuntime().addShutdownHook(new ShutDownHook("Slave process"));
-      int byteBufferSize = 8192;
-      try {
-         byteBufferSize = Integer.valueOf(System.getProperty("slave.bufsize", "8192"));
-      } catch (Exception e) {
-         log.error("Couldn't parse byte buffer size, keeping default", e);
-      }
-      this.byteBuffer = ByteBuffer.allocate(byteBufferSize);
    }
 
    private void start() throws Exception {
@@ -68,90 +84,167 @@ public class Slave {
       ShutDownHook.exit(0);
    }
 
+   /**
+    * Runs the slave in the JVM of the master, the communication goes through pipes.
+    * Returns when the master closes the channel.
+    */
+   public void start(Pipe.SourceChannel fromMaster, Pipe.SinkChannel toMaster) throws Exception {
+      input = fromMaster;
+      output = toMaster;
+      InetAddress loopback = InetAddress.getByName(null);
+      state.setLocalAddress(loopback);
+      state.setMasterAddress(loopback);
+      fromMaster.configureBlocking(false);
+      toMaster.configureBlocking(false);
+      es = Executors.newSingleThreadExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            return new Thread(r, "Slave-" + slaveIndex);
+         }
+      });
+      try {
+         startCommunicationWithMaster();
+      } catch (Exception e) {
+         // the master must not wait for a slave that cannot communicate anymore
+         fromMaster.close();
+         toMaster.close();
+         throw e;
+      } finally {
+         es.shutdownNow();
+      }
+   }
+
    private void startCommunicationWithMaster() throws Exception {
-      Selector selector = Selector.open();
-      socketChannel.register(selector, SelectionKey.OP_READ);
+      selector = Selector.open();
+      SelectionKey readKey = ((SelectableChannel) input).register(selector, SelectionKey.OP_READ);
+      SelectionKey writeKey = input == output ? readKey : ((SelectableChannel) output).register(selector, 0);
       while (true) {
+         // the stage thread queues the messages and wakes up the selector
+         int writeOps = writeQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+         if (writeKey == readKey) {
+            readKey.interestOps(SelectionKey.OP_READ | writeOps);
+         } else {
+            writeKey.interestOps(writeOps);
+         }
          selector.select();
-         // Get set of ready objects
-         Set<SelectionKey> readyKeys = selector.selectedKeys();
-
-         Iterator<SelectionKey> readyItor = readyKeys.iterator();
-         // Walk through set
-         while (readyItor.hasNext()) {
-            final SelectionKey key = readyItor.next();
-            readyItor.remove();
-            SocketChannel keyChannel = (SocketChannel) key.channel();
-
-            if (key.isReadable()) {
-               int numRead = keyChannel.read(byteBuffer);
-               if (numRead == -1) {
-                  log.info("Master shutdown!");
-                  key.channel().close();
-                  key.cancel();
-                  return;
+         // keys that were not selected in this round may have stale ready set
+         Set<SelectionKey> selectedKeys = selector.selectedKeys();
+         boolean readSelected = selectedKeys.remove(readKey);
+         boolean writeSelected = writeKey == readKey ? readSelected : selectedKeys.remove(writeKey);
+         if (readSelected && readKey.isReadable()) {
+            List<ByteBuffer> messages = reader.read(input);
+            if (messages == null) {
+               log.info("Master shutdown!");
+               input.close();
+               output.close();
+               readKey.cancel();
+               return;
+            }
+            for (ByteBuffer message : messages) {
+               processMessage(SerializationHelper.deserialize(message));
+            }
+         }
+         if (writeSelected && writeKey.isValid() && writeKey.isWritable()) {
+            ByteBuffer[] buffers = writeQueue.peek();
+            if (buffers != null) {
+               long val = output.write(buffers);
+               if (log.isTraceEnabled()) {
+                  log.trace("Successfully written: " + val + " bytes to the master");
                }
-               final int expectedSize = byteBuffer.getInt(0);
-               if (byteBuffer.position() == expectedSize + 4) {
-                  Runnable runnable = new Runnable() {
-                     public void run() {
+               if (buffers[buffers.length - 1].remaining() == 0) {
+                  writeQueue.poll();
+               }
+            }
+         }
+         if (stopped && writeQueue.isEmpty()) {
+            log.info("Slave " + slaveIndex + " stopped");
+            readKey.cancel();
+            return;
+         }
+      }
+   }
+
+   private void processMessage(Object message) {
+      if (message instanceof StageAbort) {
+         DistStage stage = currentStage;
+         if (stage instanceof ProgressReportingStage) {
+            log.warn("Master requested abort of stage " + stage.getClass().getSimpleName() + ": "
+                  + ((StageAbort) message).getReason());
+            ((ProgressReportingStage) stage).abortOnSlave(((StageAbort) message).getReason());
+         } else {
+            log.warn("Master requested abort but stage " + stage + " cannot be aborted.");
+         }
+         return;
+      }
+      final DistStage stage = (DistStage) message;
+      Runnable runnable = new Runnable() {
+         public void run() {
+            try {
+               stage.initOnSlave(state);
+               if (stage instanceof ProgressReportingStage) {
+                  ((ProgressReportingStage) stage).setProgressReporter(new ProgressReportingStage.Reporter() {
+                     @Override
+                     public void report(StageProgress progress) {
                         try {
-                           DistStage stage = (DistStage) SerializationHelper.deserialize(byteBuffer.array(), 4, expectedSize);
-                           stage.initOnSlave(state);
-                           log.info("Executing stage: " + stage);
-                           long start =System.currentTimeMillis();
-                           DistStageAck ack = stage.executeOnSlave();
-                           ack.setDuration(System.currentTimeMillis() - start);
-                           byte[] bytes = SerializationHelper.prepareForSerialization(ack);
-                           log.info("Finished stage: " + stage);
-                           byteBuffer.clear();
-                           if (bytes.length > byteBuffer.capacity()) {
-                              log.info("Buffer is too short, required " + bytes.length + " bytes, reallocating");                              
-                              byteBuffer = ByteBuffer.allocate(bytes.length);
-                           }
-                           byteBuffer.put(bytes);                           
-                           byteBuffer.flip();
+                           send(progress);
                         } catch (IOException e) {
-                           log.error(e);
+                           log.error("Failed to send progress to the master", e);
                         }
                      }
-                  };
-                  future = es.submit(runnable);
-                  key.interestOps(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+                  });
                }
-            } else if (key.isWritable()) {
-               try {
-                  future.get(500, TimeUnit.MILLISECONDS);
-                  if (log.isTraceEnabled()) {
-                     log.trace("Buffer before writing is: " + byteBuffer);
-                  }
-                  key.interestOps(SelectionKey.OP_WRITE);
-                  int val = keyChannel.write(byteBuffer);
-                  if (log.isTraceEnabled()) {
-                     log.trace("Successfully written: " + val + " bytes to the master from buffer: " + byteBuffer);
-                  }
-
-                  if (byteBuffer.remaining() == 0) {
-                     log.info("Ack successfully sent to the master");
-                     byteBuffer.clear();
-                     key.interestOps(SelectionKey.OP_READ);
-                  }
-
-               } catch (TimeoutException e) {
-//                  log.trace("Current stage not finished processing, nothing to write for now.");
+               currentStage = stage;
+               log.info("Executing stage: " + stage);
+               long start = System.currentTimeMillis();
+               DistStageAck ack = stage.executeOnSlave();
+               ack.setDuration(System.currentTimeMillis() - start);
+               currentStage = null;
+               log.info("Finished stage: " + stage);
+               send(ack);
+               log.info("Ack queued for sending to the master");
+            } catch (IOException e) {
+               log.error(e);
+            } catch (RuntimeException e) {
+               // the master would wait for the ack forever
+               log.error("Unexpected exception in stage " + stage, e);
+               if (masterHost != null) {
+                  ShutDownHook.exit(10);
+               } else {
+                  // other slaves share this JVM, report the failure and stop only this slave
+                  stopInProcess(stage, e);
                }
-
-            } else {
-               log.warn("Received a key that is not connectible, readable or writable: " + key);
             }
          }
+      };
+      es.execute(runnable);
+   }
+
+   private void stopInProcess(DistStage stage, RuntimeException e) {
+      DefaultDistStageAck ack = new DefaultDistStageAck(slaveIndex, state.getLocalAddress());
+      ack.setError(true);
+      ack.setRemoteException(e);
+      ack.setErrorMessage("Unexpected exception in stage " + stage.getClass().getSimpleName());
+      currentStage = null;
+      stopped = true;
+      try {
+         send(ack);
+      } catch (IOException ioe) {
+         log.error("Failed to send the ack to the master", ioe);
+         selector.wakeup();
       }
    }
 
+   /**
+    * Queues the message to be sent to the master, messages are sent in the order in which these were queued.
+    */
+   private void send(Serializable message) throws IOException {
+      writeQueue.add(SerializationHelper.prepareForSerialization(message));
+      selector.wakeup();
+   }
+
    private void connectToMaster() throws IOException {
       InetSocketAddress socketAddress = new InetSocketAddress(masterHost, masterPort);
       log.info("Attempting to connect to master " + masterHost + ":" + masterPort);
-      socketChannel = SocketChannel.open();
+      SocketChannel socketChannel = SocketChannel.open();
       socketChannel.connect(socketAddress);
       log.info("Successfully established connection with master at: " + masterHost + ":" + masterPort);
       
@@ -165,6 +258,8 @@ public class Slave {
       state.setMasterAddress(socketChannel.socket().getInetAddress());
       
       socketChannel.configureBlocking(false);
+      input = socketChannel;
+      output = socketChannel;
                  
       if (exitOnMasterShutdown) {
          es = Executors.newSingleThreadExecutor();
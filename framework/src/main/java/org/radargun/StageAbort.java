@@ -0,0 +1,36 @@
+package org.radargun;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Sent from master to the slaves when the stage should be stopped before its regular end.
+ */
+public class StageAbort implements Serializable {
+   private final String reason;
+
+   static final BinaryCodec.TypeCodec<StageAbort> CODEC = new BinaryCodec.TypeCodec<StageAbort>() {
+      @Override
+      public void write(StageAbort abort, BinaryCodec.Output out) throws IOException {
+         out.writeString(abort.reason);
+      }
+
+      @Override
+      public StageAbort read(BinaryCodec.Input in) throws IOException {
+         return new StageAbort(in.readString());
+      }
+   };
+
+   public StageAbort(String reason) {
+      this.reason = reason;
+   }
+
+   public String getReason() {
+      return reason;
+   }
+
+   @Override
+   public String toString() {
+      return "StageAbort{reason='" + reason + "'}";
+   }
+}
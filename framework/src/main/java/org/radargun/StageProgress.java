@@ -0,0 +1,59 @@
+package org.radargun;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Intermediate results of a stage sent from slave to the master while the stage is still running.
+ * Delivered to {@link ProgressReportingStage#processProgressOnMaster(StageProgress, org.radargun.state.MasterState)}.
+ */
+public class StageProgress implements Serializable {
+   private final int slaveIndex;
+   private final int sequence;
+   private final Map<String, Object> values;
+
+   static final BinaryCodec.TypeCodec<StageProgress> CODEC = new BinaryCodec.TypeCodec<StageProgress>() {
+      @Override
+      public void write(StageProgress progress, BinaryCodec.Output out) throws IOException {
+         out.writeInt(progress.slaveIndex);
+         out.writeInt(progress.sequence);
+         out.writeObject(progress.values);
+      }
+
+      @Override
+      public StageProgress read(BinaryCodec.Input in) throws IOException {
+         int slaveIndex = in.readInt();
+         int sequence = in.readInt();
+         return new StageProgress(slaveIndex, sequence, (Map<String, Object>) in.readObject());
+      }
+   };
+
+   /**
+    * @param slaveIndex Index of the reporting slave
+    * @param sequence Number of the report, starting from 0 for each stage execution
+    * @param values Results since the previous report
+    */
+   public StageProgress(int slaveIndex, int sequence, Map<String, Object> values) {
+      this.slaveIndex = slaveIndex;
+      this.sequence = sequence;
+      this.values = values;
+   }
+
+   public int getSlaveIndex() {
+      return slaveIndex;
+   }
+
+   public int getSequence() {
+      return sequence;
+   }
+
+   public Map<String, Object> getValues() {
+      return values;
+   }
+
+   @Override
+   public String toString() {
+      return "StageProgress{slaveIndex=" + slaveIndex + ", sequence=" + sequence + ", values=" + values + '}';
+   }
+}
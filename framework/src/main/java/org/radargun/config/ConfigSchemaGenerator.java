@@ -121,7 +121,12 @@ public class ConfigSchemaGenerator {
       addAttribute(doc, repeatType, "name", null, false);
       createReference(doc, benchmarkChoice, "Repeat", RG_PREFIX + "repeat");
       createReference(doc, repeatChoice, "Repeat", RG_PREFIX + "repeat");
-      generateStageDefinitions(doc, schema, new Element[]{benchmarkChoice, repeatChoice});
+      Element parallelType = createComplexType(doc, schema, "parallel", null, false, null);
+      Element parallelChoice = createChoice(doc, createSequence(doc, parallelType), 1, -1);
+      addAttribute(doc, parallelType, "exitBenchmarkOnSlaveFailure", null, false);
+      createReference(doc, benchmarkChoice, "Parallel", RG_PREFIX + "parallel");
+      createReference(doc, repeatChoice, "Parallel", RG_PREFIX + "parallel");
+      generateStageDefinitions(doc, schema, new Element[]{benchmarkChoice, repeatChoice, parallelChoice});
 
       addAttribute(doc, benchmarkComplex, "initSize", null, false);
       addAttribute(doc, benchmarkComplex, "maxSize", null, false);
@@ -6,10 +6,12 @@ import java.util.Properties;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import org.radargun.DistStage;
 import org.radargun.Master;
 import org.radargun.Stage;
 import org.radargun.stages.AbstractStartStage;
 import org.radargun.stages.GenerateChartStage;
+import org.radargun.stages.ParallelStage;
 import org.radargun.utils.TypedProperties;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -247,17 +249,40 @@ public class DomConfigParser extends ConfigParser {
                }
             }
          }         
-      } else {
-         Stage st = StageHelper.getStage(element.getNodeName());
-         prototype.addStage(st);
-         NamedNodeMap attributes = element.getAttributes();
-         Map<String, String> attrToSet = new HashMap<String, String>();
-         for (int attrIndex = 0; attrIndex < attributes.getLength(); attrIndex++) {
-            Attr attr = (Attr) attributes.item(attrIndex);
-            attrToSet.put(attr.getName(), ConfigHelper.parseString(attr.getValue()));
+      } else if (element.getNodeName().equalsIgnoreCase("Parallel")) {
+         ParallelStage group = new ParallelStage();
+         setAttributes(group, element);
+         NodeList childNodes = element.getChildNodes();
+         for (int i = 0; i < childNodes.getLength(); i++) {
+            Node child = childNodes.item(i);
+            if (child instanceof Element) {
+               Stage st = createStage((Element) child);
+               if (!(st instanceof DistStage)) {
+                  throw new IllegalArgumentException("Only distributed stages can be executed in parallel, found " + child.getNodeName());
+               }
+               group.addStage((DistStage) st);
+            }
          }
-         ConfigHelper.setValues(st, attrToSet, true);
+         prototype.addStage(group);
+      } else {
+         prototype.addStage(createStage(element));
+      }
+   }
+
+   private Stage createStage(Element element) {
+      Stage st = StageHelper.getStage(element.getNodeName());
+      setAttributes(st, element);
+      return st;
+   }
+
+   private void setAttributes(Stage st, Element element) {
+      NamedNodeMap attributes = element.getAttributes();
+      Map<String, String> attrToSet = new HashMap<String, String>();
+      for (int attrIndex = 0; attrIndex < attributes.getLength(); attrIndex++) {
+         Attr attr = (Attr) attributes.item(attrIndex);
+         attrToSet.put(attr.getName(), ConfigHelper.parseString(attr.getValue()));
       }
+      ConfigHelper.setValues(st, attrToSet, true);
    }
 
 
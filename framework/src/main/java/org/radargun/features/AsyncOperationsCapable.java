@@ -0,0 +1,28 @@
+package org.radargun.features;
+
+import java.util.concurrent.Future;
+
+import org.radargun.CacheWrapper;
+
+/**
+ * The cachewrapper supports asynchronous operations - these return immediately and the result
+ * is retrieved later through the returned future.
+ */
+public interface AsyncOperationsCapable extends CacheWrapper {
+   /**
+    * @return Future returning the value or null if the key is not present in the cache.
+    */
+   Future<Object> getAsync(String bucket, Object key) throws Exception;
+
+   /**
+    * Returning previous value from the future is optional - if the cache
+    * is not capable of that it should return null.
+    */
+   Future<Object> putAsync(String bucket, Object key, Object value) throws Exception;
+
+   /**
+    * Returning previous value from the future is optional - if the cache
+    * is not capable of that it should return null.
+    */
+   Future<Object> removeAsync(String bucket, Object key) throws Exception;
+}
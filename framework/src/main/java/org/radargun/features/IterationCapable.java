@@ -0,0 +1,18 @@
+package org.radargun.features;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.radargun.CacheWrapper;
+
+/**
+ * Cache wrapper able to iterate over the entries stored on this node.
+ */
+public interface IterationCapable extends CacheWrapper {
+
+   /**
+    * Iterates over the entries held in this node's memory, including backup copies of entries
+    * owned by other nodes. The iteration is not required to be consistent with concurrent updates.
+    */
+   Iterator<Map.Entry<Object, Object>> localEntries(String bucket) throws Exception;
+}
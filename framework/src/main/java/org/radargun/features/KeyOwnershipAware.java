@@ -0,0 +1,15 @@
+package org.radargun.features;
+
+import org.radargun.CacheWrapper;
+
+/**
+ * Cache wrapper able to tell which node stores given key.
+ */
+public interface KeyOwnershipAware extends CacheWrapper {
+
+   /**
+    * @return True if this node is the primary owner of the key. In caches that are not distributed
+    *         (local or replicated) each node stores all entries, therefore it is the primary owner of all keys.
+    */
+   boolean isPrimaryOwner(String bucket, Object key);
+}
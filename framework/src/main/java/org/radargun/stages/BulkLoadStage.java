@@ -0,0 +1,205 @@
+package org.radargun.stages;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.radargun.CacheWrapper;
+import org.radargun.DistStageAck;
+import org.radargun.config.Property;
+import org.radargun.config.Stage;
+import org.radargun.features.BulkOperationsCapable;
+import org.radargun.stages.helpers.Range;
+import org.radargun.state.MasterState;
+import org.radargun.stressors.BackgroundOpsManager;
+import org.radargun.stressors.RandomValueGenerator;
+import org.radargun.stressors.ValueGenerator;
+import org.radargun.utils.Utils;
+
+/**
+ * Loads the entries used by background stressors and {@link CheckDataStage} (keys key0 .. key{numEntries - 1},
+ * values are byte arrays) from multiple threads on each slave.
+ */
+@Stage(doc = "Loads entries in form key{number} -> byte[entrySize] into the cache from multiple threads on each slave, " +
+      "using putAll batches if the wrapper supports bulk operations. The data can be checked by CheckData stage " +
+      "and are used by background stressors.")
+public class BulkLoadStage extends AbstractDistStage {
+
+   @Property(optional = false, doc = "Number of entries with key in form key{number} loaded into the cache.")
+   private int numEntries;
+
+   @Property(doc = "Number of bytes carried in single entry. Default is 1024.")
+   private int entrySize = 1024;
+
+   @Property(doc = "Number of loading threads on each slave. Default is 10.")
+   private int numThreads = 10;
+
+   @Property(doc = "Number of entries inserted in single putAll operation. Wrappers that do not support bulk operations " +
+         "insert the entries one by one. Default is 100.")
+   private int batchSize = 100;
+
+   @Property(doc = "Maximum number of entries loaded per second on each slave. Default is 0 (unlimited).")
+   private int maxEntriesPerSecond = 0;
+
+   @Property(doc = "Bucket where the entries are inserted. By default the bucket of background stressors " +
+         "is used, the same as in CheckData stage.")
+   private String bucketId;
+
+   @Property(doc = "Background stressors started later won't load the entries again. Default is true.")
+   private boolean skipBackgroundLoad = true;
+
+   @Override
+   public DistStageAck executeOnSlave() {
+      DefaultDistStageAck ack = newDefaultStageAck();
+      if (slaves != null && !slaves.contains(getSlaveIndex())) {
+         return ack;
+      }
+      final CacheWrapper wrapper = slaveState.getCacheWrapper();
+      if (wrapper == null) {
+         ack.setError(true);
+         ack.setErrorMessage("Cannot load the entries as the wrapper hasn't been configured.");
+         return ack;
+      }
+      List<Integer> loadingSlaves = getLoadingSlaves();
+      Range slaveRange = Range.divideRange(numEntries, loadingSlaves.size(), loadingSlaves.indexOf(getSlaveIndex()));
+      final String bucket = getBucket();
+      log.info("Loading entries " + slaveRange + " into bucket " + bucket + " using " + numThreads + " threads"
+            + (wrapper instanceof BulkOperationsCapable && batchSize > 1 ? ", " + batchSize + " entries per putAll" : ""));
+
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(numThreads);
+      for (int i = 0; i < numThreads; ++i) {
+         Range threadRange = Range.divideRange(slaveRange.getSize(), numThreads, i).shift(slaveRange.getStart());
+         tasks.add(new LoadTask(wrapper, bucket, threadRange));
+      }
+      long entries = 0;
+      long start = System.nanoTime();
+      try {
+         for (Future<Long> future : executor.invokeAll(tasks)) {
+            entries += future.get();
+         }
+      } catch (Exception e) {
+         log.error("Failed to load entries", e);
+         ack.setError(true);
+         ack.setRemoteException(e);
+         ack.setErrorMessage("Failed to load entries");
+         return ack;
+      } finally {
+         executor.shutdown();
+      }
+      long duration = System.nanoTime() - start;
+
+      long failed = slaveRange.getSize() - entries;
+      ack.setPayload(new long[] { entries, entries * entrySize, duration });
+      log.info("Loaded " + entries + " entries in " + Utils.prettyPrintTime(duration, TimeUnit.NANOSECONDS)
+            + ", " + formatThroughput(entries, entrySize, duration));
+      if (failed > 0) {
+         ack.setError(true);
+         ack.setErrorMessage("Failed to load " + failed + " entries");
+      } else if (skipBackgroundLoad) {
+         BackgroundOpsManager.setLoaded(slaveState, bucket);
+      }
+      return ack;
+   }
+
+   @Override
+   public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
+      boolean success = super.processAckOnMaster(acks, masterState);
+      long entries = 0, duration = 0;
+      for (DistStageAck ack : acks) {
+         long[] result = (long[]) ((DefaultDistStageAck) ack).getPayload();
+         if (result == null) continue;
+         log.info("Slave " + ack.getSlaveIndex() + " loaded " + result[0] + " entries, "
+               + formatThroughput(result[0], entrySize, result[2]));
+         entries += result[0];
+         duration = Math.max(duration, result[2]);
+      }
+      log.info("Cluster loaded " + entries + " entries in " + Utils.prettyPrintTime(duration, TimeUnit.NANOSECONDS)
+            + ", " + formatThroughput(entries, entrySize, duration));
+      return success;
+   }
+
+   private static String formatThroughput(long entries, int entrySize, long durationNanos) {
+      double seconds = Math.max(durationNanos, 1) / 1000000000d;
+      return String.format("%.0f entries/s, %.2f MB/s", entries / seconds, entries * (double) entrySize / (1024 * 1024) / seconds);
+   }
+
+   private List<Integer> getLoadingSlaves() {
+      List<Integer> loadingSlaves = new ArrayList<Integer>();
+      for (int i = 0; i < getActiveSlaveCount(); ++i) {
+         if (slaves == null || slaves.contains(i)) {
+            loadingSlaves.add(i);
+         }
+      }
+      return loadingSlaves;
+   }
+
+   private String getBucket() {
+      return bucketId != null ? bucketId : BackgroundOpsManager.getBucketId(slaveState);
+   }
+
+   private class LoadTask implements Callable<Long> {
+      private final CacheWrapper wrapper;
+      private final BulkOperationsCapable bulkWrapper;
+      private final String bucket;
+      private final Range range;
+      private final ValueGenerator valueGenerator = new RandomValueGenerator(new Random(), false);
+
+      private LoadTask(CacheWrapper wrapper, String bucket, Range range) {
+         this.wrapper = wrapper;
+         this.bulkWrapper = wrapper instanceof BulkOperationsCapable && batchSize > 1 ? (BulkOperationsCapable) wrapper : null;
+         this.bucket = bucket;
+         this.range = range;
+      }
+
+      @Override
+      public Long call() throws Exception {
+         double entriesPerNano = maxEntriesPerSecond > 0 ? maxEntriesPerSecond / (numThreads * 1000000000d) : 0;
+         long start = System.nanoTime();
+         long loaded = 0;
+         int batches = 0;
+         int step = Math.max(batchSize, 1);
+         for (int from = range.getStart(); from < range.getEnd(); from += step) {
+            int to = Math.min(from + step, range.getEnd());
+            if (bulkWrapper != null) {
+               Map<Object, Object> batch = new HashMap<Object, Object>();
+               for (int i = from; i < to; ++i) {
+                  batch.put("key" + i, valueGenerator.generateValue(entrySize));
+               }
+               try {
+                  bulkWrapper.putAll(bucket, batch, false);
+                  loaded += to - from;
+               } catch (Exception e) {
+                  log.error("Failed to load entries key" + from + " - key" + (to - 1), e);
+               }
+            } else {
+               for (int i = from; i < to; ++i) {
+                  try {
+                     wrapper.put(bucket, "key" + i, valueGenerator.generateValue(entrySize));
+                     loaded++;
+                  } catch (Exception e) {
+                     log.error("Failed to load entry key" + i, e);
+                  }
+               }
+            }
+            if (++batches % 100 == 0) {
+               log.debug("Loaded " + (to - range.getStart()) + " out of " + range.getSize() + " entries");
+            }
+            if (entriesPerNano > 0) {
+               long ahead = (long) ((to - range.getStart()) / entriesPerNano) - (System.nanoTime() - start);
+               if (ahead > 0) {
+                  Thread.sleep(ahead / 1000000, (int) (ahead % 1000000));
+               }
+            }
+         }
+         return loaded;
+      }
+   }
+}
@@ -18,22 +18,35 @@
  */
 package org.radargun.stages;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
+import org.radargun.BinaryCodec;
 import org.radargun.CacheWrapper;
 import org.radargun.DistStageAck;
 import org.radargun.config.Property;
 import org.radargun.config.Stage;
+import org.radargun.features.BulkOperationsCapable;
 import org.radargun.features.Debugable;
+import org.radargun.features.IterationCapable;
 import org.radargun.stages.helpers.Range;
 import org.radargun.state.MasterState;
 import org.radargun.stressors.BackgroundOpsManager;
+import org.radargun.utils.Utils;
 
 /**
  * @author Radim Vansa &lt;rvansa@redhat.com&gt;
@@ -41,6 +54,17 @@ import org.radargun.stressors.BackgroundOpsManager;
 @Stage(doc = "Stage for checking presence or absence of data uploaded by BackgroundStressors")
 public class CheckDataStage extends AbstractDistStage {
 
+   private static final String LOCAL_SIZE = "LOCAL_SIZE";
+   private static final String CHECKED = "CHECKED";
+   private static final String DURATION = "DURATION";
+   private static final String DIGESTS = "DIGESTS";
+   private static final String LOCAL_DIGEST = "LOCAL_DIGEST";
+   private static final String FOUND = "FOUND";
+   private static final String BUCKET = "BUCKET";
+   /* Digests of previous run are kept in master state under this prefix + benchmark, bucket, key space and digest mode */
+   private static final String REFERENCE_DIGESTS = "CheckDataStage.REFERENCE_DIGESTS.";
+   private static final int MAX_LOGGED_MISMATCHES = 10;
+
    @Property(optional = false, doc = "Number of entries with key in form key{number} in the cache.")
    private int numEntries;
 
@@ -79,7 +103,22 @@ public class CheckDataStage extends AbstractDistStage {
 
    @Property(doc = "If entry is null, fail immediatelly. Default is false.")
    private boolean failOnNull = false;
-    
+
+   @Property(doc = "Number of entries retrieved in single getAll operation. Wrappers that do not support bulk operations " +
+         "retrieve the entries one by one. Default is 1 (entries are retrieved one by one).")
+   private int batchSize = 1;
+
+   @Property(doc = "If set to true, the values are not checked by each slave but summarized into checksums of digestRanges " +
+         "ranges of keys. If the wrapper can iterate over local entries, each slave digests the entries it holds and no values " +
+         "are retrieved remotely; otherwise each slave digests only its share of the keys. Master compares the digests with " +
+         "the digests of the previous CheckData stage in digest mode with the same product, configuration, bucket, numEntries " +
+         "and digestRanges (the first one just records them) and, with full " +
+         "replication, the digests of the replicas with each other. Default is false.")
+   private boolean digest = false;
+
+   @Property(doc = "Number of ranges the keys are divided into in the digest mode. Default is 100.")
+   private int digestRanges = 100;
+
    @Override
    public DistStageAck executeOnSlave() {
       DefaultDistStageAck ack = newDefaultStageAck();
@@ -87,12 +126,31 @@ public class CheckDataStage extends AbstractDistStage {
          return ack;
       }
       CheckResult result = new CheckResult();
+      long[] digests = null;
+      boolean localDigest = false;
+      int expectedEntries = getExpectedNumEntries();
+      long start = System.nanoTime();
       try {
          if (slaveState.getCacheWrapper() == null) {         
             // this slave is dead and does not participate on check
             return ack;
          }
-         if (checkThreads <= 1) {
+         if (digest) {
+            if (!supportsDigest()) {
+               ack.setError(true);
+               ack.setErrorMessage(getClass().getSimpleName() + " does not support the digest mode");
+               return ack;
+            }
+            digests = new long[digestRanges];
+            if (slaveState.getCacheWrapper() instanceof IterationCapable) {
+               localDigest = true;
+               result = digestLocalEntries((IterationCapable) slaveState.getCacheWrapper(), digests);
+            } else {
+               Range share = getShare();
+               expectedEntries = share.getSize();
+               result = digestShare(share, digests);
+            }
+         } else if (checkThreads <= 1) {
             result = checkRange(0, numEntries);
          } else {
             ExecutorService executor = Executors.newFixedThreadPool(checkThreads);
@@ -101,9 +159,12 @@ public class CheckDataStage extends AbstractDistStage {
                Range range = Range.divideRange(numEntries, checkThreads, i);
                tasks.add(new CheckRangeTask(range.getStart(), range.getEnd()));
             }
-            for (Future<CheckResult> future : executor.invokeAll(tasks)) {
-               CheckResult value = future.get();
-               result.merge(value);
+            try {
+               for (Future<CheckResult> future : executor.invokeAll(tasks)) {
+                  result.merge(future.get());
+               }
+            } finally {
+               executor.shutdown();
             }
          }
       } catch (Exception e) {         
@@ -113,13 +174,27 @@ public class CheckDataStage extends AbstractDistStage {
          ack.setErrorMessage("Failed to check entries");
          return ack;
       }
+      long duration = System.nanoTime() - start;
+      log.info("Checked " + result.checked + " entries in " + Utils.prettyPrintTime(duration, TimeUnit.NANOSECONDS)
+            + ", " + formatThroughput(result.checked, duration));
+      Map<String, Object> payload = new HashMap<String, Object>();
+      payload.put(CHECKED, result.checked);
+      payload.put(DURATION, duration);
+      if (digests != null) {
+         payload.put(DIGESTS, digests);
+         payload.put(LOCAL_DIGEST, localDigest);
+         payload.put(BUCKET, getBucketId());
+      }
 
       CacheWrapper wrapper = slaveState.getCacheWrapper();
       if (wrapper != null && wrapper.isRunning()) {
-         if (!isDeleted()) {
-            if (result.found != getExpectedNumEntries()) {
+         if (localDigest && numOwners >= 0 && !isDeleted()) {
+            // each slave holds only some of the entries, master checks the sum of found entries
+            payload.put(FOUND, result.found);
+         } else if (!isDeleted()) {
+            if (result.found != expectedEntries) {
                ack.setError(true);
-               ack.setErrorMessage("Found " + result.found + " entries while " + getExpectedNumEntries() + " should be loaded.");
+               ack.setErrorMessage("Found " + result.found + " entries while " + expectedEntries + " should be loaded.");
                ack.setPayload(result);
                return ack;
             }
@@ -154,8 +229,9 @@ public class CheckDataStage extends AbstractDistStage {
                } else break;
             }
          }
-         ack.setPayload(wrapper.getLocalSize());
+         payload.put(LOCAL_SIZE, wrapper.getLocalSize());
       }
+      ack.setPayload(payload);
       return ack;
    }
    
@@ -181,69 +257,217 @@ public class CheckDataStage extends AbstractDistStage {
    protected int getExpectedNumEntries() {
       return numEntries;
    }
+
+   /**
+    * @return False if the stage does not implement the digest mode.
+    */
+   protected boolean supportsDigest() {
+      return true;
+   }
+
+   /**
+    * @return Keys digested by this slave if it cannot iterate over its local entries
+    */
+   private Range getShare() {
+      if (slaves == null) {
+         return Range.divideRange(numEntries, getActiveSlaveCount(), getSlaveIndex());
+      }
+      List<Integer> sorted = new ArrayList<Integer>(new HashSet<Integer>(slaves));
+      Collections.sort(sorted);
+      return Range.divideRange(numEntries, sorted.size(), sorted.indexOf(getSlaveIndex()));
+   }
+
+   /**
+    * Digests the intersection of each digest range with the share of this slave.
+    */
+   private CheckResult digestShare(Range share, long[] digests) throws Exception {
+      CheckResult result = new CheckResult();
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(checkThreads, 1));
+      List<Callable<CheckResult>> tasks = new ArrayList<Callable<CheckResult>>();
+      List<Integer> parts = new ArrayList<Integer>();
+      for (int i = 0; i < digests.length; ++i) {
+         Range range = Range.divideRange(numEntries, digests.length, i);
+         int from = Math.max(range.getStart(), share.getStart());
+         int to = Math.min(range.getEnd(), share.getEnd());
+         if (from < to) {
+            tasks.add(new CheckRangeTask(from, to));
+            parts.add(i);
+         }
+      }
+      try {
+         int part = 0;
+         for (Future<CheckResult> future : executor.invokeAll(tasks)) {
+            CheckResult value = future.get();
+            result.merge(value);
+            if (value != null) {
+               digests[parts.get(part)] = value.digest;
+            }
+            part++;
+         }
+      } finally {
+         executor.shutdown();
+      }
+      return result;
+   }
+
+   /**
+    * Digests the entries key{number} held by this slave, including backup copies, without any remote access.
+    */
+   private CheckResult digestLocalEntries(IterationCapable wrapper, long[] digests) throws Exception {
+      CheckResult result = new CheckResult();
+      EntryHasher hasher = new EntryHasher();
+      // ranges of equal size except for the first numEntries % digestRanges that are larger by one
+      int smallSize = numEntries / digests.length, largeRanges = numEntries % digests.length;
+      for (Iterator<Map.Entry<Object, Object>> it = wrapper.localEntries(getBucketId()); it.hasNext(); ) {
+         Map.Entry<Object, Object> entry = it.next();
+         if (!(entry.getKey() instanceof String) || !((String) entry.getKey()).startsWith("key")) continue;
+         int i;
+         try {
+            i = Integer.parseInt(((String) entry.getKey()).substring(3));
+         } catch (NumberFormatException e) {
+            continue;
+         }
+         if (i < 0 || i >= numEntries) continue;
+         int part = i < largeRanges * (smallSize + 1) ? i / (smallSize + 1) : largeRanges + (i - largeRanges * (smallSize + 1)) / smallSize;
+         digests[part] += hasher.hash(i, entry.getValue());
+         result.checked++;
+         if (entry.getValue() != null) result.found++;
+      }
+      return result;
+   }
+
+   private String getBucketId() {
+      return BackgroundOpsManager.getBucketId(slaveState);
+   }
    
    protected CheckResult checkRange(int from, int to) {
       CacheWrapper wrapper = slaveState.getCacheWrapper();
       CheckResult result = new CheckResult();
-      BackgroundOpsManager bgStats = (BackgroundOpsManager) slaveState.get(BackgroundOpsManager.NAME);
-      String bucketId = BackgroundOpsManager.NAME;
-      if (bgStats != null) bucketId = bgStats.getBucketId();
-      for (int i = from; i < to; ++i, ++result.checked) {
-         if (result.checked % logChecksCount == 0) {
-            log.debug("Checked " + result.checked + " entries, so far " + result);
+      String bucketId = getBucketId();
+      BulkOperationsCapable bulkWrapper = batchSize > 1 && wrapper instanceof BulkOperationsCapable ? (BulkOperationsCapable) wrapper : null;
+      EntryHasher hasher = digest ? new EntryHasher() : null;
+      int step = Math.max(batchSize, 1);
+      for (int batchStart = from; batchStart < to; batchStart += step) {
+         int batchEnd = Math.min(batchStart + step, to);
+         Map<Object, Object> values = null;
+         if (bulkWrapper != null) {
+            Set<Object> keys = new HashSet<Object>();
+            for (int i = batchStart; i < batchEnd; ++i) {
+               keys.add("key" + i);
+            }
+            try {
+               values = bulkWrapper.getAll(bucketId, keys, false);
+            } catch (Exception e) {
+               result.exceptions += batchEnd - batchStart;
+               result.checked += batchEnd - batchStart;
+               if (log.isTraceEnabled()) {
+                  log.trace("Error retrieving values for key" + batchStart + " - key" + (batchEnd - 1) + "\n" + e);
+               }
+               continue;
+            }
          }
-         try {
-            Object value = wrapper.get(bucketId, "key" + i);
-            if (!isDeleted()) {
-               if (value != null && value instanceof byte[] && (entrySize <= 0 || ((byte[]) value).length == entrySize)) {
-                  result.found++;
-               } else {
-                  if (value == null) {
-                     result.nullValues++;
-                     if (debugNull && wrapper instanceof Debugable) {
-                        ((Debugable) wrapper).debugInfo(bucketId);
-                        ((Debugable) wrapper).debugKey(bucketId, "key" + i);
-                     }
-                     if (failOnNull) {
-                        result.checked++;
-                        break;
-                     }
-                  } else {
-                     result.invalidValues++;
-                  }
-                  if (log.isTraceEnabled()) {
-                     log.trace("Key" + i + " has unexpected value " + value);
-                  }
+         for (int i = batchStart; i < batchEnd; ++i, ++result.checked) {
+            if (result.checked % logChecksCount == 0) {
+               log.debug("Checked " + result.checked + " entries, so far " + result);
+            }
+            try {
+               Object value = values != null ? values.get("key" + i) : wrapper.get(bucketId, "key" + i);
+               if (hasher != null) {
+                  result.digest += hasher.hash(i, value);
                }
-            } else {
-               if (value != null) {
-                  result.found++;
-                  if (log.isTraceEnabled()) {
-                     log.trace("Key" + i + " still has value " + value);
-                  }
-               } else {
-                  result.nullValues++;
+               if (!checkValue(result, wrapper, bucketId, i, value)) {
+                  result.checked++;
+                  return result;
+               }
+            } catch (Exception e) {
+               result.exceptions++;
+               if (log.isTraceEnabled()) {
+                  log.trace("Error retrieving value for key" + i + "\n" + e);
                }
             }
-         } catch (Exception e) {
-            result.exceptions++;
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Computes checksum of single entry. The digest of a range is the sum of the checksums of its entries,
+    * therefore it does not depend on the order in which the entries are visited. Values other than byte arrays
+    * are serialized through {@link BinaryCodec}, so the checksum is stable across JVMs.
+    */
+   private static class EntryHasher {
+      private final CRC32 checksum = new CRC32();
+      private final BinaryCodec.Output output = new BinaryCodec.Output();
+
+      long hash(int keyIndex, Object value) throws IOException {
+         checksum.reset();
+         checksum.update(new byte[] { (byte) (keyIndex >> 24), (byte) (keyIndex >> 16), (byte) (keyIndex >> 8), (byte) keyIndex });
+         if (value == null) {
+            checksum.update(0);
+         } else if (value instanceof byte[]) {
+            checksum.update(1);
+            checksum.update((byte[]) value);
+         } else {
+            checksum.update(2);
+            output.reset();
+            output.writeObject(value);
+            checksum.update(output.toByteBuffer().array(), 0, output.size());
+         }
+         return checksum.getValue();
+      }
+   }
+
+   /**
+    * @return False if the check should be stopped.
+    */
+   private boolean checkValue(CheckResult result, CacheWrapper wrapper, String bucketId, int i, Object value) {
+      if (!isDeleted()) {
+         if (value != null && value instanceof byte[] && (entrySize <= 0 || ((byte[]) value).length == entrySize)) {
+            result.found++;
+         } else {
+            if (value == null) {
+               result.nullValues++;
+               if (debugNull && wrapper instanceof Debugable) {
+                  ((Debugable) wrapper).debugInfo(bucketId);
+                  ((Debugable) wrapper).debugKey(bucketId, "key" + i);
+               }
+               if (failOnNull) {
+                  return false;
+               }
+            } else {
+               result.invalidValues++;
+            }
             if (log.isTraceEnabled()) {
-               log.trace("Error retrieving value for key" + i + "\n" + e);
+               log.trace("Key" + i + " has unexpected value " + value);
             }
          }
+      } else {
+         if (value != null) {
+            result.found++;
+            if (log.isTraceEnabled()) {
+               log.trace("Key" + i + " still has value " + value);
+            }
+         } else {
+            result.nullValues++;
+         }
       }
-      return result;
+      return true;
    }
 
    @Override
    public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
       boolean success = super.processAckOnMaster(acks, masterState);
+      logThroughput(acks);
+      if (success && digest && !compareDigests(acks, masterState)) {
+         return false;
+      }
       if (success) {
          int sumSize = 0;
          for (DistStageAck ack : acks) {
             DefaultDistStageAck dack = (DefaultDistStageAck) ack;
-            if (dack.getPayload() != null) {
-               Integer localSize = (Integer) dack.getPayload();
+            if (dack.getPayload() instanceof Map) {
+               Integer localSize = (Integer) ((Map<String, Object>) dack.getPayload()).get(LOCAL_SIZE);
+               if (localSize == null) continue;
                log.debug("Slave " + dack.getSlaveIndex() + " has local size " + localSize);
                sumSize += localSize;
             }
@@ -268,6 +492,105 @@ public class CheckDataStage extends AbstractDistStage {
       return success;
    }
 
+   private void logThroughput(List<DistStageAck> acks) {
+      long checked = 0, duration = 0;
+      for (DistStageAck ack : acks) {
+         Object payload = ((DefaultDistStageAck) ack).getPayload();
+         if (!(payload instanceof Map)) continue;
+         long slaveChecked = (Long) ((Map<String, Object>) payload).get(CHECKED);
+         long slaveDuration = (Long) ((Map<String, Object>) payload).get(DURATION);
+         log.info("Slave " + ack.getSlaveIndex() + " checked " + slaveChecked + " entries, "
+               + formatThroughput(slaveChecked, slaveDuration));
+         checked += slaveChecked;
+         duration = Math.max(duration, slaveDuration);
+      }
+      log.info("Cluster checked " + checked + " entries in " + Utils.prettyPrintTime(duration, TimeUnit.NANOSECONDS)
+            + ", " + formatThroughput(checked, duration));
+   }
+
+   private static String formatThroughput(long checked, long durationNanos) {
+      return String.format("%.0f checks/s", checked / (Math.max(durationNanos, 1) / 1000000000d));
+   }
+
+   /**
+    * Sums the digests of all slaves and compares them with the digests recorded by previous check with the same benchmark,
+    * bucket, key space and mode. When slaves hold parts of the data, the sum of their entries is checked as well.
+    * When each slave holds all entries, the digests of local entries must be equal on all slaves.
+    */
+   private boolean compareDigests(List<DistStageAck> acks, MasterState masterState) {
+      long[] cluster = null;
+      long[] replica = null;
+      int replicaSlave = -1;
+      boolean local = false;
+      boolean consistent = true;
+      String bucket = null;
+      long found = 0;
+      for (DistStageAck ack : acks) {
+         Object payload = ((DefaultDistStageAck) ack).getPayload();
+         if (!(payload instanceof Map)) continue;
+         long[] digests = (long[]) ((Map<String, Object>) payload).get(DIGESTS);
+         if (digests == null) continue;
+         local = (Boolean) ((Map<String, Object>) payload).get(LOCAL_DIGEST);
+         bucket = (String) ((Map<String, Object>) payload).get(BUCKET);
+         Long slaveFound = (Long) ((Map<String, Object>) payload).get(FOUND);
+         if (slaveFound != null) {
+            found += slaveFound;
+         }
+         if (cluster == null) {
+            cluster = new long[digests.length];
+         }
+         for (int i = 0; i < digests.length; ++i) {
+            cluster[i] += digests[i];
+         }
+         if (!local || numOwners >= 0) continue;
+         if (replica == null) {
+            replica = digests;
+            replicaSlave = ack.getSlaveIndex();
+         } else if (!compareDigests(digests, replica, "Slave " + ack.getSlaveIndex(), "slave " + replicaSlave)) {
+            consistent = false;
+         }
+      }
+      if (cluster == null) {
+         return consistent;
+      }
+      if (local && numOwners >= 0 && !isDeleted() && found != (long) numOwners * numEntries) {
+         log.error("Slaves hold " + found + " entries (including backups) while " + ((long) numOwners * numEntries)
+               + " should be loaded.");
+         consistent = false;
+      }
+      // digests of different benchmarks, buckets or key spaces are not comparable
+      String key = REFERENCE_DIGESTS + masterState.nameOfTheCurrentBenchmark() + "."
+            + masterState.configNameOfTheCurrentBenchmark() + "." + bucket + "." + numEntries + "." + digestRanges
+            + "." + (local ? "local" : "share");
+      long[] reference = (long[]) masterState.get(key);
+      if (reference == null) {
+         log.info("Recording checksums of " + cluster.length + " ranges as reference for next checks");
+         masterState.put(key, cluster);
+      } else if (compareDigests(cluster, reference, "Cluster", "previous check")) {
+         log.info("Checksums of all " + cluster.length + " ranges are equal to previous check");
+      } else {
+         consistent = false;
+      }
+      return consistent;
+   }
+
+   private boolean compareDigests(long[] digests, long[] reference, String who, String referenceName) {
+      int mismatches = 0;
+      for (int i = 0; i < digests.length; ++i) {
+         if (digests[i] != reference[i]) {
+            if (mismatches++ < MAX_LOGGED_MISMATCHES) {
+               log.error(who + " read different values than " + referenceName
+                     + " in range " + Range.divideRange(numEntries, digests.length, i));
+            }
+         }
+      }
+      if (mismatches > 0) {
+         log.error(who + " differs from " + referenceName + " in " + mismatches + " out of " + digests.length + " ranges");
+         return false;
+      }
+      return true;
+   }
+
    public int getNumEntries() {
       return this.numEntries;
    }
@@ -303,6 +626,8 @@ public class CheckDataStage extends AbstractDistStage {
       public long nullValues;
       public long invalidValues;
       public long exceptions;
+      /* Checksum of the values in the range, set only in digest mode */
+      public long digest;
 
       public void merge(CheckResult value) {
          if (value == null) return;
@@ -310,7 +635,7 @@ public class CheckDataStage extends AbstractDistStage {
          found += value.found;
          nullValues += value.nullValues;
          invalidValues += value.invalidValues;
-         exceptions += value.invalidValues;
+         exceptions += value.exceptions;
       }
 
       @Override
@@ -50,6 +50,6 @@ public class ClientStressTestStage extends StressTestStage {
       stressor.setDurationMillis(duration);
       setupStatistics(stressor);
       PropertyHelper.copyProperties(this, stressor);
-      return stressor.stress(cacheWrapper);
+      return runStressor(stressor);
    }
 }
@@ -1,8 +1,11 @@
 package org.radargun.stages;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -14,6 +17,9 @@ import java.util.TreeSet;
 
 import org.radargun.config.Property;
 import org.radargun.config.Stage;
+import org.radargun.reporting.CSVChart;
+import org.radargun.stressors.Statistics;
+import org.radargun.stressors.StressTestStressor;
 import org.radargun.utils.Utils;
 
 /**
@@ -26,6 +32,7 @@ import org.radargun.utils.Utils;
 public class CsvReportGenerationStage extends AbstractMasterStage {
 
    public static final String RESULTS = "results";
+   public static final String TIME_SERIES = "timeSeries";
 
    @Property(doc = "Directory into which will be report files written.")
    private String targetDir = "reports";
@@ -36,6 +43,16 @@ public class CsvReportGenerationStage extends AbstractMasterStage {
    @Property(doc = "Adds a line with average results. Default is false.")
    private boolean computeAverage;
 
+   @Property(doc = "Generate charts of throughput and response time percentiles over time, if the stress test " +
+         "recorded time series (see statisticsInterval). Default is true.")
+   private boolean generateTimeSeriesCharts = true;
+
+   @Property(doc = "Width of the time series charts. Default is 800px.")
+   private int chartWidth = 800;
+
+   @Property(doc = "Height of the time series charts. Default is 600px.")
+   private int chartHeight = 600;
+
    private String separator = ",";
 
    private File outputFile;
@@ -60,6 +77,15 @@ public class CsvReportGenerationStage extends AbstractMasterStage {
          }
          prepareOutputFile(results.size());
          writeData(results);
+         Map<Integer, List<Map<String, Object>>> timeSeries = (Map<Integer, List<Map<String, Object>>>) masterState.get(TIME_SERIES);
+         if (timeSeries != null && !timeSeries.isEmpty()) {
+            if (ignore != null) {
+               for (int slaveIndex : ignore) {
+                  timeSeries.remove(slaveIndex);
+               }
+            }
+            writeTimeSeries(timeSeries, results.size());
+         }
       } catch (Exception e) {
          log.error(e);
          return false;
@@ -162,6 +188,84 @@ public class CsvReportGenerationStage extends AbstractMasterStage {
       }
    }
 
+   /**
+    * Writes one file for each metric, with a row for each interval and a column for each slave.
+    */
+   private void writeTimeSeries(Map<Integer, List<Map<String, Object>>> timeSeries, int clusterSize) throws Exception {
+      File subdir = new File(outputFile.getParentFile(), masterState.nameOfTheCurrentBenchmark() + "_"
+            + masterState.configNameOfTheCurrentBenchmark() + "_" + clusterSize + "_timeseries");
+      if (!subdir.exists() && !subdir.mkdirs()) {
+         log.error("Couldn't create directory " + subdir.getAbsolutePath());
+         return;
+      }
+      List<Integer> slaveIndices = new ArrayList<Integer>(timeSeries.keySet());
+      Collections.sort(slaveIndices);
+      List<String> slaveNames = new ArrayList<String>();
+      SortedSet<String> metrics = new TreeSet<String>();
+      int maxSamples = 0;
+      for (Integer slaveIndex : slaveIndices) {
+         slaveNames.add("slave" + slaveIndex);
+         List<Map<String, Object>> samples = timeSeries.get(slaveIndex);
+         maxSamples = Math.max(maxSamples, samples.size());
+         for (Map<String, Object> sample : samples) {
+            metrics.addAll(sample.keySet());
+         }
+      }
+      metrics.remove(StressTestStressor.INTERVAL_TIME);
+      for (String metric : metrics) {
+         boolean responseTime = isResponseTime(metric);
+         File file = new File(subdir, metric.toLowerCase().replace('_', '-') + ".csv");
+         PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+         try {
+            writer.print("Time");
+            for (String slaveName : slaveNames) {
+               writer.print(CSVChart.SEPARATOR);
+               writer.print(slaveName);
+            }
+            writer.println();
+            for (int i = 0; i < maxSamples; ++i) {
+               Object time = null;
+               StringBuilder row = new StringBuilder();
+               for (Integer slaveIndex : slaveIndices) {
+                  List<Map<String, Object>> samples = timeSeries.get(slaveIndex);
+                  Object value = null;
+                  if (i < samples.size()) {
+                     Map<String, Object> sample = samples.get(i);
+                     if (time == null) time = sample.get(StressTestStressor.INTERVAL_TIME);
+                     value = sample.get(metric);
+                  }
+                  row.append(CSVChart.SEPARATOR);
+                  if (value instanceof Number) {
+                     row.append(responseTime ? ((Number) value).doubleValue() / Statistics.NS_IN_MS : value);
+                  } else {
+                     row.append(CSVChart.NULL);
+                  }
+               }
+               // interval time is in milliseconds, the charts use seconds
+               writer.print(time instanceof Number ? ((Number) time).doubleValue() / 1000 : CSVChart.NULL);
+               writer.println(row);
+            }
+         } finally {
+            writer.close();
+         }
+         if (generateTimeSeriesCharts && (responseTime || metric.equals(StressTestStressor.THROUGHPUT))) {
+            String title = responseTime ? metric + " response time" : "Throughput";
+            String valueLabel = responseTime ? "Response time (ms)" : "Throughput (ops/sec)";
+            String path = file.getAbsolutePath();
+            CSVChart.writeCSVAsChart(title, "Time (s)", valueLabel, path, CSVChart.SEPARATOR, "Time", slaveNames,
+                  chartWidth, chartHeight, path.substring(0, path.length() - 3) + "png");
+         }
+      }
+      log.info("Time series written to " + subdir.getAbsolutePath());
+   }
+
+   /**
+    * Response times are reported in nanoseconds, these are converted to milliseconds.
+    */
+   private static boolean isResponseTime(String metric) {
+      return metric.matches(".*_P[0-9_]+") || metric.endsWith("_MAX") || metric.equals(StressTestStressor.AVG_RESPONSE_TIME);
+   }
+
    private SortedSet<String> getColumns(Set<String> keySet) {
       SortedSet<String> list = new TreeSet<String>();
       for (String key : keySet) {
@@ -1,7 +1,9 @@
 package org.radargun.stages;
 
+import org.radargun.BinaryCodec;
 import org.radargun.DistStageAck;
 
+import java.io.IOException;
 import java.net.InetAddress;
 
 /**
@@ -22,6 +24,32 @@ public class DefaultDistStageAck implements DistStageAck {
 
    private String remoteExceptionString;
 
+   public static final BinaryCodec.TypeCodec<DefaultDistStageAck> CODEC = new BinaryCodec.TypeCodec<DefaultDistStageAck>() {
+      @Override
+      public void write(DefaultDistStageAck ack, BinaryCodec.Output out) throws IOException {
+         out.writeInt(ack.slaveIndex);
+         out.writeObject(ack.slaveAddress == null ? null : ack.slaveAddress.getAddress());
+         out.writeBoolean(ack.isError);
+         out.writeString(ack.errorMessage);
+         out.writeObject(ack.payload);
+         out.writeLong(ack.duration);
+         out.writeString(ack.remoteExceptionString);
+      }
+
+      @Override
+      public DefaultDistStageAck read(BinaryCodec.Input in) throws IOException {
+         int slaveIndex = in.readInt();
+         byte[] address = (byte[]) in.readObject();
+         DefaultDistStageAck ack = new DefaultDistStageAck(slaveIndex, address == null ? null : InetAddress.getByAddress(address));
+         ack.isError = in.readBoolean();
+         ack.errorMessage = in.readString();
+         ack.payload = in.readObject();
+         ack.duration = in.readLong();
+         ack.remoteExceptionString = in.readString();
+         return ack;
+      }
+   };
+
 
    public DefaultDistStageAck(int slaveIndex, InetAddress slaveAddress) {
       this.slaveIndex = slaveIndex;
@@ -0,0 +1,188 @@
+package org.radargun.stages;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.radargun.CacheWrapper;
+import org.radargun.DistStageAck;
+import org.radargun.config.Property;
+import org.radargun.config.Stage;
+import org.radargun.features.BulkOperationsCapable;
+import org.radargun.features.IterationCapable;
+import org.radargun.stages.helpers.Range;
+import org.radargun.state.MasterState;
+import org.radargun.stressors.BackgroundOpsManager;
+import org.radargun.utils.SnapshotFile;
+import org.radargun.utils.Utils;
+
+/**
+ * Writes cache entries into a file on the local disk of each slave, so that the same data set can be loaded
+ * by {@link RestoreCacheStage} instead of generating it again. Either the entries stored in this node's memory
+ * are written (the wrapper must be {@link IterationCapable}), or the entries with keys key{number}
+ * that this slave has loaded in {@link BulkLoadStage}.
+ */
+@Stage(doc = "Writes entries from the cache into a file on each slave, these can be loaded by RestoreCache stage.")
+public class DumpCacheStage extends AbstractDistStage {
+
+   @Property(doc = "Directory where the snapshot is written, each slave writes file {name}-{slaveIndex}.bin. " +
+         "Default is the temporary directory.")
+   private String directory;
+
+   @Property(doc = "Name of the snapshot. Default is 'snapshot'.")
+   private String name = "snapshot";
+
+   @Property(doc = "Bucket whose entries are written. By default the bucket of background stressors " +
+         "is used, the same as in BulkLoad and CheckData stages.")
+   private String bucket;
+
+   @Property(doc = "If set, this slave's share of entries with keys key0 .. key{numEntries - 1} is read from the cache " +
+         "(split between slaves as in BulkLoad stage). Otherwise all entries stored on the node are written, " +
+         "including backup copies; this requires support in the wrapper. Default is 0 (not set).")
+   private int numEntries = 0;
+
+   @Property(doc = "Number of entries read in single getAll operation when numEntries is set. Default is 100.")
+   private int batchSize = 100;
+
+   static File getSnapshotFile(String directory, String name, int slaveIndex) {
+      return new File(directory != null ? directory : System.getProperty("java.io.tmpdir"), name + "-" + slaveIndex + ".bin");
+   }
+
+   @Override
+   public DistStageAck executeOnSlave() {
+      DefaultDistStageAck ack = newDefaultStageAck();
+      if (slaves != null && !slaves.contains(getSlaveIndex())) {
+         return ack;
+      }
+      CacheWrapper wrapper = slaveState.getCacheWrapper();
+      if (wrapper == null) {
+         ack.setError(true);
+         ack.setErrorMessage("Cannot dump the cache as the wrapper hasn't been configured.");
+         return ack;
+      }
+      if (numEntries <= 0 && !(wrapper instanceof IterationCapable)) {
+         ack.setError(true);
+         ack.setErrorMessage(wrapper.getClass().getSimpleName() + " cannot iterate over entries, set numEntries to dump entries by keys.");
+         return ack;
+      }
+      File file = getSnapshotFile(directory, name, getSlaveIndex());
+      String bucket = getBucket();
+      log.info("Writing snapshot " + file + " from bucket " + bucket);
+      long start = System.nanoTime();
+      try {
+         SnapshotFile.Writer writer = new SnapshotFile.Writer(file);
+         try {
+            if (numEntries > 0) {
+               dumpKeys(wrapper, bucket, writer);
+            } else {
+               dumpLocalEntries((IterationCapable) wrapper, bucket, writer);
+            }
+         } finally {
+            writer.close();
+         }
+         long duration = System.nanoTime() - start;
+         ack.setPayload(new long[] { writer.getEntries(), file.length(), duration });
+         log.info("Written " + writer.getEntries() + " entries in " + Utils.prettyPrintTime(duration, TimeUnit.NANOSECONDS)
+               + ", " + formatThroughput(writer.getEntries(), file.length(), duration));
+      } catch (Exception e) {
+         log.error("Failed to write snapshot " + file, e);
+         ack.setError(true);
+         ack.setRemoteException(e);
+         ack.setErrorMessage("Failed to write snapshot " + file);
+      }
+      return ack;
+   }
+
+   private void dumpLocalEntries(IterationCapable wrapper, String bucket, SnapshotFile.Writer writer) throws Exception {
+      Iterator<Map.Entry<Object, Object>> iterator = wrapper.localEntries(bucket);
+      while (iterator.hasNext()) {
+         Map.Entry<Object, Object> entry = iterator.next();
+         writer.write(entry.getKey(), entry.getValue());
+      }
+   }
+
+   private void dumpKeys(CacheWrapper wrapper, String bucket, SnapshotFile.Writer writer) throws Exception {
+      List<Integer> dumpingSlaves = getExecutingSlaves();
+      Range range = Range.divideRange(numEntries, dumpingSlaves.size(), dumpingSlaves.indexOf(getSlaveIndex()));
+      BulkOperationsCapable bulkWrapper = wrapper instanceof BulkOperationsCapable && batchSize > 1 ? (BulkOperationsCapable) wrapper : null;
+      long missing = 0;
+      int step = Math.max(batchSize, 1);
+      for (int from = range.getStart(); from < range.getEnd(); from += step) {
+         int to = Math.min(from + step, range.getEnd());
+         if (bulkWrapper != null) {
+            Set<Object> keys = new LinkedHashSet<Object>();
+            for (int i = from; i < to; ++i) {
+               keys.add("key" + i);
+            }
+            Map<Object, Object> values = bulkWrapper.getAll(bucket, keys, false);
+            for (Object key : keys) {
+               Object value = values.get(key);
+               if (value == null) {
+                  missing++;
+               } else {
+                  writer.write(key, value);
+               }
+            }
+         } else {
+            for (int i = from; i < to; ++i) {
+               Object value = wrapper.get(bucket, "key" + i);
+               if (value == null) {
+                  missing++;
+               } else {
+                  writer.write("key" + i, value);
+               }
+            }
+         }
+      }
+      if (missing > 0) {
+         log.warn(missing + " entries from " + range + " were not found in the cache");
+      }
+   }
+
+   @Override
+   public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
+      boolean success = super.processAckOnMaster(acks, masterState);
+      logSnapshotResults(log, "written", acks);
+      return success;
+   }
+
+   static void logSnapshotResults(Log log, String action, List<DistStageAck> acks) {
+      long entries = 0, bytes = 0, duration = 0;
+      for (DistStageAck ack : acks) {
+         long[] result = (long[]) ((DefaultDistStageAck) ack).getPayload();
+         if (result == null) continue;
+         log.info("Slave " + ack.getSlaveIndex() + " " + action + " " + result[0] + " entries (" + result[1] + " bytes), "
+               + formatThroughput(result[0], result[1], result[2]));
+         entries += result[0];
+         bytes += result[1];
+         duration = Math.max(duration, result[2]);
+      }
+      log.info("Cluster " + action + " " + entries + " entries in " + Utils.prettyPrintTime(duration, TimeUnit.NANOSECONDS)
+            + ", " + formatThroughput(entries, bytes, duration));
+   }
+
+   private static String formatThroughput(long entries, long bytes, long durationNanos) {
+      double seconds = Math.max(durationNanos, 1) / 1000000000d;
+      return String.format("%.0f entries/s, %.2f MB/s", entries / seconds, bytes / (1024d * 1024d) / seconds);
+   }
+
+   private String getBucket() {
+      return bucket != null ? bucket : BackgroundOpsManager.getBucketId(slaveState);
+   }
+
+   private List<Integer> getExecutingSlaves() {
+      List<Integer> executingSlaves = new ArrayList<Integer>();
+      for (int i = 0; i < getActiveSlaveCount(); ++i) {
+         if (slaves == null || slaves.contains(i)) {
+            executingSlaves.add(i);
+         }
+      }
+      return executingSlaves;
+   }
+}
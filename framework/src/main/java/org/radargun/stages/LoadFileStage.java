@@ -23,8 +23,16 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.radargun.CacheWrapper;
@@ -32,6 +40,7 @@ import org.radargun.DistStageAck;
 import org.radargun.config.Property;
 import org.radargun.config.Stage;
 import org.radargun.state.MasterState;
+import org.radargun.stressors.LogLinearHistogram;
 import org.radargun.utils.Utils;
 
 /**
@@ -43,6 +52,13 @@ import org.radargun.utils.Utils;
 @Stage(doc = "Loads the contents of a file into the cache.")
 public class LoadFileStage extends AbstractDistStage {
 
+   private static final String PUTS = "PUTS";
+   private static final String BYTES = "BYTES";
+   private static final String DURATION = "DURATION";
+   private static final String PUT_LATENCY = "PUT_LATENCY";
+   /* Memory-mapped mode maps the file in regions of this size */
+   private static final long MAPPED_REGION_SIZE = 256 * 1024 * 1024;
+
    @Property(optional = false, doc = "Full pathname to the file.")
    private String filePath;
 
@@ -59,28 +75,61 @@ public class LoadFileStage extends AbstractDistStage {
    @Property(doc = "If true, then String objects are written to the cache. The default is false")
    private boolean stringData = false;
 
+   @Property(doc = "If true, the file is memory-mapped and the values are copied directly from the mapped regions, " +
+         "instead of reading it sequentially. The keys are the same in both modes. The default is false")
+   private boolean memoryMapped = false;
+
+   @Property(doc = "Number of threads loading the file on each slave in the memory-mapped mode. The default is 1")
+   private int numThreads = 1;
+
    @Override
    public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
-      super.processAckOnMaster(acks, masterState);
+      boolean success = super.processAckOnMaster(acks, masterState);
       long fileSize = new File(filePath).length();
       log.info("--------------------");
       log.info("Size of file '" + filePath + "' is " + fileSize + " bytes");
       log.info("Value size is '" + valueSize + "' which will produce " + (int) Math.ceil((double) fileSize / valueSize)
             + " keys");
+      long totalBytes = 0, maxDuration = 0;
+      LogLinearHistogram latencies = null;
       for (DistStageAck ack : acks) {
-         long[] result = (long[]) ((DefaultDistStageAck) ack).getPayload();
-         log.info("Slave " + ((DefaultDistStageAck) ack).getSlaveIndex() + " wrote " + result[0]
-               + " values to the cache with a total size of " + result[1] + " bytes");
+         Map<String, Object> result = (Map<String, Object>) ((DefaultDistStageAck) ack).getPayload();
+         if (result == null) continue;
+         long bytes = (Long) result.get(BYTES);
+         long duration = (Long) result.get(DURATION);
+         log.info("Slave " + ack.getSlaveIndex() + " wrote " + result.get(PUTS)
+               + " values to the cache with a total size of " + bytes + " bytes, " + formatThroughput(bytes, duration));
+         totalBytes += bytes;
+         maxDuration = Math.max(maxDuration, duration);
+         if (latencies == null) {
+            latencies = ((LogLinearHistogram) result.get(PUT_LATENCY)).copy();
+         } else {
+            latencies.merge((LogLinearHistogram) result.get(PUT_LATENCY));
+         }
+      }
+      log.info("All slaves wrote " + totalBytes + " bytes in " + Utils.prettyPrintTime(maxDuration, TimeUnit.NANOSECONDS)
+            + ", " + formatThroughput(totalBytes, maxDuration));
+      if (latencies != null && latencies.getTotalCount() > 0) {
+         log.info(String.format("Put latency: 50%% %.3f ms, 90%% %.3f ms, 99%% %.3f ms, 99.9%% %.3f ms, max %.3f ms",
+               toMillis(latencies.getValueAtPercentile(50)), toMillis(latencies.getValueAtPercentile(90)),
+               toMillis(latencies.getValueAtPercentile(99)), toMillis(latencies.getValueAtPercentile(99.9)),
+               toMillis(latencies.getMax())));
       }
       log.info("--------------------");
-      return true;
+      return success;
+   }
+
+   private static String formatThroughput(long bytes, long durationNanos) {
+      return String.format("%.2f MB/s", bytes / (1024d * 1024d) / (Math.max(durationNanos, 1) / 1000000000d));
+   }
+
+   private static double toMillis(long nanos) {
+      return nanos / 1000000d;
    }
 
    @Override
    public DistStageAck executeOnSlave() {
       DefaultDistStageAck result = newDefaultStageAck();
-      int totalWriters = getActiveSlaveCount();
-      long fileOffset = valueSize * getSlaveIndex();// index starts at 0
       CacheWrapper cacheWrapper = slaveState.getCacheWrapper();
 
       if (cacheWrapper == null) {
@@ -89,10 +138,29 @@ public class LoadFileStage extends AbstractDistStage {
          return result;
       }
 
+      try {
+         long start = System.nanoTime();
+         PutStatistics statistics = memoryMapped ? loadMapped(cacheWrapper) : load(cacheWrapper);
+         result.setPayload(statistics.toPayload(System.nanoTime() - start));
+      } catch (FileNotFoundException e) {
+         log.fatal("File not find at path: " + filePath, e);
+         result.setError(true);
+         result.setErrorMessage("File not find at path: " + filePath);
+      } catch (Exception e) {
+         log.fatal("An exception occurred", e);
+         result.setError(true);
+         result.setErrorMessage("An exception occurred");
+      }
+      return result;
+   }
+
+   private PutStatistics load(CacheWrapper cacheWrapper) throws Exception {
+      int totalWriters = getActiveSlaveCount();
+      long fileOffset = valueSize * getSlaveIndex();// index starts at 0
+      PutStatistics statistics = new PutStatistics();
+
       RandomAccessFile file = null;
       FileChannel fileChannel = null;
-      long totalBytesRead = 0;
-      long putCount = 0;
 
       try {
          file = new RandomAccessFile(filePath, "r");
@@ -114,8 +182,7 @@ public class LoadFileStage extends AbstractDistStage {
                      bytesRead += readBytes;
                   }
                }
-               totalBytesRead += bytesRead;
-               if (putCount % 5000 == 0) {
+               if (statistics.puts % 5000 == 0) {
                   log.info("Writing " + bytesRead + " bytes to cache key: " + key + " at position "
                         + fileChannel.position());
                }
@@ -128,11 +195,7 @@ public class LoadFileStage extends AbstractDistStage {
                } else {
                   cacheWrapper.put(bucket, key, buffer.array());
                }
-               if (printWriteStatistics) {
-                  log.info("Put on slave-" + this.getSlaveIndex() + " took "
-                        + Utils.prettyPrintTime(System.nanoTime() - start, TimeUnit.NANOSECONDS));
-               }
-               putCount++;
+               statistics.record(System.nanoTime() - start, bytesRead);
                fileChannel.position(initPos + (valueSize * totalWriters));
                buffer.clear();
             } else {
@@ -141,15 +204,7 @@ public class LoadFileStage extends AbstractDistStage {
                break;
             }
          }
-         result.setPayload(new long[] { putCount, totalBytesRead });
-      } catch (FileNotFoundException e) {
-         log.fatal("File not find at path: " + filePath, e);
-         result.setError(true);
-         result.setErrorMessage("File not find at path: " + filePath);
-      } catch (Exception e) {
-         log.fatal("An exception occurred", e);
-         result.setError(true);
-         result.setErrorMessage("An exception occurred");
+         return statistics;
       } finally {
          if (file != null) {
             try {
@@ -159,7 +214,115 @@ public class LoadFileStage extends AbstractDistStage {
             }
          }
       }
+   }
 
-      return result;
+   private PutStatistics loadMapped(CacheWrapper cacheWrapper) throws Exception {
+      RandomAccessFile file = new RandomAccessFile(filePath, "r");
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      try {
+         FileChannel fileChannel = file.getChannel();
+         long fileSize = fileChannel.size();
+         long totalChunks = (fileSize + valueSize - 1) / valueSize;
+         int totalWriters = getActiveSlaveCount();
+         // chunks are assigned to slaves round-robin, as in the sequential mode
+         long slaveChunks = totalChunks > getSlaveIndex() ? (totalChunks - getSlaveIndex() + totalWriters - 1) / totalWriters : 0;
+         log.info("Loading " + slaveChunks + " values from memory-mapped file using " + numThreads + " threads");
+
+         List<Callable<PutStatistics>> tasks = new ArrayList<Callable<PutStatistics>>(numThreads);
+         for (int i = 0; i < numThreads; ++i) {
+            tasks.add(new MappedLoadTask(cacheWrapper, fileChannel, fileSize,
+                  slaveChunks * i / numThreads, slaveChunks * (i + 1) / numThreads));
+         }
+         PutStatistics statistics = new PutStatistics();
+         for (Future<PutStatistics> future : executor.invokeAll(tasks)) {
+            statistics.merge(future.get());
+         }
+         return statistics;
+      } finally {
+         executor.shutdown();
+         file.close();
+      }
+   }
+
+   /**
+    * Loads a contiguous region of this slave's chunks.
+    */
+   private class MappedLoadTask implements Callable<PutStatistics> {
+      private final CacheWrapper cacheWrapper;
+      private final FileChannel fileChannel;
+      private final long fileSize;
+      private final long fromChunk;
+      private final long toChunk;
+
+      private MappedLoadTask(CacheWrapper cacheWrapper, FileChannel fileChannel, long fileSize, long fromChunk, long toChunk) {
+         this.cacheWrapper = cacheWrapper;
+         this.fileChannel = fileChannel;
+         this.fileSize = fileSize;
+         this.fromChunk = fromChunk;
+         this.toChunk = toChunk;
+      }
+
+      @Override
+      public PutStatistics call() throws Exception {
+         PutStatistics statistics = new PutStatistics();
+         MappedByteBuffer region = null;
+         long regionStart = 0, regionEnd = 0;
+         for (long chunk = fromChunk; chunk < toChunk; ++chunk) {
+            long position = (getSlaveIndex() + chunk * getActiveSlaveCount()) * valueSize;
+            int length = (int) Math.min(valueSize, fileSize - position);
+            if (region == null || position + length > regionEnd) {
+               regionStart = position;
+               regionEnd = Math.min(fileSize, position + Math.max(MAPPED_REGION_SIZE, valueSize));
+               region = fileChannel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionEnd - regionStart);
+            }
+            ByteBuffer slice = region.duplicate();
+            slice.position((int) (position - regionStart));
+            slice.limit(slice.position() + length);
+            // the data are copied from the page cache only here
+            Object value;
+            if (stringData) {
+               value = slice.asCharBuffer().toString();
+            } else {
+               byte[] bytes = new byte[length];
+               slice.get(bytes);
+               value = bytes;
+            }
+            String key = Integer.toString(getSlaveIndex()) + "-" + Long.toString(position);
+            long start = System.nanoTime();
+            cacheWrapper.put(bucket, key, value);
+            statistics.record(System.nanoTime() - start, length);
+         }
+         return statistics;
+      }
+   }
+
+   private class PutStatistics {
+      long puts;
+      long bytes;
+      final LogLinearHistogram latencies = new LogLinearHistogram(TimeUnit.HOURS.toNanos(1), 3);
+
+      void record(long latency, int size) {
+         if (printWriteStatistics) {
+            log.info("Put on slave-" + getSlaveIndex() + " took " + Utils.prettyPrintTime(latency, TimeUnit.NANOSECONDS));
+         }
+         puts++;
+         bytes += size;
+         latencies.record(latency);
+      }
+
+      void merge(PutStatistics other) {
+         puts += other.puts;
+         bytes += other.bytes;
+         latencies.merge(other.latencies);
+      }
+
+      Map<String, Object> toPayload(long duration) {
+         Map<String, Object> payload = new HashMap<String, Object>();
+         payload.put(PUTS, puts);
+         payload.put(BYTES, bytes);
+         payload.put(DURATION, duration);
+         payload.put(PUT_LATENCY, latencies);
+         return payload;
+      }
    }
 }
@@ -0,0 +1,36 @@
+package org.radargun.stages;
+
+import java.util.Map;
+
+import org.radargun.config.Property;
+import org.radargun.config.PropertyHelper;
+import org.radargun.config.Stage;
+import org.radargun.config.TimeConverter;
+import org.radargun.stressors.LogicalClientStressor;
+
+/**
+ * Executes the StressTest logic for many logical clients (sessions) multiplexed on numThreads threads.
+ */
+@Stage(doc = "Executes the StressTest logic on behalf of many logical clients (e.g. web sessions), " +
+      "multiplexed on a small number of threads.")
+public class LogicalClientStressTestStage extends StressTestStage {
+
+   @Property(doc = "Total number of simulated clients on each slave. Each client operates on its own set " +
+         "of numEntries keys. Default is 1000.")
+   private int numClients = 1000;
+
+   @Property(converter = TimeConverter.class, doc = "Mean time between two transactions (transactionSize requests) " +
+         "of one client. The actual think time is exponentially distributed. Default is 0 (no think time).")
+   private long thinkTime = 0;
+
+   @Override
+   protected Map<String, Object> doWork() {
+      log.info("Starting " + getClass().getSimpleName() + ": " + this);
+      LogicalClientStressor stressor = new LogicalClientStressor();
+      stressor.setNodeIndex(getSlaveIndex(), getActiveSlaveCount());
+      stressor.setDurationMillis(duration);
+      setupStatistics(stressor);
+      PropertyHelper.copyProperties(this, stressor);
+      return runStressor(stressor);
+   }
+}
@@ -0,0 +1,175 @@
+package org.radargun.stages;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.radargun.DistStage;
+import org.radargun.DistStageAck;
+import org.radargun.ProgressReportingStage;
+import org.radargun.StageProgress;
+import org.radargun.state.MasterState;
+import org.radargun.state.SlaveState;
+
+/**
+ * Group of distributed stages that are executed concurrently, each of them on its own disjoint set of slaves
+ * (defined by the <code>slaves</code> property of the stage). Slaves that are not listed in any stage
+ * just acknowledge the group. The group finishes when all slaves have finished their stage; then the acks
+ * are split and each stage processes the acks from its slaves only.
+ *
+ * Configured as the <code>Parallel</code> element in the benchmark, this is not a regular stage.
+ * If any stage of the group requests repeating, the whole group is repeated. Abort requested by one stage
+ * aborts all progress reporting stages in the group.
+ */
+public class ParallelStage extends AbstractDistStage implements ProgressReportingStage {
+
+   private List<AbstractDistStage> stages = new ArrayList<AbstractDistStage>();
+
+   /* Stage executed on this slave, set only in the copies sent to slaves */
+   private AbstractDistStage assigned;
+
+   public void addStage(DistStage stage) {
+      if (!(stage instanceof AbstractDistStage)) {
+         throw new IllegalArgumentException("Only distributed stages can be executed in parallel, found " + stage);
+      }
+      Collection<Integer> stageSlaves = ((AbstractDistStage) stage).slaves;
+      if (stageSlaves == null || stageSlaves.isEmpty()) {
+         throw new IllegalArgumentException("Stage " + stage.getClass().getSimpleName() + " executed in parallel must define slaves");
+      }
+      for (AbstractDistStage other : stages) {
+         for (Integer slave : stageSlaves) {
+            if (other.slaves.contains(slave)) {
+               throw new IllegalArgumentException("Slave " + slave + " is used by both " + other.getClass().getSimpleName()
+                     + " and " + stage.getClass().getSimpleName() + ", parallel stages must run on disjoint slaves");
+            }
+         }
+      }
+      stages.add((AbstractDistStage) stage);
+   }
+
+   public List<AbstractDistStage> getStages() {
+      return stages;
+   }
+
+   @Override
+   public void setActiveSlavesCount(int activeSlaves) {
+      super.setActiveSlavesCount(activeSlaves);
+      // master's instances of the stages use the count when processing the acks
+      for (AbstractDistStage stage : stages) {
+         stage.setActiveSlavesCount(activeSlaves);
+      }
+   }
+
+   @Override
+   public boolean isExitBenchmarkOnSlaveFailure() {
+      if (super.isExitBenchmarkOnSlaveFailure()) return true;
+      for (AbstractDistStage stage : stages) {
+         if (stage.isExitBenchmarkOnSlaveFailure()) return true;
+      }
+      return false;
+   }
+
+   @Override
+   public void initOnMaster(MasterState masterState, int slaveIndex) {
+      super.initOnMaster(masterState, slaveIndex);
+      for (AbstractDistStage stage : stages) {
+         if (stage.slaves.contains(slaveIndex)) {
+            assigned = (AbstractDistStage) stage.clone();
+            assigned.setActiveSlavesCount(getActiveSlaveCount());
+            assigned.initOnMaster(masterState, slaveIndex);
+         } else if (slaveIndex == 0) {
+            for (Integer slave : stage.slaves) {
+               if (slave >= getActiveSlaveCount()) {
+                  log.warn(String.format("%s won't be executed on slave %d, only %d slaves are active",
+                        stage.getClass().getSimpleName(), slave, getActiveSlaveCount()));
+               }
+            }
+         }
+      }
+      // the slave needs only its own stage
+      stages = new ArrayList<AbstractDistStage>();
+   }
+
+   @Override
+   public void initOnSlave(SlaveState slaveState) {
+      super.initOnSlave(slaveState);
+      if (assigned != null) {
+         assigned.initOnSlave(slaveState);
+      }
+   }
+
+   public DistStageAck executeOnSlave() {
+      if (assigned == null) {
+         log.info("No stage of the parallel group is executed on slave " + getSlaveIndex());
+         return newDefaultStageAck();
+      }
+      log.info("Executing " + assigned.getClass().getSimpleName() + " of the parallel group: " + assigned);
+      return assigned.executeOnSlave();
+   }
+
+   @Override
+   public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
+      logDurationInfo(acks);
+      boolean success = true;
+      Set<Integer> processed = new HashSet<Integer>();
+      for (AbstractDistStage stage : stages) {
+         List<DistStageAck> stageAcks = new ArrayList<DistStageAck>();
+         for (DistStageAck ack : acks) {
+            if (stage.slaves.contains(ack.getSlaveIndex())) {
+               stageAcks.add(ack);
+               processed.add(ack.getSlaveIndex());
+            }
+         }
+         log.info("Processing " + stageAcks.size() + " acks of " + stage.getClass().getSimpleName());
+         if (!stage.processAckOnMaster(stageAcks, masterState)) {
+            log.warn(stage.getClass().getSimpleName() + " executed in parallel has failed");
+            success = false;
+         }
+      }
+      for (DistStageAck ack : acks) {
+         if (!processed.contains(ack.getSlaveIndex()) && ((DefaultDistStageAck) ack).isError()) {
+            log.warn("Received error ack " + ack);
+            success = false;
+         }
+      }
+      return success;
+   }
+
+   public void setProgressReporter(Reporter reporter) {
+      if (assigned instanceof ProgressReportingStage) {
+         ((ProgressReportingStage) assigned).setProgressReporter(reporter);
+      }
+   }
+
+   public boolean processProgressOnMaster(StageProgress progress, MasterState masterState) {
+      for (AbstractDistStage stage : stages) {
+         if (stage.slaves.contains(progress.getSlaveIndex()) && stage instanceof ProgressReportingStage) {
+            return ((ProgressReportingStage) stage).processProgressOnMaster(progress, masterState);
+         }
+      }
+      return true;
+   }
+
+   public void abortOnSlave(String reason) {
+      if (assigned instanceof ProgressReportingStage) {
+         ((ProgressReportingStage) assigned).abortOnSlave(reason);
+      }
+   }
+
+   @Override
+   public ParallelStage clone() {
+      ParallelStage clone = (ParallelStage) super.clone();
+      clone.stages = new ArrayList<AbstractDistStage>(stages.size());
+      for (AbstractDistStage stage : stages) {
+         clone.stages.add((AbstractDistStage) stage.clone());
+      }
+      return clone;
+   }
+
+   @Override
+   public String toString() {
+      return "Parallel " + (assigned != null ? "{ " + assigned + " }" : stages.toString());
+   }
+}
@@ -18,7 +18,6 @@
  */
 package org.radargun.stages;
 
-import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +28,7 @@ import org.radargun.config.Property;
 import org.radargun.config.Stage;
 import org.radargun.state.MasterState;
 import org.radargun.state.SlaveState;
+import org.radargun.utils.TextCorpus;
 import org.radargun.utils.Utils;
 
 /**
@@ -38,12 +38,15 @@ import org.radargun.utils.Utils;
  * values will be divided by the return value of <code>getActiveSlaveCount()</code>. To generate
  * data based on the amount of available RAM, specify the valueSize and ramPercentage parameters.
  * The amount of free memory on each node will be calculated and then used to determine the number
- * of values that are written by the node.
+ * of values that are written by the node. String values are copied from a text generated from the seed,
+ * with word frequencies following Zipf's law.
  * 
  * @author Alan Field &lt;afield@redhat.com&gt;
  */
 @Stage(doc = "Generates random data to fill the cache.")
 public class RandomDataStage extends AbstractDistStage {
+   private static final int CORPUS_SIZE = 16 * 1024 * 1024;
+
    private long nodeCount;
 
    @Property(doc = "The seed to use for the java.util.Random object. "
@@ -72,7 +75,15 @@ public class RandomDataStage extends AbstractDistStage {
    @Property(doc = "If true, then the time for each put operation is written to the logs. " + "The default is false")
    private boolean printWriteStatistics = false;
 
+   @Property(doc = "The number of distinct words in the text used for String values. The default is 10000.")
+   private int vocabularySize = 10000;
+
+   @Property(doc = "The exponent of Zipf's distribution of word frequencies in the text used for String values. "
+         + "Zero means that all words are equally frequent. The default is 1.")
+   private double zipfExponent = 1;
+
    private Random random;
+   private TextCorpus corpus;
 
    @Override
    public void initOnSlave(SlaveState slaveState) {
@@ -103,6 +114,14 @@ public class RandomDataStage extends AbstractDistStage {
          return result;
       }
 
+      if (stringData) {
+         long start = System.nanoTime();
+         // the text is the same on all slaves
+         corpus = new TextCorpus(randomSeed, vocabularySize, zipfExponent, CORPUS_SIZE);
+         log.info("Generated text of " + corpus.getSize() + " bytes with " + vocabularySize + " distinct words in "
+               + Utils.prettyPrintTime(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+      }
+
       if (ramPercentage > 0) {
          System.gc();
          nodeCount = (long) Math.ceil(Runtime.getRuntime().freeMemory() * this.ramPercentage / this.valueSize);
@@ -128,11 +147,11 @@ public class RandomDataStage extends AbstractDistStage {
                log.info(putCount + ": Writing " + valueSize + " bytes to cache key: " + key);
             }
 
-            buffer = generateRandomData(valueSize, stringData);
+            buffer = generateRandomData(buffer, stringData);
 
             long start = System.nanoTime();
             if (stringData) {
-               String cacheData = new String(buffer);
+               String cacheData = new String(buffer, TextCorpus.CHARSET);
                start = System.nanoTime();
                cacheWrapper.put(bucket, key, cacheData);
             } else {
@@ -156,71 +175,16 @@ public class RandomDataStage extends AbstractDistStage {
       return result;
    }
 
-   private byte[] generateRandomData(int dataSize, boolean useChars) {
-      byte[] buffer = null;
+   private byte[] generateRandomData(byte[] buffer, boolean useChars) {
       if (useChars) {
-         /*
-          * Generate a random string of "words" using random single and multi-byte characters that
-          * are separated by punctuation marks and whitespace.
-          */
-         String punctuationChars = "!,.;?";
-
-         ByteBuffer data = ByteBuffer.allocate(dataSize);
-         int remainingBytes = dataSize;
-         int maxWordLength = 20;
-         while (remainingBytes > 0) {
-            byte[] word = this.generateRandomWord(maxWordLength);
-            data = data.put(word);
-            remainingBytes -= word.length;
-
-            if (remainingBytes >= 2 && random.nextInt() % 5 == 0 && random.nextBoolean()) {
-               data.put((byte) punctuationChars.charAt(random.nextInt(punctuationChars.length() - 1)));
-               data.put((byte) '\n');
-               remainingBytes -= 2;
-            } else {
-               if (remainingBytes >= 1) {
-                  data.put((byte) ' ');
-                  remainingBytes--;
-               }
-            }
-
-            if (remainingBytes < maxWordLength) {
-               maxWordLength = remainingBytes;
-            }
-         }
-
-         buffer = data.array();
+         // the String copies the data, the buffer can be reused
+         corpus.fill(buffer, random);
+         return buffer;
       } else {
-         buffer = new byte[dataSize];
-         random.nextBytes(buffer);
+         byte[] data = new byte[buffer.length];
+         random.nextBytes(data);
+         return data;
       }
-      return buffer;
-   }
-
-   /**
-    * 
-    * Generate a "word" made up of random single and multi-byte characters
-    * 
-    * @param maxBytes
-    *           the maximum length in bytes of the word
-    * @return the word as an array of bytes which may be less than maxBytes
-    */
-   private byte[] generateRandomWord(int maxBytes) {
-      String singleByteChars = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
-      String multiByteChars = "ÅÄÇÉÑÖÕÜàäâáãçëèêéîïìíñôöòóüûùúÿ";
-      StringBuilder data = new StringBuilder();
-
-      int byteLength = random.nextInt(maxBytes);
-      for (int i = byteLength; i > 0; i--) {
-         if (random.nextBoolean() || i == 1) {
-            data.append(singleByteChars.charAt(random.nextInt(singleByteChars.length() - 1)));
-         } else {
-            data.append(multiByteChars.charAt(random.nextInt(multiByteChars.length() - 1)));
-            i--;
-         }
-      }
-
-      return data.toString().getBytes();
    }
 
    @Override
@@ -0,0 +1,161 @@
+package org.radargun.stages;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.radargun.CacheWrapper;
+import org.radargun.DistStageAck;
+import org.radargun.config.Property;
+import org.radargun.config.Stage;
+import org.radargun.features.BulkOperationsCapable;
+import org.radargun.state.MasterState;
+import org.radargun.stressors.BackgroundOpsManager;
+import org.radargun.utils.SnapshotFile;
+import org.radargun.utils.Utils;
+
+/**
+ * Loads entries written by {@link DumpCacheStage} from the file on the local disk of each slave. The file is read
+ * sequentially by single thread, the entries are inserted in batches by multiple threads.
+ */
+@Stage(doc = "Loads entries from a file written by DumpCache stage on each slave into the cache.")
+public class RestoreCacheStage extends AbstractDistStage {
+
+   @Property(doc = "Directory with the snapshot, each slave reads file {name}-{slaveIndex}.bin. " +
+         "Default is the temporary directory.")
+   private String directory;
+
+   @Property(doc = "Name of the snapshot. Default is 'snapshot'.")
+   private String name = "snapshot";
+
+   @Property(doc = "Bucket where the entries are inserted. By default the bucket of background stressors " +
+         "is used, the same as in BulkLoad and CheckData stages.")
+   private String bucket;
+
+   @Property(doc = "Number of entries inserted in single putAll operation. Wrappers that do not support bulk operations " +
+         "insert the entries one by one. Default is 100.")
+   private int batchSize = 100;
+
+   @Property(doc = "Number of threads inserting the entries on each slave. Default is 4.")
+   private int numThreads = 4;
+
+   @Override
+   public DistStageAck executeOnSlave() {
+      DefaultDistStageAck ack = newDefaultStageAck();
+      if (slaves != null && !slaves.contains(getSlaveIndex())) {
+         return ack;
+      }
+      CacheWrapper wrapper = slaveState.getCacheWrapper();
+      if (wrapper == null) {
+         ack.setError(true);
+         ack.setErrorMessage("Cannot restore the cache as the wrapper hasn't been configured.");
+         return ack;
+      }
+      File file = DumpCacheStage.getSnapshotFile(directory, name, getSlaveIndex());
+      String bucket = getBucket();
+      log.info("Restoring snapshot " + file + " into bucket " + bucket + " using " + numThreads + " threads");
+      // limits the number of batches read ahead
+      Semaphore pendingBatches = new Semaphore(2 * numThreads);
+      AtomicLong failed = new AtomicLong();
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      long entries = 0;
+      long start = System.nanoTime();
+      try {
+         SnapshotFile.Reader reader = new SnapshotFile.Reader(file);
+         try {
+            int step = Math.max(batchSize, 1);
+            Map<Object, Object> batch = new HashMap<Object, Object>();
+            while (reader.next()) {
+               batch.put(reader.getKey(), reader.getValue());
+               entries++;
+               if (batch.size() >= step) {
+                  pendingBatches.acquire();
+                  executor.execute(new PutTask(wrapper, bucket, batch, pendingBatches, failed));
+                  batch = new HashMap<Object, Object>();
+               }
+            }
+            if (!batch.isEmpty()) {
+               pendingBatches.acquire();
+               executor.execute(new PutTask(wrapper, bucket, batch, pendingBatches, failed));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+         } finally {
+            executor.shutdownNow();
+            reader.close();
+         }
+      } catch (Exception e) {
+         log.error("Failed to restore snapshot " + file, e);
+         ack.setError(true);
+         ack.setRemoteException(e);
+         ack.setErrorMessage("Failed to restore snapshot " + file);
+         return ack;
+      }
+      long duration = System.nanoTime() - start;
+      ack.setPayload(new long[] { entries - failed.get(), file.length(), duration });
+      log.info("Restored " + entries + " entries in " + Utils.prettyPrintTime(duration, TimeUnit.NANOSECONDS));
+      if (failed.get() > 0) {
+         ack.setError(true);
+         ack.setErrorMessage("Failed to restore " + failed.get() + " entries");
+      }
+      return ack;
+   }
+
+   @Override
+   public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
+      boolean success = super.processAckOnMaster(acks, masterState);
+      DumpCacheStage.logSnapshotResults(log, "restored", acks);
+      return success;
+   }
+
+   private String getBucket() {
+      return bucket != null ? bucket : BackgroundOpsManager.getBucketId(slaveState);
+   }
+
+   private class PutTask implements Runnable {
+      private final CacheWrapper wrapper;
+      private final String bucket;
+      private final Map<Object, Object> batch;
+      private final Semaphore pendingBatches;
+      private final AtomicLong failed;
+
+      private PutTask(CacheWrapper wrapper, String bucket, Map<Object, Object> batch, Semaphore pendingBatches, AtomicLong failed) {
+         this.wrapper = wrapper;
+         this.bucket = bucket;
+         this.batch = batch;
+         this.pendingBatches = pendingBatches;
+         this.failed = failed;
+      }
+
+      @Override
+      public void run() {
+         try {
+            if (wrapper instanceof BulkOperationsCapable && batchSize > 1) {
+               try {
+                  ((BulkOperationsCapable) wrapper).putAll(bucket, batch, false);
+               } catch (Exception e) {
+                  log.error("Failed to insert " + batch.size() + " entries", e);
+                  failed.addAndGet(batch.size());
+               }
+            } else {
+               for (Map.Entry<Object, Object> entry : batch.entrySet()) {
+                  try {
+                     wrapper.put(bucket, entry.getKey(), entry.getValue());
+                  } catch (Exception e) {
+                     log.error("Failed to insert entry " + entry.getKey(), e);
+                     failed.incrementAndGet();
+                  }
+               }
+            }
+         } finally {
+            pendingBatches.release();
+         }
+      }
+   }
+}
@@ -0,0 +1,251 @@
+package org.radargun.stages;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.radargun.DistStageAck;
+import org.radargun.config.Property;
+import org.radargun.config.PropertyHelper;
+import org.radargun.config.Stage;
+import org.radargun.state.MasterState;
+import org.radargun.stressors.LogLinearHistogramStatistics;
+import org.radargun.stressors.MultiStatistics;
+import org.radargun.stressors.Operation;
+import org.radargun.stressors.SimpleStatistics;
+import org.radargun.stressors.Statistics;
+import org.radargun.stressors.StressTestStressor;
+
+import static org.radargun.utils.Utils.numberFormat;
+
+/**
+ * Binary search for the highest load that the cluster sustains within given response time and error rate limits.
+ * Each step of the search is one execution of the stress test on all slaves with the same load; the master
+ * evaluates the results and schedules the stage again with another load until the interval between the highest
+ * sustainable and lowest unsustainable load is narrower than the precision.
+ */
+@Stage(doc = "Searches for the maximum throughput that does not violate response time percentile and error rate " +
+      "limits, by repeating the stress test with number of threads or target request rate chosen by binary search.")
+public class SaturationSearchStage extends StressTestStage {
+
+   public static final String LOAD = "LOAD";
+   public static final String MAX_SUSTAINABLE_LOAD = "MAX_SUSTAINABLE_LOAD";
+   public static final String MAX_SUSTAINABLE_REQ_PER_SEC = "MAX_SUSTAINABLE_REQ_PER_SEC";
+
+   public enum LoadType {
+      /* Number of threads on each slave executing requests back-to-back */
+      THREADS,
+      /* Target rate of requests on each slave (open-loop), numThreads is used */
+      REQUESTS_PER_SECOND
+   }
+
+   @Property(doc = "What is altered in order to change the load: THREADS or REQUESTS_PER_SECOND (each slave). " +
+         "Default is THREADS.")
+   private LoadType searchBy = LoadType.THREADS;
+
+   @Property(doc = "Lowest load that is tried. Default is 1.")
+   private int minLoad = 1;
+
+   @Property(optional = false, doc = "Highest load that is tried.")
+   private int maxLoad;
+
+   @Property(doc = "The search stops when the difference between the highest sustainable and lowest unsustainable " +
+         "load is at most this value. Default is 1.")
+   private int precision = 1;
+
+   @Property(doc = "Percentile of response times that is checked against maxResponseTime. Default is 99.")
+   private double percentile = 99;
+
+   @Property(optional = false, doc = "Maximum response time (in milliseconds) on given percentile.")
+   private double maxResponseTime;
+
+   @Property(doc = "Maximum percentage of failed requests. Default is 1%.")
+   private double maxErrorRate = 1;
+
+   @Property(doc = "When searching by REQUESTS_PER_SECOND, the load is not sustainable if the achieved throughput " +
+         "is lower than this ratio of the target rate. Default is 0.95.")
+   private double minThroughputRatio = 0.95;
+
+   /* Search state, kept on master between the steps */
+   private int currentLoad = -1;
+   private int highestSustainable = -1;
+   private int lowestUnsustainable = -1;
+   private int step = 0;
+   private transient Map<Integer, Map<String, Object>> searchResults;
+   private transient Map<Integer, Double> sustainableThroughput;
+
+   @Override
+   protected Map<String, Object> doWork() {
+      int load = currentLoad < 0 ? minLoad : currentLoad;
+      log.info("Starting " + getClass().getSimpleName() + " step " + step + " with " + searchBy + " = " + load + ": " + this);
+      StressTestStressor stressor = new StressTestStressor();
+      stressor.setNodeIndex(getSlaveIndex(), getActiveSlaveCount());
+      stressor.setDurationMillis(duration);
+      stressor.setStatisticsPrototype(new MultiStatistics(new SimpleStatistics(),
+            new LogLinearHistogramStatistics(histogramSignificantDigits, new double[] { percentile })));
+      PropertyHelper.copyProperties(this, stressor);
+      if (searchBy == LoadType.THREADS) {
+         stressor.setNumThreads(load);
+      } else {
+         stressor.setRequestsPerSecond(load);
+      }
+      return runStressor(stressor);
+   }
+
+   @Override
+   public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
+      logDurationInfo(acks);
+      int load = currentLoad < 0 ? minLoad : currentLoad;
+      if (searchResults == null) {
+         searchResults = new TreeMap<Integer, Map<String, Object>>();
+      }
+      boolean sustainable = true;
+      double clusterThroughput = 0;
+      Map<Integer, Double> stepThroughput = new HashMap<Integer, Double>();
+      for (DistStageAck ack : acks) {
+         DefaultDistStageAck wAck = (DefaultDistStageAck) ack;
+         if (wAck.isError()) {
+            log.warn("Received error ack: " + wAck);
+            finishLiveStatistics();
+            resetSearch();
+            return false;
+         }
+         Map<String, Object> stepResult = (Map<String, Object>) wAck.getPayload();
+         if (stepResult == null) {
+            log.trace("No report received from slave: " + ack.getSlaveIndex());
+            continue;
+         }
+         double reqPerSec = toDouble(stepResult.get(Statistics.REQ_PER_SEC));
+         double responseTime = getWorstResponseTime(stepResult) / Statistics.NS_IN_MS;
+         double requests = getRequests(stepResult);
+         double errorRate = requests > 0 ? 100 * toDouble(stepResult.get(Statistics.FAILURES)) / requests : 0;
+         clusterThroughput += reqPerSec;
+         stepThroughput.put(ack.getSlaveIndex(), reqPerSec);
+         log.info(String.format("Slave #%d: %s requests per second, %s ms response time at %s percentile, %s%% errors",
+               ack.getSlaveIndex(), numberFormat(reqPerSec), numberFormat(responseTime), numberFormat(percentile),
+               numberFormat(errorRate)));
+         if (responseTime > maxResponseTime) {
+            log.info("Slave #" + ack.getSlaveIndex() + " exceeded maximum response time " + maxResponseTime + " ms");
+            sustainable = false;
+         }
+         if (errorRate > maxErrorRate) {
+            log.info("Slave #" + ack.getSlaveIndex() + " exceeded maximum error rate " + maxErrorRate + "%");
+            sustainable = false;
+         }
+         if (searchBy == LoadType.REQUESTS_PER_SECOND && reqPerSec < minThroughputRatio * load) {
+            log.info("Slave #" + ack.getSlaveIndex() + " has not achieved target rate " + load + " requests per second");
+            sustainable = false;
+         }
+         Map<String, Object> slaveResults = searchResults.get(ack.getSlaveIndex());
+         if (slaveResults == null) {
+            slaveResults = new HashMap<String, Object>();
+            searchResults.put(ack.getSlaveIndex(), slaveResults);
+         }
+         String prefix = String.format("%03d.", step);
+         slaveResults.put(prefix + LOAD, load);
+         for (Map.Entry<String, Object> entry : stepResult.entrySet()) {
+            // size info is not a numeric result
+            if (entry.getValue() instanceof Number) {
+               slaveResults.put(prefix + entry.getKey(), entry.getValue());
+            }
+         }
+      }
+      if (finishLiveStatistics()) {
+         log.error("Step " + step + " was aborted, stopping the search");
+         resetSearch();
+         return false;
+      }
+      log.info(String.format("Step %d: %s = %d is %s, cluster throughput is %s requests per second", step, searchBy,
+            load, sustainable ? "sustainable" : "not sustainable", numberFormat(clusterThroughput)));
+
+      if (sustainable) {
+         highestSustainable = load;
+         sustainableThroughput = stepThroughput;
+      } else {
+         lowestUnsustainable = load;
+      }
+      int nextLoad;
+      if (highestSustainable < 0 || highestSustainable >= maxLoad) {
+         // either the lowest load is not sustainable or the highest one is
+         nextLoad = -1;
+      } else if (lowestUnsustainable < 0) {
+         nextLoad = maxLoad;
+      } else if (lowestUnsustainable - highestSustainable > precision) {
+         nextLoad = (highestSustainable + lowestUnsustainable) / 2;
+      } else {
+         nextLoad = -1;
+      }
+      if (nextLoad >= 0) {
+         currentLoad = nextLoad;
+         step++;
+         masterState.repeatCurrentDistStage();
+      } else {
+         reportSearchResults(masterState);
+         resetSearch();
+      }
+      return true;
+   }
+
+   private void reportSearchResults(MasterState masterState) {
+      if (highestSustainable < 0) {
+         log.warn("Even the minimal load " + searchBy + " = " + minLoad + " is not sustainable");
+      } else {
+         if (highestSustainable >= maxLoad) {
+            log.warn("The maximal load " + searchBy + " = " + maxLoad + " is sustainable, saturation was not reached");
+         }
+         double clusterThroughput = 0;
+         for (Map.Entry<Integer, Double> entry : sustainableThroughput.entrySet()) {
+            log.info("Slave #" + entry.getKey() + ": maximum sustainable throughput is " + numberFormat(entry.getValue()) + " requests per second");
+            clusterThroughput += entry.getValue();
+            Map<String, Object> slaveResults = searchResults.get(entry.getKey());
+            slaveResults.put(MAX_SUSTAINABLE_LOAD, highestSustainable);
+            slaveResults.put(MAX_SUSTAINABLE_REQ_PER_SEC, entry.getValue());
+         }
+         log.info("Maximum sustainable load is " + searchBy + " = " + highestSustainable + ", cluster throughput is "
+               + numberFormat(clusterThroughput) + " requests per second");
+      }
+      masterState.put(CsvReportGenerationStage.RESULTS, searchResults);
+      // the time series left by the last step do not describe the search results
+      masterState.remove(CsvReportGenerationStage.TIME_SERIES);
+   }
+
+   private void resetSearch() {
+      currentLoad = -1;
+      highestSustainable = -1;
+      lowestUnsustainable = -1;
+      step = 0;
+      searchResults = null;
+      sustainableThroughput = null;
+   }
+
+   /**
+    * @return Highest response time at the percentile among all operations except whole transactions, in nanoseconds
+    */
+   private double getWorstResponseTime(Map<String, Object> stepResult) {
+      String suffix = "_NET" + LogLinearHistogramStatistics.getPercentileSuffix(percentile);
+      double worst = 0;
+      for (Operation operation : Operation.values()) {
+         if (operation != Operation.TRANSACTION) {
+            worst = Math.max(worst, toDouble(stepResult.get(operation.name() + suffix)));
+         }
+      }
+      return worst;
+   }
+
+   private static double getRequests(Map<String, Object> stepResult) {
+      double requests = 0;
+      for (Operation operation : Operation.values()) {
+         if (operation != Operation.TRANSACTION) {
+            requests += toDouble(stepResult.get(operation.getAltName() + "_COUNT"));
+         }
+      }
+      return requests;
+   }
+
+   private static double toDouble(Object value) {
+      if (value == null) return 0;
+      if (value instanceof Number) return ((Number) value).doubleValue();
+      return Double.parseDouble(value.toString());
+   }
+}
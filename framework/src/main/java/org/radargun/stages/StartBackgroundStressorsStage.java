@@ -33,6 +33,14 @@ public class StartBackgroundStressorsStage extends AbstractDistStage {
    @Property(doc = "Size of value used in the entry. Default is 1024 bytes.")
    private int entrySize = 1024;
 
+   @Property(doc = "Number of pre-generated values each stressor thread rotates instead of generating new value for " +
+         "each write. By default (0) each write generates new value.")
+   private int valuePoolSize = 0;
+
+   @Property(doc = "Maximum amount of memory (in bytes) occupied by the pre-generated values of all stressor threads. " +
+         "Default is 64 MB.")
+   private long valuePoolMemory = 64 * 1024 * 1024;
+
    @Property(doc = "Number of stressor threads. Default is 10.")
    private int numThreads = 10;
 
@@ -57,7 +65,7 @@ public class StartBackgroundStressorsStage extends AbstractDistStage {
       try {
          BackgroundOpsManager instance = BackgroundOpsManager.getOrCreateInstance(slaveState, puts, gets, removes, numEntries,
                                                                                   entrySize, bucketId, numThreads, delayBetweenRequests, getActiveSlaveCount(), getSlaveIndex(),
-                                                                                  transactionSize, loadDataForDeadSlaves);
+                                                                                  transactionSize, loadDataForDeadSlaves, valuePoolSize, valuePoolMemory);
 
          log.info("Starting stressor threads");
          if (slaveState.getCacheWrapper() != null) {
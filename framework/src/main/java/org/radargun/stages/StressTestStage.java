@@ -6,15 +6,21 @@ import java.util.Map;
 
 import org.radargun.CacheWrapper;
 import org.radargun.DistStageAck;
+import org.radargun.ProgressReportingStage;
+import org.radargun.StageProgress;
 import org.radargun.config.Property;
 import org.radargun.config.PropertyHelper;
 import org.radargun.config.Stage;
 import org.radargun.config.TimeConverter;
+import org.radargun.stages.helpers.LiveStatistics;
 import org.radargun.state.MasterState;
 import org.radargun.stressors.AllRecordingStatistics;
 import org.radargun.stressors.CacheSpecificKeyGenStressor;
 import org.radargun.stressors.HistogramStatistics;
+import org.radargun.stressors.KeyDistribution;
+import org.radargun.stressors.LogLinearHistogramStatistics;
 import org.radargun.stressors.MultiStatistics;
+import org.radargun.stressors.SimpleStatistics;
 import org.radargun.stressors.Statistics;
 import org.radargun.stressors.StressTestStressor;
 import org.radargun.stressors.StringKeyGenerator;
@@ -29,7 +35,7 @@ import static org.radargun.utils.Utils.numberFormat;
  */
 @Stage(doc = "Benchmark where several client threads access cache limited by time or number of requests.",
       deprecatedName = "WebSessionBenchmark")
-public class StressTestStage extends AbstractDistStage {
+public class StressTestStage extends AbstractDistStage implements ProgressReportingStage {
 
    private static final String SIZE_INFO = "SIZE_INFO";
 
@@ -49,6 +55,15 @@ public class StressTestStage extends AbstractDistStage {
    @Property(doc = "Size of the value in bytes. Default is 1000.", deprecatedName = "sizeOfAnAttribute")
    protected int entrySize = 1000;
 
+   @Property(doc = "Number of pre-generated values each thread rotates instead of generating new value for each " +
+         "write, so that the allocation is not included in the measurements. By default (0) each write " +
+         "generates new value.")
+   protected int valuePoolSize = 0;
+
+   @Property(doc = "Maximum amount of memory (in bytes) occupied by the pre-generated values of all threads on this " +
+         "slave. Default is 64 MB.")
+   protected long valuePoolMemory = 64 * 1024 * 1024;
+
    @Property(doc = "Ratio of writes = PUT requests (percentage). Default is 20%")
    protected int writePercentage = 20;
 
@@ -83,9 +98,21 @@ public class StressTestStage extends AbstractDistStage {
    @Property(doc = "When executing bulk operations, prefer version with multiple async operations over native implementation. Default is false.")
    private boolean preferAsyncOperations = false;
 
+   @Property(doc = "Number of asynchronous operations each thread keeps in flight (pipelining). Applicable only when " +
+         "the cache wrapper supports asynchronous operations, cannot be combined with transactions, atomic or bulk " +
+         "operations. The response time is recorded when the operation completes. By default (0) synchronous " +
+         "operations are used.")
+   protected int asyncWindow = 0;
+
    @Property(converter = TimeConverter.class, doc = "Benchmark duration. This takes precedence over numRequests. By default switched off.")
    protected long duration = -1;
 
+   @Property(doc = "Target throughput of this slave in operations per second. The requests are issued on fixed " +
+         "schedule regardless of response times and the response time is measured from the intended start " +
+         "of each request (open-loop testing with coordinated omission correction). By default (0) the threads " +
+         "execute requests back-to-back.")
+   protected int requestsPerSecond = 0;
+
    @Property(doc = "By default each client thread operates on his private set of keys. Setting this to true " +
          "introduces contention between the threads, the numThreads property says total amount of entries that are " +
          "used by all threads. Default is false.")
@@ -97,6 +124,19 @@ public class StressTestStage extends AbstractDistStage {
    @Property(doc = "If true, putIfAbsent and replace operations are used. Default is false.")
    protected boolean useAtomics = false;
 
+   @Property(doc = "Distribution of accesses to the keys: UNIFORM, ZIPFIAN, SCRAMBLED_ZIPFIAN, LATEST (most recently " +
+         "inserted keys are the most popular) or HOTSPOT. Applies only to fixed set of keys. Default is UNIFORM.")
+   protected KeyDistribution.Type keyDistribution = KeyDistribution.Type.UNIFORM;
+
+   @Property(doc = "Skew of the ZIPFIAN, SCRAMBLED_ZIPFIAN and LATEST distributions, must be in (0, 1). Default is 0.99.")
+   protected double zipfianTheta = 0.99;
+
+   @Property(doc = "Used only with HOTSPOT distribution: fraction of the keys that form the hot set. Default is 0.2.")
+   protected double hotsetFraction = 0.2;
+
+   @Property(doc = "Used only with HOTSPOT distribution: probability that the request accesses the hot set. Default is 0.8.")
+   protected double hotsetProbability = 0.8;
+
    @Property(doc = "Specifies whether the key generator is produced by a cache wrapper and therefore is product-specific. Default is false.")
    protected boolean cacheSpecificKeyGenerator = false;
 
@@ -106,10 +146,42 @@ public class StressTestStage extends AbstractDistStage {
    @Property(doc = "The test will produce operation statistics in histogram. Default is false.")
    protected boolean useHistogramStatistics = false;
 
+   @Property(doc = "The test will produce percentiles and histograms of response times using log-linear histograms, " +
+         "which do not need the ranges generated in advance. Default is false.")
+   protected boolean useLogLinearHistogram = false;
+
+   @Property(doc = "Number of significant decimal digits of response times kept by the log-linear histograms (1 - 5). " +
+         "Default is 2.")
+   protected int histogramSignificantDigits = 2;
+
+   @Property(converter = TimeConverter.class, doc = "Period of recording the statistics as time series, which are " +
+         "reported by CsvReportGenerationStage. By default (0) only the statistics for the whole test are recorded.")
+   protected long statisticsInterval = 0;
+
+   @Property(doc = "Send the statistics of each statisticsInterval to master while the test is running; master logs " +
+         "cluster-wide throughput and response times and evaluates the abort rules. Default is false.")
+   protected boolean liveStatistics = false;
+
+   @Property(doc = "Abort the test on all slaves when the percentage of failed requests in the cluster exceeds this " +
+         "value in abortAfterIntervals consecutive intervals. Requires liveStatistics. Default is -1 (disabled).")
+   protected double abortOnErrorRate = -1;
+
+   @Property(doc = "Abort the test on all slaves when the cluster throughput falls below this ratio of the highest " +
+         "throughput in abortAfterIntervals consecutive intervals. Requires liveStatistics. Default is 0 (disabled).")
+   protected double abortOnThroughputRatio = 0;
+
+   @Property(doc = "Number of consecutive intervals violating an abort rule needed to abort the test. Default is 3.")
+   protected int abortAfterIntervals = 3;
+
    @Property(doc = "The test will produce operation statistics as average values. Default is true.")
    protected boolean useSimpleStatistics = true;
 
    protected CacheWrapper cacheWrapper;
+   private transient Reporter progressReporter;
+   private transient volatile StressTestStressor runningStressor;
+   private transient volatile String abortReason;
+   /* Kept on master while the stage is running */
+   private transient LiveStatistics liveStats;
 
    protected Map<String, Object> doWork() {
       log.info("Starting "+getClass().getSimpleName()+": " + this);
@@ -124,16 +196,97 @@ public class StressTestStage extends AbstractDistStage {
       stressor.setDurationMillis(duration);
       setupStatistics(stressor);
       PropertyHelper.copyProperties(this, stressor);
-      Map<String, Object> results = stressor.stress(cacheWrapper);
+      Map<String, Object> results = runStressor(stressor);
       if (generateHistogramRange) {
          slaveState.put(HistogramStatistics.HISTOGRAM_RANGES, results);
       }
       return results;
    }
 
+   /**
+    * Runs the stressor, streaming its time series to the master if liveStatistics are enabled.
+    */
+   protected Map<String, Object> runStressor(StressTestStressor stressor) {
+      if (liveStatistics && progressReporter != null) {
+         if (statisticsInterval <= 0) {
+            log.warn("Live statistics require statisticsInterval to be set, these won't be sent.");
+         } else {
+            stressor.setTimeSeriesListener(new StressTestStressor.TimeSeriesListener() {
+               private int sequence = 0;
+
+               @Override
+               public void sampleTaken(Map<String, Object> sample) {
+                  progressReporter.report(new StageProgress(getSlaveIndex(), sequence++, new HashMap<String, Object>(sample)));
+               }
+            });
+         }
+      }
+      runningStressor = stressor;
+      try {
+         if (abortReason != null) {
+            stressor.abort();
+         }
+         return stressor.stress(cacheWrapper);
+      } finally {
+         runningStressor = null;
+      }
+   }
+
+   @Override
+   public void setProgressReporter(Reporter reporter) {
+      this.progressReporter = reporter;
+   }
+
+   @Override
+   public void abortOnSlave(String reason) {
+      abortReason = reason;
+      StressTestStressor stressor = runningStressor;
+      if (stressor != null) {
+         stressor.abort();
+      }
+   }
+
+   @Override
+   public boolean processProgressOnMaster(StageProgress progress, MasterState masterState) {
+      if (liveStats == null) {
+         liveStats = new LiveStatistics(getExecutingSlavesCount(), abortOnErrorRate, abortOnThroughputRatio, abortAfterIntervals);
+      }
+      boolean proceed = liveStats.add(progress);
+      if (!proceed) {
+         log.error("Aborting " + getClass().getSimpleName() + ": " + liveStats.getAbortReason());
+      }
+      return proceed;
+   }
+
+   private int getExecutingSlavesCount() {
+      if (slaves == null) return getActiveSlaveCount();
+      int count = 0;
+      for (int slave : slaves) {
+         if (slave < getActiveSlaveCount()) count++;
+      }
+      return count;
+   }
+
+   /**
+    * Should be called when all acks are received on master.
+    * @return True if the test was aborted by one of the abort rules
+    */
+   protected boolean finishLiveStatistics() {
+      boolean aborted = liveStats != null && liveStats.getAbortReason() != null;
+      liveStats = null;
+      return aborted;
+   }
+
    protected void setupStatistics(StressTestStressor stressor) {
       if (generateHistogramRange) {
          stressor.setStatisticsPrototype(new AllRecordingStatistics());
+      } else if (useLogLinearHistogram) {
+         Statistics histogram = new LogLinearHistogramStatistics(histogramSignificantDigits);
+         if (useSimpleStatistics) {
+            stressor.setStatisticsPrototype(new MultiStatistics(new SimpleStatistics(), histogram));
+         } else {
+            stressor.setStatisticsPrototype(histogram);
+         }
       } else if (useHistogramStatistics) {
          Map<String, Object> ranges = (Map<String, Object>) slaveState.get(HistogramStatistics.HISTOGRAM_RANGES);
          if (ranges == null) {
@@ -165,6 +318,10 @@ public class StressTestStage extends AbstractDistStage {
          log.info(sizeInfo);
          results.put(SIZE_INFO, sizeInfo);
          result.setPayload(results);
+         if (abortReason != null) {
+            // the results are still sent to master
+            log.warn("Test was aborted: " + abortReason);
+         }
          return result;
       } catch (Exception e) {
          log.warn("Exception while initializing the test", e);
@@ -186,6 +343,8 @@ public class StressTestStage extends AbstractDistStage {
       boolean success = true;
       Map<Integer, Map<String, Object>> results = new HashMap<Integer, Map<String, Object>>();
       masterState.put(CsvReportGenerationStage.RESULTS, results);
+      Map<Integer, List<Map<String, Object>>> timeSeries = new HashMap<Integer, List<Map<String, Object>>>();
+      masterState.put(CsvReportGenerationStage.TIME_SERIES, timeSeries);
       for (DistStageAck ack : acks) {
          DefaultDistStageAck wAck = (DefaultDistStageAck) ack;
          if (wAck.isError()) {
@@ -200,6 +359,10 @@ public class StressTestStage extends AbstractDistStage {
             results.put(ack.getSlaveIndex(), benchResult);
             Object reqPerSec = benchResult.get(Statistics.REQ_PER_SEC);
             Object sizeInfo = benchResult.remove(SIZE_INFO);
+            List<Map<String, Object>> slaveTimeSeries = (List<Map<String, Object>>) benchResult.remove(StressTestStressor.TIME_SERIES);
+            if (slaveTimeSeries != null) {
+               timeSeries.put(ack.getSlaveIndex(), slaveTimeSeries);
+            }
             if (reqPerSec != null) {
                log.info("Received " + sizeInfo);
                log.info("Slave #" + ack.getSlaveIndex() + ": " + numberFormat(parseDouble(reqPerSec.toString())) + " requests per second.");
@@ -208,6 +371,10 @@ public class StressTestStage extends AbstractDistStage {
             log.trace("No report received from slave: " + ack.getSlaveIndex());
          }
       }
+      if (finishLiveStatistics()) {
+         log.error("The test was aborted, results are incomplete");
+         success = false;
+      }
       return success;
    }
 }
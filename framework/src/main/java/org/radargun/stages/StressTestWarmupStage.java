@@ -1,11 +1,17 @@
 package org.radargun.stages;
 
 import org.radargun.DistStageAck;
+import org.radargun.config.Property;
 import org.radargun.config.Stage;
+import org.radargun.config.TimeConverter;
 import org.radargun.state.MasterState;
+import org.radargun.stressors.StressTestStressor;
+import org.radargun.utils.Utils;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -18,6 +24,19 @@ import java.util.Set;
 public class StressTestWarmupStage extends StressTestStage {
 
    private static final Set<String> WARMED_UP_CONFIGS = new HashSet<String>(2);
+   private static final String WARMUP_DURATION = "WARMUP_DURATION";
+
+   @Property(doc = "When set, the warmup ends as soon as the throughput and mean response time are stable for this " +
+         "number of consecutive windows; the duration is used as hard limit. By default (0) the warmup executes " +
+         "fixed number of requests or runs for fixed duration.")
+   protected int steadyStateWindows = 0;
+
+   @Property(converter = TimeConverter.class, doc = "Length of one steady-state detection window. Default is 1 second.")
+   protected long steadyStateWindowDuration = 1000;
+
+   @Property(doc = "Maximum coefficient of variation (standard deviation / mean) of the throughput and mean response " +
+         "time over the steady-state detection windows. Default is 0.05.")
+   protected double steadyStateMaxVariation = 0.05;
 
    @Override
    public DistStageAck executeOnSlave() {
@@ -38,10 +57,15 @@ public class StressTestWarmupStage extends StressTestStage {
 
          try {
             long startTime = System.currentTimeMillis();
-            doWork();
+            Map<String, Object> results = doWork();
             long duration = System.currentTimeMillis() - startTime;
             log.info("The warmup took: " + (duration / 1000) + " seconds.");
-            result.setPayload(duration);
+            Map<String, Object> payload = new HashMap<String, Object>();
+            payload.put(WARMUP_DURATION, duration);
+            if (results.containsKey(StressTestStressor.STEADY_STATE_TIME)) {
+               payload.put(StressTestStressor.STEADY_STATE_TIME, results.get(StressTestStressor.STEADY_STATE_TIME));
+            }
+            result.setPayload(payload);
             WARMED_UP_CONFIGS.add(configName);
             return result;
          } catch (Exception e) {
@@ -61,8 +85,18 @@ public class StressTestWarmupStage extends StressTestStage {
       logDurationInfo(acks);
       for (DistStageAck ack : acks) {
          DefaultDistStageAck dAck = (DefaultDistStageAck) ack;
-         if (dAck.isError())
+         if (dAck.isError()) {
             log.warn("Caught error on slave " + dAck.getSlaveIndex() + " when running " + getClass().getSimpleName() + ".  Error details:" + dAck.getErrorMessage());
+         } else if (dAck.getPayload() instanceof Map) {
+            Map<String, Object> payload = (Map<String, Object>) dAck.getPayload();
+            Long steadyStateTime = (Long) payload.get(StressTestStressor.STEADY_STATE_TIME);
+            if (steadyStateTime == null) continue;
+            if (steadyStateTime < 0) {
+               log.warn("Slave #" + dAck.getSlaveIndex() + " has not reached steady state during the warmup.");
+            } else {
+               log.info("Slave #" + dAck.getSlaveIndex() + " reached steady state after " + Utils.getMillisDurationString(steadyStateTime));
+            }
+         }
       }
       return true;
    }
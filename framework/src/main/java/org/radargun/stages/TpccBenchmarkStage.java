@@ -25,6 +25,12 @@ import static org.radargun.utils.Utils.numberFormat;
  *       - arrivalRate : if the value is greater than 0.0, the "open system" mode is active and the parameter represents the arrival rate (in transactions per second) of a job (a transaction to be executed) to the system; otherwise the "closed system" mode is active: this means that each thread generates and executes a new transaction in an iteration as soon as it has completed the previous iteration.
  *       - paymentWeight : percentage of Payment transactions.
  *       - orderStatusWeight : percentage of Order Status transactions.
+ *       - deliveryWeight : percentage of Delivery transactions.
+ *       - stockLevelWeight : percentage of Stock Level transactions.
+ *       - customerIndex : if true, customers are looked up by last name through the index written by TpccPopulationStage; otherwise all customers of the district are scanned.
+ *       - lastOrderPointer : if true, the latest order of a customer is read through the pointer kept by the population and New-Order; otherwise all orders of the district are scanned.
+ *       - warehouseAffinity : if true, the terminals of each slave use only its home warehouses, see also TpccPopulationStage.
+ * The remaining percentage are New Order transactions; the defaults follow the minimal mix of the TPC-C specification.
  * </pre>
  *
  * @author peluso@gsd.inesc-id.pt , peluso@dis.uniroma1.it
@@ -44,11 +50,26 @@ public class TpccBenchmarkStage extends AbstractDistStage {
    @Property(doc = "Average arrival rate of the transactions to the system. Default is 0.")
    private double arrivalRate = 0.0D;
    
-   @Property(doc = "Percentage of Payment transactions. Default is 45 %.")
-   private double paymentWeight = 45.0D;
+   @Property(doc = "Percentage of Payment transactions. Default is 43 %.")
+   private double paymentWeight = 43.0D;
    
-   @Property(doc = "Percentage of Order Status transactions. Default is 5 %.")
-   private double orderStatusWeight = 5.0D;
+   @Property(doc = "Percentage of Order Status transactions. Default is 4 %.")
+   private double orderStatusWeight = 4.0D;
+
+   @Property(doc = "Percentage of Delivery transactions. Default is 4 %.")
+   private double deliveryWeight = 4.0D;
+
+   @Property(doc = "Percentage of Stock Level transactions. Default is 4 %.")
+   private double stockLevelWeight = 4.0D;
+
+   @Property(doc = "Look up customers by last name through the index instead of scanning all customers of the district. Default is true.")
+   private boolean customerIndex = true;
+
+   @Property(doc = "Read the latest order of a customer through a pointer instead of scanning all orders of the district. Default is true.")
+   private boolean lastOrderPointer = true;
+
+   @Property(doc = "Bind the terminals of each slave to its home warehouses. Default is false.")
+   private boolean warehouseAffinity = false;
 
    private CacheWrapper cacheWrapper;
 
@@ -70,6 +91,11 @@ public class TpccBenchmarkStage extends AbstractDistStage {
       tpccStressor.setArrivalRate(this.arrivalRate);
       tpccStressor.setPaymentWeight(this.paymentWeight);
       tpccStressor.setOrderStatusWeight(this.orderStatusWeight);
+      tpccStressor.setDeliveryWeight(this.deliveryWeight);
+      tpccStressor.setStockLevelWeight(this.stockLevelWeight);
+      tpccStressor.setCustomerIndex(this.customerIndex);
+      tpccStressor.setLastOrderPointer(this.lastOrderPointer);
+      tpccStressor.setWarehouseAffinity(this.warehouseAffinity);
 
       try {
          Map<String, Object> results = tpccStressor.stress(cacheWrapper);
@@ -89,6 +115,7 @@ public class TpccBenchmarkStage extends AbstractDistStage {
    public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
       logDurationInfo(acks);
       boolean success = true;
+      double tpmC = 0;
       Map<Integer, Map<String, Object>> results = new HashMap<Integer, Map<String, Object>>();
       masterState.put(CsvReportGenerationStage.RESULTS, results);
       for (DistStageAck ack : acks) {
@@ -108,11 +135,17 @@ public class TpccBenchmarkStage extends AbstractDistStage {
                throw new IllegalStateException("This should be there!");
             }
             log.info("On slave " + ack.getSlaveIndex() + " we had " + numberFormat(parseDouble(reqPerSes.toString())) + " requests per second");
+            Object slaveTpmC = benchResult.get("TPMC");
+            if (slaveTpmC != null) {
+               log.info("On slave " + ack.getSlaveIndex() + " we had " + numberFormat(parseDouble(slaveTpmC.toString())) + " tpmC");
+               tpmC += parseDouble(slaveTpmC.toString());
+            }
             log.info("Received " +  benchResult.remove(SIZE_INFO));
          } else {
             log.trace("No report received from slave: " + ack.getSlaveIndex());
          }
       }
+      log.info("The cluster had " + numberFormat(tpmC) + " tpmC");
       return success;
    }
 }
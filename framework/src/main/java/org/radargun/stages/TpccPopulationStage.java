@@ -9,6 +9,9 @@ import org.radargun.state.MasterState;
 import org.radargun.stressors.TpccPopulationStressor;
 
 import java.util.List;
+import java.util.Map;
+
+import static org.radargun.utils.Utils.numberFormat;
 
 /**
  * This stage shuld be run before the <b>TpccBenchmarkStage</b>. It will perform the population of
@@ -20,6 +23,10 @@ import java.util.List;
  *       - cLastMask : the mask used to generate non-uniformly distributed random customer last names.
  *       - olIdMask : mask used to generate non-uniformly distributed random item numbers.
  *       - cIdMask : mask used to generate non-uniformly distributed random customer numbers.
+ *       - numThreads : the number of threads populating the cache on each slave.
+ *       - batchSize : the number of entries of one table stored in single putAll operation or transaction.
+ *       - warehouseAffinity : each slave populates the data of its home warehouses, the warehouses driven by its terminals
+ *         when TpccBenchmarkStage runs with warehouseAffinity.
  * </pre>
  *
  * @author peluso@gsd.inesc-id.pt , peluso@dis.uniroma1.it
@@ -39,6 +46,17 @@ public class TpccPopulationStage extends AbstractDistStage{
    @Property(doc = "Mask used to generate non-uniformly distributed random customer numbers. Default is 1023.")
    private long cIdMask = 1023;
 
+   @Property(doc = "Number of threads populating the cache on each slave. Default is 10.")
+   private int numThreads = 10;
+
+   @Property(doc = "Number of entries of one table stored in single putAll operation (if the wrapper supports bulk operations) " +
+         "or transaction (if it is transactional). Default is 100.")
+   private int batchSize = 100;
+
+   @Property(doc = "Each slave populates the stocks and districts of its home warehouses (the warehouses its terminals " +
+         "use with TpccBenchmark warehouseAffinity) instead of a share of every warehouse. Default is false.")
+   private boolean warehouseAffinity = false;
+
    public DistStageAck executeOnSlave() {
       DefaultDistStageAck ack = newDefaultStageAck();
       CacheWrapper wrapper = slaveState.getCacheWrapper();
@@ -47,14 +65,23 @@ public class TpccPopulationStage extends AbstractDistStage{
          return ack;
       }
       long startTime = System.currentTimeMillis();
-      populate(wrapper);
+      Map<String, Object> results;
+      try {
+         results = populate(wrapper);
+      } catch (Exception e) {
+         log.error("Failed to populate the cache", e);
+         ack.setError(true);
+         ack.setRemoteException(e);
+         ack.setErrorMessage("Failed to populate the cache");
+         return ack;
+      }
       long duration = System.currentTimeMillis() - startTime;
       log.info("The population took: " + (duration / 1000) + " seconds.");
-      ack.setPayload(duration);
+      ack.setPayload(results);
       return ack;
    }
 
-   private void populate(CacheWrapper wrapper) {
+   private Map<String, Object> populate(CacheWrapper wrapper) throws Exception {
       TpccPopulationStressor populationStressor = new TpccPopulationStressor();
       populationStressor.setNumWarehouses(numWarehouses);
       populationStressor.setSlaveIndex(getSlaveIndex());
@@ -62,17 +89,42 @@ public class TpccPopulationStage extends AbstractDistStage{
       populationStressor.setCLastMask(this.cLastMask);
       populationStressor.setOlIdMask(this.olIdMask);
       populationStressor.setCIdMask(this.cIdMask);
-      populationStressor.stress(wrapper);
+      populationStressor.setNumThreads(this.numThreads);
+      populationStressor.setBatchSize(this.batchSize);
+      populationStressor.setWarehouseAffinity(this.warehouseAffinity);
+      return populationStressor.performPopulationOperations(wrapper);
    }
 
    public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
-      logDurationInfo(acks);
+      boolean success = super.processAckOnMaster(acks, masterState);
+      long entries = 0;
+      long maxDuration = 0;
       for (DistStageAck ack : acks) {
          DefaultDistStageAck dAck = (DefaultDistStageAck) ack;
-         if (log.isTraceEnabled()) {
-            log.trace("Tpcc population on slave " + dAck.getSlaveIndex() + " finished in " + dAck.getPayload() + " millis.");
+         Map<String, Object> results = (Map<String, Object>) dAck.getPayload();
+         if (results == null) {
+            log.warn("No population results received from slave " + dAck.getSlaveIndex());
+            continue;
          }
+         long slaveEntries = (Long) results.get("ENTRIES");
+         long duration = (Long) results.get("DURATION (msec)");
+         entries += slaveEntries;
+         maxDuration = Math.max(maxDuration, duration);
+         log.info("Tpcc population on slave " + dAck.getSlaveIndex() + " stored " + slaveEntries + " entries in " + duration
+                        + " millis (" + numberFormat((Double) results.get("ENTRIES_PER_SEC")) + " entries per second)");
+         StringBuilder tables = new StringBuilder();
+         for (Map.Entry<String, Object> entry : results.entrySet()) {
+            if (entry.getKey().endsWith("_ENTRIES")) {
+               String table = entry.getKey().substring(0, entry.getKey().length() - "_ENTRIES".length());
+               tables.append(' ').append(table).append('=').append(entry.getValue())
+                     .append(" in ").append(results.get(table + "_STORE_TIME (msec)")).append(" ms;");
+            }
+         }
+         log.info("Tables populated on slave " + dAck.getSlaveIndex() + " (store time summed over threads):" + tables);
+      }
+      if (maxDuration > 0) {
+         log.info("Tpcc population stored " + entries + " entries at " + numberFormat(entries / (maxDuration / 1000.0)) + " entries per second in the cluster");
       }
-      return true;
+      return success;
    }
 }
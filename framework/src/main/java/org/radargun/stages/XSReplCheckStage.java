@@ -131,6 +131,7 @@ public class XSReplCheckStage extends CheckDataStage {
             }
          }
       }
+      result.checked = checked;
       return result;
    }
 
@@ -140,6 +141,12 @@ public class XSReplCheckStage extends CheckDataStage {
       }
    }
 
+   @Override
+   protected boolean supportsDigest() {
+      // values stored in the backup caches come from different sites
+      return false;
+   }
+
    @Override
    protected int getExpectedNumEntries() {
       XSReplicating wrapper = (XSReplicating) slaveState.getCacheWrapper();
@@ -0,0 +1,133 @@
+package org.radargun.stages.helpers;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.radargun.StageProgress;
+import org.radargun.stressors.Statistics;
+import org.radargun.stressors.StressTestStressor;
+
+import static org.radargun.utils.Utils.numberFormat;
+
+/**
+ * Aggregates the time series entries streamed from slaves during the stress test, logs cluster-wide throughput
+ * and response times for each interval and evaluates the abort rules.
+ */
+public class LiveStatistics {
+   private static final Log log = LogFactory.getLog(LiveStatistics.class);
+
+   private final int slaves;
+   private final double abortOnErrorRate;
+   private final double abortOnThroughputRatio;
+   private final int abortAfterIntervals;
+
+   /* interval sequence -> slave index -> entry */
+   private final SortedMap<Integer, Map<Integer, Map<String, Object>>> pending = new TreeMap<Integer, Map<Integer, Map<String, Object>>>();
+   private double peakThroughput;
+   private int processedIntervals;
+   private int consecutiveViolations;
+   private String abortReason;
+
+   /**
+    * @param slaves Number of slaves that report the progress
+    * @param abortOnErrorRate Percentage of failed requests in an interval that is considered as violation, negative to disable
+    * @param abortOnThroughputRatio Ratio of the cluster throughput to the highest interval throughput so far, lower
+    *                               value is considered as violation, 0 to disable
+    * @param abortAfterIntervals Number of consecutive violating intervals that abort the test
+    */
+   public LiveStatistics(int slaves, double abortOnErrorRate, double abortOnThroughputRatio, int abortAfterIntervals) {
+      this.slaves = slaves;
+      this.abortOnErrorRate = abortOnErrorRate;
+      this.abortOnThroughputRatio = abortOnThroughputRatio;
+      this.abortAfterIntervals = Math.max(abortAfterIntervals, 1);
+   }
+
+   /**
+    * @return false if the test should be aborted
+    */
+   public boolean add(StageProgress progress) {
+      Map<Integer, Map<String, Object>> interval = pending.get(progress.getSequence());
+      if (interval == null) {
+         interval = new HashMap<Integer, Map<String, Object>>();
+         pending.put(progress.getSequence(), interval);
+      }
+      interval.put(progress.getSlaveIndex(), progress.getValues());
+      if (interval.size() < slaves) {
+         return abortReason == null;
+      }
+      // older intervals won't be completed if some slaves have already finished
+      Iterator<Map.Entry<Integer, Map<Integer, Map<String, Object>>>> it = pending.entrySet().iterator();
+      while (it.hasNext()) {
+         Map.Entry<Integer, Map<Integer, Map<String, Object>>> entry = it.next();
+         if (entry.getKey() > progress.getSequence()) break;
+         process(entry.getValue());
+         it.remove();
+      }
+      return abortReason == null;
+   }
+
+   private void process(Map<Integer, Map<String, Object>> interval) {
+      double throughput = 0, weightedResponseTime = 0, worstPercentile = -1;
+      long requests = 0, errors = 0, time = 0;
+      for (Map<String, Object> entry : interval.values()) {
+         long entryRequests = toLong(entry.get(StressTestStressor.INTERVAL_REQUESTS));
+         throughput += toDouble(entry.get(StressTestStressor.THROUGHPUT));
+         requests += entryRequests;
+         errors += toLong(entry.get(Statistics.FAILURES));
+         time = Math.max(time, toLong(entry.get(StressTestStressor.INTERVAL_TIME)));
+         weightedResponseTime += toDouble(entry.get(StressTestStressor.AVG_RESPONSE_TIME)) * entryRequests;
+         for (Map.Entry<String, Object> value : entry.entrySet()) {
+            if (value.getKey().endsWith("_P99")) {
+               worstPercentile = Math.max(worstPercentile, toDouble(value.getValue()));
+            }
+         }
+      }
+      double errorRate = requests > 0 ? 100d * errors / requests : (errors > 0 ? 100 : 0);
+      StringBuilder line = new StringBuilder(String.format("Cluster at %d s (%d slaves): %s requests per second, %s ms average response time",
+            time / 1000, interval.size(), numberFormat(throughput), numberFormat(requests > 0 ? weightedResponseTime / requests / Statistics.NS_IN_MS : 0)));
+      if (worstPercentile >= 0) {
+         line.append(", ").append(numberFormat(worstPercentile / Statistics.NS_IN_MS)).append(" ms worst percentile");
+      }
+      line.append(", ").append(numberFormat(errorRate)).append("% errors");
+      log.info(line);
+
+      String violation = null;
+      if (abortOnErrorRate >= 0 && errorRate > abortOnErrorRate) {
+         violation = "error rate " + numberFormat(errorRate) + "% exceeds " + abortOnErrorRate + "%";
+      } else if (abortOnThroughputRatio > 0 && processedIntervals > 0 && throughput < abortOnThroughputRatio * peakThroughput) {
+         violation = "throughput " + numberFormat(throughput) + " dropped below " + abortOnThroughputRatio
+               + " of the peak " + numberFormat(peakThroughput);
+      }
+      peakThroughput = Math.max(peakThroughput, throughput);
+      processedIntervals++;
+      if (violation == null) {
+         consecutiveViolations = 0;
+      } else {
+         consecutiveViolations++;
+         log.warn("Interval " + processedIntervals + ": " + violation + " (" + consecutiveViolations + "/" + abortAfterIntervals + ")");
+         if (consecutiveViolations >= abortAfterIntervals && abortReason == null) {
+            abortReason = violation;
+         }
+      }
+   }
+
+   /**
+    * @return Description of the rule that fired the abort, or null if the test should not be aborted.
+    */
+   public String getAbortReason() {
+      return abortReason;
+   }
+
+   private static long toLong(Object value) {
+      return value instanceof Number ? ((Number) value).longValue() : 0;
+   }
+
+   private static double toDouble(Object value) {
+      return value instanceof Number ? ((Number) value).doubleValue() : 0;
+   }
+}
@@ -29,6 +29,7 @@ public class MasterState extends StateBase {
    private FixedSizeBenchmarkConfig currentBenchmark;
    private long startTime = System.currentTimeMillis();
    private DistStage currentDistStage;
+   private boolean repeatCurrentDistStage;
 
    public MasterState(MasterConfig config) {
       this.config = config;
@@ -44,6 +45,10 @@ public class MasterState extends StateBase {
    }
 
    public DistStage getNextDistStageToProcess() {
+      if (repeatCurrentDistStage) {
+         repeatCurrentDistStage = false;
+         return currentDistStage;
+      }
       while (currentBenchmark.hasNextStage()) {
          Stage stage = currentBenchmark.nextStage();
          if (stage instanceof DistStage) {
@@ -66,6 +71,15 @@ public class MasterState extends StateBase {
    }
 
 
+   /**
+    * Schedules the current stage to be executed once more after it finishes. Should be called from
+    * {@link DistStage#processAckOnMaster(java.util.List, MasterState)}, the stage can modify its own
+    * properties there before it is sent to slaves again.
+    */
+   public void repeatCurrentDistStage() {
+      repeatCurrentDistStage = true;
+   }
+
    public DistStage getCurrentDistStage() {
       return currentDistStage;
    }
@@ -86,6 +100,7 @@ public class MasterState extends StateBase {
       });
       boolean stageOk = currentDistStage.processAckOnMaster(acks, this);
       if (stageOk) return true;
+      repeatCurrentDistStage = false;
       if (!currentDistStage.isExitBenchmarkOnSlaveFailure()) {
          log.warn("Execution error for current benchmark, skipping rest of the stages");
          currentBenchmark.errorOnCurrentBenchmark();
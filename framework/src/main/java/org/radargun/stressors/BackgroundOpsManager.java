@@ -24,6 +24,8 @@ public class BackgroundOpsManager {
     * instance and to MasterState to retrieve results.
     */
    public static final String NAME = "BackgroundOpsManager";
+   /* Bucket with entries loaded by another stage, kept apart from the manager which may not be configured yet */
+   private static final String LOADED_BUCKET = NAME + ".loadedBucket";
 
    private static Logger log = Logger.getLogger(BackgroundOpsManager.class);
 
@@ -49,6 +51,8 @@ public class BackgroundOpsManager {
    private int transactionSize;
    private List<Integer> loadDataForDeadSlaves;
    private String bucketId;
+   private int valuePoolSize;
+   private long valuePoolMemory;
 
    public static BackgroundOpsManager getInstance(SlaveState slaveState) {
       return (BackgroundOpsManager) slaveState.get(NAME);
@@ -71,7 +75,8 @@ public class BackgroundOpsManager {
    public static BackgroundOpsManager getOrCreateInstance(SlaveState slaveState, int puts, int gets, int removes,
                                                           int numEntries, int entrySize, String bucketId, int numThreads,
                                                           long delayBetweenRequests, int numSlaves, int slaveIndex,
-                                                          int transactionSize, List<Integer> loadDataForDeadSlaves) {
+                                                          int transactionSize, List<Integer> loadDataForDeadSlaves,
+                                                          int valuePoolSize, long valuePoolMemory) {
       BackgroundOpsManager instance = getOrCreateInstance(slaveState);
       instance.puts = puts;
       instance.gets = gets;
@@ -79,13 +84,19 @@ public class BackgroundOpsManager {
       instance.operations = puts + gets + removes;
       instance.numEntries = numEntries;
       instance.entrySize = entrySize;
-      instance.bucketId = bucketId;
+      String loadedBucket = (String) slaveState.get(LOADED_BUCKET);
+      instance.bucketId = bucketId != null ? bucketId : loadedBucket;
+      if (loadedBucket != null && loadedBucket.equals(instance.bucketId)) {
+         instance.loaded = true;
+      }
       instance.numThreads = numThreads;
       instance.delayBetweenRequests = delayBetweenRequests;
       instance.numSlaves = numSlaves;
       instance.slaveIndex = slaveIndex;
       instance.transactionSize = transactionSize;
       instance.loadDataForDeadSlaves = loadDataForDeadSlaves;
+      instance.valuePoolSize = valuePoolSize;
+      instance.valuePoolMemory = valuePoolMemory;
       return instance;
    }
 
@@ -242,7 +253,7 @@ public class BackgroundOpsManager {
 
    private class BackgroundStatsThread extends Thread {
 
-      private SynchronizedStatistics nodeDownStats = new SynchronizedStatistics(false);
+      private SimpleStatistics nodeDownStats = new SimpleStatistics(false);
 
       public BackgroundStatsThread() {
          super("BackgroundStatsThread");
@@ -260,15 +271,19 @@ public class BackgroundOpsManager {
          }
       }
 
-      private SynchronizedStatistics gatherStats() {
+      private SimpleStatistics gatherStats() {
          long now = System.currentTimeMillis();
          if (!stressorsRunning) {
-            return nodeDownStats.snapshot(true, now);
+            SimpleStatistics snapshot = (SimpleStatistics) nodeDownStats.copy();
+            snapshot.intervalEndTime = now;
+            snapshot.nodeUp = false;
+            nodeDownStats.reset(now);
+            return snapshot;
          } else {
             nodeDownStats.reset(now); // we need to reset should we need them in next round
-            SynchronizedStatistics r = null;
+            SimpleStatistics r = null;
             for (int i = 0; i < stressorThreads.length; i++) {
-               SynchronizedStatistics threadStats = stressorThreads[i].getStatsSnapshot(true, now);
+               SimpleStatistics threadStats = stressorThreads[i].getStatsSnapshot(now);
                if (r == null) {
                   r = threadStats;
                } else {
@@ -336,6 +351,9 @@ public class BackgroundOpsManager {
             instance.destroy();
          }
       }
+      if (destroyAll) {
+         slaveState.remove(LOADED_BUCKET);
+      }
    }
 
    public static void afterCacheWrapperStart(SlaveState slaveState) {
@@ -349,6 +367,25 @@ public class BackgroundOpsManager {
    public void setLoaded() {
       loaded = true;
    }
+
+   /**
+    * Marks the entries as loaded by another stage, background stressors configured later with the same
+    * (or no) bucket won't load them again. Stressors that are already configured are not affected.
+    */
+   public static void setLoaded(SlaveState slaveState, String bucketId) {
+      slaveState.put(LOADED_BUCKET, bucketId);
+   }
+
+   /**
+    * @return Bucket of the background stressors, or of the entries loaded by another stage if there are
+    *         no stressors, or the default bucket.
+    */
+   public static String getBucketId(SlaveState slaveState) {
+      BackgroundOpsManager instance = getInstance(slaveState);
+      if (instance != null) return instance.getBucketId();
+      String loadedBucket = (String) slaveState.get(LOADED_BUCKET);
+      return loadedBucket != null ? loadedBucket : NAME;
+   }
    
    public String getBucketId() {
       return bucketId;
@@ -362,6 +399,15 @@ public class BackgroundOpsManager {
       return entrySize;
    }
 
+   public int getValuePoolSize() {
+      return valuePoolSize;
+   }
+
+   /* Memory limit for the value pool of single stressor thread */
+   public long getValuePoolMemory() {
+      return valuePoolMemory / Math.max(1, numThreads);
+   }
+
    public long getDelayBetweenRequests() {
       return delayBetweenRequests;
    }
@@ -20,7 +20,7 @@ class BackgroundStressor extends Thread {
 
    private Random rand = new Random();
    private long lastOpStartTime;
-   private SynchronizedStatistics threadStats = new SynchronizedStatistics();
+   private SingleWriterStatistics threadStats = new SingleWriterStatistics(new SimpleStatistics(), System.currentTimeMillis());
    private int keyRangeStart;
    private int keyRangeEnd;
    private List<Range> deadSlavesRanges;
@@ -29,6 +29,7 @@ class BackgroundStressor extends Thread {
    private int remainingTxOps;
    private boolean loaded;
    private BackgroundOpsManager backgroundOpsManager;
+   private ValueGenerator valueGenerator;
 
    public BackgroundStressor(BackgroundOpsManager backgroundOpsManager, SlaveState slaveState, Range myRange, List<Range> deadSlavesRanges, int idx) {
       super("StressorThread-" + idx);
@@ -38,6 +39,12 @@ class BackgroundStressor extends Thread {
       this.currentKey = myRange.getStart();
       this.remainingTxOps = backgroundOpsManager.getTransactionSize();
       this.backgroundOpsManager = backgroundOpsManager;
+      int valuePoolSize = backgroundOpsManager.getValuePoolSize();
+      if (valuePoolSize > 0) {
+         this.valueGenerator = new PooledValueGenerator(rand, valuePoolSize, backgroundOpsManager.getValuePoolMemory(), false);
+      } else {
+         this.valueGenerator = new RandomValueGenerator(rand, false);
+      }
    }
 
    private void loadData() {
@@ -58,7 +65,7 @@ class BackgroundStressor extends Thread {
       CacheWrapper cacheWrapper = backgroundOpsManager.getCacheWrapper();
       for (currentKey = from; currentKey < to && !terminate; currentKey++, loaded_keys++) {
          try {
-            cacheWrapper.put(backgroundOpsManager.getBucketId(), key(currentKey), generateRandomEntry(backgroundOpsManager.getEntrySize()));
+            cacheWrapper.put(backgroundOpsManager.getBucketId(), key(currentKey), valueGenerator.generateValue(backgroundOpsManager.getEntrySize()));
             if (loaded_keys % 1000 == 0) {
                log.debug("Loaded " + loaded_keys + " out of " + (to - from));
             }
@@ -130,7 +137,7 @@ class BackgroundStressor extends Thread {
             threadStats.registerRequest(lastOpTime(), 0, operation);
             break;
          case PUT:
-            cacheWrapper.put(backgroundOpsManager.getBucketId(), key, generateRandomEntry(backgroundOpsManager.getEntrySize()));
+            cacheWrapper.put(backgroundOpsManager.getBucketId(), key, valueGenerator.generateValue(backgroundOpsManager.getEntrySize()));
             threadStats.registerRequest(lastOpTime(), 0, operation);
             break;
          case REMOVE:
@@ -176,13 +183,6 @@ class BackgroundStressor extends Thread {
       }
    }
 
-   private byte[] generateRandomEntry(int size) {
-      // each char is 2 bytes
-      byte[] data = new byte[size];
-      rand.nextBytes(data);
-      return data;
-   }
-
    public boolean isLoaded() {
       return loaded;
    }
@@ -191,9 +191,12 @@ class BackgroundStressor extends Thread {
       terminate = true;
    }
 
-   public SynchronizedStatistics getStatsSnapshot(boolean reset, long time) {
-      SynchronizedStatistics snapshot = threadStats.snapshot(reset,  time);
-      return snapshot;
+   /**
+    * Returns statistics recorded since the last snapshot and starts new interval; does not block this thread
+    * in recording the requests.
+    */
+   public SimpleStatistics getStatsSnapshot(long time) {
+      return (SimpleStatistics) threadStats.snapshot(time);
    }
 
    public void setLoaded(boolean loaded) {
@@ -0,0 +1,50 @@
+package org.radargun.stressors;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Because byte[].equals compares only pointers. Values with different ids are never equal,
+ * which allows to share the array among multiple distinct values.
+ */
+public class ByteArrayWrapper implements Serializable {
+   private final byte[] array;
+   private final long id;
+   private transient int hashCode = 0;
+
+   public ByteArrayWrapper(byte[] array) {
+      this(array, 0);
+   }
+
+   public ByteArrayWrapper(byte[] array, long id) {
+      this.array = array;
+      this.id = id;
+   }
+
+   public byte[] getArray() {
+      return array;
+   }
+
+   @Override
+   public int hashCode() {
+      if (hashCode == 0) {
+         hashCode = 42 + 31 * (int) (id ^ (id >>> 32)) + Arrays.hashCode(array);
+         if (hashCode == 0) hashCode = 42;
+      }
+      return hashCode;
+   }
+
+   @Override
+   public String toString() {
+      return String.format("ByteArray[%d](%db)", hashCode(), array.length);
+   }
+
+   @Override
+   public boolean equals(Object obj) {
+      if (obj instanceof ByteArrayWrapper) {
+         ByteArrayWrapper other = (ByteArrayWrapper) obj;
+         return id == other.id && Arrays.equals(array, other.array);
+      }
+      return false;
+   }
+}
@@ -87,7 +87,11 @@ public class ClientStressTestStressor extends StressTestStressor {
          stats.merge(stressor.getStats());
       }
       results.putAll(stats.getResultsMap(threads, iteration + "."));
-      requestPerSec = Math.max(requestPerSec, stats.getOperationsPerSecond(true));
+      if (isThroughputMeasured()) {
+         requestPerSec = Math.max(requestPerSec, getMeasuredThroughput());
+      } else {
+         requestPerSec = Math.max(requestPerSec, stats.getOperationsPerSecond(true));
+      }
       return results;
    }
          
@@ -0,0 +1,36 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Given fraction of requests accesses small set of hot keys (those with lowest indices), the rest of requests
+ * accesses the other keys. Within both the hot and the cold set the distribution is uniform.
+ */
+public class HotspotKeyDistribution implements KeyDistribution {
+   private final int numEntries;
+   private final int hotsetSize;
+   private final double hotsetProbability;
+
+   public HotspotKeyDistribution(int numEntries, double hotsetFraction, double hotsetProbability) {
+      if (numEntries <= 0) throw new IllegalArgumentException("Number of entries must be positive: " + numEntries);
+      if (hotsetFraction < 0 || hotsetFraction > 1) throw new IllegalArgumentException("Hotset fraction must be in [0, 1]: " + hotsetFraction);
+      if (hotsetProbability < 0 || hotsetProbability > 1) throw new IllegalArgumentException("Hotset probability must be in [0, 1]: " + hotsetProbability);
+      this.numEntries = numEntries;
+      this.hotsetSize = Math.max(1, Math.min(numEntries, (int) (numEntries * hotsetFraction)));
+      this.hotsetProbability = hotsetProbability;
+   }
+
+   @Override
+   public int nextIndex(Random random) {
+      if (hotsetSize == numEntries || random.nextDouble() < hotsetProbability) {
+         return random.nextInt(hotsetSize);
+      } else {
+         return hotsetSize + random.nextInt(numEntries - hotsetSize);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "Hotspot(" + numEntries + ", hotsetSize=" + hotsetSize + ", hotsetProbability=" + hotsetProbability + ")";
+   }
+}
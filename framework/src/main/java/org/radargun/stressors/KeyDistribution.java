@@ -0,0 +1,31 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Selects which of the keys from a fixed set should be accessed by the next request.
+ * <p/>
+ * Concurrency: the same instance is shared by all stressor threads, each thread provides its own {@link Random}.
+ * Implementations should precompute everything in the constructor and must not allocate in {@link #nextIndex(Random)}
+ * as this is called on every request.
+ */
+public interface KeyDistribution {
+
+   /**
+    * @return Index of the key in range 0 (inclusive) to number of entries (exclusive).
+    */
+   int nextIndex(Random random);
+
+   enum Type {
+      /* All keys are accessed with the same probability */
+      UNIFORM,
+      /* Keys with lower index are accessed more often, the skew is set by zipfianTheta */
+      ZIPFIAN,
+      /* Zipfian distribution with the popular keys spread over whole key set */
+      SCRAMBLED_ZIPFIAN,
+      /* Zipfian distribution where the most recently inserted keys (with highest index) are the most popular */
+      LATEST,
+      /* hotsetProbability of requests goes to hotsetFraction of keys, the rest is uniform over the other keys */
+      HOTSPOT
+   }
+}
@@ -0,0 +1,23 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Zipfian distribution where the most popular keys are the latest inserted ones - those with the highest index.
+ */
+public class LatestKeyDistribution extends ZipfianKeyDistribution {
+
+   public LatestKeyDistribution(int numEntries, double theta) {
+      super(numEntries, theta);
+   }
+
+   @Override
+   public int nextIndex(Random random) {
+      return numEntries - 1 - super.nextIndex(random);
+   }
+
+   @Override
+   public String toString() {
+      return "Latest" + super.toString();
+   }
+}
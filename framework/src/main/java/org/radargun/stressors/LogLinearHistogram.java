@@ -0,0 +1,238 @@
+package org.radargun.stressors;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.radargun.BinaryCodec;
+
+/**
+ * Histogram of non-negative values (usually response times in nanoseconds) with fixed relative precision,
+ * in the fashion of HdrHistogram. The value range is split into buckets by powers of two and each bucket
+ * is linearly divided into sub-buckets, so that values are recorded with given number of significant
+ * decimal digits. Recording is a constant-time operation without any allocation, histograms with the same
+ * configuration can be merged by adding the counts.
+ */
+public class LogLinearHistogram implements Serializable {
+   private final long highestTrackableValue;
+   private final int significantDigits;
+   private final int subBucketHalfCountMagnitude;
+   private final int subBucketHalfCount;
+   private final long subBucketMask;
+   private final long[] counts;
+   private long totalCount;
+   private long min = Long.MAX_VALUE;
+   private long max = Long.MIN_VALUE;
+
+   /**
+    * Writes only the non-empty buckets.
+    */
+   public static final BinaryCodec.TypeCodec<LogLinearHistogram> CODEC = new BinaryCodec.TypeCodec<LogLinearHistogram>() {
+      @Override
+      public void write(LogLinearHistogram histogram, BinaryCodec.Output out) throws IOException {
+         out.writeLong(histogram.highestTrackableValue);
+         out.writeInt(histogram.significantDigits);
+         out.writeLong(histogram.min);
+         out.writeLong(histogram.max);
+         int nonEmpty = 0;
+         for (long count : histogram.counts) {
+            if (count != 0) nonEmpty++;
+         }
+         out.writeUnsignedInt(nonEmpty);
+         int lastIndex = 0;
+         for (int i = 0; i < histogram.counts.length; ++i) {
+            if (histogram.counts[i] == 0) continue;
+            out.writeUnsignedInt(i - lastIndex);
+            out.writeUnsignedLong(histogram.counts[i]);
+            lastIndex = i;
+         }
+      }
+
+      @Override
+      public LogLinearHistogram read(BinaryCodec.Input in) throws IOException {
+         LogLinearHistogram histogram = new LogLinearHistogram(in.readLong(), in.readInt());
+         histogram.min = in.readLong();
+         histogram.max = in.readLong();
+         int nonEmpty = in.readUnsignedInt();
+         int index = 0;
+         for (int i = 0; i < nonEmpty; ++i) {
+            index += in.readUnsignedInt();
+            if (index >= histogram.counts.length) throw new IOException("Invalid bucket index " + index);
+            long count = in.readUnsignedLong();
+            histogram.counts[index] = count;
+            histogram.totalCount += count;
+         }
+         return histogram;
+      }
+   };
+
+   /**
+    * @param highestTrackableValue Values above this limit are recorded as this value
+    *                              (but the maximum is tracked exactly).
+    * @param significantDigits Number of significant decimal digits kept, 1 - 5.
+    */
+   public LogLinearHistogram(long highestTrackableValue, int significantDigits) {
+      if (significantDigits < 1 || significantDigits > 5) {
+         throw new IllegalArgumentException("Significant digits must be 1 - 5, was " + significantDigits);
+      }
+      if (highestTrackableValue < 2) {
+         throw new IllegalArgumentException("Highest trackable value must be >= 2, was " + highestTrackableValue);
+      }
+      this.highestTrackableValue = highestTrackableValue;
+      this.significantDigits = significantDigits;
+      long largestSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+      int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestSingleUnitResolution) / Math.log(2));
+      subBucketHalfCountMagnitude = Math.max(subBucketCountMagnitude, 1) - 1;
+      int subBucketCount = 1 << (subBucketHalfCountMagnitude + 1);
+      subBucketHalfCount = subBucketCount / 2;
+      subBucketMask = subBucketCount - 1;
+
+      int bucketCount = 1;
+      long smallestUntrackableValue = subBucketCount;
+      while (smallestUntrackableValue <= highestTrackableValue) {
+         if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+            bucketCount++;
+            break;
+         }
+         smallestUntrackableValue <<= 1;
+         bucketCount++;
+      }
+      counts = new long[(bucketCount + 1) * subBucketHalfCount];
+   }
+
+   private LogLinearHistogram(LogLinearHistogram other) {
+      highestTrackableValue = other.highestTrackableValue;
+      significantDigits = other.significantDigits;
+      subBucketHalfCountMagnitude = other.subBucketHalfCountMagnitude;
+      subBucketHalfCount = other.subBucketHalfCount;
+      subBucketMask = other.subBucketMask;
+      counts = Arrays.copyOf(other.counts, other.counts.length);
+      totalCount = other.totalCount;
+      min = other.min;
+      max = other.max;
+   }
+
+   public void record(long value) {
+      if (value < 0) value = 0;
+      counts[countsIndex(Math.min(value, highestTrackableValue))]++;
+      totalCount++;
+      if (value < min) min = value;
+      if (value > max) max = value;
+   }
+
+   public void merge(LogLinearHistogram other) {
+      if (other.counts.length != counts.length || other.subBucketHalfCount != subBucketHalfCount) {
+         throw new IllegalArgumentException("Cannot merge histograms with different configuration");
+      }
+      for (int i = 0; i < counts.length; ++i) {
+         counts[i] += other.counts[i];
+      }
+      totalCount += other.totalCount;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+   }
+
+   public void reset() {
+      Arrays.fill(counts, 0);
+      totalCount = 0;
+      min = Long.MAX_VALUE;
+      max = Long.MIN_VALUE;
+   }
+
+   public LogLinearHistogram copy() {
+      return new LogLinearHistogram(this);
+   }
+
+   public long getTotalCount() {
+      return totalCount;
+   }
+
+   /**
+    * @return Minimum recorded value or 0 if no value was recorded
+    */
+   public long getMin() {
+      return totalCount == 0 ? 0 : min;
+   }
+
+   /**
+    * @return Maximum recorded value or 0 if no value was recorded
+    */
+   public long getMax() {
+      return totalCount == 0 ? 0 : max;
+   }
+
+   /**
+    * @param percentile 0 - 100
+    * @return Highest value (within the precision) that is not exceeded by given percentage of recorded values,
+    *         or 0 if no value was recorded
+    */
+   public long getValueAtPercentile(double percentile) {
+      if (totalCount == 0) return 0;
+      double requested = Math.min(Math.max(percentile, 0), 100);
+      long countAtPercentile = Math.max(1, (long) Math.ceil(requested * totalCount / 100));
+      long cumulative = 0;
+      for (int i = 0; i < counts.length; ++i) {
+         cumulative += counts[i];
+         if (cumulative >= countAtPercentile) {
+            return Math.max(Math.min(highestEquivalentValue(i), max), min);
+         }
+      }
+      return max;
+   }
+
+   /**
+    * Formats the non-empty part of the histogram as min:border1:...:max=count0:count1:... (the format used
+    * by {@link HistogramStatistics}), empty buckets between non-empty ones are joined into single range.
+    */
+   public String toRangesString() {
+      if (totalCount == 0) return "";
+      StringBuilder borders = new StringBuilder().append(min);
+      StringBuilder rangeCounts = new StringBuilder();
+      long lastBorder = min;
+      for (int i = 0; i < counts.length; ++i) {
+         if (counts[i] == 0) continue;
+         long lowest = lowestEquivalentValue(i);
+         if (lowest > lastBorder) {
+            borders.append(':').append(lowest);
+            rangeCounts.append("0:");
+         }
+         lastBorder = Math.max(lastBorder, Math.min(highestEquivalentValue(i), max) + 1);
+         borders.append(':').append(lastBorder);
+         rangeCounts.append(counts[i]).append(':');
+      }
+      rangeCounts.setLength(rangeCounts.length() - 1);
+      return borders.append('=').append(rangeCounts).toString();
+   }
+
+   public int getSignificantDigits() {
+      return significantDigits;
+   }
+
+   public long getHighestTrackableValue() {
+      return highestTrackableValue;
+   }
+
+   private int countsIndex(long value) {
+      int bucketIndex = 63 - subBucketHalfCountMagnitude - Long.numberOfLeadingZeros(value | subBucketMask);
+      int subBucketIndex = (int) (value >>> bucketIndex);
+      return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+   }
+
+   private int bucketIndex(int index) {
+      return Math.max((index >> subBucketHalfCountMagnitude) - 1, 0);
+   }
+
+   private long lowestEquivalentValue(int index) {
+      int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+      int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+      if (bucketIndex < 0) {
+         subBucketIndex -= subBucketHalfCount;
+         bucketIndex = 0;
+      }
+      return ((long) subBucketIndex) << bucketIndex;
+   }
+
+   private long highestEquivalentValue(int index) {
+      return lowestEquivalentValue(index) + (1L << bucketIndex(index)) - 1;
+   }
+}
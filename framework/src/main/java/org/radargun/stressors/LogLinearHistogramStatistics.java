@@ -0,0 +1,137 @@
+package org.radargun.stressors;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records response times of each operation into {@link LogLinearHistogram}s, therefore it does not require
+ * the histogram ranges to be generated in advance (as {@link HistogramStatistics} does) and keeps given number
+ * of significant digits for the whole range of response times. Reports selected percentiles and the histograms
+ * in the same format as {@link HistogramStatistics}. Errors are ignored.
+ */
+public class LogLinearHistogramStatistics implements Statistics {
+   /* Longer response times are recorded as one hour */
+   public static final long HIGHEST_TRACKABLE_VALUE = 3600 * NS_IN_SEC;
+   private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+   private final int significantDigits;
+   private final double[] percentiles;
+   /* The histograms are created when the operation is registered for the first time */
+   private LogLinearHistogram[] nonTxStats = new LogLinearHistogram[Operation.values().length];
+   private LogLinearHistogram[] incTxStats = new LogLinearHistogram[Operation.values().length];
+
+   public LogLinearHistogramStatistics(int significantDigits) {
+      this(significantDigits, PERCENTILES);
+   }
+
+   /**
+    * @param percentiles Reported percentiles (0 - 100) instead of the default ones
+    */
+   public LogLinearHistogramStatistics(int significantDigits, double[] percentiles) {
+      this.significantDigits = significantDigits;
+      this.percentiles = percentiles;
+   }
+
+   @Override
+   public void registerRequest(long responseTime, long txOverhead, Operation operation) {
+      int index = operation.ordinal();
+      if (nonTxStats[index] == null) {
+         nonTxStats[index] = new LogLinearHistogram(HIGHEST_TRACKABLE_VALUE, significantDigits);
+      }
+      if (incTxStats[index] == null && txOverhead != 0) {
+         // all previous requests were executed without overhead
+         incTxStats[index] = nonTxStats[index].copy();
+      }
+      nonTxStats[index].record(responseTime);
+      if (incTxStats[index] != null) {
+         incTxStats[index].record(responseTime + txOverhead);
+      }
+   }
+
+   @Override
+   public void registerError(long responseTime, long txOverhead, Operation operation) {
+      // errors are ignored
+   }
+
+   @Override
+   public void reset(long time) {
+      for (LogLinearHistogram histogram : nonTxStats) {
+         if (histogram != null) histogram.reset();
+      }
+      for (LogLinearHistogram histogram : incTxStats) {
+         if (histogram != null) histogram.reset();
+      }
+   }
+
+   @Override
+   public Statistics copy() {
+      LogLinearHistogramStatistics stats = new LogLinearHistogramStatistics(significantDigits, percentiles);
+      for (int i = 0; i < nonTxStats.length; ++i) {
+         stats.nonTxStats[i] = nonTxStats[i] == null ? null : nonTxStats[i].copy();
+         stats.incTxStats[i] = incTxStats[i] == null ? null : incTxStats[i].copy();
+      }
+      return stats;
+   }
+
+   @Override
+   public void merge(Statistics otherStats) {
+      if (!(otherStats instanceof LogLinearHistogramStatistics)) throw new IllegalArgumentException();
+      LogLinearHistogramStatistics other = (LogLinearHistogramStatistics) otherStats;
+      for (int i = 0; i < nonTxStats.length; ++i) {
+         // missing histogram including overhead means that all requests were executed without overhead
+         if (incTxStats[i] == null && other.incTxStats[i] != null && nonTxStats[i] != null) {
+            incTxStats[i] = nonTxStats[i].copy();
+         }
+         LogLinearHistogram otherIncTx = other.incTxStats[i];
+         if (otherIncTx == null && incTxStats[i] != null) {
+            otherIncTx = other.nonTxStats[i];
+         }
+         nonTxStats[i] = merge(nonTxStats[i], other.nonTxStats[i]);
+         incTxStats[i] = merge(incTxStats[i], otherIncTx);
+      }
+   }
+
+   private static LogLinearHistogram merge(LogLinearHistogram mine, LogLinearHistogram other) {
+      if (other == null) return mine;
+      if (mine == null) return other.copy();
+      mine.merge(other);
+      return mine;
+   }
+
+   @Override
+   public Map<String, Object> getResultsMap(int threads, String prefix) {
+      Map<String, Object> results = new HashMap<String, Object>();
+      for (Operation op : Operation.values()) {
+         addResults(results, prefix + op.name() + "_NET", nonTxStats[op.ordinal()]);
+         addResults(results, prefix + op.name() + "_TX", incTxStats[op.ordinal()]);
+      }
+      return results;
+   }
+
+   private void addResults(Map<String, Object> results, String name, LogLinearHistogram histogram) {
+      if (histogram == null || histogram.getTotalCount() == 0) return;
+      for (double percentile : percentiles) {
+         results.put(name + getPercentileSuffix(percentile), histogram.getValueAtPercentile(percentile));
+      }
+      results.put(name + "_MAX", histogram.getMax());
+      results.put(name + "_HISTOGRAM", histogram.toRangesString());
+   }
+
+   /**
+    * Dots are not used as these separate the iteration in results map.
+    *
+    * @return Suffix of the result with response time at given percentile, e.g. _P99_9
+    */
+   public static String getPercentileSuffix(double percentile) {
+      String formatted = String.valueOf(percentile);
+      if (formatted.endsWith(".0")) {
+         formatted = formatted.substring(0, formatted.length() - 2);
+      }
+      return "_P" + formatted.replace('.', '_');
+   }
+
+   @Override
+   public double getOperationsPerSecond(boolean includeOverhead) {
+      return -1;
+   }
+}
@@ -0,0 +1,164 @@
+package org.radargun.stressors;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.radargun.config.Property;
+import org.radargun.config.Stressor;
+import org.radargun.config.TimeConverter;
+
+/**
+ * Simulates large number of clients (e.g. web sessions) with a small number of threads. Each thread
+ * initializes the keys of clients with index threadIndex, threadIndex + numThreads, threadIndex + 2 * numThreads...
+ * One client executes a whole transaction (transactionSize requests) on its own set of numEntries keys,
+ * then it sleeps for exponentially distributed think time. The thinking clients are kept in a queue shared
+ * by all threads, a thread that finished a transaction serves the client that wakes up first, so a client
+ * is delayed only when all threads are busy. The requests of a client always use the bucket its keys
+ * were inserted into.
+ */
+@Stressor(doc = "Executes the StressTestStressor logic on behalf of many logical clients multiplexed on the stressor threads.")
+public class LogicalClientStressor extends StressTestStressor {
+   private static final Log log = LogFactory.getLog(LogicalClientStressor.class);
+
+   @Property(doc = "Total number of simulated clients on this slave. Each client has its own set of numEntries keys. Default is 1000.")
+   private int numClients = 1000;
+
+   /* Clients that are thinking, ordered by the time they issue next transaction */
+   private final PriorityBlockingQueue<LogicalClient> thinkingClients = new PriorityBlockingQueue<LogicalClient>();
+
+   @Property(converter = TimeConverter.class, doc = "Mean time the client spends between two transactions. " +
+         "The actual think time is exponentially distributed. Default is 0 (no think time).")
+   private long thinkTime = 0;
+
+   @Override
+   public OperationLogic getLogic() {
+      if (!fixedKeys || sharedKeys || useAtomics || getAsyncWindow() > 0) {
+         throw new IllegalArgumentException("Logical clients can use only private fixed set of keys without atomic or asynchronous operations.");
+      }
+      if (getRequestPeriod() > 0) {
+         throw new IllegalArgumentException("The load is driven by client think time, requestsPerSecond cannot be set.");
+      }
+      if (numClients < getNumThreads()) {
+         throw new IllegalArgumentException("Number of clients (" + numClients + ") must not be lower than number of threads (" + getNumThreads() + ")");
+      }
+      return new LogicalClientOperationLogic();
+   }
+
+   @Override
+   protected boolean isThroughputMeasured() {
+      // threads wait for the clients during their think time
+      return thinkTime > 0 || super.isThroughputMeasured();
+   }
+
+   private static class LogicalClient implements Comparable<LogicalClient> {
+      private final int clientIndex;
+      private final String bucketId;
+      private long wakeUp;
+
+      private LogicalClient(int clientIndex, String bucketId, long wakeUp) {
+         this.clientIndex = clientIndex;
+         this.bucketId = bucketId;
+         this.wakeUp = wakeUp;
+      }
+
+      @Override
+      public int compareTo(LogicalClient o) {
+         return wakeUp < o.wakeUp ? -1 : (wakeUp == o.wakeUp ? 0 : 1);
+      }
+   }
+
+   protected class LogicalClientOperationLogic extends FixedSetOperationLogic {
+      private boolean initialized;
+      private LogicalClient current;
+
+      @Override
+      public void init(String bucketId, int threadIndex) {
+         if (initialized) return;
+         initialized = true;
+         long now = System.nanoTime();
+         for (int clientIndex = threadIndex; clientIndex < numClients; clientIndex += getNumThreads()) {
+            for (int keyIndex = 0; keyIndex < getNumEntries(); keyIndex++) {
+               Object key = generateKey(clientIndex, keyIndex);
+               try {
+                  cacheWrapper.put(bucketId, key, generateValue(getEntrySize()));
+               } catch (Throwable e) {
+                  log.warn("Failed to insert key " + key, e);
+               }
+            }
+            // the clients start thinking at random point of time
+            thinkingClients.add(new LogicalClient(clientIndex, bucketId, now + nextThinkTime() / 2));
+         }
+      }
+
+      @Override
+      public Object run(StressTestStressor.Stressor stressor, int iteration) {
+         if (iteration % getTransactionSize() == 0) {
+            switchClient(stressor);
+         }
+         return super.run(stressor, iteration);
+      }
+
+      private void switchClient(StressTestStressor.Stressor stressor) {
+         if (current != null) {
+            current.wakeUp = System.nanoTime() + nextThinkTime();
+            thinkingClients.add(current);
+         }
+         // there are at least as many clients as threads, therefore the queue is not empty after the add
+         current = thinkingClients.poll();
+         stressor.setBucketId(current.bucketId);
+         if (thinkTime > 0) {
+            long toWait;
+            while ((toWait = current.wakeUp - System.nanoTime()) > 0) {
+               LockSupport.parkNanos(toWait);
+            }
+            // if all threads were busy when the client woke up, it had to wait for the response
+            stressor.setIntendedStart(current.wakeUp);
+         }
+      }
+
+      private long nextThinkTime() {
+         if (thinkTime <= 0) return 0;
+         return (long) (-Math.log(1 - r.nextDouble()) * thinkTime * 1000000);
+      }
+
+      @Override
+      protected Object getKey(int keyId) {
+         // the keys are not cached as there may be too many of them
+         return generateKey(current.clientIndex, keyId);
+      }
+
+      private Object generateKey(int clientIndex, int keyIndex) {
+         if (getNodeIndex() == -1) {
+            return getKeyGenerator().generateKey(clientIndex, keyIndex);
+         } else {
+            return getKeyGenerator().generateKey(getNodeIndex(), clientIndex, keyIndex);
+         }
+      }
+   }
+
+   public int getNumClients() {
+      return numClients;
+   }
+
+   public void setNumClients(int numClients) {
+      this.numClients = numClients;
+   }
+
+   public long getThinkTime() {
+      return thinkTime;
+   }
+
+   public void setThinkTime(long thinkTime) {
+      this.thinkTime = thinkTime;
+   }
+
+   @Override
+   public String toString() {
+      return "LogicalClientStressor{" +
+            "numClients=" + numClients +
+            ", thinkTime=" + thinkTime +
+            ", " + super.toString() + "}";
+   }
+}
@@ -28,8 +28,8 @@ import java.util.Map;
  * @author Radim Vansa &lt;rvansa@redhat.com&gt;
  */
 public class MultiStatistics implements Statistics {
-   SimpleStatistics simple;
-   HistogramStatistics histogram;
+   Statistics simple;
+   Statistics histogram;
 
    public MultiStatistics(Map<String, Object> ranges) {
       simple = new SimpleStatistics();
@@ -37,8 +37,8 @@ public class MultiStatistics implements Statistics {
    }
 
    public MultiStatistics(Statistics simple, Statistics histogram) {
-      this.simple = (SimpleStatistics) simple;
-      this.histogram = (HistogramStatistics) histogram;
+      this.simple = simple;
+      this.histogram = histogram;
    }
 
    @Override
@@ -0,0 +1,62 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Returns values from a pool of pre-generated random byte arrays, so that the cost of allocating and filling
+ * the value is not included in the measured operations. The values are rotated - subsequent calls never return
+ * the same instance unless the pool has single entry. The pool is regenerated when different size is requested.
+ * <p/>
+ * When the values are wrapped, each returned {@link ByteArrayWrapper} gets unique id so that values returned
+ * by subsequent calls are never equal, although these share the underlying arrays.
+ */
+public class PooledValueGenerator implements ValueGenerator {
+   private final Random random;
+   private final int maxPoolSize;
+   private final long maxPoolMemory;
+   private final boolean wrapped;
+   private byte[][] pool;
+   private int valueSize = -1;
+   private int position;
+   private long nextId = 1;
+
+   /**
+    * @param maxPoolSize Maximum number of pre-generated values
+    * @param maxPoolMemory Maximum number of bytes occupied by the pre-generated values
+    * @param wrapped If true, the values are wrapped in {@link ByteArrayWrapper} in order to support equals()
+    */
+   public PooledValueGenerator(Random random, int maxPoolSize, long maxPoolMemory, boolean wrapped) {
+      if (maxPoolSize <= 0) throw new IllegalArgumentException("Pool size must be positive: " + maxPoolSize);
+      this.random = random;
+      this.maxPoolSize = maxPoolSize;
+      this.maxPoolMemory = maxPoolMemory;
+      this.wrapped = wrapped;
+   }
+
+   @Override
+   public Object generateValue(int size) {
+      if (size != valueSize) {
+         fillPool(size);
+      }
+      byte[] array = pool[position];
+      if (++position == pool.length) {
+         position = 0;
+      }
+      return wrapped ? new ByteArrayWrapper(array, nextId++) : array;
+   }
+
+   private void fillPool(int size) {
+      int poolSize = (int) Math.max(1, Math.min(maxPoolSize, maxPoolMemory / Math.max(1, size)));
+      pool = new byte[poolSize][];
+      for (int i = 0; i < poolSize; ++i) {
+         pool[i] = new byte[size];
+         random.nextBytes(pool[i]);
+      }
+      valueSize = size;
+      position = 0;
+   }
+
+   public int getPoolSize() {
+      return pool == null ? 0 : pool.length;
+   }
+}
@@ -0,0 +1,26 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Generates new random byte array for each value.
+ */
+public class RandomValueGenerator implements ValueGenerator {
+   private final Random random;
+   private final boolean wrapped;
+
+   /**
+    * @param wrapped If true, the values are wrapped in {@link ByteArrayWrapper} in order to support equals()
+    */
+   public RandomValueGenerator(Random random, boolean wrapped) {
+      this.random = random;
+      this.wrapped = wrapped;
+   }
+
+   @Override
+   public Object generateValue(int size) {
+      byte[] array = new byte[size];
+      random.nextBytes(array);
+      return wrapped ? new ByteArrayWrapper(array) : array;
+   }
+}
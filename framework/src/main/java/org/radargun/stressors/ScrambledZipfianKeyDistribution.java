@@ -0,0 +1,39 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Zipfian distribution where the popular keys are not clustered at the beginning of the key set
+ * but scattered over whole key set. As in YCSB, the zipfian items are generated from a space much larger
+ * than the key set and mapped to keys using FNV-1a hash, so that the hash collisions of the popular items
+ * do not distort the distribution noticeably.
+ */
+public class ScrambledZipfianKeyDistribution extends ZipfianKeyDistribution {
+   private static final long ITEM_COUNT = 10000000000L;
+   private static final long FNV_OFFSET_BASIS_64 = 0xCBF29CE484222325L;
+   private static final long FNV_PRIME_64 = 1099511628211L;
+
+   public ScrambledZipfianKeyDistribution(int numEntries, double theta) {
+      super(numEntries, Math.max(ITEM_COUNT, numEntries), theta);
+   }
+
+   @Override
+   public int nextIndex(Random random) {
+      long hash = fnvHash64(nextItem(random));
+      return (int) ((hash & Long.MAX_VALUE) % numEntries);
+   }
+
+   private static long fnvHash64(long value) {
+      long hash = FNV_OFFSET_BASIS_64;
+      for (int i = 0; i < 8; ++i) {
+         hash ^= (value >>> (i * 8)) & 0xFF;
+         hash *= FNV_PRIME_64;
+      }
+      return hash;
+   }
+
+   @Override
+   public String toString() {
+      return "Scrambled" + super.toString();
+   }
+}
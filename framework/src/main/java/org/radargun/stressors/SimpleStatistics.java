@@ -22,6 +22,7 @@
 
 package org.radargun.stressors;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Iterator;
@@ -29,6 +30,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.radargun.BinaryCodec;
+
 /**
 * // TODO: Document this
 *
@@ -81,6 +84,45 @@ public class SimpleStatistics implements Statistics {
 
    protected int cacheSize;
 
+   public static final BinaryCodec.TypeCodec<SimpleStatistics> CODEC = new BinaryCodec.TypeCodec<SimpleStatistics>() {
+      @Override
+      public void write(SimpleStatistics stats, BinaryCodec.Output out) throws IOException {
+         out.writeLong(stats.intervalBeginTime);
+         out.writeLong(stats.intervalEndTime);
+         out.writeBoolean(stats.nodeUp);
+         out.writeInt(stats.cacheSize);
+         out.writeUnsignedInt(stats.operationStats.length);
+         for (OperationStats os : stats.operationStats) {
+            out.writeLong(os.requests);
+            out.writeLong(os.responseTimeMax);
+            out.writeLong(os.responseTimeSum);
+            out.writeLong(os.txOverhead);
+            out.writeLong(os.errors);
+         }
+      }
+
+      @Override
+      public SimpleStatistics read(BinaryCodec.Input in) throws IOException {
+         SimpleStatistics stats = new SimpleStatistics();
+         stats.intervalBeginTime = in.readLong();
+         stats.intervalEndTime = in.readLong();
+         stats.nodeUp = in.readBoolean();
+         stats.cacheSize = in.readInt();
+         int operations = in.readUnsignedInt();
+         if (operations != stats.operationStats.length) {
+            throw new IOException("Expected statistics of " + stats.operationStats.length + " operations, got " + operations);
+         }
+         for (OperationStats os : stats.operationStats) {
+            os.requests = in.readLong();
+            os.responseTimeMax = in.readLong();
+            os.responseTimeSum = in.readLong();
+            os.txOverhead = in.readLong();
+            os.errors = in.readLong();
+         }
+         return stats;
+      }
+   };
+
    public SimpleStatistics(boolean nodeUp) {
       this.nodeUp = nodeUp;
       initOperationStats();
@@ -404,7 +446,7 @@ public class SimpleStatistics implements Statistics {
    public Map<String, Object> getResultsMap(int numThreads, String prefix) {
       Map<String, Object> results = new LinkedHashMap<String, Object>();
       results.put("DURATION", getResponseTimeSum() + getTxOverheadSum());
-      results.put("FAILURES", getNumErrors());
+      results.put(FAILURES, getNumErrors());
       results.put("REQ_PER_SEC_NET", numThreads * getOperationsPerSecond(false));
       results.put(REQ_PER_SEC, numThreads * getOperationsPerSecond(true));
       Operation[] operations = Operation.values();
@@ -0,0 +1,63 @@
+package org.radargun.stressors;
+
+/**
+ * Records statistics from single thread and lets other threads take snapshots of the interval recorded since
+ * the previous snapshot without blocking the recording thread. The writer records into the active buffer;
+ * the snapshot atomically replaces it with an empty one and waits until the writer finishes the request
+ * it may be recording into the old buffer.
+ *
+ * Only one thread may call the register* methods, snapshots may be taken by any thread.
+ */
+public class SingleWriterStatistics {
+   private final Statistics prototype;
+   private volatile Statistics active;
+   /* Odd while the writer is recording a request */
+   private volatile long writerEpoch;
+
+   public SingleWriterStatistics(Statistics prototype, long time) {
+      this.prototype = prototype;
+      this.active = newInterval(time);
+   }
+
+   public void registerRequest(long responseTime, long txOverhead, Operation operation) {
+      long epoch = writerEpoch;
+      // the volatile write must precede the read of active buffer
+      writerEpoch = epoch + 1;
+      active.registerRequest(responseTime, txOverhead, operation);
+      writerEpoch = epoch + 2;
+   }
+
+   public void registerError(long responseTime, long txOverhead, Operation operation) {
+      long epoch = writerEpoch;
+      writerEpoch = epoch + 1;
+      active.registerError(responseTime, txOverhead, operation);
+      writerEpoch = epoch + 2;
+   }
+
+   /**
+    * @param time Time when the snapshot is taken (milliseconds since epoch), starts the next interval.
+    * @return Statistics recorded since the previous snapshot (or since creation). The instance is not
+    *         accessed by the writer any more.
+    */
+   public synchronized Statistics snapshot(long time) {
+      Statistics recorded = active;
+      active = newInterval(time);
+      long epoch = writerEpoch;
+      if ((epoch & 1) != 0) {
+         // the writer might have read the old buffer before the swap
+         while (writerEpoch == epoch) {
+            Thread.yield();
+         }
+      }
+      if (recorded instanceof SimpleStatistics) {
+         ((SimpleStatistics) recorded).intervalEndTime = time;
+      }
+      return recorded;
+   }
+
+   private Statistics newInterval(long time) {
+      Statistics statistics = prototype.copy();
+      statistics.reset(time);
+      return statistics;
+   }
+}
@@ -32,6 +32,7 @@ public interface Statistics extends Serializable {
    long NS_IN_SEC = 1000 * 1000 * 1000;
    long NS_IN_MS = 1000 * 1000;
    String REQ_PER_SEC = "REQ_PER_SEC";
+   String FAILURES = "FAILURES";
 
    void registerRequest(long responseTime, long txOverhead, Operation operation);
 
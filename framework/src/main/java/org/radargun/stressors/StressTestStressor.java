@@ -1,9 +1,11 @@
 package org.radargun.stressors;
 
-import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -11,6 +13,7 @@ import org.radargun.CacheWrapper;
 import org.radargun.config.Property;
 import org.radargun.config.Stressor;
 import org.radargun.config.TimeConverter;
+import org.radargun.features.AsyncOperationsCapable;
 import org.radargun.features.AtomicOperationsCapable;
 import org.radargun.features.BulkOperationsCapable;
 import org.radargun.utils.Utils;
@@ -25,6 +28,23 @@ import org.radargun.features.Queryable;
 public class StressTestStressor extends AbstractCacheWrapperStressor {
 
    private static final Log log = LogFactory.getLog(StressTestStressor.class);
+   /* Pause between polls of pending asynchronous requests when none of them is finished */
+   private static final long ASYNC_POLL_NANOS = 10000;
+
+   public static final String STEADY_STATE_TIME = "STEADY_STATE_TIME";
+   public static final String TIME_SERIES = "TIME_SERIES";
+   /* Keys in the time series entries */
+   public static final String INTERVAL_TIME = "INTERVAL_TIME";
+   public static final String THROUGHPUT = "THROUGHPUT";
+   public static final String INTERVAL_REQUESTS = "INTERVAL_REQUESTS";
+   public static final String AVG_RESPONSE_TIME = "AVG_RESPONSE_TIME";
+
+   /**
+    * Receives the entries of the time series as soon as these are taken.
+    */
+   public interface TimeSeriesListener {
+      void sampleTaken(Map<String, Object> sample);
+   }
 
    @Property(doc = "After how many operations should be log written. Default is 5000.")
    private int opsCountStatusLog = 5000;
@@ -85,6 +105,54 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    @Property(doc = "If true, putIfAbsent and replace operations are used. Default is false.")
    protected boolean useAtomics = false;
 
+   @Property(doc = "Target throughput of this node (operations per second), evenly divided among the threads. " +
+         "When set, each operation has its intended start time and its response time is measured from that time " +
+         "instead of the actual send time, so stalls of the cache are not hidden by the stalled load generator. " +
+         "By default (0) the threads issue requests back-to-back.")
+   private int requestsPerSecond = 0;
+
+   @Property(doc = "Number of asynchronous operations each thread keeps in flight. Applicable only when the cache " +
+         "wrapper supports asynchronous operations, cannot be combined with transactions, atomic or bulk operations. " +
+         "By default (0) synchronous operations are used.")
+   private int asyncWindow = 0;
+
+   @Property(doc = "Distribution of accesses to the fixed set of keys: UNIFORM, ZIPFIAN, SCRAMBLED_ZIPFIAN, LATEST " +
+         "or HOTSPOT. Default is UNIFORM.")
+   private KeyDistribution.Type keyDistribution = KeyDistribution.Type.UNIFORM;
+
+   @Property(doc = "Skew of the ZIPFIAN, SCRAMBLED_ZIPFIAN and LATEST distributions, must be in (0, 1). Default is 0.99.")
+   private double zipfianTheta = 0.99;
+
+   @Property(doc = "Used only with HOTSPOT distribution: fraction of the keys that form the hot set. Default is 0.2.")
+   private double hotsetFraction = 0.2;
+
+   @Property(doc = "Used only with HOTSPOT distribution: probability that the request accesses the hot set. Default is 0.8.")
+   private double hotsetProbability = 0.8;
+
+   @Property(doc = "Number of pre-generated values each thread rotates instead of generating new value for each " +
+         "write. By default (0) each write generates new value.")
+   private int valuePoolSize = 0;
+
+   @Property(doc = "Maximum amount of memory (in bytes) occupied by the pre-generated values of all threads together. " +
+         "Default is 64 MB.")
+   private long valuePoolMemory = 64 * 1024 * 1024;
+
+   @Property(doc = "Number of consecutive windows in which the throughput and response time must be stable in order " +
+         "to finish the test (steady-state detection, used for warmup). The duration serves as hard limit in this mode. " +
+         "By default (0) the test is limited only by the duration or number of requests.")
+   private int steadyStateWindows = 0;
+
+   @Property(converter = TimeConverter.class, doc = "Length of one steady-state detection window. Default is 1 second.")
+   private long steadyStateWindowDuration = 1000;
+
+   @Property(doc = "Maximum coefficient of variation (standard deviation / mean) of the throughput and mean response " +
+         "time over the steady-state detection windows. Default is 0.05.")
+   private double steadyStateMaxVariation = 0.05;
+
+   @Property(converter = TimeConverter.class, doc = "Period of recording the statistics as time series. " +
+         "By default (0) only the statistics for the whole test are recorded.")
+   private long statisticsInterval = 0;
+
    @Property(doc = "Full class name of the key generator. Default is org.radargun.stressors.StringKeyGenerator.")
    private String keyGeneratorClass = StringKeyGenerator.class.getName();
 
@@ -101,10 +169,18 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    private AtomicInteger txCount = new AtomicInteger(0);
 
    protected KeyGenerator keyGenerator;
+   private KeyDistribution keyDistributionInstance;
+   private final ThreadLocal<ValueGenerator> valueGenerator = new ThreadLocal<ValueGenerator>() {
+      @Override
+      protected ValueGenerator initialValue() {
+         return createValueGenerator();
+      }
+   };
 
    protected CacheWrapper cacheWrapper;
    protected AtomicOperationsCapable atomicCacheWrapper;
    protected BulkOperationsCapable bulkCacheWrapper;
+   protected AsyncOperationsCapable asyncCacheWrapper;
    private ArrayList<Object> sharedKeysPool = new ArrayList<Object>();
    private static final Random r = new Random();
    private volatile long startNanos;
@@ -115,6 +191,9 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    
    protected List<Stressor> stressors = new ArrayList<Stressor>(numThreads);
    private Statistics statisticsPrototype = new SimpleStatistics();
+   private List<Map<String, Object>> timeSeries;
+   private TimeSeriesListener timeSeriesListener;
+   private volatile boolean aborted;
 
    protected void init(CacheWrapper wrapper) {
       this.cacheWrapper = wrapper;
@@ -124,6 +203,9 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       if (wrapper instanceof BulkOperationsCapable) {
          bulkCacheWrapper = (BulkOperationsCapable) wrapper;
       }
+      if (wrapper instanceof AsyncOperationsCapable) {
+         asyncCacheWrapper = (AsyncOperationsCapable) wrapper;
+      }
       startNanos = System.nanoTime();
       log.info("Executing: " + this.toString());
    }
@@ -131,7 +213,12 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    public Map<String, Object> stress(CacheWrapper wrapper) {
       init(wrapper);
       StressorCompletion completion;
-      if (durationMillis > 0) {
+      if (steadyStateWindows > 0) {
+         if (durationMillis <= 0) {
+            throw new IllegalArgumentException("Steady-state detection requires duration as the time limit.");
+         }
+         completion = new SteadyStateCompletion(durationMillis);
+      } else if (durationMillis > 0) {
          completion = new TimeStressorCompletion(durationMillis);
       } else {
          completion = new OperationCountCompletion(new AtomicInteger(numRequests));
@@ -146,6 +233,9 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       }
       
       Map<String, Object> results = processResults();
+      if (completion instanceof SteadyStateCompletion) {
+         results.put(STEADY_STATE_TIME, ((SteadyStateCompletion) completion).getSteadyStateMillis());
+      }
       finishOperations();
       return results;
    }
@@ -177,10 +267,41 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       }
 
       Map<String, Object> results = stats.getResultsMap(numThreads, "");
+      if (isThroughputMeasured()) {
+         results.put(Statistics.REQ_PER_SEC, getMeasuredThroughput());
+      }
+      if (timeSeries != null) {
+         results.put(TIME_SERIES, timeSeries);
+      }
       log.info("Finished generating report. Test duration is: " + Utils.getNanosDurationString(System.nanoTime() - startNanos));
       return results;
    }
 
+   /**
+    * @return True if the threads do not spend all the elapsed time waiting for responses, therefore the throughput
+    *         has to be measured instead of being derived from the response times.
+    */
+   protected boolean isThroughputMeasured() {
+      // response times of pipelined requests overlap and threads wait between requests in open-loop mode
+      return asyncWindow > 0 || requestsPerSecond > 0;
+   }
+
+   /**
+    * @return Requests per second computed from the number of completed requests and the elapsed time,
+    *         as opposed to the throughput derived from response times.
+    */
+   protected double getMeasuredThroughput() {
+      long requests = 0;
+      long begin = Long.MAX_VALUE, end = Long.MIN_VALUE;
+      for (Stressor stressor : stressors) {
+         requests += stressor.requestsCompleted;
+         begin = Math.min(begin, stressor.runBegin);
+         end = Math.max(end, stressor.runEnd);
+      }
+      if (end <= begin) return 0;
+      return (double) (Statistics.NS_IN_SEC * requests) / (double) (end - begin);
+   }
+
    protected Statistics createStatistics() {
       return statisticsPrototype.copy();
    }
@@ -199,8 +320,97 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       // nothing to do here
       synchronizer.masterPhaseEnd();
       log.info("Started " + stressors.size() + " stressor threads.");
+      TimeSeriesSampler sampler = null;
+      if (statisticsInterval > 0) {
+         sampler = new TimeSeriesSampler();
+         sampler.start();
+      }
       // wait until all threads have finished
       synchronizer.masterPhaseStart();
+      if (sampler != null) {
+         timeSeries = sampler.finish();
+      }
+   }
+
+   /**
+    * Periodically takes snapshots of the interval statistics of all threads, merges them and converts them
+    * into an entry of the time series.
+    */
+   private class TimeSeriesSampler extends Thread {
+      private final List<Map<String, Object>> samples = new ArrayList<Map<String, Object>>();
+      private final long beginTime = System.currentTimeMillis();
+      private long lastTime = beginTime;
+      private long lastRequests = 0;
+      private volatile boolean running = true;
+
+      private TimeSeriesSampler() {
+         super("TimeSeriesSampler");
+         setDaemon(true);
+      }
+
+      @Override
+      public void run() {
+         long nextSample = beginTime + statisticsInterval;
+         while (running) {
+            long toWait = nextSample - System.currentTimeMillis();
+            if (toWait > 0) {
+               try {
+                  Thread.sleep(toWait);
+               } catch (InterruptedException e) {
+                  break;
+               }
+               continue;
+            }
+            sample();
+            nextSample += statisticsInterval;
+         }
+      }
+
+      private synchronized void sample() {
+         long now = System.currentTimeMillis();
+         Statistics merged = null;
+         long requests = 0;
+         for (Stressor stressor : stressors) {
+            requests += stressor.requestsCompleted;
+            SingleWriterStatistics intervalStats = stressor.intervalStats;
+            if (intervalStats == null) continue;
+            Statistics snapshot = intervalStats.snapshot(now);
+            if (merged == null) {
+               merged = snapshot;
+            } else {
+               merged.merge(snapshot);
+            }
+         }
+         if (merged == null) return;
+         Map<String, Object> sample = new HashMap<String, Object>();
+         for (Map.Entry<String, Object> entry : merged.getResultsMap(numThreads, "").entrySet()) {
+            // histograms are too big to be kept for each interval
+            if (entry.getValue() instanceof Number) {
+               sample.put(entry.getKey(), entry.getValue());
+            }
+         }
+         if (merged instanceof SimpleStatistics) {
+            sample.put(AVG_RESPONSE_TIME, ((SimpleStatistics) merged).getAvgResponseTime());
+         }
+         sample.put(INTERVAL_TIME, now - beginTime);
+         sample.put(INTERVAL_REQUESTS, requests - lastRequests);
+         sample.put(THROUGHPUT, now > lastTime ? 1000d * (requests - lastRequests) / (now - lastTime) : 0d);
+         samples.add(sample);
+         lastTime = now;
+         lastRequests = requests;
+         if (timeSeriesListener != null) {
+            timeSeriesListener.sampleTaken(sample);
+         }
+      }
+
+      private List<Map<String, Object>> finish() throws InterruptedException {
+         running = false;
+         interrupt();
+         join();
+         // the last, possibly shorter interval
+         sample();
+         return samples;
+      }
    }
    
    protected void finishOperations() {
@@ -233,6 +443,15 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    }
 
    public OperationLogic getLogic() {
+      if (asyncWindow > 0) {
+         if (asyncCacheWrapper == null) {
+            throw new IllegalArgumentException("Cache wrapper " + cacheWrapper.toString() + " does not support asynchronous operations.");
+         } else if (bulkSize != 1 || useAtomics) {
+            throw new IllegalArgumentException("Asynchronous operations cannot be combined with atomic or bulk operations.");
+         } else if (isUseTransactions()) {
+            throw new IllegalArgumentException("Asynchronous operations cannot be executed in transactions.");
+         }
+      }
       if (sharedKeys && !fixedKeys) {
          throw new IllegalArgumentException("Cannot use both shared and non-fixed keys - not implemented");
       } else if (!fixedKeys) {
@@ -272,6 +491,20 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       }
    }
 
+   /**
+    * The listener is called from the sampling thread, the time series are recorded only if statisticsInterval is set.
+    */
+   public void setTimeSeriesListener(TimeSeriesListener timeSeriesListener) {
+      this.timeSeriesListener = timeSeriesListener;
+   }
+
+   /**
+    * Stops the stressor threads after the current request, the results contain requests executed until then.
+    */
+   public void abort() {
+      aborted = true;
+   }
+
    public void setStatisticsPrototype(Statistics statisticsPrototype) {
       this.statisticsPrototype = statisticsPrototype;
    }
@@ -282,13 +515,13 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    }
 
    protected abstract class FixedSetOperationLogic implements OperationLogic {
-      private Random r = new Random();
+      protected Random r = new Random();
+      private final KeyDistribution keyDistribution = getKeyDistribution();
 
       @Override
       public Object run(Stressor stressor, int iteration) {
          int randomAction = r.nextInt(100);
-         int randomKeyInt = r.nextInt(numEntries - 1);
-         Object key = getKey(randomKeyInt);
+         Object key = nextKey();
 
          if (randomAction < writePercentage) {
             return stressor.makeRequest(iteration, Operation.PUT, key, generateValue(entrySize));
@@ -300,6 +533,29 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       }
 
       protected abstract Object getKey(int keyId);
+
+      protected Object nextKey() {
+         return getKey(keyDistribution.nextIndex(r));
+      }
+
+      /**
+       * If an index is drawn repeatedly, the next free index is used instead, so the number of draws
+       * is bounded even if the distribution concentrates on few keys.
+       *
+       * @param count Number of keys, must not exceed numEntries
+       */
+      protected Set<Object> nextDistinctKeys(int count) {
+         Set<Integer> indices = new HashSet<Integer>(count);
+         Set<Object> keys = new HashSet<Object>(count);
+         while (keys.size() < count) {
+            int index = keyDistribution.nextIndex(r);
+            while (!indices.add(index)) {
+               index = (index + 1) % numEntries;
+            }
+            keys.add(getKey(index));
+         }
+         return keys;
+      }
    }
 
    protected class FixedSetPerThreadOperationLogic extends FixedSetOperationLogic {
@@ -376,7 +632,7 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       @Override
       public Object run(Stressor stressor, int iteration) {
          int randomAction = r.nextInt(100);
-         Object key = getKey(r.nextInt(numEntries - 1));
+         Object key = nextKey();
          Object lastValue = lastValues.get(key);
 
          Object newValue = generateValue(entrySize);
@@ -435,23 +691,12 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          int randomAction = r.nextInt(100);
          if (randomAction < writePercentage) {
             Map<Object, Object> map = new HashMap<Object, Object>(bulkSize);
-            for (int i = 0; i < bulkSize;) {
-               Object key = initLogic.getKey(r.nextInt(numEntries - 1));
-               if (!map.containsKey(key)) {
-                  map.put(key, generateValue(entrySize));
-                  ++i;
-               }
+            for (Object key : initLogic.nextDistinctKeys(bulkSize)) {
+               map.put(key, generateValue(entrySize));
             }
             return stressor.makeRequest(iteration, putOperation, map);
          } else {
-            Set<Object> set = new HashSet<Object>(bulkSize);
-            for (int i = 0; i < bulkSize; ) {
-               Object key = initLogic.getKey(r.nextInt(numEntries - 1));
-               if (!set.contains(key)) {
-                  set.add(key);
-                  ++i;
-               }
-            }
+            Set<Object> set = initLogic.nextDistinctKeys(bulkSize);
             if (randomAction < writePercentage + removePercentage) {
                return stressor.makeRequest(iteration, removeOperation, set);
             } else {
@@ -523,12 +768,30 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
 
    protected class Stressor extends Thread {
       private int threadIndex;
-      private final String bucketId;
+      /* Bucket of the subsequent requests, the logic may switch it to the bucket of the data it works on */
+      private String bucketId;
       private boolean txNotCompleted = false;
       private long transactionDuration = 0;
       private Statistics stats;
+      /* Statistics since the last snapshot of the time series sampler */
+      private volatile SingleWriterStatistics intervalStats;
       private OperationLogic logic;
       private boolean useTransactions = isUseTransactions();
+      /* Time when the current request should have been started in open-loop mode, valid if hasIntendedStart is set */
+      private long intendedStart;
+      private boolean hasIntendedStart;
+      /* Asynchronous requests that have not been completed yet, compacted at the beginning of the arrays */
+      private final Future<Object>[] pendingFutures = new Future[asyncWindow];
+      private final long[] pendingStarts = new long[asyncWindow];
+      private final Operation[] pendingOperations = new Operation[asyncWindow];
+      private int pendingCount;
+      /* The counters and run boundaries are written only by this thread, but read by the steady-state
+         detection and the time series sampler, therefore volatile */
+      private volatile long requestsCompleted;
+      /* Sum of response times of completed requests, sampled by steady-state detection */
+      private volatile long responseTimeSum;
+      private volatile long runBegin;
+      private volatile long runEnd;
 
       public Stressor(int threadIndex, OperationLogic logic) {
          super("Stressor-" + threadIndex);         
@@ -548,6 +811,9 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
                }
                logic.init(bucketId, threadIndex);
                stats = createStatistics();
+               if (statisticsInterval > 0) {
+                  intervalStats = new SingleWriterStatistics(statisticsPrototype, System.currentTimeMillis());
+               }
                synchronizer.slavePhaseEnd();
                synchronizer.slavePhaseStart();
                log.trace("Starting thread: " + getName());
@@ -567,24 +833,69 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       
       private void runInternal() {
          int i = 0;
-         while (completion.moreToRun()) {
+         requestsCompleted = 0;
+         responseTimeSum = 0;
+         runBegin = System.nanoTime();
+         long requestPeriod = getRequestPeriod();
+         // spread the threads evenly over the period to avoid bursts
+         long nextIntendedStart = System.nanoTime() + requestPeriod * threadIndex / numThreads;
+         while (!aborted && completion.moreToRun()) {
+            if (requestPeriod > 0) {
+               waitUntil(nextIntendedStart);
+               setIntendedStart(nextIntendedStart);
+               nextIntendedStart += requestPeriod;
+            }
             Object result = logic.run(this, i);
             i++;
             completion.logProgress(i, result, threadIndex);
          }
+         while (pendingCount > 0) {
+            completeAsyncRequests(true);
+         }
+         runEnd = System.nanoTime();
 
          if (txNotCompleted) {
             try {
                long endTxTime = endTransaction();
-               stats.registerRequest(transactionDuration + endTxTime, 0, Operation.TRANSACTION);
+               registerRequest(transactionDuration + endTxTime, 0, Operation.TRANSACTION);
             } catch (TransactionException e) {
-               stats.registerError(transactionDuration + e.getOperationDuration(), 0, Operation.TRANSACTION);
+               registerError(transactionDuration + e.getOperationDuration(), 0, Operation.TRANSACTION);
             }
             transactionDuration = 0;
          }
+         hasIntendedStart = false;
+      }
+
+      /**
+       * Sets the time when the next request should have been started; if the request is executed later,
+       * the delay is included in its response time.
+       */
+      protected void setIntendedStart(long intendedStart) {
+         this.intendedStart = intendedStart;
+         this.hasIntendedStart = true;
+      }
+
+      protected String getBucketId() {
+         return bucketId;
+      }
+
+      protected void setBucketId(String bucketId) {
+         this.bucketId = bucketId;
+      }
+
+      private void waitUntil(long nanoTime) {
+         long toWait;
+         while ((toWait = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(toWait);
+         }
       }
 
       public Object makeRequest(int iteration, Operation operation, Object... keysAndValues) {
+         if (asyncWindow > 0) {
+            makeAsyncRequest(operation, keysAndValues);
+            // the result is not known yet
+            return null;
+         }
          long startTxTime = 0;
          if (useTransactions && shouldStartTransaction(iteration)) {
             try {
@@ -592,7 +903,7 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
                transactionDuration = startTxTime;
                txNotCompleted = true;
             } catch (TransactionException e) {
-               stats.registerError(e.getOperationDuration(), 0, Operation.TRANSACTION);
+               registerError(e.getOperationDuration(), 0, Operation.TRANSACTION);
                return null;
             }
          }
@@ -600,6 +911,12 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          Object result = null;
          boolean successfull = true;
          long start = System.nanoTime();
+         if (hasIntendedStart) {
+            // the request is late because of previous slow requests - include the delay in the response time
+            if (intendedStart < start) start = intendedStart;
+            // only the first request executed in given time slot is delayed
+            hasIntendedStart = false;
+         }
          long operationDuration;
          try {
             switch (operation) {
@@ -664,21 +981,129 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
          if (useTransactions && shouldEndTransaction(iteration)) {
             try {
                endTxTime = endTransaction();
-               stats.registerRequest(transactionDuration + endTxTime, 0, Operation.TRANSACTION);
+               registerRequest(transactionDuration + endTxTime, 0, Operation.TRANSACTION);
                txNotCompleted = false;
             } catch (TransactionException e) {
                endTxTime = e.getOperationDuration();
-               stats.registerError(transactionDuration + endTxTime, 0, Operation.TRANSACTION);
+               registerError(transactionDuration + endTxTime, 0, Operation.TRANSACTION);
             }
          }
          if (successfull) {
-            stats.registerRequest(operationDuration, startTxTime + endTxTime, operation);
+            registerRequest(operationDuration, startTxTime + endTxTime, operation);
          } else {
-            stats.registerError(operationDuration, startTxTime + endTxTime, operation);
+            registerError(operationDuration, startTxTime + endTxTime, operation);
          }
+         requestsCompleted++;
+         responseTimeSum += operationDuration;
          return result;
       }
 
+      private void makeAsyncRequest(Operation operation, Object[] keysAndValues) {
+         while (pendingCount >= asyncWindow) {
+            completeAsyncRequests(true);
+         }
+         long start = System.nanoTime();
+         if (hasIntendedStart) {
+            if (intendedStart < start) start = intendedStart;
+            hasIntendedStart = false;
+         }
+         Future<Object> future;
+         try {
+            switch (operation) {
+               case GET:
+               case GET_NULL:
+                  future = asyncCacheWrapper.getAsync(bucketId, keysAndValues[0]);
+                  break;
+               case PUT:
+                  future = asyncCacheWrapper.putAsync(bucketId, keysAndValues[0], keysAndValues[1]);
+                  break;
+               case REMOVE:
+                  future = asyncCacheWrapper.removeAsync(bucketId, keysAndValues[0]);
+                  break;
+               default:
+                  throw new IllegalArgumentException("Operation " + operation + " cannot be executed asynchronously");
+            }
+         } catch (Exception e) {
+            log.warn("Error in request", e);
+            registerError(System.nanoTime() - start, 0, operation);
+            requestsCompleted++;
+            return;
+         }
+         pendingFutures[pendingCount] = future;
+         pendingStarts[pendingCount] = start;
+         pendingOperations[pendingCount] = operation;
+         pendingCount++;
+         completeAsyncRequests(false);
+      }
+
+      /**
+       * Records all finished requests. The response time is measured when the completion is detected,
+       * therefore these are polled after each request.
+       *
+       * @param block If no request is finished, keep polling all pending requests until any of them completes.
+       *              Waiting for a particular future would delay detection of the others.
+       */
+      private void completeAsyncRequests(boolean block) {
+         for (;;) {
+            boolean completedAny = false;
+            for (int i = 0; i < pendingCount; ) {
+               if (pendingFutures[i].isDone()) {
+                  completeAsyncRequest(i);
+                  completedAny = true;
+               } else {
+                  ++i;
+               }
+            }
+            if (!block || completedAny || pendingCount == 0) return;
+            LockSupport.parkNanos(ASYNC_POLL_NANOS);
+         }
+      }
+
+      private void completeAsyncRequest(int index) {
+         Operation operation = pendingOperations[index];
+         boolean successful = true;
+         try {
+            Object result = pendingFutures[index].get();
+            if (operation == Operation.GET && result == null) {
+               operation = Operation.GET_NULL;
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            successful = false;
+         } catch (ExecutionException e) {
+            log.warn("Error in request", e.getCause());
+            successful = false;
+         }
+         long duration = System.nanoTime() - pendingStarts[index];
+         if (successful) {
+            registerRequest(duration, 0, operation);
+         } else {
+            registerError(duration, 0, operation);
+         }
+         requestsCompleted++;
+         responseTimeSum += duration;
+         // keep the pending requests compacted, the order does not matter
+         --pendingCount;
+         pendingFutures[index] = pendingFutures[pendingCount];
+         pendingStarts[index] = pendingStarts[pendingCount];
+         pendingOperations[index] = pendingOperations[pendingCount];
+         pendingFutures[pendingCount] = null;
+      }
+
+      private void registerRequest(long responseTime, long txOverhead, Operation operation) {
+         stats.registerRequest(responseTime, txOverhead, operation);
+         if (intervalStats != null) {
+            intervalStats.registerRequest(responseTime, txOverhead, operation);
+         }
+      }
+
+      private void registerError(long responseTime, long txOverhead, Operation operation) {
+         stats.registerError(responseTime, txOverhead, operation);
+         if (intervalStats != null) {
+            intervalStats.registerError(responseTime, txOverhead, operation);
+         }
+      }
+
       public Statistics getStats() {
          return stats;
       }
@@ -721,6 +1146,15 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       }
    }
 
+   /**
+    * @return Nanoseconds between the intended starts of two subsequent requests of one thread,
+    * or 0 if the requests should be executed back-to-back.
+    */
+   protected long getRequestPeriod() {
+      if (requestsPerSecond <= 0) return 0;
+      return Statistics.NS_IN_SEC * numThreads / requestsPerSecond;
+   }
+
    private boolean shouldStartTransaction(int i) {
       return (i % transactionSize) == 0;
    }
@@ -749,10 +1183,22 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       this.numEntries = numberOfKeys;
    }
 
+   public int getRequestsPerSecond() {
+      return requestsPerSecond;
+   }
+
+   public void setRequestsPerSecond(int requestsPerSecond) {
+      this.requestsPerSecond = requestsPerSecond;
+   }
+
    public int getNumEntries() {
       return numEntries;
    }
 
+   public int getEntrySize() {
+      return entrySize;
+   }
+
    public void setEntrySize(int sizeOfValue) {
       this.entrySize = sizeOfValue;
    }
@@ -770,13 +1216,18 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
    }
 
    protected Object generateValue(int size) {
-      byte[] array = new byte[size];
-      r.nextBytes(array);
-      if (useAtomics) {
-         // this has a few bytes over but supports equals etc.
-         return new ByteArrayWrapper(array);
+      return valueGenerator.get().generateValue(size);
+   }
+
+   /**
+    * Called once for each thread that generates values.
+    */
+   protected ValueGenerator createValueGenerator() {
+      // wrapper has a few bytes over but supports equals etc.
+      if (valuePoolSize > 0) {
+         return new PooledValueGenerator(new Random(), valuePoolSize, valuePoolMemory / Math.max(1, numThreads), useAtomics);
       } else {
-         return array;
+         return new RandomValueGenerator(new Random(), useAtomics);
       }
    }
 
@@ -802,11 +1253,40 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       keyGenerator = (KeyGenerator) Utils.instantiate(keyGeneratorClass);
    }
 
+   public synchronized KeyDistribution getKeyDistribution() {
+      if (keyDistributionInstance == null) {
+         switch (keyDistribution) {
+            case UNIFORM:
+               keyDistributionInstance = new UniformKeyDistribution(numEntries);
+               break;
+            case ZIPFIAN:
+               keyDistributionInstance = new ZipfianKeyDistribution(numEntries, zipfianTheta);
+               break;
+            case SCRAMBLED_ZIPFIAN:
+               keyDistributionInstance = new ScrambledZipfianKeyDistribution(numEntries, zipfianTheta);
+               break;
+            case LATEST:
+               keyDistributionInstance = new LatestKeyDistribution(numEntries, zipfianTheta);
+               break;
+            case HOTSPOT:
+               keyDistributionInstance = new HotspotKeyDistribution(numEntries, hotsetFraction, hotsetProbability);
+               break;
+            default:
+               throw new IllegalArgumentException("Unknown key distribution " + keyDistribution);
+         }
+      }
+      return keyDistributionInstance;
+   }
+
    public KeyGenerator getKeyGenerator() {
       if (keyGenerator == null) instantiateGenerator(keyGeneratorClass);
       return keyGenerator;
    }
 
+   public int getAsyncWindow() {
+      return asyncWindow;
+   }
+
    public int getTransactionSize() {
       return transactionSize;
    }
@@ -944,6 +1424,96 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
       }
    }
 
+   /**
+    * Runs until the throughput and mean response time measured in the last steadyStateWindows windows
+    * do not vary more than steadyStateMaxVariation, or until the duration elapses.
+    */
+   class SteadyStateCompletion extends TimeStressorCompletion {
+      private final long windowNanos = TimeUnit.MILLISECONDS.toNanos(steadyStateWindowDuration);
+      private final double[] throughputs = new double[steadyStateWindows];
+      private final double[] responseTimes = new double[steadyStateWindows];
+      private final long[] windowBegins = new long[steadyStateWindows];
+      private int closedWindows;
+      private long lastRequests;
+      private long lastResponseTimeSum;
+      private volatile long beginNanos = -1;
+      private volatile long windowEnd;
+      private volatile boolean steadyStateReached;
+      private volatile long steadyStateNanos = -1;
+
+      SteadyStateCompletion(long durationMillis) {
+         super(durationMillis);
+      }
+
+      @Override
+      boolean moreToRun() {
+         if (steadyStateReached) return false;
+         long now = System.nanoTime();
+         if (beginNanos < 0 || now >= windowEnd) {
+            synchronized (this) {
+               if (beginNanos < 0) {
+                  beginNanos = now;
+                  windowEnd = now + windowNanos;
+               } else if (now >= windowEnd) {
+                  closeWindow(now);
+               }
+            }
+         }
+         return !steadyStateReached && super.moreToRun();
+      }
+
+      private void closeWindow(long now) {
+         long requests = 0, responseTimeSum = 0;
+         for (Stressor stressor : stressors) {
+            requests += stressor.requestsCompleted;
+            responseTimeSum += stressor.responseTimeSum;
+         }
+         long windowBegin = windowEnd - windowNanos;
+         long windowRequests = requests - lastRequests;
+         int slot = closedWindows % steadyStateWindows;
+         windowBegins[slot] = windowBegin;
+         throughputs[slot] = (double) (windowRequests * Statistics.NS_IN_SEC) / (double) (now - windowBegin);
+         responseTimes[slot] = windowRequests > 0 ? (double) (responseTimeSum - lastResponseTimeSum) / windowRequests : 0;
+         closedWindows++;
+         lastRequests = requests;
+         lastResponseTimeSum = responseTimeSum;
+         windowEnd = now + windowNanos;
+         if (log.isDebugEnabled()) {
+            log.debug(String.format("Steady-state window %d: %.2f requests per second, %.0f ns mean response time",
+                  closedWindows, throughputs[slot], responseTimes[slot]));
+         }
+         if (closedWindows >= steadyStateWindows && coefficientOfVariation(throughputs) <= steadyStateMaxVariation
+               && coefficientOfVariation(responseTimes) <= steadyStateMaxVariation) {
+            // the oldest window of the stable sequence
+            steadyStateNanos = windowBegins[closedWindows % steadyStateWindows] - beginNanos;
+            steadyStateReached = true;
+            log.info("Steady state reached after " + Utils.getNanosDurationString(steadyStateNanos) + ", stable for "
+                  + steadyStateWindows + " windows.");
+         }
+      }
+
+      private double coefficientOfVariation(double[] values) {
+         double sum = 0;
+         for (double value : values) sum += value;
+         double mean = sum / values.length;
+         if (mean <= 0) return Double.POSITIVE_INFINITY;
+         double squares = 0;
+         for (double value : values) squares += (value - mean) * (value - mean);
+         return Math.sqrt(squares / values.length) / mean;
+      }
+
+      /**
+       * @return Time from the start until the beginning of the stable period, or -1 if it was not reached
+       */
+      public long getSteadyStateMillis() {
+         if (!steadyStateReached) {
+            log.warn("Steady state was not reached within " + Utils.getMillisDurationString(getDurationMillis()));
+            return -1;
+         }
+         return TimeUnit.NANOSECONDS.toMillis(steadyStateNanos);
+      }
+   }
+
    @Override
    public String toString() {
       return "StressTestStressor{" +
@@ -959,39 +1529,12 @@ public class StressTestStressor extends AbstractCacheWrapperStressor {
             ", transactionSize=" + transactionSize +
             ", commitTransactions=" + commitTransactions +
             ", durationMillis=" + durationMillis +
+            ", requestsPerSecond=" + requestsPerSecond +
+            ", keyDistribution=" + keyDistribution +
+            ", valuePoolSize=" + valuePoolSize +
+            ", asyncWindow=" + asyncWindow +
+            ", steadyStateWindows=" + steadyStateWindows +
+            ", statisticsInterval=" + statisticsInterval +
             "}";
    }
-
-   /* Because byte[].equals compares only pointers */
-   private static class ByteArrayWrapper implements Serializable {
-      private byte[] array;
-      private transient int hashCode = 0;
-
-      public ByteArrayWrapper(byte[] array) {
-         this.array = array;
-      }
-
-      @Override
-      public int hashCode() {
-         if (hashCode == 0) {
-            hashCode = 42 + Arrays.hashCode(array);
-            if (hashCode == 0) hashCode = 42;
-         }
-         return hashCode;
-      }
-
-      @Override
-      public String toString() {
-         return String.format("ByteArray[%d](%db)", hashCode(), array.length);
-      }
-
-      @Override
-      public boolean equals(Object obj) {
-         if (obj instanceof ByteArrayWrapper) {
-            return Arrays.equals(array, ((ByteArrayWrapper) obj).array);
-         }
-         return false;
-      }
-   }
 }
-
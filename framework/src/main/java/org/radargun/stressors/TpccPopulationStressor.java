@@ -1,5 +1,6 @@
 package org.radargun.stressors;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -33,6 +34,15 @@ public class TpccPopulationStressor extends AbstractCacheWrapperStressor {
    @Property(doc = "Mask used to generate non-uniformly distributed random customer numbers. Default is 1023.")
    private long cIdMask = 1023L;
 
+   @Property(doc = "Number of threads populating the cache on this slave. Default is 10.")
+   private int numThreads = 10;
+
+   @Property(doc = "Number of entries of one table stored in single putAll operation or transaction. Default is 100.")
+   private int batchSize = 100;
+
+   @Property(doc = "Each slave populates the stocks and districts of its home warehouses instead of a share of every warehouse. Default is false.")
+   private boolean warehouseAffinity = false;
+
    private int slaveIndex;
 
    private int numSlaves;
@@ -45,18 +55,34 @@ public class TpccPopulationStressor extends AbstractCacheWrapperStressor {
       }
       try {
          log.info("Performing Population Operations");
-         performPopulationOperations(wrapper);
+         return performPopulationOperations(wrapper);
       } catch (Exception e) {
          log.warn("Received exception during cache population" + e.getMessage());
       }
       return null;
    }
 
-   public void performPopulationOperations(CacheWrapper w) throws Exception {
+   public Map<String, Object> performPopulationOperations(CacheWrapper w) throws Exception {
       this.wrapper = w;
       log.info("Performing population...");
-      new TpccPopulation(this.wrapper, this.numWarehouses, this.slaveIndex, this.numSlaves, this.cLastMask, this.olIdMask, this.cIdMask);
+      long start = System.currentTimeMillis();
+      TpccPopulation population = new TpccPopulation(this.wrapper, this.numWarehouses, this.slaveIndex, this.numSlaves,
+                                                     this.cLastMask, this.olIdMask, this.cIdMask, this.numThreads, this.batchSize,
+                                                     this.warehouseAffinity);
+      long duration = System.currentTimeMillis() - start;
       log.info("Population ended");
+
+      Map<String, Object> results = new LinkedHashMap<String, Object>();
+      results.put("DURATION (msec)", duration);
+      long entries = 0;
+      for (Map.Entry<String, TpccPopulation.TableStatistics> table : population.getStatistics().entrySet()) {
+         entries += table.getValue().getEntries();
+         results.put(table.getKey() + "_ENTRIES", table.getValue().getEntries());
+         results.put(table.getKey() + "_STORE_TIME (msec)", table.getValue().getStoreTime() / 1000000);
+      }
+      results.put("ENTRIES", entries);
+      results.put("ENTRIES_PER_SEC", duration == 0 ? 0 : entries / (duration / 1000.0));
+      return results;
    }
 
    public void setNumWarehouses(int numWarehouses) {
@@ -88,6 +114,18 @@ public class TpccPopulationStressor extends AbstractCacheWrapperStressor {
       this.cIdMask = cIdMask;
    }
 
+   public void setNumThreads(int numThreads) {
+      this.numThreads = numThreads;
+   }
+
+   public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+   }
+
+   public void setWarehouseAffinity(boolean warehouseAffinity) {
+      this.warehouseAffinity = warehouseAffinity;
+   }
+
    @Override
    public String toString() {
       return "TpccPopulationStressor{" +
@@ -95,6 +133,9 @@ public class TpccPopulationStressor extends AbstractCacheWrapperStressor {
             "cLastMask=" + TpccTools.A_C_LAST +
             "olIdMask=" + TpccTools.A_OL_I_ID +
             "cIdMask=" + TpccTools.A_C_ID +
+            "numThreads=" + this.numThreads +
+            "batchSize=" + this.batchSize +
+            "warehouseAffinity=" + this.warehouseAffinity +
             "slaveIndex=" + this.slaveIndex +
             "numSlaves=" + this.numSlaves + "}";
    }
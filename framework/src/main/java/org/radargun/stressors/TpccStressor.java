@@ -1,6 +1,7 @@
 package org.radargun.stressors;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,9 +19,11 @@ import org.radargun.config.Stressor;
 import org.radargun.tpcc.ElementNotFoundException;
 import org.radargun.tpcc.TpccTerminal;
 import org.radargun.tpcc.TpccTools;
+import org.radargun.tpcc.transaction.DeliveryTransaction;
 import org.radargun.tpcc.transaction.NewOrderTransaction;
 import org.radargun.tpcc.transaction.OrderStatusTransaction;
 import org.radargun.tpcc.transaction.PaymentTransaction;
+import org.radargun.tpcc.transaction.StockLevelTransaction;
 import org.radargun.tpcc.transaction.TpccTransaction;
 import org.radargun.utils.Utils;
 
@@ -45,11 +48,27 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
    @Property(doc = "Average arrival rate of the transactions to the system. Default is 0.")
    private double arrivalRate = 0.0D;
 
-   @Property(doc = "Percentage of Payment transactions. Default is 45.")
-   private double paymentWeight = 45.0D;
+   @Property(doc = "Percentage of Payment transactions. Default is 43.")
+   private double paymentWeight = 43.0D;
 
-   @Property(doc = "Percentage of Order Status transactions. Default is 5.")
-   private double orderStatusWeight = 5.0D;
+   @Property(doc = "Percentage of Order Status transactions. Default is 4.")
+   private double orderStatusWeight = 4.0D;
+
+   @Property(doc = "Percentage of Delivery transactions. Default is 4.")
+   private double deliveryWeight = 4.0D;
+
+   @Property(doc = "Percentage of Stock Level transactions. Default is 4.")
+   private double stockLevelWeight = 4.0D;
+
+   @Property(doc = "Look up customers by last name through the index written by the population instead of scanning all customers of the district. Default is true.")
+   private boolean customerIndex = true;
+
+   @Property(doc = "Read the latest order of a customer through the pointer kept by the population and New-Order instead of scanning all orders of the district. Default is true.")
+   private boolean lastOrderPointer = true;
+
+   @Property(doc = "Bind the terminals of each slave to its home warehouses instead " +
+         "of picking the warehouse uniformly from all warehouses. Default is false.")
+   private boolean warehouseAffinity = false;
 
    /**
     * this node's index in the Radargun cluster.  -1 is used for local benchmarks.
@@ -81,10 +100,12 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
       if (this.arrivalRate != 0.0) {     //Open system
          queue = new ArrayBlockingQueue<RequestType>(7000);
          countJobs = new AtomicLong(0L);
-         producers = new Producer[3];
-         producers[0] = new Producer(TpccTerminal.NEW_ORDER, 100.0 - (this.paymentWeight + this.orderStatusWeight));
+         producers = new Producer[5];
+         producers[0] = new Producer(TpccTerminal.NEW_ORDER, 100.0 - (this.paymentWeight + this.orderStatusWeight + this.deliveryWeight + this.stockLevelWeight));
          producers[1] = new Producer(TpccTerminal.PAYMENT, this.paymentWeight);
          producers[2] = new Producer(TpccTerminal.ORDER_STATUS, this.orderStatusWeight);
+         producers[3] = new Producer(TpccTerminal.DELIVERY, this.deliveryWeight);
+         producers[4] = new Producer(TpccTerminal.STOCK_LEVEL, this.stockLevelWeight);
       }
 
       startTime = System.currentTimeMillis();
@@ -111,6 +132,19 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
 
    private void initializeToolsParameters() {
 
+      TpccTools.C_LAST_INDEX = this.customerIndex;
+      TpccTools.LAST_ORDER_POINTER = this.lastOrderPointer;
+      if (this.warehouseAffinity && !isLocalBenchmark()) {
+         long[] homeWarehouses = TpccTools.homeWarehouses(cacheWrapper, TpccTools.NB_WAREHOUSES, this.nodeIndex, this.numSlaves);
+         if (homeWarehouses.length == 0) {
+            log.warn("This slave is not the primary owner of any warehouse, assigning warehouses round-robin");
+            homeWarehouses = TpccTools.homeWarehouses(TpccTools.NB_WAREHOUSES, this.nodeIndex, this.numSlaves);
+         }
+         TpccTools.HOME_WAREHOUSES = homeWarehouses;
+         log.info("Home warehouses of this slave: " + Arrays.toString(TpccTools.HOME_WAREHOUSES));
+      } else {
+         TpccTools.HOME_WAREHOUSES = null;
+      }
 
       try {
          TpccTools.C_C_LAST = (Long) cacheWrapper.get(null, "C_C_LAST");
@@ -133,6 +167,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
       int writes = 0;
       int newOrderTransactions = 0;
       int paymentTransactions = 0;
+      int deliveryTransactions = 0;
+      int stockLevelTransactions = 0;
 
       int failures = 0;
       int rdFailures = 0;
@@ -140,6 +176,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
       int nrWrFailuresOnCommit = 0;
       int newOrderFailures = 0;
       int paymentFailures = 0;
+      int deliveryFailures = 0;
+      int stockLevelFailures = 0;
       int appFailures = 0;
 
       long readsDurations = 0L;
@@ -188,6 +226,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
          writes += stressor.writes;
          newOrderTransactions += stressor.newOrder;
          paymentTransactions += stressor.payment;
+         deliveryTransactions += stressor.delivery;
+         stockLevelTransactions += stressor.stockLevel;
 
          failures += stressor.nrFailures;
          rdFailures += stressor.nrRdFailures;
@@ -195,6 +235,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
          nrWrFailuresOnCommit += stressor.nrWrFailuresOnCommit;
          newOrderFailures += stressor.nrNewOrderFailures;
          paymentFailures += stressor.nrPaymentFailures;
+         deliveryFailures += stressor.nrDeliveryFailures;
+         stockLevelFailures += stressor.nrStockLevelFailures;
          appFailures += stressor.appFailures;
 
          writeInQueueTimes += stressor.writeInQueueTime;
@@ -265,16 +307,25 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
 
          results.put("PAYMENT_PER_SEC", paymentPerSec);
       }
+      // tpmC: New-Order transactions completed per minute of elapsed time, like REQ_PER_SEC
+      if (duration / numOfThreads == 0)
+         results.put("TPMC", 0);
+      else
+         results.put("TPMC", newOrderTransactions / ((duration / numOfThreads) / 60000.0));
 
       results.put("READ_COUNT", reads);
       results.put("WRITE_COUNT", writes);
       results.put("NEW_ORDER_COUNT", newOrderTransactions);
       results.put("PAYMENT_COUNT", paymentTransactions);
+      results.put("DELIVERY_COUNT", deliveryTransactions);
+      results.put("STOCK_LEVEL_COUNT", stockLevelTransactions);
       results.put("FAILURES", failures);
       results.put("APPLICATION_FAILURES", appFailures);
       results.put("WRITE_FAILURES", wrFailures);
       results.put("NEW_ORDER_FAILURES", newOrderFailures);
       results.put("PAYMENT_FAILURES", paymentFailures);
+      results.put("DELIVERY_FAILURES", deliveryFailures);
+      results.put("STOCK_LEVEL_FAILURES", stockLevelFailures);
       results.put("READ_FAILURES", rdFailures);
 
       if ((reads + writes) != 0)
@@ -362,7 +413,7 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
 
       startPoint = new CountDownLatch(1);
       for (int threadIndex = 0; threadIndex < numOfThreads; threadIndex++) {
-         Stressor stressor = new Stressor(threadIndex, this.nodeIndex, this.perThreadSimulTime, this.arrivalRate, this.paymentWeight, this.orderStatusWeight);
+         Stressor stressor = new Stressor(threadIndex, this.nodeIndex, this.perThreadSimulTime, this.arrivalRate, this.paymentWeight, this.orderStatusWeight, this.deliveryWeight, this.stockLevelWeight);
          stressors.add(stressor);
          stressor.start();
       }
@@ -386,12 +437,16 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
       private double arrivalRate;
       private double paymentWeight;
       private double orderStatusWeight;
+      private double deliveryWeight;
+      private double stockLevelWeight;
       private int nrFailures = 0;
       private int nrWrFailures = 0;
       private int nrWrFailuresOnCommit = 0;
       private int nrRdFailures = 0;
       private int nrNewOrderFailures = 0;
       private int nrPaymentFailures = 0;
+      private int nrDeliveryFailures = 0;
+      private int nrStockLevelFailures = 0;
       private int appFailures = 0;
 
       private long readDuration = 0L;
@@ -414,6 +469,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
       private long writes = 0L;
       private long payment = 0L;
       private long newOrder = 0L;
+      private long delivery = 0L;
+      private long stockLevel = 0L;
 
       private long numWriteDequeued = 0L;
       private long numReadDequeued = 0L;
@@ -426,7 +483,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
       private long paymentInQueueTime = 0L;
 
 
-      public Stressor(int threadIndex, int nodeIndex, long simulTime, double arrivalRate, double paymentWeight, double orderStatusWeight) {
+      public Stressor(int threadIndex, int nodeIndex, long simulTime, double arrivalRate, double paymentWeight, double orderStatusWeight,
+                      double deliveryWeight, double stockLevelWeight) {
          super("Stressor-" + threadIndex);
          this.threadIndex = threadIndex;
          this.nodeIndex = nodeIndex;
@@ -434,6 +492,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
          this.arrivalRate = arrivalRate;
          this.paymentWeight = paymentWeight;
          this.orderStatusWeight = orderStatusWeight;
+         this.deliveryWeight = deliveryWeight;
+         this.stockLevelWeight = stockLevelWeight;
 
       }
 
@@ -447,7 +507,7 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
             log.warn(e);
          }
 
-         TpccTerminal terminal = new TpccTerminal(this.paymentWeight, this.orderStatusWeight, this.nodeIndex);
+         TpccTerminal terminal = new TpccTerminal(this.paymentWeight, this.orderStatusWeight, this.deliveryWeight, this.stockLevelWeight, this.nodeIndex);
 
          long delta = 0L;
          long end = 0L;
@@ -496,6 +556,18 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
 
                      transaction = new OrderStatusTransaction();
 
+                  } else if (request.transactionType == TpccTerminal.DELIVERY) {
+                     numWriteDequeued++;
+                     writeInQueueTime += endInQueueTime - request.timestamp;
+
+                     transaction = new DeliveryTransaction();
+
+                  } else if (request.transactionType == TpccTerminal.STOCK_LEVEL) {
+                     numReadDequeued++;
+                     readInQueueTime += endInQueueTime - request.timestamp;
+
+                     transaction = new StockLevelTransaction();
+
                   }
 
 
@@ -547,10 +619,15 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
                         nrNewOrderFailures++;
                      } else if (transaction instanceof PaymentTransaction) {
                         nrPaymentFailures++;
+                     } else if (transaction instanceof DeliveryTransaction) {
+                        nrDeliveryFailures++;
                      }
 
                   } else {
                      nrRdFailures++;
+                     if (transaction instanceof StockLevelTransaction) {
+                        nrStockLevelFailures++;
+                     }
                   }
 
                }
@@ -566,9 +643,14 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
                      nrNewOrderFailures++;
                   } else if (transaction instanceof PaymentTransaction) {
                      nrPaymentFailures++;
+                  } else if (transaction instanceof DeliveryTransaction) {
+                     nrDeliveryFailures++;
                   }
                } else {
                   nrRdFailures++;
+                  if (transaction instanceof StockLevelTransaction) {
+                     nrStockLevelFailures++;
+                  }
                }
                successful = false;
                log.warn(rb);
@@ -600,6 +682,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
                      payment++;
                   } else if (transaction instanceof NewOrderTransaction) {
                      newOrder++;
+                  } else if (transaction instanceof DeliveryTransaction) {
+                     delivery++;
                   }
                }
             } else {
@@ -608,6 +692,9 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
                if (successful) {
                   reads++;
                   successful_readDuration += end - startService;
+                  if (transaction instanceof StockLevelTransaction) {
+                     stockLevel++;
+                  }
                }
             }
 
@@ -733,6 +820,26 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
       this.orderStatusWeight = orderStatusWeight;
    }
 
+   public void setDeliveryWeight(double deliveryWeight) {
+      this.deliveryWeight = deliveryWeight;
+   }
+
+   public void setStockLevelWeight(double stockLevelWeight) {
+      this.stockLevelWeight = stockLevelWeight;
+   }
+
+   public void setCustomerIndex(boolean customerIndex) {
+      this.customerIndex = customerIndex;
+   }
+
+   public void setLastOrderPointer(boolean lastOrderPointer) {
+      this.lastOrderPointer = lastOrderPointer;
+   }
+
+   public void setWarehouseAffinity(boolean warehouseAffinity) {
+      this.warehouseAffinity = warehouseAffinity;
+   }
+
    @Override
    public String toString() {
       return "TpccStressor{" +
@@ -740,6 +847,11 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
             ", arrivalRate=" + arrivalRate +
             ", paymentWeight=" + paymentWeight +
             ", orderStatusWeight=" + orderStatusWeight +
+            ", deliveryWeight=" + deliveryWeight +
+            ", stockLevelWeight=" + stockLevelWeight +
+            ", customerIndex=" + customerIndex +
+            ", lastOrderPointer=" + lastOrderPointer +
+            ", warehouseAffinity=" + warehouseAffinity +
             ", numOfThreads=" + numOfThreads +
             ", cacheWrapper=" + cacheWrapper +
             ", nodeIndex=" + nodeIndex +
@@ -0,0 +1,25 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Every key is accessed with the same probability.
+ */
+public class UniformKeyDistribution implements KeyDistribution {
+   private final int numEntries;
+
+   public UniformKeyDistribution(int numEntries) {
+      if (numEntries <= 0) throw new IllegalArgumentException("Number of entries must be positive: " + numEntries);
+      this.numEntries = numEntries;
+   }
+
+   @Override
+   public int nextIndex(Random random) {
+      return random.nextInt(numEntries);
+   }
+
+   @Override
+   public String toString() {
+      return "Uniform(" + numEntries + ")";
+   }
+}
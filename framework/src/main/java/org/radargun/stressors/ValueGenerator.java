@@ -0,0 +1,14 @@
+package org.radargun.stressors;
+
+/**
+ * Produces values inserted into the cache by stressors.
+ * <p/>
+ * Concurrency: implementations are not required to be thread-safe, each stressor thread should use its own instance.
+ */
+public interface ValueGenerator {
+
+   /**
+    * @param size Size of the value in bytes (not including the overhead of the wrapping object, if any)
+    */
+   Object generateValue(int size);
+}
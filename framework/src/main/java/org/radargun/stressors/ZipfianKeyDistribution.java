@@ -0,0 +1,80 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Zipfian distribution where key with index i is accessed with probability proportional to 1 / (i + 1)^theta.
+ * Uses the algorithm from Gray et al., "Quickly Generating Billion-Record Synthetic Databases" - the zeta
+ * constant is computed once in O(numEntries), each sample is O(1).
+ */
+public class ZipfianKeyDistribution implements KeyDistribution {
+   /* Terms of the zeta sum that are added exactly, the rest is approximated */
+   private static final int EXACT_ZETA_TERMS = 1 << 20;
+
+   protected final int numEntries;
+   private final long numItems;
+   private final double theta;
+   private final double zetaN;
+   private final double alpha;
+   private final double eta;
+   private final double secondThreshold;
+
+   public ZipfianKeyDistribution(int numEntries, double theta) {
+      this(numEntries, numEntries, theta);
+   }
+
+   /**
+    * @param numItems Size of the space the zipfian items are generated from, see {@link #nextItem(java.util.Random)}.
+    */
+   protected ZipfianKeyDistribution(int numEntries, long numItems, double theta) {
+      if (numEntries <= 0) throw new IllegalArgumentException("Number of entries must be positive: " + numEntries);
+      if (theta <= 0 || theta >= 1) throw new IllegalArgumentException("Zipfian theta must be in (0, 1): " + theta);
+      this.numEntries = numEntries;
+      this.numItems = numItems;
+      this.theta = theta;
+      this.zetaN = zeta(numItems, theta);
+      double zeta2 = zeta(Math.min(2, numItems), theta);
+      this.alpha = 1d / (1d - theta);
+      this.eta = (1d - Math.pow(2d / numItems, 1d - theta)) / (1d - zeta2 / zetaN);
+      this.secondThreshold = 1d + Math.pow(0.5d, theta);
+   }
+
+   private static double zeta(long n, double theta) {
+      long exact = Math.min(n, EXACT_ZETA_TERMS);
+      double sum = 0;
+      for (int i = 1; i <= exact; ++i) {
+         sum += 1d / Math.pow(i, theta);
+      }
+      if (n > exact) {
+         // Euler-Maclaurin approximation of the terms exact + 1 .. n
+         double m = exact;
+         sum += (Math.pow(n, 1d - theta) - Math.pow(m, 1d - theta)) / (1d - theta)
+               + (Math.pow(n, -theta) - Math.pow(m, -theta)) / 2d
+               - theta * (Math.pow(n, -theta - 1d) - Math.pow(m, -theta - 1d)) / 12d;
+      }
+      return sum;
+   }
+
+   @Override
+   public int nextIndex(Random random) {
+      return (int) nextItem(random);
+   }
+
+   /**
+    * @return Zipfian-distributed item from 0 to numItems - 1
+    */
+   protected long nextItem(Random random) {
+      double u = random.nextDouble();
+      double uz = u * zetaN;
+      if (uz < 1d) return 0;
+      if (uz < secondThreshold && numItems > 1) return 1;
+      long item = (long) (numItems * Math.pow(eta * u - eta + 1d, alpha));
+      // guard against rounding errors
+      return item >= numItems ? numItems - 1 : item;
+   }
+
+   @Override
+   public String toString() {
+      return "Zipfian(" + numEntries + ", theta=" + theta + ")";
+   }
+}
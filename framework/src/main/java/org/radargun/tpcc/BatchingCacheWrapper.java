@@ -0,0 +1,187 @@
+package org.radargun.tpcc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.radargun.CacheWrapper;
+import org.radargun.features.BulkOperationsCapable;
+import org.radargun.utils.TypedProperties;
+
+/**
+ * Collects the puts issued by the TPC-C population and writes them to the wrapped cache in batches: with single
+ * putAll if the wrapper supports bulk operations, in one transaction if it is transactional, or one by one otherwise.
+ * A batch that fails is retried a few times, then the failure is thrown. Other operations are delegated to the wrapped cache.
+ * Not thread safe, each population thread uses its own instances.
+ */
+class BatchingCacheWrapper implements CacheWrapper {
+
+   private static Log log = LogFactory.getLog(BatchingCacheWrapper.class);
+
+   private static final int MAX_STORE_ATTEMPTS = 10;
+
+   private final CacheWrapper wrapper;
+
+   private final BulkOperationsCapable bulkWrapper;
+
+   private final int batchSize;
+
+   private final Map<Object, Object> batch = new LinkedHashMap<Object, Object>();
+
+   private String bucket;
+
+   private long entries;
+
+   private long storeTime;
+
+   BatchingCacheWrapper(CacheWrapper wrapper, int batchSize) {
+      this.wrapper = wrapper;
+      this.bulkWrapper = wrapper instanceof BulkOperationsCapable && batchSize > 1 ? (BulkOperationsCapable) wrapper : null;
+      this.batchSize = Math.max(batchSize, 1);
+   }
+
+   @Override
+   public void put(String bucket, Object key, Object value) throws Exception {
+      if (!batch.isEmpty() && (bucket == null ? this.bucket != null : !bucket.equals(this.bucket))) {
+         flush();
+      }
+      this.bucket = bucket;
+      batch.put(key, value);
+      if (batch.size() >= batchSize) {
+         flush();
+      }
+   }
+
+   /**
+    * Writes the pending entries, retrying the write up to {@link #MAX_STORE_ATTEMPTS} times.
+    */
+   public void flush() throws Exception {
+      if (batch.isEmpty()) return;
+      long start = System.nanoTime();
+      for (int attempt = 1; ; ++attempt) {
+         try {
+            store();
+            break;
+         } catch (Exception e) {
+            if (attempt >= MAX_STORE_ATTEMPTS) {
+               throw e;
+            }
+            log.warn("Failed to store " + batch.size() + " entries (attempt " + attempt + " of " + MAX_STORE_ATTEMPTS + ")", e);
+         }
+      }
+      storeTime += System.nanoTime() - start;
+      entries += batch.size();
+      batch.clear();
+   }
+
+   private void store() throws Exception {
+      if (bulkWrapper != null) {
+         bulkWrapper.putAll(bucket, batch, false);
+      } else if (batch.size() > 1 && wrapper.isTransactional(bucket)) {
+         wrapper.startTransaction();
+         try {
+            for (Map.Entry<Object, Object> entry : batch.entrySet()) {
+               wrapper.put(bucket, entry.getKey(), entry.getValue());
+            }
+         } catch (Exception e) {
+            wrapper.endTransaction(false);
+            throw e;
+         }
+         wrapper.endTransaction(true);
+      } else {
+         for (Map.Entry<Object, Object> entry : batch.entrySet()) {
+            wrapper.put(bucket, entry.getKey(), entry.getValue());
+         }
+      }
+   }
+
+   /**
+    * @return Number of entries written to the cache
+    */
+   public long getEntries() {
+      return entries;
+   }
+
+   /**
+    * @return Time spent writing the entries, in nanoseconds
+    */
+   public long getStoreTime() {
+      return storeTime;
+   }
+
+   @Override
+   public Object get(String bucket, Object key) throws Exception {
+      if (batch.containsKey(key) && (bucket == null ? this.bucket == null : bucket.equals(this.bucket))) {
+         return batch.get(key);
+      }
+      return wrapper.get(bucket, key);
+   }
+
+   @Override
+   public Object remove(String bucket, Object key) throws Exception {
+      flush();
+      return wrapper.remove(bucket, key);
+   }
+
+   @Override
+   public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
+      wrapper.setUp(config, isLocal, nodeIndex, confAttributes);
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      wrapper.tearDown();
+   }
+
+   @Override
+   public boolean isRunning() {
+      return wrapper.isRunning();
+   }
+
+   @Override
+   public void empty() throws Exception {
+      batch.clear();
+      wrapper.empty();
+   }
+
+   @Override
+   public int getNumMembers() {
+      return wrapper.getNumMembers();
+   }
+
+   @Override
+   public String getInfo() {
+      return wrapper.getInfo();
+   }
+
+   @Override
+   public Object getReplicatedData(String bucket, String key) throws Exception {
+      return wrapper.getReplicatedData(bucket, key);
+   }
+
+   @Override
+   public boolean isTransactional(String bucket) {
+      return wrapper.isTransactional(bucket);
+   }
+
+   @Override
+   public void startTransaction() {
+      wrapper.startTransaction();
+   }
+
+   @Override
+   public void endTransaction(boolean successful) {
+      wrapper.endTransaction(successful);
+   }
+
+   @Override
+   public int getLocalSize() {
+      return wrapper.getLocalSize();
+   }
+
+   @Override
+   public int getTotalSize() {
+      return wrapper.getTotalSize();
+   }
+}
@@ -3,6 +3,9 @@ package org.radargun.tpcc;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.radargun.CacheWrapper;
+import org.radargun.tpcc.dac.CustomerDAC;
+import org.radargun.tpcc.dac.NewOrderDAC;
+import org.radargun.tpcc.dac.OrderDAC;
 import org.radargun.tpcc.domain.Customer;
 import org.radargun.tpcc.domain.District;
 import org.radargun.tpcc.domain.History;
@@ -16,25 +19,42 @@ import org.radargun.tpcc.domain.Warehouse;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Populates the TPC-C tables. The work is split into tasks over disjoint ranges of items and stocks and over the
+ * districts assigned to this slave, executed by a pool of <code>numThreads</code> threads. Each task groups its
+ * puts into batches of <code>batchSize</code> entries per table, see {@link BatchingCacheWrapper}.
+ * With <code>warehouseAffinity</code> each slave populates the stocks and districts of its home warehouses
+ * (see {@link TpccTools#homeWarehouses(CacheWrapper, int, int, int)}) instead of a share of every warehouse.
+ *
  * @author peluso@gsd.inesc-id.pt , peluso@dis.uniroma1.it
  */
 public class TpccPopulation {
 
    private static Log log = LogFactory.getLog(TpccPopulation.class);
 
+   public static final String ITEM = "ITEM", WAREHOUSE = "WAREHOUSE", STOCK = "STOCK", DISTRICT = "DISTRICT",
+         CUSTOMER = "CUSTOMER", HISTORY = "HISTORY", ORDER = "ORDER", ORDER_LINE = "ORDER_LINE", NEW_ORDER = "NEW_ORDER";
+
+   private static final String[] TABLES = {ITEM, WAREHOUSE, STOCK, DISTRICT, CUSTOMER, HISTORY, ORDER, ORDER_LINE, NEW_ORDER};
+
    private long POP_C_LAST = TpccTools.NULL_NUMBER;
 
    private long POP_C_ID = TpccTools.NULL_NUMBER;
 
    private long POP_OL_I_ID = TpccTools.NULL_NUMBER;
 
-   private boolean _new_order = false;
-
-   private int _seqIdCustomer[];
-
    private CacheWrapper wrapper;
 
    private MemoryMXBean memoryBean;
@@ -51,12 +71,19 @@ public class TpccPopulation {
 
    private long cIdMask;
 
+   private int numThreads;
 
-   public TpccPopulation(CacheWrapper wrapper, int numWarehouses, int slaveIndex, int numSlaves, long cLastMask, long olIdMask, long cIdMask) {
+   private int batchSize;
 
-      this.wrapper = wrapper;
+   private boolean warehouseAffinity;
 
-      this._seqIdCustomer = new int[TpccTools.NB_MAX_CUSTOMER];
+   private final Map<String, TableStatistics> statistics = new LinkedHashMap<String, TableStatistics>();
+
+
+   public TpccPopulation(CacheWrapper wrapper, int numWarehouses, int slaveIndex, int numSlaves, long cLastMask, long olIdMask, long cIdMask,
+                         int numThreads, int batchSize, boolean warehouseAffinity) throws Exception {
+
+      this.wrapper = wrapper;
 
       this.memoryBean = ManagementFactory.getMemoryMXBean();
 
@@ -72,17 +99,59 @@ public class TpccPopulation {
 
       this.cIdMask = cIdMask;
 
+      this.numThreads = Math.max(numThreads, 1);
+
+      this.batchSize = batchSize;
+
+      // with less warehouses than slaves the home warehouses are shared and populated as usual
+      this.warehouseAffinity = warehouseAffinity && numSlaves > 1 && numWarehouses >= numSlaves;
+      if (warehouseAffinity && !this.warehouseAffinity) {
+         log.info("Not populating by home warehouses as there is only " + numWarehouses + " warehouses for " + numSlaves + " slaves");
+      }
+
+      for (String table : TABLES) {
+         statistics.put(table, new TableStatistics());
+      }
+
       initializeToolsParameters();
 
-      populateItem();
+      // the constants of the non-uniform distributions are shared by all population threads
+      getC_LAST();
+      getC_ID();
+      getOL_I_ID();
+
+      ExecutorService executor = Executors.newFixedThreadPool(this.numThreads);
+      try {
+         List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+
+         populateItem(executor, tasks);
 
-      populateWarehouses();
+         populateWarehouses(executor, tasks);
+
+         for (Future<Void> task : tasks) {
+            task.get();
+         }
+      } finally {
+         // no task is left after success, after a failure the remaining tasks are cancelled
+         executor.shutdownNow();
+      }
+
+      MemoryUsage u1 = this.memoryBean.getHeapMemoryUsage();
+      log.info("Memory Statistics (Heap) - used=" + u1.getUsed() + " bytes; committed=" + u1.getCommitted() + " bytes");
+      MemoryUsage u2 = this.memoryBean.getNonHeapMemoryUsage();
+      log.info("Memory Statistics (NonHeap) - used=" + u2.getUsed() + " bytes; committed=" + u2.getCommitted() + " bytes");
 
       System.gc();
    }
 
+   /**
+    * @return Statistics of the stored entries, per table
+    */
+   public Map<String, TableStatistics> getStatistics() {
+      return statistics;
+   }
 
-   public void initializeToolsParameters() {
+   public void initializeToolsParameters() throws Exception {
 
 
       TpccTools.NB_WAREHOUSES = this.numWarehouses;
@@ -95,35 +164,13 @@ public class TpccPopulation {
          long c_c_id = TpccTools.randomNumber(0, TpccTools.A_C_ID);
          long c_ol_i_id = TpccTools.randomNumber(0, TpccTools.A_OL_I_ID);
 
-         boolean successful = false;
-         while (!successful) {
-            try {
-               wrapper.put(null, "C_C_LAST", c_c_last);
-               successful = true;
-            } catch (Throwable e) {
-               log.warn(e);
-            }
-         }
+         // batches of single entry are written immediately, with the same retries as the tables
+         CacheWrapper batch = new BatchingCacheWrapper(wrapper, 1);
+         batch.put(null, "C_C_LAST", c_c_last);
 
-         successful = false;
-         while (!successful) {
-            try {
-               wrapper.put(null, "C_C_ID", c_c_id);
-               successful = true;
-            } catch (Throwable e) {
-               log.warn(e);
-            }
-         }
+         batch.put(null, "C_C_ID", c_c_id);
 
-         successful = false;
-         while (!successful) {
-            try {
-               wrapper.put(null, "C_OL_ID", c_ol_i_id);
-               successful = true;
-            } catch (Throwable e) {
-               log.warn(e);
-            }
-         }
+         batch.put(null, "C_OL_ID", c_ol_i_id);
 
       }
    }
@@ -163,9 +210,10 @@ public class TpccPopulation {
    }
 
 
-   private void populateItem() {
-      log.info("populate items");
-
+   /**
+    * @return The first id and the number of the items populated by this slave
+    */
+   private long[] getItemRange() {
       long init_id_item = 1;
       long num_of_items = TpccTools.NB_MAX_ITEM;
 
@@ -181,134 +229,148 @@ public class TpccPopulation {
 
 
       }
-      log.info(" ITEM - ids=" + init_id_item + ",...," + (init_id_item - 1 + num_of_items));
-      for (long i = init_id_item; i <= (init_id_item - 1 + num_of_items); i++) {
+      return new long[]{init_id_item, num_of_items};
+   }
 
-         Item newItem = new Item(i, TpccTools.aleaNumber(1, 10000), TpccTools.aleaChainec(14, 24), TpccTools.aleaFloat(1, 100, 2), TpccTools.sData());
+   private void populateItem(ExecutorService executor, List<Future<Void>> tasks) {
+      log.info("populate items");
 
-         boolean successful = false;
-         while (!successful) {
-            try {
-               newItem.store(wrapper);
-               successful = true;
-            } catch (Throwable e) {
-               log.warn(e);
+      long[] range = getItemRange();
+      log.info(" ITEM - ids=" + range[0] + ",...," + (range[0] - 1 + range[1]));
+
+      long chunk = (range[1] + numThreads - 1) / numThreads;
+      for (long from = range[0]; from < range[0] + range[1]; from += chunk) {
+         final long first = from;
+         final long last = Math.min(from + chunk, range[0] + range[1]) - 1;
+         tasks.add(executor.submit(new PopulationTask() {
+            @Override
+            protected void populate() throws Throwable {
+               populateItem(this, first, last);
             }
-         }
+         }));
+      }
+   }
+
+   private void populateItem(PopulationTask task, long init_id_item, long last_id_item) throws Throwable {
+      for (long i = init_id_item; i <= last_id_item; i++) {
+
+         Item newItem = new Item(i, TpccTools.aleaNumber(1, 10000), TpccTools.aleaChainec(14, 24), TpccTools.aleaFloat(1, 100, 2), TpccTools.sData());
+
+         newItem.store(task.batch(ITEM));
 
 
       }
-      MemoryUsage u1 = this.memoryBean.getHeapMemoryUsage();
-      log.info("Memory Statistics (Heap) - used=" + u1.getUsed() + " bytes; committed=" + u1.getCommitted() + " bytes");
-      MemoryUsage u2 = this.memoryBean.getNonHeapMemoryUsage();
-      log.info("Memory Statistics (NonHeap) - used=" + u2.getUsed() + " bytes; committed=" + u2.getCommitted() + " bytes");
    }
 
-   private void populateWarehouses() {
+   private void populateWarehouses(ExecutorService executor, List<Future<Void>> tasks) {
       log.info("populate warehouses");
-      if (this.numWarehouses > 0) {
+      if (this.warehouseAffinity) {
+         // each slave populates all data of its home warehouses (except items)
+         for (long id : TpccTools.homeWarehouses(this.wrapper, this.numWarehouses, this.slaveIndex, this.numSlaves)) {
+            final int id_wharehouse = (int) id;
+            log.info(" WAREHOUSE " + id_wharehouse);
+            tasks.add(executor.submit(new PopulationTask() {
+               @Override
+               protected void populate() throws Throwable {
+                  populateWarehouse(this, id_wharehouse);
+               }
+            }));
+            populateStock(executor, tasks, id_wharehouse);
+
+            populateDistricts(executor, tasks, id_wharehouse);
+         }
+      } else if (this.numWarehouses > 0) {
          for (int i = 1; i <= this.numWarehouses; i++) {
+            final int id_wharehouse = i;
             log.info(" WAREHOUSE " + i);
             if (this.slaveIndex == 0) {// Warehouse assigned to node 0 if I have more than one node
-               Warehouse newWarehouse = new Warehouse(i,
-                                                      TpccTools.aleaChainec(6, 10),
-                                                      TpccTools.aleaChainec(10, 20), TpccTools.aleaChainec(10, 20),
-                                                      TpccTools.aleaChainec(10, 20), TpccTools.aleaChainel(2, 2),
-                                                      TpccTools.aleaChainen(4, 4) + TpccTools.CHAINE_5_1,
-                                                      TpccTools.aleaFloat(Float.valueOf("0.0000").floatValue(),
-                                                                          Float.valueOf("0.2000").floatValue(), 4),
-                                                      TpccTools.WAREHOUSE_YTD);
-
-
-               boolean successful = false;
-               while (!successful) {
-                  try {
-                     newWarehouse.store(wrapper);
-                     successful = true;
-                  } catch (Throwable e) {
-                     log.warn(e);
+               tasks.add(executor.submit(new PopulationTask() {
+                  @Override
+                  protected void populate() throws Throwable {
+                     populateWarehouse(this, id_wharehouse);
                   }
-               }
+               }));
             }
-            populateStock(i);
-
-            populateDistricts(i);
-
-            MemoryUsage u1 = this.memoryBean.getHeapMemoryUsage();
-            log.info("Memory Statistics (Heap) - used=" + u1.getUsed() + " bytes; committed=" + u1.getCommitted() + " bytes");
-            MemoryUsage u2 = this.memoryBean.getNonHeapMemoryUsage();
-            log.info("Memory Statistics (NonHeap) - used=" + u2.getUsed() + " bytes; committed=" + u2.getCommitted() + " bytes");
+            populateStock(executor, tasks, i);
 
+            populateDistricts(executor, tasks, i);
          }
       }
 
    }
 
-   private void populateStock(int id_wharehouse) {
-      log.info("populate stocks");
-      if (id_wharehouse < 0) return;
-      else {
+   private void populateWarehouse(PopulationTask task, int id_wharehouse) throws Throwable {
+      Warehouse newWarehouse = new Warehouse(id_wharehouse,
+                                             TpccTools.aleaChainec(6, 10),
+                                             TpccTools.aleaChainec(10, 20), TpccTools.aleaChainec(10, 20),
+                                             TpccTools.aleaChainec(10, 20), TpccTools.aleaChainel(2, 2),
+                                             TpccTools.aleaChainen(4, 4) + TpccTools.CHAINE_5_1,
+                                             TpccTools.aleaFloat(Float.valueOf("0.0000").floatValue(),
+                                                                 Float.valueOf("0.2000").floatValue(), 4),
+                                             TpccTools.WAREHOUSE_YTD);
 
-         long init_id_item = 1;
-         long num_of_items = TpccTools.NB_MAX_ITEM;
 
-         if (numSlaves > 1) {
-            num_of_items = TpccTools.NB_MAX_ITEM / numSlaves;
-            long reminder = TpccTools.NB_MAX_ITEM % numSlaves;
+      newWarehouse.store(task.batch(WAREHOUSE));
+   }
 
-            init_id_item = (slaveIndex * num_of_items) + 1;
+   private void populateStock(ExecutorService executor, List<Future<Void>> tasks, final int id_wharehouse) {
+      log.info("populate stocks");
+      if (id_wharehouse < 0) return;
+      else {
 
-            if (slaveIndex == numSlaves - 1) {
-               num_of_items += reminder;
-            }
+         long[] range = warehouseAffinity ? new long[]{1, TpccTools.NB_MAX_ITEM} : getItemRange();
+         log.info(" STOCK for Warehouse " + id_wharehouse + " - ITEMS=" + range[0] + ",...," + (range[0] - 1 + range[1]));
+
+         long chunk = (range[1] + numThreads - 1) / numThreads;
+         for (long from = range[0]; from < range[0] + range[1]; from += chunk) {
+            final long first = from;
+            final long last = Math.min(from + chunk, range[0] + range[1]) - 1;
+            tasks.add(executor.submit(new PopulationTask() {
+               @Override
+               protected void populate() throws Throwable {
+                  populateStock(this, id_wharehouse, first, last);
+               }
+            }));
+         }
+      }
+   }
 
+   private void populateStock(PopulationTask task, int id_wharehouse, long init_id_item, long last_id_item) throws Throwable {
+      for (long i = init_id_item; i <= last_id_item; i++) {
 
-         }
-         log.info(" STOCK for Warehouse " + id_wharehouse + " - ITEMS=" + init_id_item + ",...," + (init_id_item - 1 + num_of_items));
-         for (long i = init_id_item; i <= (init_id_item - 1 + num_of_items); i++) {
-
-            Stock newStock = new Stock(i,
-                                       id_wharehouse,
-                                       TpccTools.aleaNumber(10, 100),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       TpccTools.aleaChainel(24, 24),
-                                       0,
-                                       0,
-                                       0,
-                                       TpccTools.sData());
-
-
-            boolean successful = false;
-            while (!successful) {
-               try {
-                  newStock.store(wrapper);
-                  successful = true;
-               } catch (Throwable e) {
-                  log.warn(e);
-               }
-            }
+         Stock newStock = new Stock(i,
+                                    id_wharehouse,
+                                    TpccTools.aleaNumber(10, 100),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    TpccTools.aleaChainel(24, 24),
+                                    0,
+                                    0,
+                                    0,
+                                    TpccTools.sData());
+
+
+         newStock.store(task.batch(STOCK));
 
 
-         }
       }
    }
 
-   private void populateDistricts(int id_wharehouse) {
+   private void populateDistricts(ExecutorService executor, List<Future<Void>> tasks, final int id_wharehouse) {
       log.info("populate districts");
       if (id_wharehouse < 0) return;
       else {
          int init_id_district = 1;
          int num_of_districts = TpccTools.NB_MAX_DISTRICT;
 
-         if (numSlaves > 1) {
+         if (numSlaves > 1 && !warehouseAffinity) {
             num_of_districts = TpccTools.NB_MAX_DISTRICT / numSlaves;
             int reminder = TpccTools.NB_MAX_DISTRICT % numSlaves;
 
@@ -324,51 +386,56 @@ public class TpccPopulation {
             log.info("Index:" + slaveIndex + "; Init:" + init_id_district + "; Num:" + num_of_districts);
          }
          for (int id_district = init_id_district; id_district <= (init_id_district - 1 + num_of_districts); id_district++) {
-            log.info(" DISTRICT " + id_district);
+            tasks.add(executor.submit(new DistrictTask(id_wharehouse, id_district)));
+         }
+      }
+   }
 
-            District newDistrict = new District(id_wharehouse,
-                                                id_district,
-                                                TpccTools.aleaChainec(6, 10),
-                                                TpccTools.aleaChainec(10, 20),
-                                                TpccTools.aleaChainec(10, 20),
-                                                TpccTools.aleaChainec(10, 20),
-                                                TpccTools.aleaChainel(2, 2),
-                                                TpccTools.aleaChainen(4, 4) + TpccTools.CHAINE_5_1,
-                                                TpccTools.aleaFloat(Float.valueOf("0.0000").floatValue(), Float.valueOf("0.2000").floatValue(), 4),
-                                                TpccTools.WAREHOUSE_YTD,
-                                                3001);
-
-
-            boolean successful = false;
-            while (!successful) {
-               try {
-                  newDistrict.store(wrapper);
-                  successful = true;
-               } catch (Throwable e) {
-                  log.warn(e);
-               }
-            }
+   private void populateDistrict(DistrictTask task, int id_wharehouse, int id_district) throws Throwable {
+      log.info(" DISTRICT " + id_district);
 
+      District newDistrict = new District(id_wharehouse,
+                                          id_district,
+                                          TpccTools.aleaChainec(6, 10),
+                                          TpccTools.aleaChainec(10, 20),
+                                          TpccTools.aleaChainec(10, 20),
+                                          TpccTools.aleaChainec(10, 20),
+                                          TpccTools.aleaChainel(2, 2),
+                                          TpccTools.aleaChainen(4, 4) + TpccTools.CHAINE_5_1,
+                                          TpccTools.aleaFloat(Float.valueOf("0.0000").floatValue(), Float.valueOf("0.2000").floatValue(), 4),
+                                          TpccTools.WAREHOUSE_YTD,
+                                          3001);
 
-            populateCustomers(id_wharehouse, id_district);
-            populateOrders(id_wharehouse, id_district);
-         }
-      }
+
+      newDistrict.store(task.batch(DISTRICT));
+
+
+      populateCustomers(task, id_wharehouse, id_district);
+      populateOrders(task, id_wharehouse, id_district);
    }
 
-   private void populateCustomers(int id_wharehouse, int id_district) {
+   private void populateCustomers(PopulationTask task, int id_wharehouse, int id_district) throws Throwable {
       log.info("populate customer");
       if (id_wharehouse < 0 || id_district < 0) return;
       else {
          log.info(" CUSTOMER " + id_wharehouse + ", " + id_district);
+         Map<String, ArrayList<Long>> c_last_index = new HashMap<String, ArrayList<Long>>();
          for (int i = 1; i <= TpccTools.NB_MAX_CUSTOMER; i++) {
 
+            String c_last = c_last();
+            ArrayList<Long> c_ids = c_last_index.get(c_last);
+            if (c_ids == null) {
+               c_ids = new ArrayList<Long>();
+               c_last_index.put(c_last, c_ids);
+            }
+            c_ids.add((long) i);
+
             Customer newCustomer = new Customer(id_wharehouse,
                                                 id_district,
                                                 i,
                                                 TpccTools.aleaChainec(8, 16),
                                                 "OE",
-                                                c_last(),
+                                                c_last,
                                                 TpccTools.aleaChainec(10, 20),
                                                 TpccTools.aleaChainec(10, 20),
                                                 TpccTools.aleaChainec(10, 20),
@@ -380,23 +447,19 @@ public class TpccPopulation {
                                                 500000.0, TpccTools.aleaDouble(0., 0.5, 4), -10.0, 10.0, 1, 0, TpccTools.aleaChainec(300, 500));
 
 
-            boolean successful = false;
-            while (!successful) {
-               try {
-                  newCustomer.store(wrapper);
-                  successful = true;
-               } catch (Throwable e) {
-                  log.warn(e);
-               }
-            }
+            newCustomer.store(task.batch(CUSTOMER));
 
 
-            populateHistory(i, id_wharehouse, id_district);
+            populateHistory(task, i, id_wharehouse, id_district);
+         }
+
+         for (Map.Entry<String, ArrayList<Long>> entry : c_last_index.entrySet()) {
+            CustomerDAC.storeCLastIndex(task.batch(CUSTOMER), id_wharehouse, id_district, entry.getKey(), entry.getValue());
          }
       }
    }
 
-   private void populateHistory(int id_customer, int id_wharehouse, int id_district) {
+   private void populateHistory(PopulationTask task, int id_customer, int id_wharehouse, int id_district) throws Throwable {
       //log.info("populate history");
       if (id_customer < 0 || id_wharehouse < 0 || id_district < 0) return;
       else {
@@ -404,23 +467,14 @@ public class TpccPopulation {
          History newHistory = new History(id_customer, id_district, id_wharehouse, id_district, id_wharehouse, new Date(System.currentTimeMillis()), 10, TpccTools.aleaChainec(12, 24));
 
 
-         boolean successful = false;
-         while (!successful) {
-            try {
-               newHistory.store(wrapper, this.slaveIndex);
-               successful = true;
-            } catch (Throwable e) {
-               log.warn(e);
-            }
-         }
+         newHistory.store(task.batch(HISTORY), this.slaveIndex);
 
       }
    }
 
 
-   private void populateOrders(int id_wharehouse, int id_district) {
+   private void populateOrders(DistrictTask task, int id_wharehouse, int id_district) throws Throwable {
       log.info("populate order");
-      this._new_order = false;
       log.info(" ORDER " + id_wharehouse + ", " + id_district);
       for (int id_order = 1; id_order <= TpccTools.NB_MAX_ORDER; id_order++) {
 
@@ -430,30 +484,26 @@ public class TpccPopulation {
          Order newOrder = new Order(id_order,
                                     id_district,
                                     id_wharehouse,
-                                    generateSeqAlea(0, TpccTools.NB_MAX_CUSTOMER - 1),
+                                    generateSeqAlea(task, 0, TpccTools.NB_MAX_CUSTOMER - 1),
                                     aDate,
                                     (id_order < TpccTools.LIMIT_ORDER) ? TpccTools.aleaNumber(1, 10) : 0,
                                     o_ol_cnt,
                                     1);
 
 
-         boolean successful = false;
-         while (!successful) {
-            try {
-               newOrder.store(wrapper);
-               successful = true;
-            } catch (Throwable e) {
-               log.warn(e);
-            }
-         }
+         newOrder.store(task.batch(ORDER));
+         OrderDAC.storeLastOrder(task.batch(ORDER), newOrder);
 
-         populateOrderLines(id_wharehouse, id_district, id_order, o_ol_cnt, aDate);
+         populateOrderLines(task, id_wharehouse, id_district, id_order, o_ol_cnt, aDate);
 
-         if (id_order >= TpccTools.LIMIT_ORDER) populateNewOrder(id_wharehouse, id_district, id_order);
+         if (id_order >= TpccTools.LIMIT_ORDER) populateNewOrder(task, id_wharehouse, id_district, id_order);
       }
+
+      // the orders below LIMIT_ORDER are delivered
+      NewOrderDAC.storeNextDelivery(task.batch(NEW_ORDER), id_wharehouse, id_district, TpccTools.LIMIT_ORDER);
    }
 
-   private void populateOrderLines(int id_wharehouse, int id_district, int id_order, int o_ol_cnt, Date aDate) {
+   private void populateOrderLines(PopulationTask task, int id_wharehouse, int id_district, int id_order, int o_ol_cnt, Date aDate) throws Throwable {
       //log.info("populate order line");
       for (int i = 0; i < o_ol_cnt; i++) {
 
@@ -481,55 +531,125 @@ public class TpccPopulation {
                                                 TpccTools.aleaChainel(12, 24));
 
 
-         boolean successful = false;
-         while (!successful) {
-            try {
-               newOrderLine.store(wrapper);
-               successful = true;
-            } catch (Throwable e) {
-               log.warn(e);
-            }
-         }
+         newOrderLine.store(task.batch(ORDER_LINE));
 
       }
    }
 
-   private void populateNewOrder(int id_wharehouse, int id_district, int id_order) {
+   private void populateNewOrder(PopulationTask task, int id_wharehouse, int id_district, int id_order) throws Throwable {
       //log.info("populate new order");
 
       NewOrder newNewOrder = new NewOrder(id_order, id_district, id_wharehouse);
 
 
-      boolean successful = false;
-      while (!successful) {
-         try {
-            newNewOrder.store(wrapper);
-            successful = true;
-         } catch (Throwable e) {
-            log.warn(e);
-         }
-      }
+      newNewOrder.store(task.batch(NEW_ORDER));
 
    }
 
 
-   private int generateSeqAlea(int deb, int fin) {
-      if (!this._new_order) {
+   private int generateSeqAlea(DistrictTask task, int deb, int fin) {
+      int[] _seqIdCustomer = task._seqIdCustomer;
+      if (!task._new_order) {
          for (int i = deb; i <= fin; i++) {
-            this._seqIdCustomer[i] = i + 1;
+            _seqIdCustomer[i] = i + 1;
          }
-         this._new_order = true;
+         task._new_order = true;
       }
       int rand = 0;
       int alea = 0;
       do {
          rand = (int) TpccTools.nonUniformRandom(getC_ID(), TpccTools.A_C_ID, deb, fin);
-         alea = this._seqIdCustomer[rand];
+         alea = _seqIdCustomer[rand];
       } while (alea == TpccTools.NULL_NUMBER);
       _seqIdCustomer[rand] = TpccTools.NULL_NUMBER;
       return alea;
    }
-}
 
+   /**
+    * Unit of work executed by the population threads. The entries of each table are stored through
+    * a separate {@link BatchingCacheWrapper}, the remaining entries are flushed when the task ends.
+    */
+   private abstract class PopulationTask implements Callable<Void> {
+
+      private final Map<String, BatchingCacheWrapper> batches = new HashMap<String, BatchingCacheWrapper>();
+
+      protected CacheWrapper batch(String table) {
+         BatchingCacheWrapper batch = batches.get(table);
+         if (batch == null) {
+            batch = new BatchingCacheWrapper(wrapper, batchSize);
+            batches.put(table, batch);
+         }
+         return batch;
+      }
+
+      protected abstract void populate() throws Throwable;
+
+      @Override
+      public Void call() throws Exception {
+         try {
+            populate();
+         } catch (Exception e) {
+            throw e;
+         } catch (Throwable t) {
+            // the domain objects declare Throwable when they store themselves
+            throw new Exception(t);
+         }
+         for (Map.Entry<String, BatchingCacheWrapper> entry : batches.entrySet()) {
+            BatchingCacheWrapper batch = entry.getValue();
+            batch.flush();
+            statistics.get(entry.getKey()).add(batch.getEntries(), batch.getStoreTime());
+         }
+         return null;
+      }
+   }
+
+   /**
+    * Populates one district with its customers, history, orders, order lines and new orders.
+    */
+   private class DistrictTask extends PopulationTask {
+
+      private final int id_wharehouse;
+
+      private final int id_district;
 
+      private boolean _new_order = false;
 
+      private int _seqIdCustomer[] = new int[TpccTools.NB_MAX_CUSTOMER];
+
+      private DistrictTask(int id_wharehouse, int id_district) {
+         this.id_wharehouse = id_wharehouse;
+         this.id_district = id_district;
+      }
+
+      @Override
+      protected void populate() throws Throwable {
+         populateDistrict(this, id_wharehouse, id_district);
+      }
+   }
+
+   /**
+    * Number of entries stored in one table and the time spent storing them, summed over all population threads.
+    */
+   public static class TableStatistics {
+
+      private final AtomicLong entries = new AtomicLong();
+
+      private final AtomicLong storeTime = new AtomicLong();
+
+      private void add(long entries, long storeTime) {
+         this.entries.addAndGet(entries);
+         this.storeTime.addAndGet(storeTime);
+      }
+
+      public long getEntries() {
+         return entries.get();
+      }
+
+      /**
+       * @return Time spent storing the entries, in nanoseconds
+       */
+      public long getStoreTime() {
+         return storeTime.get();
+      }
+   }
+}
@@ -1,8 +1,10 @@
 package org.radargun.tpcc;
 
+import org.radargun.tpcc.transaction.DeliveryTransaction;
 import org.radargun.tpcc.transaction.NewOrderTransaction;
 import org.radargun.tpcc.transaction.OrderStatusTransaction;
 import org.radargun.tpcc.transaction.PaymentTransaction;
+import org.radargun.tpcc.transaction.StockLevelTransaction;
 import org.radargun.tpcc.transaction.TpccTransaction;
 
 
@@ -19,13 +21,24 @@ public class TpccTerminal {
 
    private double orderStatusWeight;
 
+   private double deliveryWeight;
+
+   private double stockLevelWeight;
+
    private int indexNode;
 
 
    public TpccTerminal(double paymentWeight, double orderStatusWeight, int indexNode) {
 
+      this(paymentWeight, orderStatusWeight, 0, 0, indexNode);
+   }
+
+   public TpccTerminal(double paymentWeight, double orderStatusWeight, double deliveryWeight, double stockLevelWeight, int indexNode) {
+
       this.paymentWeight = paymentWeight;
       this.orderStatusWeight = orderStatusWeight;
+      this.deliveryWeight = deliveryWeight;
+      this.stockLevelWeight = stockLevelWeight;
       this.indexNode = indexNode;
    }
 
@@ -39,6 +52,10 @@ public class TpccTerminal {
       } else if (transactionType <= this.paymentWeight + this.orderStatusWeight) {
          return new OrderStatusTransaction();
 
+      } else if (transactionType <= this.paymentWeight + this.orderStatusWeight + this.deliveryWeight) {
+         return new DeliveryTransaction();
+      } else if (transactionType <= this.paymentWeight + this.orderStatusWeight + this.deliveryWeight + this.stockLevelWeight) {
+         return new StockLevelTransaction();
       } else {
          return new NewOrderTransaction();
       }
@@ -2,8 +2,14 @@ package org.radargun.tpcc;
 
 import java.io.UnsupportedEncodingException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
+import org.radargun.CacheWrapper;
+import org.radargun.features.KeyOwnershipAware;
+import org.radargun.tpcc.domain.Warehouse;
+
 /**
  * @author peluso@gsd.inesc-id.pt , peluso@dis.uniroma1.it
  */
@@ -47,6 +53,23 @@ public final class TpccTools {
 
    public static long C_C_ID = 0L;
 
+   /**
+    * If true, customers are looked up by last name through the index written by the population,
+    * otherwise all customers of the district are scanned.
+    */
+   public static boolean C_LAST_INDEX = true;
+
+   /**
+    * If true, the latest order of a customer is read from the pointer maintained by the population and the
+    * New-Order transaction, otherwise all orders of the district are scanned.
+    */
+   public static boolean LAST_ORDER_POINTER = true;
+
+   /**
+    * Warehouses driven by the terminals of this slave, or null if the terminals use all warehouses.
+    */
+   public static long[] HOME_WAREHOUSES = null;
+
    private final static int DEFAULT_RADIX = 10;
 
    private final static int DEFAULT_MINL = 65;
@@ -63,11 +86,20 @@ public final class TpccTools {
 
    private final static int unicode[][] = {{65, 126}, {192, 259}};
 
-   private static Random _randUniform = new Random(System.nanoTime() * 31 + ManagementFactory.getRuntimeMXBean().getName().hashCode());
+   // each thread (population task or terminal) has its own random sources, shared Random instances would be contended
+   private static final ThreadLocal<Random> _randUniform = new RandomSource();
+
+   private static final ThreadLocal<Random> _randNonUniform = new RandomSource();
 
-   private static Random _randNonUniform = new Random(System.nanoTime() * 31 + ManagementFactory.getRuntimeMXBean().getName().hashCode());
+   private static final ThreadLocal<Random> _randAlea = new RandomSource();
 
-   private static Random _randAlea = new Random(System.nanoTime() * 31 + ManagementFactory.getRuntimeMXBean().getName().hashCode());
+   private static class RandomSource extends ThreadLocal<Random> {
+      @Override
+      protected Random initialValue() {
+         return new Random(System.nanoTime() * 31 + ManagementFactory.getRuntimeMXBean().getName().hashCode()
+               + Thread.currentThread().getId());
+      }
+   }
 
    private TpccTools() {
    }
@@ -81,7 +113,7 @@ public final class TpccTools {
       if (deb != fin) lch = aleaNumber(deb, fin);
 
       for (int i = 0; i < lch; i++) {
-         int random = _randAlea.nextInt(max - min + 1) + min;
+         int random = _randAlea.get().nextInt(max - min + 1) + min;
          char c = (char) (((byte) random) & 0xff);
          chaine += c;
       }
@@ -107,10 +139,10 @@ public final class TpccTools {
       if (deb != fin) lch = aleaNumber(deb, fin);
 
       for (int i = 0; i < lch; i++) {
-         int ref = _randAlea.nextInt(2);
+         int ref = _randAlea.get().nextInt(2);
          int min = unicode[ref][0];
          int max = unicode[ref][1];
-         int random = _randAlea.nextInt(max - min + 1) + min;
+         int random = _randAlea.get().nextInt(max - min + 1) + min;
 
          char c = (char) (((byte) random));
          chaine += c;
@@ -147,12 +179,12 @@ public final class TpccTools {
 
 
    public static int aleaNumber(int deb, int fin) {
-      return _randAlea.nextInt(fin - deb + 1) + deb;
+      return _randAlea.get().nextInt(fin - deb + 1) + deb;
    }
 
 
    public static long aleaNumber(long deb, long fin) {
-      long random = _randAlea.nextLong() % (fin + 1);
+      long random = _randAlea.get().nextLong() % (fin + 1);
       while (random < deb) random += fin - deb;
       return random;
    }
@@ -162,7 +194,7 @@ public final class TpccTools {
       long pow = (long) Math.pow(10, virg);
       long amin = (long) (deb * pow);
       long amax = (long) (fin * pow);
-      long random = (long) (_randAlea.nextDouble() * (amax - amin) + amin);
+      long random = (long) (_randAlea.get().nextDouble() * (amax - amin) + amin);
       return (float) random / pow;
    }
 
@@ -171,20 +203,72 @@ public final class TpccTools {
       long pow = (long) Math.pow(10, virg);
       long amin = (long) (deb * pow);
       long amax = (long) (fin * pow);
-      long random = (long) (_randAlea.nextDouble() * (amax - amin) + amin);
+      long random = (long) (_randAlea.get().nextDouble() * (amax - amin) + amin);
       return (double) random / pow;
    }
 
    public static long randomNumber(long min, long max) {
-      return (long) (_randUniform.nextDouble() * (max - min + 1) + min);
+      return (long) (_randUniform.get().nextDouble() * (max - min + 1) + min);
+   }
+
+   /**
+    * @return Random warehouse from {@link #HOME_WAREHOUSES}, or from all warehouses if home warehouses are not set
+    */
+   public static long randomHomeWarehouse() {
+      long[] homeWarehouses = HOME_WAREHOUSES;
+      if (homeWarehouses == null) return randomNumber(1, NB_WAREHOUSES);
+      return homeWarehouses[(int) randomNumber(0, homeWarehouses.length - 1)];
+   }
+
+   /**
+    * Assigns each warehouse to the slave that is the primary owner of the warehouse entry. When the wrapper
+    * keeps all entries of a warehouse on the same owners, the home warehouses are local to the slave.
+    * If the wrapper cannot tell the owners, or this slave owns all warehouses (e.g. replicated cache),
+    * the warehouses are assigned round-robin.
+    *
+    * @return Home warehouses of this slave, empty if it is not the primary owner of any warehouse
+    */
+   public static long[] homeWarehouses(CacheWrapper wrapper, int numWarehouses, int slaveIndex, int numSlaves) {
+      if (!(wrapper instanceof KeyOwnershipAware)) {
+         return homeWarehouses(numWarehouses, slaveIndex, numSlaves);
+      }
+      List<Long> owned = new ArrayList<Long>();
+      for (long w_id = 1; w_id <= numWarehouses; w_id++) {
+         if (((KeyOwnershipAware) wrapper).isPrimaryOwner(null, Warehouse.getKey(w_id))) {
+            owned.add(w_id);
+         }
+      }
+      if (owned.size() == numWarehouses) {
+         return homeWarehouses(numWarehouses, slaveIndex, numSlaves);
+      }
+      long[] homeWarehouses = new long[owned.size()];
+      for (int i = 0; i < homeWarehouses.length; i++) {
+         homeWarehouses[i] = owned.get(i);
+      }
+      return homeWarehouses;
+   }
+
+   /**
+    * Assigns the warehouses to the slaves round-robin. If there are less warehouses than slaves,
+    * several slaves share the same warehouse.
+    */
+   public static long[] homeWarehouses(int numWarehouses, int slaveIndex, int numSlaves) {
+      if (numWarehouses < numSlaves) {
+         return new long[]{slaveIndex % numWarehouses + 1};
+      }
+      long[] homeWarehouses = new long[(numWarehouses - slaveIndex + numSlaves - 1) / numSlaves];
+      for (int i = 0; i < homeWarehouses.length; i++) {
+         homeWarehouses[i] = slaveIndex + 1 + (long) i * numSlaves;
+      }
+      return homeWarehouses;
    }
 
    public static double doubleRandomNumber(long min, long max) {
-      return _randUniform.nextDouble() * (max - min + 1) + min;
+      return _randUniform.get().nextDouble() * (max - min + 1) + min;
    }
 
    public static long randomNumberForNonUniform(long min, long max) {
-      return (long) (_randNonUniform.nextDouble() * (max - min + 1) + min);
+      return (long) (_randNonUniform.get().nextDouble() * (max - min + 1) + min);
    }
 
    public static long nonUniformRandom(long type, long x, long min, long max) {
@@ -15,8 +15,46 @@ public final class CustomerDAC {
    private CustomerDAC() {
    }
 
+   private static String getCLastIndexKey(long c_w_id, long c_d_id, String c_last) {
+      return "CUSTOMER_C_LAST_" + c_w_id + "_" + c_d_id + "_" + c_last;
+   }
+
+   /**
+    * Stores the ids of the customers of the district with the given last name, read back by
+    * {@link #loadByCLast(CacheWrapper, long, long, String)}.
+    */
+   public static void storeCLastIndex(CacheWrapper cacheWrapper, long c_w_id, long c_d_id, String c_last, ArrayList<Long> c_ids) throws Throwable {
+
+      cacheWrapper.put(null, getCLastIndexKey(c_w_id, c_d_id, c_last), c_ids);
+   }
+
    public static List<Customer> loadByCLast(CacheWrapper cacheWrapper, long c_w_id, long c_d_id, String c_last) throws Throwable {
 
+      if (!TpccTools.C_LAST_INDEX) return scanByCLast(cacheWrapper, c_w_id, c_d_id, c_last);
+
+      List<Customer> result = new ArrayList<Customer>();
+
+      List<Long> c_ids = (List<Long>) cacheWrapper.get(null, getCLastIndexKey(c_w_id, c_d_id, c_last));
+
+      if (c_ids == null) return result;
+
+      for (long c_id : c_ids) {
+
+         Customer current = new Customer();
+
+         current.setC_id(c_id);
+         current.setC_d_id(c_d_id);
+         current.setC_w_id(c_w_id);
+
+         if (current.load(cacheWrapper)) result.add(current);
+
+      }
+
+      return result;
+   }
+
+   private static List<Customer> scanByCLast(CacheWrapper cacheWrapper, long c_w_id, long c_d_id, String c_last) throws Throwable {
+
       List<Customer> result = new ArrayList<Customer>();
 
       Customer current = null;
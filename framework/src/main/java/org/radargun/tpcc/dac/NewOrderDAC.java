@@ -0,0 +1,55 @@
+package org.radargun.tpcc.dac;
+
+import org.radargun.CacheWrapper;
+import org.radargun.tpcc.domain.NewOrder;
+
+/**
+ * The id of the oldest undelivered order in each district is kept under a separate key, so that
+ * the Delivery transaction does not have to search all orders of the district.
+ */
+public final class NewOrderDAC {
+
+   private NewOrderDAC() {
+   }
+
+   private static String getNextDeliveryKey(long w_id, long d_id) {
+      return "NEXT_DELIVERY_" + w_id + "_" + d_id;
+   }
+
+   /**
+    * The pointer is written by the population; if it is missing, the search starts from the first order.
+    *
+    * @param nextOrderId Id of the next order in the district (orders with lower ids are searched)
+    * @return The undelivered order with the lowest id, or null if all orders were delivered
+    */
+   public static NewOrder loadOldest(CacheWrapper cacheWrapper, long w_id, long d_id, long nextOrderId) throws Throwable {
+
+      Long first = (Long) cacheWrapper.get(null, getNextDeliveryKey(w_id, d_id));
+
+      for (long o_id = first != null ? first : 1; o_id < nextOrderId; o_id++) {
+
+         NewOrder current = new NewOrder(o_id, d_id, w_id);
+
+         if (current.load(cacheWrapper)) return current;
+
+      }
+
+      return null;
+   }
+
+   public static void delete(CacheWrapper cacheWrapper, NewOrder newOrder) throws Throwable {
+
+      newOrder.delete(cacheWrapper);
+
+      storeNextDelivery(cacheWrapper, newOrder.getNo_w_id(), newOrder.getNo_d_id(), newOrder.getNo_o_id() + 1);
+   }
+
+   /**
+    * @param o_id Id of the oldest undelivered order in the district
+    */
+   public static void storeNextDelivery(CacheWrapper cacheWrapper, long w_id, long d_id, long o_id) throws Throwable {
+
+      cacheWrapper.put(null, getNextDeliveryKey(w_id, d_id), o_id);
+   }
+
+}
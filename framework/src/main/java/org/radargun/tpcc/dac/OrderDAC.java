@@ -16,8 +16,38 @@ public final class OrderDAC {
    private OrderDAC() {
    }
 
+   private static String getLastOrderKey(long w_id, long d_id, long c_id) {
+      return "CUSTOMER_LAST_ORDER_" + w_id + "_" + d_id + "_" + c_id;
+   }
+
+   /**
+    * Records the order as the latest one of its customer, read back by
+    * {@link #loadByGreatestId(CacheWrapper, long, long, long)}.
+    */
+   public static void storeLastOrder(CacheWrapper cacheWrapper, Order order) throws Throwable {
+
+      cacheWrapper.put(null, getLastOrderKey(order.getO_w_id(), order.getO_d_id(), order.getO_c_id()), order.getO_id());
+   }
+
    public static Order loadByGreatestId(CacheWrapper cacheWrapper, long w_id, long d_id, long c_id) throws Throwable {
 
+      if (!TpccTools.LAST_ORDER_POINTER) return scanByGreatestId(cacheWrapper, w_id, d_id, c_id);
+
+      Long o_id = (Long) cacheWrapper.get(null, getLastOrderKey(w_id, d_id, c_id));
+
+      if (o_id == null) return null;
+
+      Order order = new Order();
+
+      order.setO_id(o_id);
+      order.setO_w_id(w_id);
+      order.setO_d_id(d_id);
+
+      return order.load(cacheWrapper) ? order : null;
+   }
+
+   private static Order scanByGreatestId(CacheWrapper cacheWrapper, long w_id, long d_id, long c_id) throws Throwable {
+
 
       List<Order> list = new ArrayList<Order>();
       boolean found = false;
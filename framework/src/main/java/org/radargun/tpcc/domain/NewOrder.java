@@ -65,6 +65,16 @@ public class NewOrder implements Serializable {
       wrapper.put(null, this.getKey(), this);
    }
 
+   public boolean load(CacheWrapper wrapper) throws Throwable {
+
+      return wrapper.get(null, this.getKey()) != null;
+   }
+
+   public void delete(CacheWrapper wrapper) throws Throwable {
+
+      wrapper.remove(null, this.getKey());
+   }
+
    @Override
    public boolean equals(Object o) {
       if (this == o) return true;
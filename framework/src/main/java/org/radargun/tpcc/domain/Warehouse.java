@@ -118,7 +118,11 @@ public class Warehouse implements Serializable {
    }
 
    private String getKey() {
-      return "WAREHOUSE_" + this.w_id;
+      return getKey(this.w_id);
+   }
+
+   public static String getKey(long w_id) {
+      return "WAREHOUSE_" + w_id;
    }
 
    public void store(CacheWrapper wrapper) throws Throwable {
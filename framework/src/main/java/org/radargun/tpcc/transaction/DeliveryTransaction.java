@@ -0,0 +1,100 @@
+package org.radargun.tpcc.transaction;
+
+import org.radargun.CacheWrapper;
+import org.radargun.tpcc.ElementNotFoundException;
+import org.radargun.tpcc.TpccTools;
+import org.radargun.tpcc.dac.NewOrderDAC;
+import org.radargun.tpcc.dac.OrderLineDAC;
+import org.radargun.tpcc.domain.Customer;
+import org.radargun.tpcc.domain.District;
+import org.radargun.tpcc.domain.NewOrder;
+import org.radargun.tpcc.domain.Order;
+import org.radargun.tpcc.domain.OrderLine;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Delivers the oldest undelivered order in each of the districts of one warehouse (clause 2.7).
+ * The transaction is executed directly, not queued in deferred mode.
+ */
+public class DeliveryTransaction implements TpccTransaction {
+
+   private long terminalWarehouseID;
+
+   private long carrierID;
+
+   public DeliveryTransaction() {
+
+      this.terminalWarehouseID = TpccTools.randomHomeWarehouse();
+
+      // clause 2.7.1.2
+      this.carrierID = TpccTools.randomNumber(1, 10);
+   }
+
+   @Override
+   public void executeTransaction(CacheWrapper cacheWrapper) throws Throwable {
+
+      deliveryTransaction(cacheWrapper, terminalWarehouseID, carrierID);
+   }
+
+   @Override
+   public boolean isReadOnly() {
+      return false;
+   }
+
+   private void deliveryTransaction(CacheWrapper cacheWrapper, long w_id, long o_carrier_id) throws Throwable {
+
+      Date deliveryDate = new Date();
+
+      for (long d_id = 1; d_id <= TpccTools.NB_MAX_DISTRICT; d_id++) {
+
+         District d = new District();
+         d.setD_id(d_id);
+         d.setD_w_id(w_id);
+         boolean found = d.load(cacheWrapper);
+         if (!found) throw new ElementNotFoundException("D_ID=" + d_id + " D_W_ID=" + w_id + " not found!");
+
+         // clause 2.7.4.2 (dot 3)
+         NewOrder no = NewOrderDAC.loadOldest(cacheWrapper, w_id, d_id, d.getD_next_o_id());
+
+         // clause 2.7.4.2 (dot 4), the district is skipped if there is no outstanding order
+         if (no == null) continue;
+
+         NewOrderDAC.delete(cacheWrapper, no);
+
+         // clause 2.7.4.2 (dot 5)
+         Order o = new Order();
+         o.setO_id(no.getNo_o_id());
+         o.setO_d_id(d_id);
+         o.setO_w_id(w_id);
+         found = o.load(cacheWrapper);
+         if (!found) throw new ElementNotFoundException("O_ID=" + no.getNo_o_id() + " O_D_ID=" + d_id + " O_W_ID=" + w_id + " not found!");
+
+         o.setO_carrier_id(o_carrier_id);
+         o.store(cacheWrapper);
+
+         // clause 2.7.4.2 (dot 6)
+         double ol_total = 0;
+         List<OrderLine> o_lines = OrderLineDAC.loadByOrder(cacheWrapper, o);
+         for (OrderLine ol : o_lines) {
+            ol.setOl_delivery_d(deliveryDate);
+            ol.store(cacheWrapper);
+            ol_total += ol.getOl_amount();
+         }
+
+         // clause 2.7.4.2 (dot 7)
+         Customer c = new Customer();
+         c.setC_id(o.getO_c_id());
+         c.setC_d_id(d_id);
+         c.setC_w_id(w_id);
+         found = c.load(cacheWrapper);
+         if (!found) throw new ElementNotFoundException("C_ID=" + o.getO_c_id() + " C_D_ID=" + d_id + " C_W_ID=" + w_id + " not found!");
+
+         c.setC_balance(c.getC_balance() + ol_total);
+         c.setC_delivery_cnt(c.getC_delivery_cnt() + 1);
+         c.store(cacheWrapper);
+      }
+   }
+
+}
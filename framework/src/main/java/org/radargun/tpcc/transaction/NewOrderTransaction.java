@@ -3,6 +3,7 @@ package org.radargun.tpcc.transaction;
 import org.radargun.CacheWrapper;
 import org.radargun.tpcc.ElementNotFoundException;
 import org.radargun.tpcc.TpccTools;
+import org.radargun.tpcc.dac.OrderDAC;
 import org.radargun.tpcc.domain.Customer;
 import org.radargun.tpcc.domain.District;
 import org.radargun.tpcc.domain.Item;
@@ -37,7 +38,7 @@ public class NewOrderTransaction implements TpccTransaction {
 
    public NewOrderTransaction() {
 
-      this.terminalWarehouseID = TpccTools.randomNumber(1, TpccTools.NB_WAREHOUSES);
+      this.terminalWarehouseID = TpccTools.randomHomeWarehouse();
 
 
       this.districtID = TpccTools.randomNumber(1, TpccTools.NB_MAX_DISTRICT);
@@ -143,6 +144,8 @@ public class NewOrderTransaction implements TpccTransaction {
 
       o.store(cacheWrapper);
 
+      OrderDAC.storeLastOrder(cacheWrapper, o);
+
 
       // see clause 2.4.2.2 (dot 8)
       for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
@@ -237,7 +240,8 @@ public class NewOrderTransaction implements TpccTransaction {
          }
          // clause 2.4.2.2 (dot 8.5)
 
-         OrderLine ol = new OrderLine(o_id, d_id, w_id, ol_number, ol_i_id, ol_supply_w_id, null, ol_quantity, ol_amount, ol_dist_info);
+         // order lines are numbered from 0, as in the population and OrderLineDAC
+         OrderLine ol = new OrderLine(o_id, d_id, w_id, ol_number - 1, ol_i_id, ol_supply_w_id, null, ol_quantity, ol_amount, ol_dist_info);
          ol.store(cacheWrapper);
 
       }
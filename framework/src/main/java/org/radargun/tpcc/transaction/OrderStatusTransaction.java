@@ -32,7 +32,7 @@ public class OrderStatusTransaction implements TpccTransaction {
 
    public OrderStatusTransaction() {
 
-      this.terminalWarehouseID = TpccTools.randomNumber(1, TpccTools.NB_WAREHOUSES);
+      this.terminalWarehouseID = TpccTools.randomHomeWarehouse();
 
       // clause 2.6.1.2
       this.districtID = TpccTools.randomNumber(1, TpccTools.NB_MAX_DISTRICT);
@@ -105,7 +105,9 @@ public class OrderStatusTransaction implements TpccTransaction {
       }
 
       // clause 2.6.2.2 (dot 4)
-      Order o = OrderDAC.loadByGreatestId(cacheWrapper, w_id, d_id, c_id);
+      Order o = OrderDAC.loadByGreatestId(cacheWrapper, w_id, d_id, c.getC_id());
+      if (o == null)
+         throw new ElementNotFoundException("Order of C_ID=" + c.getC_id() + " C_D_ID=" + d_id + " C_W_ID=" + w_id + " not found!");
 
       // clause 2.6.2.2 (dot 5)
       List<OrderLine> o_lines = OrderLineDAC.loadByOrder(cacheWrapper, o);
@@ -42,7 +42,7 @@ public class PaymentTransaction implements TpccTransaction {
 
       this.slaveIndex = slaveIndex;
 
-      this.terminalWarehouseID = TpccTools.randomNumber(1, TpccTools.NB_WAREHOUSES);
+      this.terminalWarehouseID = TpccTools.randomHomeWarehouse();
 
       this.districtID = TpccTools.randomNumber(1, TpccTools.NB_MAX_DISTRICT);
 
@@ -0,0 +1,92 @@
+package org.radargun.tpcc.transaction;
+
+import org.radargun.CacheWrapper;
+import org.radargun.tpcc.ElementNotFoundException;
+import org.radargun.tpcc.TpccTools;
+import org.radargun.tpcc.dac.OrderLineDAC;
+import org.radargun.tpcc.domain.District;
+import org.radargun.tpcc.domain.Order;
+import org.radargun.tpcc.domain.OrderLine;
+import org.radargun.tpcc.domain.Stock;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Counts recently sold items with stock below the threshold (clause 2.8).
+ */
+public class StockLevelTransaction implements TpccTransaction {
+
+   private static final int RECENT_ORDERS = 20;
+
+   private long terminalWarehouseID;
+
+   private long districtID;
+
+   private long threshold;
+
+   private int lowStock;
+
+   public StockLevelTransaction() {
+
+      this.terminalWarehouseID = TpccTools.randomHomeWarehouse();
+
+      this.districtID = TpccTools.randomNumber(1, TpccTools.NB_MAX_DISTRICT);
+
+      // clause 2.8.1.2
+      this.threshold = TpccTools.randomNumber(10, 20);
+   }
+
+   @Override
+   public void executeTransaction(CacheWrapper cacheWrapper) throws Throwable {
+
+      lowStock = stockLevelTransaction(cacheWrapper, terminalWarehouseID, districtID, threshold);
+   }
+
+   @Override
+   public boolean isReadOnly() {
+      return true;
+   }
+
+   public int getLowStock() {
+      return lowStock;
+   }
+
+   private int stockLevelTransaction(CacheWrapper cacheWrapper, long w_id, long d_id, long threshold) throws Throwable {
+
+      // clause 2.8.2.2 (dot 2)
+      District d = new District();
+      d.setD_id(d_id);
+      d.setD_w_id(w_id);
+      boolean found = d.load(cacheWrapper);
+      if (!found) throw new ElementNotFoundException("D_ID=" + d_id + " D_W_ID=" + w_id + " not found!");
+
+      long nextOrderId = d.getD_next_o_id();
+
+      // clause 2.8.2.2 (dot 3), items from the last 20 orders
+      Set<Long> itemIDs = new HashSet<Long>();
+      for (long o_id = Math.max(1, nextOrderId - RECENT_ORDERS); o_id < nextOrderId; o_id++) {
+         Order o = new Order();
+         o.setO_id(o_id);
+         o.setO_d_id(d_id);
+         o.setO_w_id(w_id);
+         if (!o.load(cacheWrapper)) continue;
+
+         for (OrderLine ol : OrderLineDAC.loadByOrder(cacheWrapper, o)) {
+            itemIDs.add(ol.getOl_i_id());
+         }
+      }
+
+      // clause 2.8.2.2 (dot 4)
+      int count = 0;
+      for (long i_id : itemIDs) {
+         Stock s = new Stock();
+         s.setS_i_id(i_id);
+         s.setS_w_id(w_id);
+         found = s.load(cacheWrapper);
+         if (found && s.getS_quantity() < threshold) count++;
+      }
+      return count;
+   }
+
+}
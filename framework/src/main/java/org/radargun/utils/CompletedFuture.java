@@ -0,0 +1,53 @@
+package org.radargun.utils;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Future for operations that were already executed synchronously.
+ */
+public class CompletedFuture<T> implements Future<T> {
+   private final T value;
+   private final Throwable exception;
+
+   public CompletedFuture(T value) {
+      this.value = value;
+      this.exception = null;
+   }
+
+   private CompletedFuture(Throwable exception) {
+      this.value = null;
+      this.exception = exception;
+   }
+
+   public static <T> CompletedFuture<T> failed(Throwable exception) {
+      return new CompletedFuture<T>(exception);
+   }
+
+   @Override
+   public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+   }
+
+   @Override
+   public boolean isCancelled() {
+      return false;
+   }
+
+   @Override
+   public boolean isDone() {
+      return true;
+   }
+
+   @Override
+   public T get() throws ExecutionException {
+      if (exception != null) throw new ExecutionException(exception);
+      return value;
+   }
+
+   @Override
+   public T get(long timeout, TimeUnit unit) throws ExecutionException {
+      return get();
+   }
+}
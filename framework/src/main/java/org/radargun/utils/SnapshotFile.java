@@ -0,0 +1,214 @@
+package org.radargun.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.radargun.BinaryCodec;
+
+/**
+ * Binary file with cache entries. After the header the file consists of blocks: block starts with its length,
+ * the number of entries and the length of its Java object stream, followed by keys and values encoded
+ * by {@link BinaryCodec} and by the object stream with the keys and values that have no codec (e.g. TPC-C domain
+ * objects). The blocks are written and read sequentially, with the whole block transferred in single operation.
+ */
+public class SnapshotFile {
+   private static final int MAGIC = 0x52475348;
+   private static final int VERSION = 2;
+   /* Version 1 blocks had no object stream, objects without codec were serialized one by one */
+   private static final int VERSION_NO_STREAM = 1;
+   private static final int BLOCK_SIZE = 1024 * 1024;
+
+   private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+         if (channel.read(buffer) < 0) throw new EOFException();
+      }
+   }
+
+   private static void writeFully(FileChannel channel, ByteBuffer[] buffers) throws IOException {
+      ByteBuffer last = buffers[buffers.length - 1];
+      while (last.hasRemaining()) {
+         channel.write(buffers);
+      }
+   }
+
+   /**
+    * Not thread-safe.
+    */
+   public static class Writer {
+      private final RandomAccessFile file;
+      private final FileChannel channel;
+      private final BinaryCodec.Output block = new BinaryCodec.Output();
+      private final StreamBuffer javaBytes = new StreamBuffer();
+      private ObjectOutputStream javaStream;
+      private final ByteBuffer blockHeader = ByteBuffer.allocate(12);
+      private int blockEntries;
+      private long entries;
+
+      public Writer(File path) throws IOException {
+         file = new RandomAccessFile(path, "rw");
+         file.setLength(0);
+         channel = file.getChannel();
+         ByteBuffer header = ByteBuffer.allocate(8);
+         header.putInt(MAGIC).putInt(VERSION).flip();
+         writeFully(channel, new ByteBuffer[] { header });
+         startBlock();
+      }
+
+      private void startBlock() throws IOException {
+         javaBytes.reset();
+         // new stream for each block, so that the handle table does not keep the written objects
+         javaStream = new ObjectOutputStream(javaBytes);
+         block.setJavaStream(javaStream);
+      }
+
+      public void write(Object key, Object value) throws IOException {
+         block.writeObject(key);
+         block.writeObject(value);
+         blockEntries++;
+         entries++;
+         if (block.size() + javaBytes.size() >= BLOCK_SIZE) {
+            flushBlock();
+         }
+      }
+
+      private void flushBlock() throws IOException {
+         if (blockEntries == 0) return;
+         javaStream.flush();
+         blockHeader.clear();
+         blockHeader.putInt(block.size()).putInt(blockEntries).putInt(javaBytes.size()).flip();
+         writeFully(channel, new ByteBuffer[] { blockHeader, block.toByteBuffer(), javaBytes.toByteBuffer() });
+         block.reset();
+         blockEntries = 0;
+         startBlock();
+      }
+
+      public long getEntries() {
+         return entries;
+      }
+
+      /**
+       * @return Number of bytes written to the file, including data not flushed yet.
+       */
+      public long getSize() throws IOException {
+         return channel.position() + (blockEntries > 0 ? blockHeader.capacity() + block.size() + javaBytes.size() : 0);
+      }
+
+      public void close() throws IOException {
+         try {
+            flushBlock();
+         } finally {
+            file.close();
+         }
+      }
+   }
+
+   /**
+    * Not thread-safe.
+    */
+   public static class Reader {
+      private final RandomAccessFile file;
+      private final FileChannel channel;
+      private final ByteBuffer blockHeader;
+      private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+      private BinaryCodec.Input input;
+      private int blockRemaining;
+      private Object key;
+      private Object value;
+
+      public Reader(File path) throws IOException {
+         file = new RandomAccessFile(path, "r");
+         channel = file.getChannel();
+         try {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+               throw new StreamCorruptedException(path + " is not a snapshot file");
+            }
+            int version = header.getInt();
+            if (version != VERSION && version != VERSION_NO_STREAM) {
+               throw new StreamCorruptedException("Unsupported version " + version + ", expected " + VERSION);
+            }
+            blockHeader = ByteBuffer.allocate(version == VERSION_NO_STREAM ? 8 : 12);
+         } catch (IOException e) {
+            file.close();
+            throw e;
+         }
+      }
+
+      /**
+       * Moves to the next entry.
+       *
+       * @return False if there are no more entries.
+       */
+      public boolean next() throws IOException {
+         while (blockRemaining == 0) {
+            if (!readBlock()) return false;
+         }
+         key = input.readObject();
+         value = input.readObject();
+         blockRemaining--;
+         return true;
+      }
+
+      private boolean readBlock() throws IOException {
+         blockHeader.clear();
+         if (channel.read(blockHeader) < 0) return false;
+         readFully(channel, blockHeader);
+         blockHeader.flip();
+         int length = blockHeader.getInt();
+         blockRemaining = blockHeader.getInt();
+         int javaLength = blockHeader.hasRemaining() ? blockHeader.getInt() : 0;
+         if (length < 0 || blockRemaining < 0 || javaLength < 0) {
+            throw new StreamCorruptedException("Invalid block header");
+         }
+         if (length + javaLength > block.capacity()) {
+            block = ByteBuffer.allocate(length + javaLength);
+         }
+         block.clear();
+         block.limit(length + javaLength);
+         readFully(channel, block);
+         block.flip();
+         block.limit(length);
+         input = new BinaryCodec.Input(block);
+         if (javaLength > 0) {
+            input.setJavaStream(new ObjectInputStream(new ByteArrayInputStream(block.array(), length, javaLength)));
+         }
+         return true;
+      }
+
+      public Object getKey() {
+         return key;
+      }
+
+      public Object getValue() {
+         return value;
+      }
+
+      public long getSize() throws IOException {
+         return channel.size();
+      }
+
+      public void close() throws IOException {
+         file.close();
+      }
+   }
+
+   private static class StreamBuffer extends ByteArrayOutputStream {
+      /**
+       * @return View of the written data, valid until the next write or reset
+       */
+      ByteBuffer toByteBuffer() {
+         return ByteBuffer.wrap(buf, 0, count);
+      }
+   }
+}
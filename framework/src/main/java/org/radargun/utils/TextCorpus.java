@@ -0,0 +1,144 @@
+package org.radargun.utils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Pre-generated text from which values are copied in bulk. The vocabulary and the text are fully
+ * determined by the seed. Word frequencies follow Zipf's law: the word with rank r (starting at 1)
+ * appears with probability proportional to 1 / r^exponent; shorter words get the lower ranks.
+ * Words consist of single and multi-byte characters and the text is encoded in UTF-8.
+ *
+ * The corpus is immutable, values can be generated concurrently using different {@link Random} instances.
+ */
+public class TextCorpus {
+   public static final Charset CHARSET = Charset.forName("UTF-8");
+
+   private static final String SINGLE_BYTE_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+   private static final String MULTI_BYTE_CHARS = "\u00C5\u00C4\u00C7\u00C9\u00D1\u00D6\u00D5\u00DC\u00E0\u00E4\u00E2\u00E1\u00E3\u00E7\u00EB\u00E8\u00EA\u00E9\u00EE\u00EF\u00EC\u00ED\u00F1\u00F4\u00F6\u00F2\u00F3\u00FC\u00FB\u00F9\u00FA\u00FF";
+   private static final byte[] PUNCTUATION = { '!', ',', '.', ';', '?' };
+   private static final int MAX_WORD_LENGTH = 12;
+
+   private final String[] words;
+   private final byte[] text;
+   /* Offsets in the text where words start */
+   private final int[] wordStarts;
+
+   /**
+    * @param seed Seed determining the vocabulary and the text
+    * @param vocabularySize Number of distinct words
+    * @param exponent Exponent of the Zipf distribution, 0 means uniform distribution
+    * @param size Size of the text in bytes
+    */
+   public TextCorpus(long seed, int vocabularySize, double exponent, int size) {
+      if (vocabularySize <= 0) throw new IllegalArgumentException("Vocabulary must contain at least one word");
+      if (size < 1024) throw new IllegalArgumentException("Corpus size must be at least 1024 bytes");
+      Random random = new Random(seed);
+      words = generateVocabulary(random, vocabularySize);
+      byte[][] encoded = new byte[words.length][];
+      for (int i = 0; i < words.length; ++i) {
+         encoded[i] = words[i].getBytes(CHARSET);
+      }
+      double[] cumulative = new double[words.length];
+      double sum = 0;
+      for (int i = 0; i < words.length; ++i) {
+         sum += 1 / Math.pow(i + 1, exponent);
+         cumulative[i] = sum;
+      }
+
+      text = new byte[size];
+      int[] starts = new int[size / 2 + 1];
+      int count = 0, position = 0;
+      while (true) {
+         int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+         byte[] word = encoded[Math.min(rank < 0 ? -rank - 1 : rank, words.length - 1)];
+         if (position + word.length + 2 > size) break;
+         starts[count++] = position;
+         System.arraycopy(word, 0, text, position, word.length);
+         position += word.length;
+         if (random.nextInt(10) == 0) {
+            text[position++] = PUNCTUATION[random.nextInt(PUNCTUATION.length)];
+            text[position++] = '\n';
+         } else {
+            text[position++] = ' ';
+         }
+      }
+      // the tail is blank so that values can wrap around the end
+      Arrays.fill(text, position, size, (byte) ' ');
+      wordStarts = Arrays.copyOf(starts, count);
+   }
+
+   private static String[] generateVocabulary(Random random, int vocabularySize) {
+      Set<String> vocabulary = new LinkedHashSet<String>();
+      StringBuilder word = new StringBuilder(MAX_WORD_LENGTH);
+      while (vocabulary.size() < vocabularySize) {
+         word.setLength(0);
+         int length = 1 + random.nextInt(MAX_WORD_LENGTH);
+         for (int i = 0; i < length; ++i) {
+            if (random.nextInt(4) == 0) {
+               word.append(MULTI_BYTE_CHARS.charAt(random.nextInt(MULTI_BYTE_CHARS.length())));
+            } else {
+               word.append(SINGLE_BYTE_CHARS.charAt(random.nextInt(SINGLE_BYTE_CHARS.length())));
+            }
+         }
+         vocabulary.add(word.toString());
+      }
+      List<String> sorted = new ArrayList<String>(vocabulary);
+      // stable sort keeps the order random among words of the same length
+      Collections.sort(sorted, new Comparator<String>() {
+         @Override
+         public int compare(String o1, String o2) {
+            return o1.length() - o2.length();
+         }
+      });
+      return sorted.toArray(new String[sorted.size()]);
+   }
+
+   /**
+    * @return Word with given rank, 0 is the most frequent word
+    */
+   public String getWord(int rank) {
+      return words[rank];
+   }
+
+   public int getVocabularySize() {
+      return words.length;
+   }
+
+   public int getSize() {
+      return text.length;
+   }
+
+   /**
+    * Fills the whole array with text starting at random word. The value does not end with partial word,
+    * the rest is padded with spaces, therefore it can be always decoded using {@link #CHARSET}.
+    */
+   public void fill(byte[] value, Random random) {
+      int start = wordStarts[random.nextInt(wordStarts.length)];
+      int offset = 0;
+      while (offset < value.length) {
+         int length = Math.min(value.length - offset, text.length - start);
+         System.arraycopy(text, start, value, offset, length);
+         offset += length;
+         start = 0;
+      }
+      int end = value.length;
+      while (end > 0 && value[end - 1] != ' ' && value[end - 1] != '\n') {
+         end--;
+      }
+      Arrays.fill(value, end, value.length, (byte) ' ');
+   }
+
+   public byte[] generate(int size, Random random) {
+      byte[] value = new byte[size];
+      fill(value, random);
+      return value;
+   }
+}
@@ -0,0 +1,47 @@
+#!/bin/bash
+
+## Load includes
+if [ "x$RADARGUN_HOME" = "x" ]; then DIRNAME=`dirname $0`; RADARGUN_HOME=`cd $DIRNAME/..; pwd` ; fi; export RADARGUN_HOME
+. ${RADARGUN_HOME}/bin/includes.sh
+
+CONFIG=./conf/benchmark.xml
+SLAVE_COUNT_ARG=""
+
+help_and_exit() {
+  echo "Usage: "
+  echo '  $ inprocess.sh [-c CONFIG] [-s SLAVE_COUNT]'
+  echo ""
+  echo "   -c        Path to the framework configuration XML file. Optional - if not supplied benchmark will load ${CONFIG}"
+  echo ""
+  echo "   -s        Number of slaves started in this JVM. Defaults to maxSize attribute in framework configuration XML file."
+  echo ""
+  echo "   -h        Displays this help screen"
+  echo ""
+
+  exit 0
+}
+
+welcome "This script is used to run the master and all slaves in a single JVM."
+
+### read in any command-line params
+while ! [ -z $1 ]
+do
+  case "$1" in
+    "-c")
+      CONFIG=$2
+      shift
+      ;;
+    "-s")
+      SLAVE_COUNT_ARG="-slaves $2"
+      shift
+      ;;
+    *)
+      help_and_exit
+      ;;
+  esac
+  shift
+done
+
+add_fwk_to_classpath
+set_env
+${JAVA} ${JVM_OPTS} -classpath $CP -Djava.net.preferIPv4Stack=true -Dbind.address=${BIND_ADDRESS} org.radargun.LaunchInProcess -config ${CONFIG} ${SLAVE_COUNT_ARG}
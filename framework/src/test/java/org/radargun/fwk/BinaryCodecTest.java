@@ -0,0 +1,108 @@
+package org.radargun.fwk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.radargun.BinaryCodec;
+import org.radargun.DistStage;
+import org.radargun.MessageFraming;
+import org.radargun.SerializationHelper;
+import org.radargun.stages.DefaultDistStageAck;
+import org.radargun.stages.StressTestStage;
+import org.radargun.stressors.LogLinearHistogram;
+import org.radargun.stressors.Operation;
+import org.radargun.stressors.SimpleStatistics;
+import org.testng.annotations.Test;
+
+@Test
+public class BinaryCodecTest {
+
+   public void testAckRoundTrip() throws Exception {
+      DefaultDistStageAck ack = new DefaultDistStageAck(3, InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }));
+      ack.setDuration(12345);
+      Map<String, Object> payload = new HashMap<String, Object>();
+      payload.put("REQ_PER_SEC", 1234.5);
+      payload.put("FAILURES", 7L);
+      payload.put("NAME", "test");
+      // plugin-defined types are serialized by Java serialization
+      payload.put("DATE", new Date(1000));
+      List<Map<String, Object>> timeSeries = new ArrayList<Map<String, Object>>();
+      for (int i = 0; i < 3; ++i) {
+         Map<String, Object> sample = new HashMap<String, Object>();
+         sample.put("INTERVAL_TIME", i * 1000L);
+         sample.put("THROUGHPUT", i * 10d);
+         timeSeries.add(sample);
+      }
+      payload.put("TIME_SERIES", timeSeries);
+      ack.setPayload(payload);
+
+      ByteBuffer message = receive(SerializationHelper.prepareForSerialization(ack));
+      assert BinaryCodec.isEncoded(message);
+      DefaultDistStageAck read = (DefaultDistStageAck) SerializationHelper.deserialize(message);
+      assert read.getSlaveIndex() == 3;
+      assert read.getDuration() == 12345;
+      assert read.getSlaveDescription().equals(ack.getSlaveDescription());
+      assert read.getPayload().equals(payload) : read.getPayload();
+   }
+
+   public void testStatisticsAndHistogram() throws Exception {
+      SimpleStatistics stats = new SimpleStatistics();
+      stats.reset(1000);
+      stats.registerRequest(500, 10, Operation.GET);
+      stats.registerError(700, 0, Operation.PUT);
+      LogLinearHistogram histogram = new LogLinearHistogram(3600L * 1000 * 1000 * 1000, 2);
+      for (long i = 1; i < 100000; i *= 3) {
+         histogram.record(i);
+      }
+      List<Object> list = Arrays.<Object>asList(stats, histogram);
+      byte[] bytes = BinaryCodec.encode(new ArrayList<Object>(list));
+      List<Object> read = (List<Object>) BinaryCodec.decode(ByteBuffer.wrap(bytes));
+      SimpleStatistics readStats = (SimpleStatistics) read.get(0);
+      assert readStats.getNumberOfRequests() == stats.getNumberOfRequests();
+      assert readStats.getNumErrors() == 1;
+      assert readStats.getIntervalBeginTime() == 1000;
+      LogLinearHistogram readHistogram = (LogLinearHistogram) read.get(1);
+      assert readHistogram.getTotalCount() == histogram.getTotalCount();
+      assert readHistogram.toRangesString().equals(histogram.toRangesString());
+      assert readHistogram.getValueAtPercentile(90) == histogram.getValueAtPercentile(90);
+   }
+
+   public void testStagesShareCommonFields() throws Exception {
+      StressTestStage stage = new StressTestStage();
+      stage.setExitBenchmarkOnSlaveFailure(true);
+      List<DistStage> clones = new ArrayList<DistStage>();
+      for (int i = 0; i < 3; ++i) {
+         DistStage clone = stage.clone();
+         clone.setActiveSlavesCount(i + 1);
+         clones.add(clone);
+      }
+      ByteBuffer[][] chunks = SerializationHelper.prepareStagesForSerialization(clones);
+      for (int i = 0; i < 3; ++i) {
+         StressTestStage read = (StressTestStage) SerializationHelper.deserialize(receive(chunks[i]));
+         assert read.getActiveSlaveCount() == i + 1;
+         assert read.isExitBenchmarkOnSlaveFailure();
+      }
+   }
+
+   private static ByteBuffer receive(ByteBuffer[] chunks) throws Exception {
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      WritableByteChannel out = Channels.newChannel(stream);
+      for (ByteBuffer chunk : chunks) {
+         out.write(chunk);
+      }
+      List<ByteBuffer> messages = new MessageFraming.Reader(Long.MAX_VALUE)
+            .read(Channels.newChannel(new ByteArrayInputStream(stream.toByteArray())));
+      assert messages.size() == 1;
+      return messages.get(0);
+   }
+}
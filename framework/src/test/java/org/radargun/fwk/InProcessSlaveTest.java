@@ -0,0 +1,75 @@
+package org.radargun.fwk;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.List;
+
+import org.radargun.DistStageAck;
+import org.radargun.MessageFraming;
+import org.radargun.SerializationHelper;
+import org.radargun.Slave;
+import org.radargun.config.Stage;
+import org.radargun.stages.AbstractDistStage;
+import org.radargun.stages.DefaultDistStageAck;
+import org.testng.annotations.Test;
+
+@Test
+public class InProcessSlaveTest {
+
+   public void testStageOverPipes() throws Exception {
+      final Pipe toSlave = Pipe.open();
+      final Pipe toMaster = Pipe.open();
+      Thread slaveThread = new Thread() {
+         @Override
+         public void run() {
+            try {
+               new Slave(0).start(toSlave.source(), toMaster.sink());
+            } catch (Exception e) {
+               throw new RuntimeException(e);
+            }
+         }
+      };
+      slaveThread.start();
+
+      for (int i = 0; i < 2; ++i) {
+         for (ByteBuffer chunk : SerializationHelper.prepareForSerialization(new EchoStage())) {
+            while (chunk.hasRemaining()) {
+               toSlave.sink().write(chunk);
+            }
+         }
+         DefaultDistStageAck ack = (DefaultDistStageAck) receive(toMaster.source());
+         assert !ack.isError();
+         assert ack.getPayload().equals("executed");
+      }
+
+      toSlave.sink().close();
+      slaveThread.join(10000);
+      assert !slaveThread.isAlive();
+   }
+
+   private static DistStageAck receive(Pipe.SourceChannel channel) throws Exception {
+      channel.configureBlocking(false);
+      MessageFraming.Reader reader = new MessageFraming.Reader(Long.MAX_VALUE);
+      long deadline = System.currentTimeMillis() + 10000;
+      while (System.currentTimeMillis() < deadline) {
+         List<ByteBuffer> messages = reader.read(channel);
+         assert messages != null;
+         if (!messages.isEmpty()) {
+            assert messages.size() == 1;
+            return (DistStageAck) SerializationHelper.deserialize(messages.get(0));
+         }
+         Thread.sleep(10);
+      }
+      throw new AssertionError("No ack received");
+   }
+
+   @Stage(doc = "Acknowledges execution.")
+   public static class EchoStage extends AbstractDistStage {
+      @Override
+      public DistStageAck executeOnSlave() {
+         DefaultDistStageAck ack = newDefaultStageAck();
+         ack.setPayload("executed");
+         return ack;
+      }
+   }
+}
@@ -0,0 +1,67 @@
+package org.radargun.fwk;
+
+import java.util.Random;
+
+import org.radargun.stressors.HotspotKeyDistribution;
+import org.radargun.stressors.KeyDistribution;
+import org.radargun.stressors.LatestKeyDistribution;
+import org.radargun.stressors.ScrambledZipfianKeyDistribution;
+import org.radargun.stressors.UniformKeyDistribution;
+import org.radargun.stressors.ZipfianKeyDistribution;
+import org.testng.annotations.Test;
+
+@Test
+public class KeyDistributionTest {
+   private static final int ENTRIES = 1000;
+   private static final int SAMPLES = 200000;
+
+   private int[] sample(KeyDistribution distribution) {
+      Random random = new Random(42);
+      int[] counts = new int[ENTRIES];
+      for (int i = 0; i < SAMPLES; ++i) {
+         int index = distribution.nextIndex(random);
+         assert index >= 0 && index < ENTRIES : index;
+         counts[index]++;
+      }
+      return counts;
+   }
+
+   public void testUniformCoversAllKeys() {
+      int[] counts = sample(new UniformKeyDistribution(ENTRIES));
+      for (int i = 0; i < ENTRIES; ++i) {
+         assert counts[i] > 0 : "key " + i + " never accessed";
+      }
+   }
+
+   public void testZipfianIsSkewed() {
+      int[] counts = sample(new ZipfianKeyDistribution(ENTRIES, 0.99));
+      assert counts[0] > counts[1] && counts[1] > counts[10] && counts[10] > counts[ENTRIES - 1];
+      // with theta=0.99 the most popular key gets roughly 1/zeta(1000) ~ 13% of accesses
+      assert counts[0] > SAMPLES / 10 : counts[0];
+   }
+
+   public void testLatestPrefersHighestIndex() {
+      int[] counts = sample(new LatestKeyDistribution(ENTRIES, 0.99));
+      assert counts[ENTRIES - 1] > counts[ENTRIES - 2] && counts[ENTRIES - 2] > counts[0];
+   }
+
+   public void testScrambledZipfianMovesHotKeys() {
+      int[] counts = sample(new ScrambledZipfianKeyDistribution(ENTRIES, 0.99));
+      int max = 0;
+      for (int i = 1; i < ENTRIES; ++i) {
+         if (counts[i] > counts[max]) max = i;
+      }
+      // with theta=0.99 over 10^10 items the most popular item gets roughly 1/zeta(10^10) ~ 3.8% of accesses
+      assert counts[max] > SAMPLES / 40 : counts[max];
+      assert counts[max] < SAMPLES / 10 : counts[max];
+   }
+
+   public void testHotspot() {
+      int[] counts = sample(new HotspotKeyDistribution(ENTRIES, 0.1, 0.9));
+      int hot = 0;
+      for (int i = 0; i < ENTRIES / 10; ++i) {
+         hot += counts[i];
+      }
+      assert Math.abs(hot - 0.9 * SAMPLES) < 0.01 * SAMPLES : hot;
+   }
+}
@@ -0,0 +1,48 @@
+package org.radargun.fwk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.radargun.StageProgress;
+import org.radargun.stages.helpers.LiveStatistics;
+import org.radargun.stressors.StressTestStressor;
+import org.testng.annotations.Test;
+
+@Test
+public class LiveStatisticsTest {
+
+   public void testThroughputCollapseAborts() {
+      LiveStatistics stats = new LiveStatistics(2, -1, 0.5, 2);
+      assert stats.add(progress(0, 0, 1000, 0));
+      assert stats.add(progress(1, 0, 1000, 0));
+      assert stats.add(progress(0, 1, 100, 0));
+      assert stats.add(progress(1, 1, 100, 0));
+      // single violating interval is tolerated
+      assert stats.add(progress(0, 2, 1000, 0));
+      assert stats.add(progress(1, 2, 1000, 0));
+      assert stats.add(progress(0, 3, 100, 0));
+      assert stats.add(progress(1, 3, 100, 0));
+      assert stats.add(progress(0, 4, 100, 0));
+      assert !stats.add(progress(1, 4, 100, 0));
+      assert stats.getAbortReason() != null;
+   }
+
+   public void testErrorRateWithFinishedSlave() {
+      LiveStatistics stats = new LiveStatistics(2, 10, 0, 1);
+      assert stats.add(progress(0, 0, 1000, 200));
+      // slave 1 does not report interval 0, it is processed when interval 1 is complete
+      assert stats.add(progress(0, 1, 1000, 0));
+      assert !stats.add(progress(1, 1, 1000, 0));
+      assert stats.getAbortReason().contains("error rate");
+   }
+
+   private static StageProgress progress(int slave, int sequence, long requests, long failures) {
+      Map<String, Object> values = new HashMap<String, Object>();
+      values.put(StressTestStressor.INTERVAL_TIME, 1000L * (sequence + 1));
+      values.put(StressTestStressor.INTERVAL_REQUESTS, requests);
+      values.put(StressTestStressor.THROUGHPUT, (double) requests);
+      values.put(StressTestStressor.AVG_RESPONSE_TIME, 1000000d);
+      values.put("FAILURES", failures);
+      return new StageProgress(slave, sequence, values);
+   }
+}
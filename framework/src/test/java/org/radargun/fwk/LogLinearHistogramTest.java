@@ -0,0 +1,100 @@
+package org.radargun.fwk;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.radargun.stressors.LogLinearHistogram;
+import org.radargun.stressors.LogLinearHistogramStatistics;
+import org.radargun.stressors.Operation;
+import org.radargun.stressors.Statistics;
+import org.testng.annotations.Test;
+
+@Test
+public class LogLinearHistogramTest {
+   private static final long HIGHEST = 3600L * 1000 * 1000 * 1000;
+
+   public void testPercentilesOfUniformValues() {
+      LogLinearHistogram histogram = new LogLinearHistogram(HIGHEST, 3);
+      for (long i = 1; i <= 100000; ++i) {
+         histogram.record(i * 1000);
+      }
+      assert histogram.getTotalCount() == 100000;
+      assertWithin(histogram.getValueAtPercentile(50), 50000000, 0.001);
+      assertWithin(histogram.getValueAtPercentile(99), 99000000, 0.001);
+      assertWithin(histogram.getValueAtPercentile(99.99), 99990000, 0.001);
+      assert histogram.getValueAtPercentile(100) == 100000000 : histogram.getValueAtPercentile(100);
+      assert histogram.getMin() == 1000;
+      assert histogram.getMax() == 100000000;
+   }
+
+   public void testSmallValuesAreExact() {
+      LogLinearHistogram histogram = new LogLinearHistogram(HIGHEST, 2);
+      for (long i = 0; i < 100; ++i) {
+         histogram.record(i);
+      }
+      for (int p = 1; p <= 100; ++p) {
+         assert histogram.getValueAtPercentile(p) == p - 1 : p + " -> " + histogram.getValueAtPercentile(p);
+      }
+   }
+
+   public void testMergeEqualsRecordingAll() {
+      Random random = new Random(42);
+      LogLinearHistogram all = new LogLinearHistogram(HIGHEST, 2);
+      LogLinearHistogram first = new LogLinearHistogram(HIGHEST, 2);
+      LogLinearHistogram second = new LogLinearHistogram(HIGHEST, 2);
+      for (int i = 0; i < 10000; ++i) {
+         long value = (long) (random.nextDouble() * random.nextDouble() * 1000000000L);
+         all.record(value);
+         (i % 2 == 0 ? first : second).record(value);
+      }
+      LogLinearHistogram merged = first.copy();
+      merged.merge(second);
+      assert merged.getTotalCount() == all.getTotalCount();
+      assert merged.getMax() == all.getMax();
+      for (double p : new double[] { 50, 90, 99, 99.9, 99.99 }) {
+         assert merged.getValueAtPercentile(p) == all.getValueAtPercentile(p) : p;
+      }
+   }
+
+   public void testValuesOverHighestTrackable() {
+      LogLinearHistogram histogram = new LogLinearHistogram(1000000, 2);
+      histogram.record(10);
+      histogram.record(Long.MAX_VALUE / 4);
+      assert histogram.getMax() == Long.MAX_VALUE / 4;
+      assert histogram.getValueAtPercentile(50) == 10;
+      assert histogram.getValueAtPercentile(100) >= 1000000;
+   }
+
+   public void testRangesString() {
+      LogLinearHistogram histogram = new LogLinearHistogram(HIGHEST, 2);
+      histogram.record(5);
+      histogram.record(5);
+      histogram.record(1000);
+      // the last range ends right after the maximum
+      assert histogram.toRangesString().equals("5:6:1000:1001=2:0:1") : histogram.toRangesString();
+      assert new LogLinearHistogram(HIGHEST, 2).toRangesString().isEmpty();
+   }
+
+   public void testStatisticsMergeAndResults() {
+      Statistics first = new LogLinearHistogramStatistics(3);
+      Statistics second = first.copy();
+      for (int i = 1; i <= 1000; ++i) {
+         first.registerRequest(i * 1000, 0, Operation.GET);
+      }
+      second.registerRequest(5000000, 1000000, Operation.GET);
+      second.registerRequest(7000, 0, Operation.PUT);
+      first.merge(second);
+      Map<String, Object> results = first.getResultsMap(1, "");
+      assertWithin((Long) results.get("GET_NET_P50"), 501000, 0.001);
+      assertWithin((Long) results.get("GET_NET_P99_9"), 1000000, 0.001);
+      assert results.get("GET_NET_MAX").equals(5000000L);
+      assert results.get("GET_TX_MAX").equals(6000000L);
+      assert results.get("PUT_NET_P99_99").equals(7000L);
+      assert !results.containsKey("PUT_TX_MAX");
+      assert !results.containsKey("REMOVE_NET_P50");
+   }
+
+   private static void assertWithin(long actual, long expected, double relativeError) {
+      assert Math.abs(actual - expected) <= expected * relativeError : "expected " + expected + " but was " + actual;
+   }
+}
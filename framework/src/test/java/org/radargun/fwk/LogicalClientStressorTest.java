@@ -0,0 +1,131 @@
+package org.radargun.fwk;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.radargun.CacheWrapper;
+import org.radargun.stressors.LogicalClientStressor;
+import org.radargun.utils.TypedProperties;
+import org.testng.annotations.Test;
+
+@Test
+public class LogicalClientStressorTest {
+
+   public void testClientsAreSharedByThreads() throws Exception {
+      RecordingWrapper wrapper = new RecordingWrapper();
+      LogicalClientStressor stressor = new LogicalClientStressor();
+      // with odd number of clients no thread can keep serving the same clients
+      stressor.setNumThreads(2);
+      stressor.setNumClients(3);
+      stressor.setNumEntries(5);
+      stressor.setEntrySize(10);
+      stressor.setNumRequests(300);
+      stressor.setWritePercentage(50);
+      stressor.stress(wrapper);
+
+      assert wrapper.bucketOf.size() == 15 : wrapper.bucketOf.size();
+      assert wrapper.misplaced.isEmpty() : "Keys accessed in wrong bucket: " + wrapper.misplaced;
+      boolean migrated = false;
+      for (Set<String> threads : wrapper.accessingThreads.values()) {
+         migrated |= threads.size() > 1;
+      }
+      assert migrated : "No client was served by more than one thread";
+      stressor.destroy();
+   }
+
+   private static class RecordingWrapper implements CacheWrapper {
+      private final ConcurrentHashMap<Object, Object> data = new ConcurrentHashMap<Object, Object>();
+      private final ConcurrentHashMap<Object, String> bucketOf = new ConcurrentHashMap<Object, String>();
+      private final ConcurrentHashMap<Object, Set<String>> accessingThreads = new ConcurrentHashMap<Object, Set<String>>();
+      private final Set<Object> misplaced = Collections.synchronizedSet(new HashSet<Object>());
+
+      private void record(String bucket, Object key) {
+         String previous = bucketOf.putIfAbsent(key, bucket);
+         if (previous != null && !previous.equals(bucket)) {
+            misplaced.add(key);
+         }
+         Set<String> threads = accessingThreads.get(key);
+         if (threads == null) {
+            accessingThreads.putIfAbsent(key, Collections.synchronizedSet(new HashSet<String>()));
+            threads = accessingThreads.get(key);
+         }
+         threads.add(Thread.currentThread().getName());
+      }
+
+      @Override
+      public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) {
+      }
+
+      @Override
+      public void tearDown() {
+      }
+
+      @Override
+      public boolean isRunning() {
+         return true;
+      }
+
+      @Override
+      public void put(String bucket, Object key, Object value) {
+         record(bucket, key);
+         data.put(key, value);
+      }
+
+      @Override
+      public Object get(String bucket, Object key) {
+         record(bucket, key);
+         return data.get(key);
+      }
+
+      @Override
+      public Object remove(String bucket, Object key) {
+         record(bucket, key);
+         return data.remove(key);
+      }
+
+      @Override
+      public void empty() {
+         data.clear();
+      }
+
+      @Override
+      public int getNumMembers() {
+         return 1;
+      }
+
+      @Override
+      public String getInfo() {
+         return "RecordingWrapper";
+      }
+
+      @Override
+      public Object getReplicatedData(String bucket, String key) {
+         return get(bucket, key);
+      }
+
+      @Override
+      public boolean isTransactional(String bucket) {
+         return false;
+      }
+
+      @Override
+      public void startTransaction() {
+      }
+
+      @Override
+      public void endTransaction(boolean successful) {
+      }
+
+      @Override
+      public int getLocalSize() {
+         return data.size();
+      }
+
+      @Override
+      public int getTotalSize() {
+         return data.size();
+      }
+   }
+}
@@ -0,0 +1,69 @@
+package org.radargun.fwk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.radargun.MessageFraming;
+import org.testng.annotations.Test;
+
+@Test
+public class MessageFramingTest {
+
+   public void testChunkedMessagesOnHeap() throws Exception {
+      List<ByteBuffer> messages = transfer(Long.MAX_VALUE, message(10), message(3 * MessageFraming.MAX_CHUNK_SIZE + 17), message(0));
+      assert messages.size() == 3;
+      check(messages.get(0), 10);
+      check(messages.get(1), 3 * MessageFraming.MAX_CHUNK_SIZE + 17);
+      check(messages.get(2), 0);
+   }
+
+   public void testLargeMessageIsSpilled() throws Exception {
+      List<ByteBuffer> messages = transfer(1000, message(100), message(5 * MessageFraming.MAX_CHUNK_SIZE), message(200));
+      assert messages.size() == 3;
+      assert !(messages.get(0) instanceof MappedByteBuffer);
+      assert messages.get(1) instanceof MappedByteBuffer;
+      check(messages.get(0), 100);
+      check(messages.get(1), 5 * MessageFraming.MAX_CHUNK_SIZE);
+      check(messages.get(2), 200);
+   }
+
+   private static List<ByteBuffer> transfer(long spillThreshold, byte[]... messages) throws IOException {
+      Pipe pipe = Pipe.open();
+      pipe.source().configureBlocking(false);
+      MessageFraming.Reader reader = new MessageFraming.Reader(spillThreshold);
+      List<ByteBuffer> received = new ArrayList<ByteBuffer>();
+      for (byte[] message : messages) {
+         for (ByteBuffer chunk : MessageFraming.toChunks(message)) {
+            // the pipe has limited capacity, read partial chunks while writing
+            while (chunk.hasRemaining()) {
+               pipe.sink().write(chunk);
+               received.addAll(reader.read(pipe.source()));
+            }
+         }
+      }
+      received.addAll(reader.read(pipe.source()));
+      pipe.sink().close();
+      assert reader.read(pipe.source()) == null;
+      return received;
+   }
+
+   private static byte[] message(int length) {
+      byte[] message = new byte[length];
+      for (int i = 0; i < length; ++i) {
+         message[i] = (byte) (i * 31 + length);
+      }
+      return message;
+   }
+
+   private static void check(ByteBuffer buffer, int length) {
+      assert buffer.remaining() == length : buffer.remaining() + " != " + length;
+      byte[] expected = message(length);
+      for (int i = 0; i < length; ++i) {
+         assert buffer.get() == expected[i];
+      }
+   }
+}
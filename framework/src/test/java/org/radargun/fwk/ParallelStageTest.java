@@ -0,0 +1,115 @@
+package org.radargun.fwk;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.radargun.DistStage;
+import org.radargun.DistStageAck;
+import org.radargun.SerializationHelper;
+import org.radargun.config.ConfigHelper;
+import org.radargun.config.FixedSizeBenchmarkConfig;
+import org.radargun.config.MasterConfig;
+import org.radargun.config.Stage;
+import org.radargun.stages.AbstractDistStage;
+import org.radargun.stages.DefaultDistStageAck;
+import org.radargun.stages.ParallelStage;
+import org.radargun.state.MasterState;
+import org.testng.annotations.Test;
+
+@Test
+public class ParallelStageTest {
+
+   public void testOverlappingSlavesRejected() {
+      ParallelStage group = new ParallelStage();
+      group.addStage(stage("0..2"));
+      try {
+         group.addStage(stage("2,3"));
+         assert false : "Overlapping slaves should be rejected";
+      } catch (IllegalArgumentException e) {
+         // expected
+      }
+   }
+
+   public void testAcksAreSplit() throws Exception {
+      MasterConfig config = new MasterConfig(0, null, 5);
+      FixedSizeBenchmarkConfig benchmark = new FixedSizeBenchmarkConfig();
+      benchmark.setProductName("test");
+      config.addBenchmark(benchmark);
+      MasterState masterState = new MasterState(config);
+
+      ParallelStage group = new ParallelStage();
+      group.addStage(stage("0..2"));
+      group.addStage(stage("3"));
+      group.setActiveSlavesCount(5);
+
+      List<DistStage> copies = new ArrayList<DistStage>();
+      for (int i = 0; i < 5; ++i) {
+         ParallelStage copy = group.clone();
+         copy.initOnMaster(masterState, i);
+         assert copy.getStages().isEmpty();
+         copies.add(copy);
+      }
+      ByteBuffer[][] chunks = SerializationHelper.prepareStagesForSerialization(copies);
+      for (int i = 0; i < 5; ++i) {
+         ParallelStage read = (ParallelStage) SerializationHelper.deserialize(join(chunks[i]));
+         assert read.getSlaveIndex() == i;
+         assert read.toString().contains(i < 4 ? "Recording" : "[]") : read;
+      }
+
+      List<DistStageAck> acks = new ArrayList<DistStageAck>();
+      for (int i = 0; i < 5; ++i) {
+         acks.add(new DefaultDistStageAck(i, InetAddress.getByName(null)));
+      }
+      assert group.processAckOnMaster(acks, masterState);
+      assert ((RecordingStage) group.getStages().get(0)).ackSlaves.equals(indices(0, 1, 2));
+      assert ((RecordingStage) group.getStages().get(1)).ackSlaves.equals(indices(3));
+
+      DefaultDistStageAck error = new DefaultDistStageAck(4, InetAddress.getByName(null));
+      error.setError(true);
+      acks.set(4, error);
+      assert !group.processAckOnMaster(acks, masterState);
+   }
+
+   private static ByteBuffer join(ByteBuffer[] chunks) {
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      // chunk headers are on even positions
+      for (int i = 1; i < chunks.length; i += 2) {
+         stream.write(chunks[i].array(), chunks[i].position(), chunks[i].remaining());
+      }
+      return ByteBuffer.wrap(stream.toByteArray());
+   }
+
+   private static RecordingStage stage(String slaves) {
+      RecordingStage stage = new RecordingStage();
+      ConfigHelper.setValues(stage, Collections.singletonMap("slaves", slaves), true);
+      return stage;
+   }
+
+   private static List<Integer> indices(Integer... indices) {
+      List<Integer> list = new ArrayList<Integer>();
+      Collections.addAll(list, indices);
+      return list;
+   }
+
+   @Stage(doc = "Records acks.")
+   public static class RecordingStage extends AbstractDistStage {
+      List<Integer> ackSlaves;
+
+      public DistStageAck executeOnSlave() {
+         return newDefaultStageAck();
+      }
+
+      @Override
+      public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
+         ackSlaves = new ArrayList<Integer>();
+         for (DistStageAck ack : acks) {
+            ackSlaves.add(ack.getSlaveIndex());
+         }
+         return super.processAckOnMaster(acks, masterState);
+      }
+   }
+}
@@ -0,0 +1,35 @@
+package org.radargun.fwk;
+
+import org.radargun.stressors.Operation;
+import org.radargun.stressors.SimpleStatistics;
+import org.radargun.stressors.SingleWriterStatistics;
+import org.testng.annotations.Test;
+
+@Test
+public class SingleWriterStatisticsTest {
+
+   public void testNoRequestIsLostBySnapshots() throws Exception {
+      final int requests = 1000000;
+      final SingleWriterStatistics statistics = new SingleWriterStatistics(new SimpleStatistics(), System.currentTimeMillis());
+      Thread writer = new Thread() {
+         @Override
+         public void run() {
+            for (int i = 0; i < requests; ++i) {
+               statistics.registerRequest(1000, 0, Operation.GET);
+            }
+         }
+      };
+      writer.start();
+      long recorded = 0;
+      int snapshots = 0;
+      while (writer.isAlive()) {
+         recorded += ((SimpleStatistics) statistics.snapshot(System.currentTimeMillis())).getNumberOfRequests();
+         snapshots++;
+      }
+      writer.join();
+      SimpleStatistics last = (SimpleStatistics) statistics.snapshot(System.currentTimeMillis());
+      recorded += last.getNumberOfRequests();
+      assert recorded == requests : recorded + " after " + snapshots + " snapshots";
+      assert last.getIntervalEndTime() >= last.getIntervalBeginTime();
+   }
+}
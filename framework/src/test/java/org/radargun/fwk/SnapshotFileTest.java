@@ -0,0 +1,74 @@
+package org.radargun.fwk;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.radargun.SerializationHelper;
+import org.radargun.tpcc.domain.Warehouse;
+import org.radargun.utils.SnapshotFile;
+import org.testng.annotations.Test;
+
+@Test
+public class SnapshotFileTest {
+
+   public void testWriteAndRead() throws Exception {
+      File file = File.createTempFile("snapshot", ".bin");
+      try {
+         SnapshotFile.Writer writer = new SnapshotFile.Writer(file);
+         // enough data to fill several blocks
+         for (int i = 0; i < 3000; ++i) {
+            writer.write("key" + i, new byte[i]);
+         }
+         Warehouse warehouse = new Warehouse();
+         warehouse.setW_id(7);
+         writer.write(7L, warehouse);
+         writer.close();
+         assert writer.getEntries() == 3001;
+         assert file.length() > 3000 * 1500;
+
+         SnapshotFile.Reader reader = new SnapshotFile.Reader(file);
+         for (int i = 0; i < 3000; ++i) {
+            assert reader.next();
+            assert reader.getKey().equals("key" + i) : reader.getKey();
+            assert Arrays.equals((byte[]) reader.getValue(), new byte[i]);
+         }
+         assert reader.next();
+         assert reader.getKey().equals(7L);
+         assert ((Warehouse) reader.getValue()).getW_id() == 7;
+         assert !reader.next();
+         reader.close();
+      } finally {
+         file.delete();
+      }
+   }
+
+   public void testObjectsWithoutCodecShareStream() throws Exception {
+      File file = File.createTempFile("snapshot", ".bin");
+      try {
+         int count = 20000;
+         SnapshotFile.Writer writer = new SnapshotFile.Writer(file);
+         for (int i = 0; i < count; ++i) {
+            Warehouse warehouse = new Warehouse();
+            warehouse.setW_id(i);
+            writer.write(Warehouse.getKey(i), warehouse);
+         }
+         writer.close();
+         Warehouse warehouse = new Warehouse();
+         warehouse.setW_id(count);
+         // the class descriptor is not repeated for each entry
+         int separateSize = SerializationHelper.serializeObject(warehouse).length;
+         assert file.length() < (long) count * separateSize / 2 : file.length() + " vs. " + separateSize;
+
+         SnapshotFile.Reader reader = new SnapshotFile.Reader(file);
+         for (int i = 0; i < count; ++i) {
+            assert reader.next();
+            assert reader.getKey().equals(Warehouse.getKey(i)) : reader.getKey();
+            assert ((Warehouse) reader.getValue()).getW_id() == i;
+         }
+         assert !reader.next();
+         reader.close();
+      } finally {
+         file.delete();
+      }
+   }
+}
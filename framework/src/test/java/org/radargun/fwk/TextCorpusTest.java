@@ -0,0 +1,52 @@
+package org.radargun.fwk;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.radargun.utils.TextCorpus;
+import org.testng.annotations.Test;
+
+@Test
+public class TextCorpusTest {
+
+   public void testSameSeedGeneratesSameText() {
+      TextCorpus first = new TextCorpus(42, 1000, 1, 64 * 1024);
+      TextCorpus second = new TextCorpus(42, 1000, 1, 64 * 1024);
+      for (int i = 0; i < 1000; ++i) {
+         assert first.getWord(i).equals(second.getWord(i));
+      }
+      Random random1 = new Random(7), random2 = new Random(7);
+      for (int i = 0; i < 10; ++i) {
+         assert Arrays.equals(first.generate(100000, random1), second.generate(100000, random2));
+      }
+   }
+
+   public void testValuesEndWithWholeWords() {
+      TextCorpus corpus = new TextCorpus(1, 1000, 1, 64 * 1024);
+      Random random = new Random(1);
+      for (int size = 1; size < 2000; size += 7) {
+         byte[] value = corpus.generate(size, random);
+         assert value.length == size;
+         String text = new String(value, TextCorpus.CHARSET);
+         assert text.indexOf('\uFFFD') < 0 : text;
+         assert Arrays.equals(text.getBytes(TextCorpus.CHARSET), value);
+      }
+   }
+
+   public void testZipfDistribution() {
+      TextCorpus corpus = new TextCorpus(3, 1000, 1, 1024 * 1024);
+      Map<String, Integer> counts = new HashMap<String, Integer>();
+      String text = new String(corpus.generate(corpus.getSize(), new Random(3)), TextCorpus.CHARSET);
+      for (String word : text.split("[ \n!,.;?]+")) {
+         Integer count = counts.get(word);
+         counts.put(word, count == null ? 1 : count + 1);
+      }
+      assert counts.size() <= 1001 : counts.size();
+      int first = counts.get(corpus.getWord(0));
+      int tenth = counts.get(corpus.getWord(9));
+      // with exponent 1 the most frequent word appears about ten times more often than the tenth one
+      assert first > 7 * tenth && first < 13 * tenth : first + " vs. " + tenth;
+   }
+}
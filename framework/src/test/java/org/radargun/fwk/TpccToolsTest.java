@@ -0,0 +1,57 @@
+package org.radargun.fwk;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.radargun.CacheWrapper;
+import org.radargun.features.KeyOwnershipAware;
+import org.radargun.tpcc.TpccTools;
+import org.testng.annotations.Test;
+
+@Test
+public class TpccToolsTest {
+
+   public void testHomeWarehousesPartition() {
+      Set<Long> assigned = new HashSet<Long>();
+      for (int slave = 0; slave < 3; ++slave) {
+         for (long w : TpccTools.homeWarehouses(10, slave, 3)) {
+            assert w >= 1 && w <= 10 : w;
+            assert assigned.add(w) : "Warehouse " + w + " assigned twice";
+         }
+      }
+      assert assigned.size() == 10;
+      assert Arrays.equals(TpccTools.homeWarehouses(10, 0, 3), new long[]{1, 4, 7, 10});
+   }
+
+   public void testHomeWarehousesFollowOwnership() {
+      // slave 1 owns warehouses 2, 3 and 5
+      assert Arrays.equals(TpccTools.homeWarehouses(owning(2, 3, 5), 6, 1, 2), new long[]{2, 3, 5});
+      assert TpccTools.homeWarehouses(owning(), 6, 1, 2).length == 0;
+      // owning all warehouses means that the data are not partitioned
+      assert Arrays.equals(TpccTools.homeWarehouses(owning(1, 2, 3, 4), 4, 1, 2), new long[]{2, 4});
+   }
+
+   private static CacheWrapper owning(long... warehouses) {
+      final Set<String> keys = new HashSet<String>();
+      for (long w : warehouses) {
+         keys.add("WAREHOUSE_" + w);
+      }
+      return (CacheWrapper) Proxy.newProxyInstance(TpccToolsTest.class.getClassLoader(), new Class[]{KeyOwnershipAware.class},
+            new InvocationHandler() {
+               @Override
+               public Object invoke(Object proxy, Method method, Object[] args) {
+                  if (!method.getName().equals("isPrimaryOwner")) throw new UnsupportedOperationException(method.getName());
+                  return keys.contains(args[1]);
+               }
+            });
+   }
+
+   public void testHomeWarehousesShared() {
+      assert Arrays.equals(TpccTools.homeWarehouses(2, 0, 4), new long[]{1});
+      assert Arrays.equals(TpccTools.homeWarehouses(2, 3, 4), new long[]{2});
+   }
+}
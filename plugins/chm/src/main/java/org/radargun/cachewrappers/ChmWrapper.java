@@ -1,16 +1,21 @@
 package org.radargun.cachewrappers;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
 import org.radargun.CacheWrapper;
+import org.radargun.features.AsyncOperationsCapable;
 import org.radargun.features.AtomicOperationsCapable;
 import org.radargun.features.BulkOperationsCapable;
+import org.radargun.features.IterationCapable;
+import org.radargun.utils.CompletedFuture;
 import org.radargun.utils.TypedProperties;
 
-public class ChmWrapper implements CacheWrapper, BulkOperationsCapable, AtomicOperationsCapable {
+public class ChmWrapper implements CacheWrapper, BulkOperationsCapable, AtomicOperationsCapable, AsyncOperationsCapable, IterationCapable {
 
    public final ConcurrentHashMap chm = new ConcurrentHashMap();
 
@@ -80,6 +85,26 @@ public class ChmWrapper implements CacheWrapper, BulkOperationsCapable, AtomicOp
       return values;
    }
 
+   @Override
+   public Future<Object> getAsync(String bucket, Object key) throws Exception {
+      return new CompletedFuture<Object>(chm.get(key));
+   }
+
+   @Override
+   public Future<Object> putAsync(String bucket, Object key, Object value) throws Exception {
+      return new CompletedFuture<Object>(chm.put(key, value));
+   }
+
+   @Override
+   public Future<Object> removeAsync(String bucket, Object key) throws Exception {
+      return new CompletedFuture<Object>(chm.remove(key));
+   }
+
+   @Override
+   public Iterator<Map.Entry<Object, Object>> localEntries(String bucket) throws Exception {
+      return chm.entrySet().iterator();
+   }
+
    public void empty() throws Exception {
       chm.clear();
    }
@@ -5,8 +5,11 @@ import static java.util.concurrent.TimeUnit.MINUTES;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.arjuna.ats.arjuna.common.arjPropertyManager;
@@ -31,10 +34,11 @@ import org.infinispan.remoting.transport.Address;
 import org.radargun.CacheWrapper;
 import org.radargun.features.AtomicOperationsCapable;
 import org.radargun.features.Debugable;
+import org.radargun.features.IterationCapable;
 import org.radargun.utils.TypedProperties;
 import org.radargun.utils.Utils;
 
-public class InfinispanWrapper implements CacheWrapper, Debugable, AtomicOperationsCapable {
+public class InfinispanWrapper implements CacheWrapper, Debugable, AtomicOperationsCapable, IterationCapable {
 
    enum State {
       STOPPED,
@@ -66,6 +70,9 @@ public class InfinispanWrapper implements CacheWrapper, Debugable, AtomicOperati
    private Cache<Object, Object> cache;
 
    public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
+      if ("true".equals(confAttributes.get("warehouseGroups")) && !isWarehouseGroupingSupported()) {
+         throw new IllegalArgumentException(getClass().getSimpleName() + " cannot group entries by warehouse");
+      }
       this.config = config;
       try {
          if (beginStart()) {
@@ -131,6 +138,13 @@ public class InfinispanWrapper implements CacheWrapper, Debugable, AtomicOperati
       return new DefaultCacheManager(configFile);
    }
 
+   /**
+    * @return True if the wrapper supports the config attribute warehouseGroups
+    */
+   protected boolean isWarehouseGroupingSupported() {
+      return false;
+   }
+
    protected void postSetUpInternal(TypedProperties confAttributes) throws Exception {
       log.debug("Loading JGroups from: " + org.jgroups.Version.class.getProtectionDomain().getCodeSource().getLocation());
       log.info("JGroups version: " + org.jgroups.Version.printDescription());
@@ -377,6 +391,28 @@ public class InfinispanWrapper implements CacheWrapper, Debugable, AtomicOperati
       return cache;
    }
 
+   @Override
+   public Iterator<Map.Entry<Object, Object>> localEntries(String bucket) throws Exception {
+      final Iterator<InternalCacheEntry> iterator = getCache(bucket).getAdvancedCache().getDataContainer().iterator();
+      return new Iterator<Map.Entry<Object, Object>>() {
+         @Override
+         public boolean hasNext() {
+            return iterator.hasNext();
+         }
+
+         @Override
+         public Map.Entry<Object, Object> next() {
+            InternalCacheEntry ice = iterator.next();
+            return new AbstractMap.SimpleImmutableEntry<Object, Object>(ice.getKey(), ice.getValue());
+         }
+
+         @Override
+         public void remove() {
+            throw new UnsupportedOperationException();
+         }
+      };
+   }
+
    private void assertTm() {
       if (tm == null) throw new RuntimeException("No configured TM!");
    }
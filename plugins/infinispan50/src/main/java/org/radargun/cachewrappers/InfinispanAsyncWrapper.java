@@ -0,0 +1,30 @@
+package org.radargun.cachewrappers;
+
+import java.util.concurrent.Future;
+
+import org.radargun.features.AsyncOperationsCapable;
+
+/**
+ * InfinispanWrapper with the asynchronous operations of Infinispan 5.0 (Infinispan 4.x cannot
+ * retrieve the entries asynchronously).
+ */
+public class InfinispanAsyncWrapper extends InfinispanWrapper implements AsyncOperationsCapable {
+
+   @Override
+   public Future<Object> getAsync(String bucket, Object key) throws Exception {
+      if (trace) log.trace("GET_ASYNC key=" + key);
+      return getCache(bucket).getAsync(key);
+   }
+
+   @Override
+   public Future<Object> putAsync(String bucket, Object key, Object value) throws Exception {
+      if (trace) log.trace("PUT_ASYNC key=" + key);
+      return getCache(bucket).putAsync(key, value);
+   }
+
+   @Override
+   public Future<Object> removeAsync(String bucket, Object key) throws Exception {
+      if (trace) log.trace("REMOVE_ASYNC key=" + key);
+      return getCache(bucket).removeAsync(key);
+   }
+}
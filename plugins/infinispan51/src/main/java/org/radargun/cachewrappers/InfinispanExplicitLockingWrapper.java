@@ -29,10 +29,12 @@ import java.util.concurrent.Future;
 import javax.transaction.Status;
 import org.infinispan.Cache;
 import org.infinispan.transaction.LockingMode;
+import org.radargun.features.AsyncOperationsCapable;
 import org.radargun.features.BulkOperationsCapable;
+import org.radargun.utils.CompletedFuture;
 import org.radargun.utils.TypedProperties;
 
-public class InfinispanExplicitLockingWrapper extends InfinispanKeyAffinityWrapper implements BulkOperationsCapable {
+public class InfinispanExplicitLockingWrapper extends InfinispanKeyAffinityWrapper implements BulkOperationsCapable, AsyncOperationsCapable {
 
    private boolean isExplicitLocking;
    
@@ -221,4 +223,33 @@ public class InfinispanExplicitLockingWrapper extends InfinispanKeyAffinityWrapp
       }
       return values;
    }
+
+   @Override
+   public Future<Object> getAsync(String bucket, Object key) throws Exception {
+      if (trace) log.trace("GET_ASYNC key=" + key);
+      return getCache(bucket).getAsync(key);
+   }
+
+   /**
+    * With explicit locking the key has to be locked in transaction before the write,
+    * therefore the operation is executed synchronously.
+    */
+   @Override
+   public Future<Object> putAsync(String bucket, Object key, Object value) throws Exception {
+      if (trace) log.trace("PUT_ASYNC key=" + key);
+      if (isExplicitLocking && !isClusterValidationRequest(bucket)) {
+         put(bucket, key, value);
+         return new CompletedFuture<Object>(null);
+      }
+      return getCache(bucket).putAsync(key, value);
+   }
+
+   @Override
+   public Future<Object> removeAsync(String bucket, Object key) throws Exception {
+      if (trace) log.trace("REMOVE_ASYNC key=" + key);
+      if (isExplicitLocking && !isClusterValidationRequest(bucket)) {
+         return new CompletedFuture<Object>(remove(bucket, key));
+      }
+      return getCache(bucket).removeAsync(key);
+   }
 }
@@ -4,9 +4,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.infinispan.affinity.KeyAffinityService;
 import org.infinispan.affinity.KeyAffinityServiceFactory;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.manager.DefaultCacheManager;
 import org.radargun.features.KeyGeneratorAware;
+import org.radargun.features.KeyOwnershipAware;
 import org.radargun.stressors.KeyGenerator;
+import org.radargun.utils.TypedProperties;
 
+import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -14,12 +21,78 @@ import java.util.concurrent.Executors;
  * CacheWrapper implementation that produces a key generator generating keys through a key affinity service.
  * Produced keys are always local to that particular node on which the key generator is running.
  *
+ * With config attribute warehouseGroups="true" the TPC-C entries of the cache are grouped by warehouse using
+ * {@link TpccWarehouseGrouper}: all entries of a warehouse are stored on the owners of the warehouse entry.
+ * The TPC-C benchmark with warehouseAffinity then assigns each warehouse to the slave that is its primary owner
+ * (see {@link #isPrimaryOwner(String, Object)}), so the terminals work mostly with local data.
+ * The cache must be distributed, the wrapper fails to start otherwise.
+ *
  * @author Martin Gencur
  */
-public class InfinispanKeyAffinityWrapper extends InfinispanWrapper implements KeyGeneratorAware {
+public class InfinispanKeyAffinityWrapper extends InfinispanWrapper implements KeyGeneratorAware, KeyOwnershipAware {
+
+   private static final String WAREHOUSE_GROUPS = "warehouseGroups";
 
    private KeyGenerator keyAffinityStringKeyGenerator;
 
+   /* Name of the cache whose TPC-C entries are grouped by warehouse, null if grouping is off */
+   private String groupedCacheName;
+
+   @Override
+   public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
+      // read before the cache manager is created by any of the subclasses
+      groupedCacheName = "true".equals(confAttributes.get(WAREHOUSE_GROUPS)) ? getCacheName(confAttributes) : null;
+      super.setUp(config, isLocal, nodeIndex, confAttributes);
+   }
+
+   @Override
+   protected boolean isWarehouseGroupingSupported() {
+      return true;
+   }
+
+   @Override
+   protected DefaultCacheManager createCacheManager(String configFile) throws IOException {
+      return groupByWarehouse(super.createCacheManager(configFile));
+   }
+
+   /**
+    * Redefines the configuration of the cache before it is started if the grouping was requested.
+    * Subclasses that create the cache manager themselves must pass it through this method.
+    */
+   protected DefaultCacheManager groupByWarehouse(DefaultCacheManager manager) {
+      if (groupedCacheName == null) return manager;
+      Configuration configuration = manager.getCacheConfiguration(groupedCacheName);
+      if (configuration == null) {
+         throw new IllegalStateException(WAREHOUSE_GROUPS + " requires cache " + groupedCacheName + " to be defined");
+      }
+      if (!configuration.clustering().cacheMode().isDistributed()) {
+         throw new IllegalStateException(WAREHOUSE_GROUPS + " requires distributed cache, cache " + groupedCacheName
+               + " is " + configuration.clustering().cacheMode());
+      }
+      log.info("Grouping TPC-C entries in cache " + groupedCacheName + " by warehouse");
+      ConfigurationBuilder builder = new ConfigurationBuilder().read(configuration);
+      builder.clustering().hash().groups().enabled().addGrouper(new TpccWarehouseGrouper());
+      manager.defineConfiguration(groupedCacheName, builder.build());
+      return manager;
+   }
+
+   @Override
+   protected void postSetUpInternal(TypedProperties confAttributes) throws Exception {
+      if (groupedCacheName != null && !cacheManager.getCacheConfiguration(groupedCacheName).clustering().hash().groups().enabled()) {
+         throw new IllegalStateException(getClass().getSimpleName() + " did not apply " + WAREHOUSE_GROUPS
+               + " to cache " + groupedCacheName);
+      }
+      super.postSetUpInternal(confAttributes);
+   }
+
+   @Override
+   public boolean isPrimaryOwner(String bucket, Object key) {
+      DistributionManager distributionManager = getCache(bucket).getAdvancedCache().getDistributionManager();
+      // local and replicated caches store all entries
+      if (distributionManager == null) return true;
+      return cacheManager.getAddress().equals(distributionManager.getPrimaryLocation(key));
+   }
+
    @Override
    public KeyGenerator getKeyGenerator(int keyBufferSize) {
       if (keyAffinityStringKeyGenerator == null) {
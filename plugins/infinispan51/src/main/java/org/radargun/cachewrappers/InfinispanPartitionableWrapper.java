@@ -41,7 +41,7 @@ public class InfinispanPartitionableWrapper extends InfinispanKillableWrapper im
    protected DefaultCacheManager createCacheManager(String configFile) throws IOException {
       ConfigurationBuilderHolder cbh = createConfiguration(configFile);
       cbh.getGlobalConfigurationBuilder().transport().transport(new HookedJGroupsTransport());
-      return new DefaultCacheManager(cbh, true);
+      return groupByWarehouse(new DefaultCacheManager(cbh, true));
    }
 
    protected ConfigurationBuilderHolder createConfiguration(String configFile) throws IOException {
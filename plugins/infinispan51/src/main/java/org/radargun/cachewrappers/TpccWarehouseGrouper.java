@@ -0,0 +1,32 @@
+package org.radargun.cachewrappers;
+
+import org.infinispan.distribution.group.Grouper;
+
+/**
+ * Places all TPC-C entries that belong to the same warehouse into one group, so that they are stored on the
+ * same owners and a transaction on a single warehouse involves only these nodes. Items and history entries
+ * are not bound to a warehouse and keep the default placement.
+ */
+public class TpccWarehouseGrouper implements Grouper<String> {
+
+   /* Longer prefixes go first, the warehouse id follows the prefix */
+   private static final String[] PREFIXES = { "CUSTOMER_C_LAST_", "CUSTOMER_LAST_ORDER_", "CUSTOMER_", "DISTRICT_",
+         "NEWORDER_", "ORDERLINE_", "ORDER_", "STOCK_", "WAREHOUSE_", "NEXT_DELIVERY_" };
+
+   @Override
+   public String computeGroup(String key, String group) {
+      for (String prefix : PREFIXES) {
+         if (key.startsWith(prefix)) {
+            int end = prefix.length();
+            while (end < key.length() && Character.isDigit(key.charAt(end))) end++;
+            return end > prefix.length() ? "WAREHOUSE_" + key.substring(prefix.length(), end) : group;
+         }
+      }
+      return group;
+   }
+
+   @Override
+   public Class<String> getKeyType() {
+      return String.class;
+   }
+}